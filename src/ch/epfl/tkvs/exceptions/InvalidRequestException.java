@@ -0,0 +1,11 @@
+package ch.epfl.tkvs.exceptions;
+
+public class InvalidRequestException extends AbortException {
+
+    private static final long serialVersionUID = -7712408645031966521L;
+
+    public InvalidRequestException(Exception ex) {
+        super("Invalid request : " + ex.getMessage() + " Aborting..");
+    }
+
+}
@@ -0,0 +1,11 @@
+package ch.epfl.tkvs.exceptions;
+
+public class OverloadedException extends AbortException {
+
+    private static final long serialVersionUID = 6213720562395166112L;
+
+    public OverloadedException() {
+        super("Transaction manager is overloaded, request rejected. Aborting..");
+    }
+
+}
@@ -0,0 +1,10 @@
+package ch.epfl.tkvs.exceptions;
+
+public class StaleRoutingException extends AbortException {
+
+    private static final long serialVersionUID = 7390524113786245041L;
+
+    public StaleRoutingException(int clientVersion, int currentVersion) {
+        super("Routing table version " + clientVersion + " is stale, current version is " + currentVersion + ". Aborting..");
+    }
+}
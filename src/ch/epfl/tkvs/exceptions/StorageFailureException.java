@@ -0,0 +1,11 @@
+package ch.epfl.tkvs.exceptions;
+
+public class StorageFailureException extends AbortException {
+
+    private static final long serialVersionUID = 3318150420773904562L;
+
+    public StorageFailureException(String string) {
+        super(string + " Aborting..");
+    }
+
+}
@@ -0,0 +1,10 @@
+package ch.epfl.tkvs.exceptions;
+
+public class TransactionIdLeaseException extends AbortException {
+
+    private static final long serialVersionUID = 4826093115274420918L;
+
+    public TransactionIdLeaseException(Exception ex) {
+        super("No transaction id could be leased from the AppMaster. Exception :" + ex.getMessage() + "Aborting..");
+    }
+}
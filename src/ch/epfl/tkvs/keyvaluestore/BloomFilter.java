@@ -0,0 +1,91 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * A Bloom filter over byte strings: {@link #mightContain(byte[])} is false only for the strings never added. With
+ * {@link #BITS_PER_KEY} bits per string, about 1% of the other strings are reported as possibly contained.
+ */
+final class BloomFilter {
+
+    static final int BITS_PER_KEY = 10;
+    // The number of hash functions minimizing the false positives for BITS_PER_KEY, i.e. BITS_PER_KEY * ln 2
+    private static final int NB_HASHES = 7;
+
+    private final long[] words;
+    private final int nbBits;
+
+    /**
+     * @param expectedKeys the number of strings that will be added
+     */
+    BloomFilter(long expectedKeys) {
+        long bits = Math.max(64, Math.min(Integer.MAX_VALUE - 63, expectedKeys * BITS_PER_KEY));
+        words = new long[(int) ((bits + 63) / 64)];
+        nbBits = words.length * 64;
+    }
+
+    private BloomFilter(long[] words) {
+        this.words = words;
+        this.nbBits = words.length * 64;
+    }
+
+    void add(byte[] key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < NB_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % nbBits;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(byte[] key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < NB_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % nbBits;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a then a 64-bit finalizer, the two halves giving the hash functions by double hashing
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static BloomFilter read(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0) {
+            throw new IOException("Invalid Bloom filter length " + length);
+        }
+        long[] words = new long[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = in.readLong();
+        }
+        return new BloomFilter(words);
+    }
+}
@@ -0,0 +1,57 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+import ch.epfl.tkvs.user.KeySerializer;
+
+
+/**
+ * A key in its canonical form: the bytes given by the {@link KeySerializer} of the client. The hash code is computed
+ * once, as the key is looked up in the store, the locks and the versions of every transaction using it.
+ */
+public final class ByteKey implements Serializable {
+
+    private static final long serialVersionUID = 2962451335683958412L;
+
+    private final byte[] bytes;
+    private final int hash;
+
+    public ByteKey(byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    /**
+     * @param encodedKey a key as sent in the messages
+     * @return the key
+     */
+    public static ByteKey fromBase64(String encodedKey) {
+        return new ByteKey(Base64Utils.decodeBytes(encodedKey));
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ByteKey))
+            return false;
+        ByteKey other = (ByteKey) obj;
+        return hash == other.hash && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public String toString() {
+        return Base64Utils.encodeBytes(bytes);
+    }
+}
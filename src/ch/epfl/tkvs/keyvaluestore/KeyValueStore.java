@@ -5,27 +5,39 @@ import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
- * A simple in memory <Key,Value> Store.
+ * A simple in memory <Key,Value> Store, the default {@link StorageEngine}.
  */
-// TODO: Extend this in a future version to support data storage, resilience and replication.
-public enum KeyValueStore {
-    instance;
+public class KeyValueStore implements StorageEngine {
 
-    public ConcurrentHashMap<Serializable, Serializable> store = new ConcurrentHashMap<Serializable, Serializable>();
+    private final ConcurrentHashMap<Serializable, Serializable> store = new ConcurrentHashMap<Serializable, Serializable>();
 
+    @Override
     public void clear() {
         store.clear();
     }
 
+    @Override
     public void put(Serializable key, Serializable value) {
         store.put(key, value);
     }
 
+    @Override
     public Serializable get(Serializable key) {
         return store.get(key);
     }
 
+    @Override
     public void remove(Serializable key) {
         store.remove(key);
     }
+
+    @Override
+    public long size() {
+        return store.size();
+    }
+
+    @Override
+    public String toString() {
+        return "memory (" + store.size() + " values)";
+    }
 }
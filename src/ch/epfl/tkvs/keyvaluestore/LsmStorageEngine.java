@@ -0,0 +1,560 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * A log-structured merge {@link StorageEngine}, holding more values than the heap can by spilling the cold ones to the
+ * local disk.
+ *
+ * The values are written to a sorted in-memory table (the memtable). Once it holds {@link #getMaxMemtableBytes()}, it
+ * is frozen and a background thread writes it to an immutable {@link SortedSegment} file. A lookup goes through the
+ * memtable, the frozen memtables, then the segments from the newest to the oldest, skipping the segments whose Bloom
+ * filter does not hold the key: the keys that exist nowhere, as read by a transaction that gets a
+ * ValueDoesNotExistException, seldom touch the disk. The values recently read from the segments are kept in a cache.
+ *
+ * When the newest segments are many and of similar sizes, the background thread merges them into one, keeping the
+ * newest value of each key, and dropping the removed keys once the oldest segment is merged.
+ *
+ * The files do not outlive the engine: they are deleted when it starts, the durability of the values being the job of
+ * the {@link WriteAheadLog}. A failure to write a file is thrown by the next write, as an {@link IllegalStateException}.
+ */
+public class LsmStorageEngine implements StorageEngine {
+
+    public static final long DEFAULT_MEMTABLE_BYTES = 64 << 20;
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 4;
+    public static final int DEFAULT_CACHE_ENTRIES = 100000;
+
+    // The writers wait when this many frozen memtables are not written yet
+    private static final int MAX_PENDING_FLUSHES = 2;
+    // About the heap taken by an entry of the memtable besides its key and value
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File directory;
+    private final long maxMemtableBytes;
+    private final int compactionThreshold;
+    private final int cacheEntries;
+
+    // Guards the tables: held for reading by the lookups and writes, for writing to change the tables
+    private final ReentrantReadWriteLock tablesLock = new ReentrantReadWriteLock();
+    private final Condition flushed = tablesLock.writeLock().newCondition();
+    // Serializes the updates of the memtable size and of the number of values by the writes
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private ConcurrentSkipListMap<byte[], byte[]> memtable = new ConcurrentSkipListMap<byte[], byte[]>(SortedSegment.ORDER);
+    private long memtableBytes = 0;
+    // From the newest to the oldest
+    private final ArrayList<ConcurrentSkipListMap<byte[], byte[]>> frozenMemtables = new ArrayList<ConcurrentSkipListMap<byte[], byte[]>>();
+    private final ArrayList<SortedSegment> segments = new ArrayList<SortedSegment>();
+    // Changed by clear(), so that the background work started before is discarded
+    private int generation = 0;
+    private int nextSegmentId = 0;
+    private IOException failure = null;
+    // The values of all the tables, without lookups: see size()
+    private volatile long nbValues = 0;
+
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final LinkedHashMap<ByteKey, byte[]> cache;
+
+    private final ThreadPoolExecutor background;
+
+    private final AtomicLong nbBloomNegatives = new AtomicLong();
+    private final AtomicLong nbSegmentReads = new AtomicLong();
+    private final AtomicLong nbCacheHits = new AtomicLong();
+    private final AtomicLong nbFlushes = new AtomicLong();
+    private final AtomicLong nbCompactions = new AtomicLong();
+
+    /**
+     * @param directory the directory of the segment files, whose previous segments are deleted
+     * @param maxMemtableBytes about the heap the memtable takes before it is written to disk
+     * @param compactionThreshold the number of segments of similar sizes that are merged together
+     * @param cacheEntries the number of values read from the segments that are kept in memory
+     * @throws IllegalArgumentException if the directory cannot be created
+     */
+    public LsmStorageEngine(File directory, long maxMemtableBytes, int compactionThreshold, int cacheEntries) {
+        this.directory = directory;
+        this.maxMemtableBytes = maxMemtableBytes;
+        this.compactionThreshold = Math.max(2, compactionThreshold);
+        this.cacheEntries = cacheEntries;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory " + directory);
+        }
+        File[] previous = directory.listFiles();
+        for (File file : previous == null ? new File[0] : previous) {
+            if (file.getName().endsWith(SEGMENT_SUFFIX) || file.getName().endsWith(SEGMENT_SUFFIX + ".tmp")) {
+                file.delete();
+            }
+        }
+
+        cache = new LinkedHashMap<ByteKey, byte[]>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteKey, byte[]> eldest) {
+                return size() > LsmStorageEngine.this.cacheEntries;
+            }
+        };
+
+        // One thread writes the memtables and merges the segments in turn, and stops when idle
+        background = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lsm-" + LsmStorageEngine.this.directory.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        background.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public Serializable get(Serializable key) {
+        byte[] value;
+        tablesLock.readLock().lock();
+        try {
+            value = lookup(StorageCodec.encode(key));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the segments in " + directory, e);
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+        if (value == null || value == SortedSegment.TOMBSTONE) {
+            return null;
+        }
+        try {
+            return StorageCodec.decode(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted value in " + directory, e);
+        }
+    }
+
+    // Called with the tables locked for reading. Returns the form of the value, TOMBSTONE or null
+    private byte[] lookup(byte[] key) throws IOException {
+        byte[] value = memtable.get(key);
+        for (int i = 0; value == null && i < frozenMemtables.size(); i++) {
+            value = frozenMemtables.get(i).get(key);
+        }
+        if (value != null || segments.isEmpty()) {
+            return value;
+        }
+
+        // The cache is only looked up after the memtables, which hold the values written since it was filled
+        ByteKey cacheKey = new ByteKey(key);
+        cacheLock.lock();
+        try {
+            value = cache.get(cacheKey);
+        } finally {
+            cacheLock.unlock();
+        }
+        if (value != null) {
+            nbCacheHits.incrementAndGet();
+            return value;
+        }
+
+        for (SortedSegment segment : segments) {
+            if (!segment.mightContain(key)) {
+                nbBloomNegatives.incrementAndGet();
+                continue;
+            }
+            nbSegmentReads.incrementAndGet();
+            value = segment.get(key);
+            if (value != null) {
+                cacheLock.lock();
+                try {
+                    cache.put(cacheKey, value);
+                } finally {
+                    cacheLock.unlock();
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void put(Serializable key, Serializable value) {
+        write(StorageCodec.encode(key), StorageCodec.encode(value));
+    }
+
+    @Override
+    public void remove(Serializable key) {
+        write(StorageCodec.encode(key), SortedSegment.TOMBSTONE);
+    }
+
+    private void write(byte[] key, byte[] value) {
+        boolean full;
+        tablesLock.readLock().lock();
+        writeLock.lock();
+        try {
+            if (failure != null) {
+                throw new IllegalStateException("Cannot write the segments in " + directory, failure);
+            }
+            // Written blindly: an older value of the key is only seen by the compactions
+            byte[] replaced = memtable.put(key, value);
+            memtableBytes += replaced == null ? ENTRY_OVERHEAD + key.length + value.length : value.length - replaced.length;
+            nbValues += valuesOf(value) - (replaced == null ? 0 : valuesOf(replaced));
+            full = memtableBytes >= maxMemtableBytes;
+        } finally {
+            writeLock.unlock();
+            tablesLock.readLock().unlock();
+        }
+        if (full) {
+            freezeMemtable();
+        }
+    }
+
+    // The values of a table, not knowing those it hides in the older ones
+    private static int valuesOf(byte[] value) {
+        return value == SortedSegment.TOMBSTONE ? 0 : 1;
+    }
+
+    private static long valuesOf(SortedSegment segment) {
+        return segment == null ? 0 : segment.getNbEntries() - segment.getNbTombstones();
+    }
+
+    // Replaces the full memtable by an empty one, and has the background thread write it
+    private void freezeMemtable() {
+        final ConcurrentSkipListMap<byte[], byte[]> frozen;
+        final int frozenGeneration;
+        final File file;
+        tablesLock.writeLock().lock();
+        try {
+            while (frozenMemtables.size() >= MAX_PENDING_FLUSHES && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            // The writers that waited find it done
+            if (memtableBytes < maxMemtableBytes || failure != null) {
+                return;
+            }
+            frozen = memtable;
+            frozenMemtables.add(0, frozen);
+            memtable = new ConcurrentSkipListMap<byte[], byte[]>(SortedSegment.ORDER);
+            memtableBytes = 0;
+            frozenGeneration = generation;
+            file = nextSegmentFile();
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+
+        background.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                flush(frozen, frozenGeneration, file);
+                compact();
+            }
+        });
+    }
+
+    private File nextSegmentFile() {
+        return new File(directory, String.format("%08d", nextSegmentId++) + SEGMENT_SUFFIX);
+    }
+
+    private void flush(ConcurrentSkipListMap<byte[], byte[]> frozen, int frozenGeneration, File file) {
+        SortedSegment segment = null;
+        IOException error = null;
+        try {
+            SortedSegment.Writer writer = new SortedSegment.Writer(file, frozen.size());
+            try {
+                for (Map.Entry<byte[], byte[]> entry : frozen.entrySet()) {
+                    writer.add(entry.getKey(), entry.getValue());
+                }
+            } catch (IOException e) {
+                writer.abort();
+                throw e;
+            }
+            segment = writer.finish();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        tablesLock.writeLock().lock();
+        try {
+            if (frozenGeneration != generation) {
+                if (segment != null) {
+                    segment.delete();
+                }
+                return;
+            }
+            if (error != null) {
+                failure = error;
+            } else {
+                for (int i = 0; i < frozenMemtables.size(); i++) {
+                    if (frozenMemtables.get(i) == frozen) {
+                        frozenMemtables.remove(i);
+                        break;
+                    }
+                }
+                segments.add(0, segment);
+                // The cached values may be older than those of the segment
+                clearCache();
+                nbFlushes.incrementAndGet();
+            }
+            flushed.signalAll();
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+    }
+
+    // Merges the newest segments while they are at least compactionThreshold of similar sizes
+    private void compact() {
+        while (true) {
+            List<SortedSegment> toMerge;
+            boolean mergesOldest;
+            int compactedGeneration;
+            File file;
+            tablesLock.writeLock().lock();
+            try {
+                if (failure != null) {
+                    return;
+                }
+                // A segment joins the newer ones if it is at most twice as large as them together
+                int nbMerged = 1;
+                long mergedBytes = segments.isEmpty() ? 0 : segments.get(0).getFileSize();
+                while (nbMerged < segments.size() && segments.get(nbMerged).getFileSize() <= 2 * mergedBytes) {
+                    mergedBytes += segments.get(nbMerged).getFileSize();
+                    nbMerged++;
+                }
+                if (nbMerged < compactionThreshold) {
+                    return;
+                }
+                toMerge = new ArrayList<SortedSegment>(segments.subList(0, nbMerged));
+                mergesOldest = nbMerged == segments.size();
+                compactedGeneration = generation;
+                file = nextSegmentFile();
+            } finally {
+                tablesLock.writeLock().unlock();
+            }
+
+            SortedSegment merged = null;
+            IOException error = null;
+            try {
+                merged = merge(toMerge, mergesOldest, file);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            tablesLock.writeLock().lock();
+            try {
+                if (compactedGeneration != generation) {
+                    if (merged != null) {
+                        merged.delete();
+                    }
+                    return;
+                }
+                if (error != null) {
+                    failure = error;
+                    flushed.signalAll();
+                    return;
+                }
+                // Only this thread adds segments, so the merged ones are still the newest
+                segments.subList(0, toMerge.size()).clear();
+                if (merged != null) {
+                    segments.add(0, merged);
+                }
+                // The keys merged together are counted once, and exactly once the oldest segment is merged
+                long mergedValues = valuesOf(merged);
+                for (SortedSegment segment : toMerge) {
+                    mergedValues -= valuesOf(segment);
+                    segment.delete();
+                }
+                nbValues += mergedValues;
+                nbCompactions.incrementAndGet();
+            } finally {
+                tablesLock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Returns null if no entry is left
+    private static SortedSegment merge(List<SortedSegment> toMerge, boolean dropTombstones, File file) throws IOException {
+        final List<SortedSegment.Cursor> cursors = new ArrayList<SortedSegment.Cursor>();
+        // The smallest key first, and for a key the newest segment first
+        PriorityQueue<Integer> heads = new PriorityQueue<Integer>(toMerge.size(), new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                int cmp = SortedSegment.ORDER.compare(cursors.get(a).key(), cursors.get(b).key());
+                return cmp != 0 ? cmp : a - b;
+            }
+        });
+        long expectedKeys = 0;
+        SortedSegment.Writer writer = null;
+        try {
+            for (int i = 0; i < toMerge.size(); i++) {
+                cursors.add(toMerge.get(i).cursor());
+                if (cursors.get(i).next()) {
+                    heads.add(i);
+                }
+                expectedKeys += toMerge.get(i).getNbEntries();
+            }
+            writer = new SortedSegment.Writer(file, expectedKeys);
+
+            while (!heads.isEmpty()) {
+                int newest = heads.poll();
+                byte[] key = cursors.get(newest).key();
+                byte[] value = cursors.get(newest).value();
+                if (!dropTombstones || value != SortedSegment.TOMBSTONE) {
+                    writer.add(key, value);
+                }
+                // Skips the older values of the key
+                while (!heads.isEmpty() && SortedSegment.ORDER.compare(cursors.get(heads.peek()).key(), key) == 0) {
+                    int older = heads.poll();
+                    if (cursors.get(older).next()) {
+                        heads.add(older);
+                    }
+                }
+                if (cursors.get(newest).next()) {
+                    heads.add(newest);
+                }
+            }
+
+            if (writer.getNbEntries() == 0) {
+                writer.abort();
+                return null;
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            throw e;
+        } finally {
+            for (SortedSegment.Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private void clearCache() {
+        cacheLock.lock();
+        try {
+            cache.clear();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        tablesLock.writeLock().lock();
+        try {
+            generation++;
+            memtable = new ConcurrentSkipListMap<byte[], byte[]>(SortedSegment.ORDER);
+            memtableBytes = 0;
+            frozenMemtables.clear();
+            for (SortedSegment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            clearCache();
+            nbValues = 0;
+            failure = null;
+            flushed.signalAll();
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return an upper bound of the number of values: a key written or removed again after its value reached a segment
+     *         is counted twice until the compaction that merges both
+     */
+    @Override
+    public long size() {
+        return nbValues;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxMemtableBytes() {
+        return maxMemtableBytes;
+    }
+
+    public int getNbSegments() {
+        tablesLock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the size of the segment files
+     */
+    public long getDiskBytes() {
+        tablesLock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (SortedSegment segment : segments) {
+                bytes += segment.getFileSize();
+            }
+            return bytes;
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of segments skipped by lookups thanks to their Bloom filter
+     */
+    public long getNbBloomNegatives() {
+        return nbBloomNegatives.get();
+    }
+
+    /**
+     * @return the number of segments read by lookups
+     */
+    public long getNbSegmentReads() {
+        return nbSegmentReads.get();
+    }
+
+    public long getNbCacheHits() {
+        return nbCacheHits.get();
+    }
+
+    public long getNbFlushes() {
+        return nbFlushes.get();
+    }
+
+    public long getNbCompactions() {
+        return nbCompactions.get();
+    }
+
+    @Override
+    public String toString() {
+        long memoryBytes;
+        int nbFrozen;
+        tablesLock.readLock().lock();
+        try {
+            memoryBytes = memtableBytes;
+            nbFrozen = frozenMemtables.size();
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+        return "lsm (" + size() + " values, memtable " + (memoryBytes >> 10) + " KB + " + nbFrozen + " frozen, " + getNbSegments() + " segments of " + (getDiskBytes() >> 20) + " MB, " + nbFlushes.get() + " flushes, " + nbCompactions.get() + " compactions, " + nbSegmentReads.get() + " segment reads, " + nbBloomNegatives.get() + " skipped by Bloom filters, " + nbCacheHits.get() + " cache hits)";
+    }
+}
@@ -0,0 +1,467 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * A {@link StorageEngine} keeping the keys and values outside of the heap, so that millions of them do not lengthen the
+ * garbage collections.
+ *
+ * The entries are split among segments by the hash of their key, each guarded by a read-write lock. A segment indexes
+ * its entries in an open-addressing hash table with linear probing, made of primitive arrays that the garbage collector
+ * does not trace. An entry, i.e. the lengths of its key and value followed by their form of {@link StorageCodec}, is
+ * stored in a slot of the smallest size class holding it: the slots of a class have a power-of-two size and are carved
+ * from direct buffers (slabs), and freed slots are reused by the entries of the same class. The entries larger than the
+ * largest class get a direct buffer of their own.
+ *
+ * The memory taken by the buffers is limited: past the limit, {@link #put(Serializable, Serializable)} throws a
+ * {@link StorageFullException}. The buffers of the slabs are kept until {@link #clear()}.
+ */
+public class OffHeapStorageEngine implements StorageEngine {
+
+    public static final long DEFAULT_MAX_BYTES = 1L << 30;
+    public static final int DEFAULT_NB_SEGMENTS = 16;
+
+    private static final int MIN_SLOT_SIZE = 32;
+    private static final int MAX_SLOT_SIZE = 1 << 20;
+    private static final int MIN_SLAB_SIZE = 64 * 1024;
+    private static final int NB_CLASSES = Integer.numberOfTrailingZeros(MAX_SLOT_SIZE) - Integer.numberOfTrailingZeros(MIN_SLOT_SIZE) + 1;
+    // Class of the entries stored in a buffer of their own
+    private static final int HUGE = NB_CLASSES;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY = -1;
+
+    private final long maxBytes;
+    private final Segment[] segments;
+    private final int segmentShift;
+    // Memory of the buffers, and of the slots holding entries
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public OffHeapStorageEngine() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_NB_SEGMENTS);
+    }
+
+    /**
+     * @param maxBytes the most memory the buffers of the engine may take
+     * @param nbSegments the number of segments, rounded up to a power of two
+     */
+    public OffHeapStorageEngine(long maxBytes, int nbSegments) {
+        this.maxBytes = maxBytes;
+        int size = Integer.highestOneBit(Math.max(1, nbSegments - 1)) << 1;
+        if (nbSegments <= 1) {
+            size = 1;
+        }
+        segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment();
+        }
+        segmentShift = 32 - Integer.numberOfTrailingZeros(size);
+    }
+
+    @Override
+    public Serializable get(Serializable key) {
+        byte[] encodedKey = StorageCodec.encode(key);
+        int hash = hash(encodedKey);
+        return segmentFor(hash).get(encodedKey, hash);
+    }
+
+    @Override
+    public void put(Serializable key, Serializable value) {
+        byte[] encodedKey = StorageCodec.encode(key);
+        byte[] encodedValue = StorageCodec.encode(value);
+        int hash = hash(encodedKey);
+        segmentFor(hash).put(encodedKey, hash, encodedValue);
+    }
+
+    @Override
+    public void remove(Serializable key) {
+        byte[] encodedKey = StorageCodec.encode(key);
+        int hash = hash(encodedKey);
+        segmentFor(hash).remove(encodedKey, hash);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the memory taken by the buffers of the engine, outside of the heap
+     */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * @return the memory of the slots holding entries
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 1;
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+        // Spreads the bits, the high ones choose the segment and the low ones the bucket
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int classOf(int entrySize) {
+        if (entrySize > MAX_SLOT_SIZE) {
+            return HUGE;
+        }
+        int slotSize = Math.max(MIN_SLOT_SIZE, Integer.highestOneBit(entrySize - 1) << 1);
+        return Integer.numberOfTrailingZeros(slotSize) - Integer.numberOfTrailingZeros(MIN_SLOT_SIZE);
+    }
+
+    private static int slotSizeOf(int sizeClass) {
+        return MIN_SLOT_SIZE << sizeClass;
+    }
+
+    // An address is the class of the slot, then the index of its buffer, then its offset in the buffer
+    private static long address(int sizeClass, int buffer, int offset) {
+        return ((long) sizeClass << 56) | ((long) buffer << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int classOf(long address) {
+        return (int) (address >>> 56);
+    }
+
+    private static int bufferOf(long address) {
+        return (int) (address >>> 32) & 0xFFFFFF;
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    private void reserve(int bytes) {
+        if (reservedBytes.addAndGet(bytes) > maxBytes) {
+            reservedBytes.addAndGet(-bytes);
+            throw new StorageFullException("Off-heap storage full: " + bytes + " more bytes would exceed the limit of " + maxBytes);
+        }
+    }
+
+    private static void write(ByteBuffer buffer, int offset, byte[] bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(bytes);
+    }
+
+    private final class Segment {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // The index: the address of each entry and the hash of its key, EMPTY for the free buckets
+        private long[] addresses;
+        private int[] hashes;
+        private int count;
+
+        // The slabs of each class, the offset of the next slot never used in the last one, and the freed slots
+        private final List<List<ByteBuffer>> slabs = new ArrayList<List<ByteBuffer>>(NB_CLASSES + 1);
+        private final int[] nextOffsets = new int[NB_CLASSES];
+        private final long[][] freeSlots = new long[NB_CLASSES + 1][];
+        private final int[] nbFreeSlots = new int[NB_CLASSES + 1];
+
+        Segment() {
+            for (int c = 0; c <= NB_CLASSES; c++) {
+                slabs.add(new ArrayList<ByteBuffer>());
+                freeSlots[c] = new long[16];
+            }
+            resetIndex(INITIAL_CAPACITY);
+        }
+
+        private void resetIndex(int capacity) {
+            addresses = new long[capacity];
+            Arrays.fill(addresses, EMPTY);
+            hashes = new int[capacity];
+            count = 0;
+        }
+
+        Serializable get(byte[] key, int hash) {
+            lock.readLock().lock();
+            try {
+                int bucket = find(key, hash);
+                if (bucket < 0) {
+                    return null;
+                }
+                long address = addresses[bucket];
+                ByteBuffer buffer = bufferAt(address);
+                int offset = offsetOf(address);
+                int valueLength = buffer.getInt(offset + 4);
+                return StorageCodec.decode(buffer, offset + HEADER_SIZE + key.length, valueLength);
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupted off-heap entry", e);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(byte[] key, int hash, byte[] value) {
+            int entrySize = HEADER_SIZE + key.length + value.length;
+            int sizeClass = classOf(entrySize);
+            lock.writeLock().lock();
+            try {
+                int bucket = find(key, hash);
+                if (bucket >= 0 && classOf(addresses[bucket]) == sizeClass && sizeClass != HUGE) {
+                    // Overwritten in place
+                    long address = addresses[bucket];
+                    ByteBuffer buffer = bufferAt(address);
+                    buffer.putInt(offsetOf(address) + 4, value.length);
+                    write(buffer, offsetOf(address) + HEADER_SIZE + key.length, value);
+                    return;
+                }
+
+                long address = allocate(sizeClass, entrySize);
+                ByteBuffer buffer = bufferAt(address);
+                int offset = offsetOf(address);
+                buffer.putInt(offset, key.length);
+                buffer.putInt(offset + 4, value.length);
+                write(buffer, offset + HEADER_SIZE, key);
+                write(buffer, offset + HEADER_SIZE + key.length, value);
+
+                if (bucket >= 0) {
+                    free(addresses[bucket]);
+                    addresses[bucket] = address;
+                } else {
+                    if ((count + 1) * 4L > addresses.length * 3L) {
+                        grow();
+                    }
+                    insert(address, hash);
+                    count++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(byte[] key, int hash) {
+            lock.writeLock().lock();
+            try {
+                int bucket = find(key, hash);
+                if (bucket < 0) {
+                    return;
+                }
+                free(addresses[bucket]);
+                deleteBucket(bucket);
+                count--;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < addresses.length; i++) {
+                    if (addresses[i] != EMPTY) {
+                        usedBytes.addAndGet(-slotSizeOfAddress(addresses[i]));
+                    }
+                }
+                long reserved = 0;
+                for (int c = 0; c <= NB_CLASSES; c++) {
+                    for (ByteBuffer slab : slabs.get(c)) {
+                        if (slab != null) {
+                            reserved += slab.capacity();
+                        }
+                    }
+                    slabs.get(c).clear();
+                    nbFreeSlots[c] = 0;
+                    if (c < NB_CLASSES) {
+                        nextOffsets[c] = 0;
+                    }
+                }
+                reservedBytes.addAndGet(-reserved);
+                resetIndex(INITIAL_CAPACITY);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long size() {
+            lock.readLock().lock();
+            try {
+                return count;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // Returns the bucket of the key, or -1
+        private int find(byte[] key, int hash) {
+            int mask = addresses.length - 1;
+            for (int bucket = hash & mask;; bucket = (bucket + 1) & mask) {
+                long address = addresses[bucket];
+                if (address == EMPTY) {
+                    return -1;
+                }
+                if (hashes[bucket] == hash && keyEquals(address, key)) {
+                    return bucket;
+                }
+            }
+        }
+
+        private boolean keyEquals(long address, byte[] key) {
+            ByteBuffer buffer = bufferAt(address);
+            int offset = offsetOf(address);
+            if (buffer.getInt(offset) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (buffer.get(offset + HEADER_SIZE + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void insert(long address, int hash) {
+            int mask = addresses.length - 1;
+            int bucket = hash & mask;
+            while (addresses[bucket] != EMPTY) {
+                bucket = (bucket + 1) & mask;
+            }
+            addresses[bucket] = address;
+            hashes[bucket] = hash;
+        }
+
+        private void grow() {
+            long[] oldAddresses = addresses;
+            int[] oldHashes = hashes;
+            int oldCount = count;
+            resetIndex(oldAddresses.length * 2);
+            for (int i = 0; i < oldAddresses.length; i++) {
+                if (oldAddresses[i] != EMPTY) {
+                    insert(oldAddresses[i], oldHashes[i]);
+                }
+            }
+            count = oldCount;
+        }
+
+        // Backward shift deletion: moves back the entries that probed past the bucket, so that no tombstone is needed
+        private void deleteBucket(int bucket) {
+            int mask = addresses.length - 1;
+            int hole = bucket;
+            for (int next = (hole + 1) & mask; addresses[next] != EMPTY; next = (next + 1) & mask) {
+                int home = hashes[next] & mask;
+                // The entry may fill the hole if its home bucket is not cyclically in (hole, next]
+                boolean canMove = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+                if (canMove) {
+                    addresses[hole] = addresses[next];
+                    hashes[hole] = hashes[next];
+                    hole = next;
+                }
+            }
+            addresses[hole] = EMPTY;
+        }
+
+        private ByteBuffer bufferAt(long address) {
+            return slabs.get(classOf(address)).get(bufferOf(address));
+        }
+
+        private int slotSizeOfAddress(long address) {
+            int sizeClass = classOf(address);
+            return sizeClass == HUGE ? bufferAt(address).capacity() : slotSizeOf(sizeClass);
+        }
+
+        private long allocate(int sizeClass, int entrySize) {
+            if (sizeClass == HUGE) {
+                reserve(entrySize);
+                ByteBuffer buffer = ByteBuffer.allocateDirect(entrySize);
+                usedBytes.addAndGet(entrySize);
+                // Reuses the index of a released buffer
+                if (nbFreeSlots[HUGE] > 0) {
+                    int index = (int) freeSlots[HUGE][--nbFreeSlots[HUGE]];
+                    slabs.get(HUGE).set(index, buffer);
+                    return address(HUGE, index, 0);
+                }
+                slabs.get(HUGE).add(buffer);
+                return address(HUGE, slabs.get(HUGE).size() - 1, 0);
+            }
+
+            int slotSize = slotSizeOf(sizeClass);
+            usedBytes.addAndGet(slotSize);
+            if (nbFreeSlots[sizeClass] > 0) {
+                return freeSlots[sizeClass][--nbFreeSlots[sizeClass]];
+            }
+            List<ByteBuffer> classSlabs = slabs.get(sizeClass);
+            if (classSlabs.isEmpty() || nextOffsets[sizeClass] + slotSize > classSlabs.get(classSlabs.size() - 1).capacity()) {
+                int slabSize = Math.max(MIN_SLAB_SIZE, slotSize);
+                try {
+                    reserve(slabSize);
+                } catch (IllegalStateException e) {
+                    usedBytes.addAndGet(-slotSize);
+                    throw e;
+                }
+                classSlabs.add(ByteBuffer.allocateDirect(slabSize));
+                nextOffsets[sizeClass] = 0;
+            }
+            int offset = nextOffsets[sizeClass];
+            nextOffsets[sizeClass] += slotSize;
+            return address(sizeClass, classSlabs.size() - 1, offset);
+        }
+
+        private void free(long address) {
+            int sizeClass = classOf(address);
+            if (sizeClass == HUGE) {
+                int index = bufferOf(address);
+                int capacity = slabs.get(HUGE).get(index).capacity();
+                // The memory is given back when the buffer is collected
+                slabs.get(HUGE).set(index, null);
+                reservedBytes.addAndGet(-capacity);
+                usedBytes.addAndGet(-capacity);
+                pushFree(HUGE, index);
+                return;
+            }
+            usedBytes.addAndGet(-slotSizeOf(sizeClass));
+            pushFree(sizeClass, address);
+        }
+
+        private void pushFree(int sizeClass, long slot) {
+            if (nbFreeSlots[sizeClass] == freeSlots[sizeClass].length) {
+                freeSlots[sizeClass] = Arrays.copyOf(freeSlots[sizeClass], freeSlots[sizeClass].length * 2);
+            }
+            freeSlots[sizeClass][nbFreeSlots[sizeClass]++] = slot;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "offheap (" + size() + " values, " + (usedBytes.get() >> 20) + " MB used in " + (reservedBytes.get() >> 20) + " MB reserved, limit " + (maxBytes >> 20) + " MB)";
+    }
+}
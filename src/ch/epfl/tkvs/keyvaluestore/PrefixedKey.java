@@ -1,4 +1,4 @@
-package ch.epfl.tkvs.transactionmanager.versioningunit;
+package ch.epfl.tkvs.keyvaluestore;
 
 import java.io.Serializable;
 
@@ -18,6 +18,14 @@ public class PrefixedKey implements Serializable {
         this.key = key;
     }
 
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Serializable getKey() {
+        return key;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -0,0 +1,289 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+
+/**
+ * A snapshot of the committed state of a {@link WriteAheadLog}: the last committed value of each key, with the epoch of
+ * the log and the id of the transaction that wrote it, sorted by key. It replaces the log segments up to {@link #getLastSegment()}.
+ *
+ * The file is a header (format, last segment, number of entries, CRC32 of the entries) followed by the entries, each
+ * the lengths of its key and value, the epoch and the id of the transaction, then the key and value in the form of
+ * {@link StorageCodec}. It is read through memory mappings, the objects being decoded straight from the mapped pages.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x534E4150;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int ENTRY_HEADER_SIZE = 16;
+    // Size of the mappings, the file being mapped one window at a time
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final File file;
+    private final long lastSegment;
+    private final long nbEntries;
+    private final int checksum;
+    private final long fileSize;
+
+    private SnapshotFile(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Truncated snapshot " + file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                channel.read(header, header.position());
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a snapshot " + file);
+            }
+            lastSegment = header.getLong();
+            nbEntries = header.getLong();
+            checksum = header.getInt();
+        }
+    }
+
+    /**
+     * @param file a snapshot written by a {@link Writer}
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static SnapshotFile open(File file) throws IOException {
+        return new SnapshotFile(file);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of the last log segment whose records the snapshot holds
+     */
+    long getLastSegment() {
+        return lastSegment;
+    }
+
+    long getNbEntries() {
+        return nbEntries;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return a cursor over the entries in key order
+     * @throws IOException if the file cannot be opened
+     */
+    Cursor cursor() throws IOException {
+        return new Cursor();
+    }
+
+    /**
+     * Iterates over the entries of a snapshot, and checks their CRC32 once all are read.
+     */
+    final class Cursor {
+
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private MappedByteBuffer window = null;
+        private long windowStart = 0;
+        private long position = HEADER_SIZE;
+        // Offsets in the window of the current entry
+        private int keyOffset;
+        private int keyLength;
+        private int valueLength;
+        private int epoch;
+        private int xid;
+
+        private Cursor() throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+
+        /**
+         * @return false if there is no entry left, otherwise moves to the next one
+         * @throws IOException if the file cannot be read, or its entries do not match their checksum
+         */
+        boolean next() throws IOException {
+            if (position >= fileSize) {
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Corrupted snapshot " + file);
+                }
+                return false;
+            }
+            map(ENTRY_HEADER_SIZE);
+            int offset = (int) (position - windowStart);
+            keyLength = window.getInt(offset);
+            valueLength = window.getInt(offset + 4);
+            epoch = window.getInt(offset + 8);
+            xid = window.getInt(offset + 12);
+            if (keyLength < 0 || valueLength < 0 || position + ENTRY_HEADER_SIZE + keyLength + valueLength > fileSize) {
+                throw new IOException("Corrupted snapshot " + file);
+            }
+            int entrySize = ENTRY_HEADER_SIZE + keyLength + valueLength;
+            map(entrySize);
+            offset = (int) (position - windowStart);
+            keyOffset = offset + ENTRY_HEADER_SIZE;
+
+            ByteBuffer entry = window.duplicate();
+            entry.position(offset);
+            entry.limit(offset + entrySize);
+            crc.update(entry);
+            position += entrySize;
+            return true;
+        }
+
+        // Maps the window holding the next bytes from the position, if the current one does not
+        private void map(int length) throws IOException {
+            if (window != null && position >= windowStart && position + length <= windowStart + window.capacity()) {
+                return;
+            }
+            windowStart = position;
+            long size = Math.min(fileSize - position, Math.max(WINDOW_SIZE, length));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+        }
+
+        int epoch() {
+            return epoch;
+        }
+
+        int xid() {
+            return xid;
+        }
+
+        byte[] key() {
+            return copy(keyOffset, keyLength);
+        }
+
+        byte[] value() {
+            return copy(keyOffset + keyLength, valueLength);
+        }
+
+        Serializable decodeKey() throws IOException {
+            return StorageCodec.decode(window, keyOffset, keyLength);
+        }
+
+        Serializable decodeValue() throws IOException {
+            return StorageCodec.decode(window, keyOffset + keyLength, valueLength);
+        }
+
+        private byte[] copy(int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = window.duplicate();
+            view.position(offset);
+            view.get(bytes);
+            return bytes;
+        }
+
+        void close() {
+            window = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Only read
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot from entries added in strictly increasing key order. The file is replaced only once the new
+     * snapshot is complete and on disk.
+     */
+    static final class Writer {
+
+        private final File file;
+        private final File temporary;
+        private final long lastSegment;
+        private final FileOutputStream fileOut;
+        private final DataOutputStream out;
+        private final CRC32 crc = new CRC32();
+        private long nbEntries = 0;
+
+        /**
+         * @param file the file of the snapshot
+         * @param lastSegment the number of the last log segment whose records the snapshot holds
+         */
+        Writer(File file, long lastSegment) throws IOException {
+            this.file = file;
+            this.temporary = new File(file.getPath() + ".tmp");
+            this.lastSegment = lastSegment;
+            fileOut = new FileOutputStream(temporary);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+            // Room for the header
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * @param key the form of a key, after all the keys added so far
+         * @param epoch the epoch of the log when the value was written
+         * @param xid the id of the transaction that wrote the value
+         * @param value the form of the value
+         */
+        void add(byte[] key, int epoch, int xid, byte[] value) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+            header.putInt(key.length).putInt(value.length).putInt(epoch).putInt(xid);
+            out.write(header.array());
+            out.write(key);
+            out.write(value);
+            crc.update(header.array());
+            crc.update(key);
+            crc.update(value);
+            nbEntries++;
+        }
+
+        long getNbEntries() {
+            return nbEntries;
+        }
+
+        /**
+         * @return the snapshot, replacing the previous one
+         */
+        SnapshotFile finish() throws IOException {
+            try {
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(lastSegment).putLong(nbEntries).putInt((int) crc.getValue());
+                header.flip();
+                FileChannel channel = fileOut.getChannel();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+                out.close();
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new SnapshotFile(file);
+        }
+
+        /**
+         * Gives up the snapshot, deleting what was written.
+         */
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Deleted anyway
+            }
+            temporary.delete();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * An immutable file of entries sorted by key, written once by a {@link Writer} and then read by the
+ * {@link LsmStorageEngine}. The keys and values are in the form of {@link StorageCodec}.
+ *
+ * The file holds the entries, each the lengths of its key and value (-1 for a {@link #TOMBSTONE}) followed by them, then
+ * a sparse index of every {@link #INDEX_INTERVAL}th key with its position, then the {@link BloomFilter} of the keys, then
+ * a footer with the positions of the index and of the filter and the numbers of entries and of tombstones. The index
+ * and the filter are kept in memory, so that a lookup reads at most one block of INDEX_INTERVAL entries, and none for
+ * most of the keys the file does not hold.
+ */
+final class SortedSegment {
+
+    /**
+     * The value of a removed key, which hides the values of the older segments. No form of an object is empty.
+     */
+    static final byte[] TOMBSTONE = new byte[0];
+
+    /**
+     * The order of the keys: unsigned lexicographic.
+     */
+    static final Comparator<byte[]> ORDER = new Comparator<byte[]>() {
+
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    static final int INDEX_INTERVAL = 16;
+    private static final int MAGIC = 0x4C534D31;
+    private static final int FOOTER_SIZE = 8 + 8 + 8 + 8 + 4;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long nbEntries;
+    private final long nbTombstones;
+    private final long indexOffset;
+    private final byte[][] indexKeys;
+    private final long[] indexOffsets;
+    private final BloomFilter bloomFilter;
+
+    private SortedSegment(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            fileSize = channel.size();
+            if (fileSize < FOOTER_SIZE) {
+                throw new IOException("Truncated segment " + file);
+            }
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(read(fileSize - FOOTER_SIZE, FOOTER_SIZE)));
+            indexOffset = footer.readLong();
+            long bloomOffset = footer.readLong();
+            nbEntries = footer.readLong();
+            nbTombstones = footer.readLong();
+            if (footer.readInt() != MAGIC || indexOffset < 0 || bloomOffset < indexOffset || bloomOffset > fileSize - FOOTER_SIZE) {
+                throw new IOException("Corrupted segment " + file);
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(indexOffset, (int) (fileSize - FOOTER_SIZE - indexOffset))));
+            int indexSize = in.readInt();
+            indexKeys = new byte[indexSize][];
+            indexOffsets = new long[indexSize];
+            for (int i = 0; i < indexSize; i++) {
+                indexKeys[i] = new byte[in.readInt()];
+                in.readFully(indexKeys[i]);
+                indexOffsets[i] = in.readLong();
+            }
+            bloomFilter = BloomFilter.read(in);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file the file of the segment, written by a {@link Writer}
+     * @return the segment, open for reading
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    static SortedSegment open(File file) throws IOException {
+        return new SortedSegment(file);
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated segment " + file);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param key the form of a key
+     * @return false if the segment surely does not hold the key
+     */
+    boolean mightContain(byte[] key) {
+        return bloomFilter.mightContain(key);
+    }
+
+    /**
+     * @param key the form of a key, that {@link #mightContain(byte[])}
+     * @return the form of its value, {@link #TOMBSTONE} if it was removed, or null if the segment does not hold it
+     * @throws IOException if the segment cannot be read
+     */
+    byte[] get(byte[] key) throws IOException {
+        // The last indexed key not after the key starts its block
+        int low = 0;
+        int high = indexKeys.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ORDER.compare(indexKeys[mid], key) <= 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return null;
+        }
+
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : indexOffset;
+        ByteBuffer entries = ByteBuffer.wrap(read(indexOffsets[block], (int) (end - indexOffsets[block])));
+        while (entries.hasRemaining()) {
+            byte[] entryKey = new byte[entries.getInt()];
+            int valueLength = entries.getInt();
+            entries.get(entryKey);
+            int cmp = ORDER.compare(entryKey, key);
+            if (cmp > 0) {
+                return null;
+            }
+            if (cmp == 0) {
+                if (valueLength < 0) {
+                    return TOMBSTONE;
+                }
+                byte[] value = new byte[valueLength];
+                entries.get(value);
+                return value;
+            }
+            entries.position(entries.position() + Math.max(0, valueLength));
+        }
+        return null;
+    }
+
+    /**
+     * @return a cursor over the entries in key order, reading the file on its own
+     * @throws IOException if the file cannot be opened
+     */
+    Cursor cursor() throws IOException {
+        return new Cursor();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    long getNbEntries() {
+        return nbEntries;
+    }
+
+    long getNbTombstones() {
+        return nbTombstones;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Only read
+        }
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    void delete() {
+        close();
+        file.delete();
+    }
+
+    /**
+     * Iterates over the entries of a segment in key order.
+     */
+    final class Cursor {
+
+        private final DataInputStream in;
+        private long position = 0;
+        private byte[] key;
+        private byte[] value;
+
+        private Cursor() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        /**
+         * @return false if there is no entry left, otherwise moves to the next one
+         * @throws IOException if the file cannot be read
+         */
+        boolean next() throws IOException {
+            if (position >= indexOffset) {
+                return false;
+            }
+            key = new byte[in.readInt()];
+            int valueLength = in.readInt();
+            in.readFully(key);
+            if (valueLength < 0) {
+                value = TOMBSTONE;
+            } else {
+                value = new byte[valueLength];
+                in.readFully(value);
+            }
+            position += 8 + key.length + value.length;
+            return true;
+        }
+
+        byte[] key() {
+            return key;
+        }
+
+        byte[] value() {
+            return value;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Only read
+            }
+        }
+    }
+
+    /**
+     * Writes a segment from entries added in strictly increasing key order. The file appears only once complete.
+     */
+    static final class Writer {
+
+        private final File file;
+        private final File temporary;
+        private final DataOutputStream out;
+        private final BloomFilter bloomFilter;
+        private final ArrayList<byte[]> indexKeys = new ArrayList<byte[]>();
+        private long[] indexOffsets = new long[16];
+        private long position = 0;
+        private long nbEntries = 0;
+        private long nbTombstones = 0;
+
+        /**
+         * @param file the file of the segment
+         * @param expectedKeys about the number of entries, to size the Bloom filter
+         */
+        Writer(File file, long expectedKeys) throws IOException {
+            this.file = file;
+            this.temporary = new File(file.getPath() + ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16));
+            bloomFilter = new BloomFilter(expectedKeys);
+        }
+
+        /**
+         * @param key the form of a key, after all the keys added so far
+         * @param value the form of its value, or {@link #TOMBSTONE}
+         */
+        void add(byte[] key, byte[] value) throws IOException {
+            if (nbEntries % INDEX_INTERVAL == 0) {
+                if (indexKeys.size() == indexOffsets.length) {
+                    indexOffsets = Arrays.copyOf(indexOffsets, indexOffsets.length * 2);
+                }
+                indexOffsets[indexKeys.size()] = position;
+                indexKeys.add(key);
+            }
+            out.writeInt(key.length);
+            out.writeInt(value == TOMBSTONE ? -1 : value.length);
+            out.write(key);
+            out.write(value);
+            bloomFilter.add(key);
+            position += 8 + key.length + value.length;
+            nbEntries++;
+            if (value == TOMBSTONE) {
+                nbTombstones++;
+            }
+        }
+
+        long getNbEntries() {
+            return nbEntries;
+        }
+
+        /**
+         * @return the segment, open for reading
+         */
+        SortedSegment finish() throws IOException {
+            try {
+                long indexOffset = position;
+                long bloomOffset = indexOffset + 4;
+                out.writeInt(indexKeys.size());
+                for (int i = 0; i < indexKeys.size(); i++) {
+                    out.writeInt(indexKeys.get(i).length);
+                    out.write(indexKeys.get(i));
+                    out.writeLong(indexOffsets[i]);
+                    bloomOffset += 4 + indexKeys.get(i).length + 8;
+                }
+                bloomFilter.write(out);
+                out.writeLong(indexOffset);
+                out.writeLong(bloomOffset);
+                out.writeLong(nbEntries);
+                out.writeLong(nbTombstones);
+                out.writeInt(MAGIC);
+                out.close();
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new SortedSegment(file);
+        }
+
+        /**
+         * Gives up the segment, deleting what was written.
+         */
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Deleted anyway
+            }
+            temporary.delete();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The binary form of the keys and values of the stores kept outside of the heap or on disk.
+ *
+ * An object is a type byte followed by its content, whose length is known from where it is stored. The types the
+ * versioning units use ({@link ByteKey}, byte[], {@link PrefixedKey} of a String prefix, String, Integer) are written
+ * directly, the other objects with Java serialization. Equal keys of these types have equal forms, so the forms can be
+ * compared and hashed instead of the keys.
+ */
+final class StorageCodec {
+
+    private static final byte NULL = 0;
+    private static final byte BYTE_KEY = 1;
+    private static final byte BYTES = 2;
+    private static final byte OBJECT = 3;
+    private static final byte STRING = 4;
+    private static final byte INTEGER = 5;
+    private static final byte PREFIXED = 6;
+
+    private StorageCodec() {
+    }
+
+    /**
+     * @param object a key or a value
+     * @return its binary form
+     * @throws IllegalArgumentException if the object cannot be serialized
+     */
+    static byte[] encode(Serializable object) {
+        if (object == null) {
+            return new byte[] { NULL };
+        } else if (object instanceof ByteKey) {
+            return tagged(BYTE_KEY, ((ByteKey) object).getBytes());
+        } else if (object instanceof byte[]) {
+            return tagged(BYTES, (byte[]) object);
+        } else if (object instanceof String) {
+            return tagged(STRING, ((String) object).getBytes(StandardCharsets.UTF_8));
+        } else if (object instanceof Integer) {
+            return ByteBuffer.allocate(5).put(INTEGER).putInt((Integer) object).array();
+        } else if (object instanceof PrefixedKey && ((PrefixedKey) object).getPrefix() != null) {
+            PrefixedKey prefixedKey = (PrefixedKey) object;
+            byte[] prefix = prefixedKey.getPrefix().getBytes(StandardCharsets.UTF_8);
+            byte[] key = encode(prefixedKey.getKey());
+            return ByteBuffer.allocate(5 + prefix.length + key.length).put(PREFIXED).putInt(prefix.length).put(prefix).put(key).array();
+        }
+
+        try {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            serialized.write(OBJECT);
+            ObjectOutputStream oos = new ObjectOutputStream(serialized);
+            oos.writeObject(object);
+            oos.close();
+            return serialized.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot serialize " + object.getClass(), e);
+        }
+    }
+
+    private static byte[] tagged(byte type, byte[] content) {
+        byte[] bytes = new byte[content.length + 1];
+        bytes[0] = type;
+        System.arraycopy(content, 0, bytes, 1, content.length);
+        return bytes;
+    }
+
+    /**
+     * @param bytes the binary form of an object
+     * @return the object
+     * @throws IOException if the bytes are not the form of an object
+     */
+    static Serializable decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * @param buffer a buffer, read with absolute positions so that it can be shared
+     * @param offset where the binary form of an object starts
+     * @param length its length
+     * @return the object
+     * @throws IOException if the bytes are not the form of an object
+     */
+    static Serializable decode(ByteBuffer buffer, int offset, int length) throws IOException {
+        if (length < 1) {
+            throw new IOException("Empty object");
+        }
+        byte type = buffer.get(offset);
+        switch (type) {
+        case NULL:
+            return null;
+        case BYTE_KEY:
+            return new ByteKey(copy(buffer, offset + 1, length - 1));
+        case BYTES:
+            return copy(buffer, offset + 1, length - 1);
+        case STRING:
+            return new String(copy(buffer, offset + 1, length - 1), StandardCharsets.UTF_8);
+        case INTEGER:
+            return buffer.getInt(offset + 1);
+        case PREFIXED:
+            int prefixLength = buffer.getInt(offset + 1);
+            if (prefixLength < 0 || prefixLength > length - 5) {
+                throw new IOException("Invalid prefix length " + prefixLength);
+            }
+            String prefix = new String(copy(buffer, offset + 5, prefixLength), StandardCharsets.UTF_8);
+            return new PrefixedKey(prefix, decode(buffer, offset + 5 + prefixLength, length - 5 - prefixLength));
+        case OBJECT:
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(copy(buffer, offset + 1, length - 1)))) {
+                return (Serializable) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        default:
+            throw new IOException("Unknown object type " + type);
+        }
+    }
+
+    private static byte[] copy(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+}
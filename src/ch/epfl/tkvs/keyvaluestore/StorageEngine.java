@@ -0,0 +1,42 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.Serializable;
+
+
+/**
+ * Where the versioning units of a transaction manager keep the values written by the transactions, under keys of their
+ * own (e.g. a key prefixed with the version). The implementations MUST be safe for concurrent use, but need not make
+ * the operations on different keys atomic together.
+ *
+ * @see StorageEngines
+ */
+public interface StorageEngine {
+
+    /**
+     * @param key the key of a value
+     * @return the value, or null if there is none
+     */
+    Serializable get(Serializable key);
+
+    /**
+     * @param key the key of the value, replacing the previous value if any
+     * @param value the value, not null
+     * @throws StorageFullException if there is no room left for the value
+     */
+    void put(Serializable key, Serializable value);
+
+    /**
+     * @param key the key of the value to remove, if any
+     */
+    void remove(Serializable key);
+
+    /**
+     * Removes all the values.
+     */
+    void clear();
+
+    /**
+     * @return the number of values stored
+     */
+    long size();
+}
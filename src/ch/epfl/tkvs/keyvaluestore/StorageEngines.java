@@ -0,0 +1,64 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.File;
+import java.util.Properties;
+
+
+/**
+ * Creates the {@link StorageEngine} chosen by the "storage" property of ./config/tm.
+ */
+public class StorageEngines {
+
+    public static final String MEMORY = "memory";
+    public static final String OFF_HEAP = "offheap";
+    public static final String LSM = "lsm";
+
+    /**
+     * @param config the settings of the transaction manager
+     * @param instance the name of the engine among those sharing a machine, naming its files
+     * @return a new, empty engine
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    public static StorageEngine fromConfig(Properties config, String instance) {
+        return create(config.getProperty("storage", MEMORY).trim(), config, instance);
+    }
+
+    /**
+     * @param name the name of an engine
+     * @param config the settings of the engine, if any
+     * @return a new, empty engine
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    public static StorageEngine create(String name, Properties config) {
+        return create(name, config, "store");
+    }
+
+    /**
+     * @param name the name of an engine
+     * @param config the settings of the engine, if any
+     * @param instance the name of the engine among those sharing a machine, naming its files
+     * @return a new, empty engine
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    public static StorageEngine create(String name, Properties config, String instance) {
+        switch (name) {
+        case MEMORY:
+            return new KeyValueStore();
+        case OFF_HEAP:
+            long maxMB = Long.parseLong(config.getProperty("offHeapMaxMB", String.valueOf(OffHeapStorageEngine.DEFAULT_MAX_BYTES >> 20)).trim());
+            int nbSegments = Integer.parseInt(config.getProperty("offHeapSegments", String.valueOf(OffHeapStorageEngine.DEFAULT_NB_SEGMENTS)).trim());
+            return new OffHeapStorageEngine(maxMB << 20, nbSegments);
+        case LSM:
+            String directory = config.getProperty("lsmDirectory", "").trim();
+            if (directory.isEmpty()) {
+                directory = new File(System.getProperty("java.io.tmpdir"), "tkvs-lsm").getPath();
+            }
+            long memtableMB = Long.parseLong(config.getProperty("lsmMemtableMB", String.valueOf(LsmStorageEngine.DEFAULT_MEMTABLE_BYTES >> 20)).trim());
+            int compactionThreshold = Integer.parseInt(config.getProperty("lsmCompactionThreshold", String.valueOf(LsmStorageEngine.DEFAULT_COMPACTION_THRESHOLD)).trim());
+            int cacheEntries = Integer.parseInt(config.getProperty("lsmCacheEntries", String.valueOf(LsmStorageEngine.DEFAULT_CACHE_ENTRIES)).trim());
+            return new LsmStorageEngine(new File(directory, instance), memtableMB << 20, compactionThreshold, cacheEntries);
+        default:
+            throw new IllegalArgumentException("Unknown storage engine: " + name);
+        }
+    }
+}
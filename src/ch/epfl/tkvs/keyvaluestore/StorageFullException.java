@@ -0,0 +1,13 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+/**
+ * Thrown by a {@link StorageEngine} that has no room left for a value. The transaction writing the value aborts.
+ */
+public class StorageFullException extends IllegalStateException {
+
+    private static final long serialVersionUID = -4302716318064511723L;
+
+    public StorageFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,737 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+
+/**
+ * An append-only log of the writes of the committed transactions of a transaction manager (TM), replayed when the TM
+ * starts.
+ *
+ * A commit is appended to an in-memory batch, then waits until a background thread has written and forced the batch
+ * to disk. The commits of concurrent transactions thus share one fsync (group commit): those made during an fsync form
+ * the next batch. The batch is written as soon as it holds {@link #getBatchSize()} commits, and otherwise at most
+ * {@link #getFlushIntervalMs()} after its first commit, which lets more commits join it when they are not concurrent
+ * enough to fill it during an fsync.
+ *
+ * Each record is the epoch of the log, the id of the transaction and its keys and values, prefixed by its length and
+ * CRC32 so that a record torn by a crash ends the replay. The epoch grows at every start of the log, so that the records
+ * of a run come after those of the previous runs even though the ids of the transactions start over. The keys and values are written in the form of {@link StorageCodec}. After an I/O
+ * error, the log refuses all the commits: the TM can no longer make them durable.
+ *
+ * So that the log does not grow forever, {@link #snapshot()} closes the log file as a numbered segment, then merges the
+ * segments into a {@link SnapshotFile} holding the last committed value of each key, and deletes them. A replay reads
+ * the snapshot through memory mappings, then only the records appended since.
+ */
+public class WriteAheadLog {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 0;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    // Timestamp of the versions recovered at start-up, older than any transaction
+    public static final int RECOVERED_XID = -1;
+
+    /**
+     * Which of the committed values of a key a snapshot keeps.
+     */
+    public enum Precedence {
+        // The value of the last record, when the commits of a key are logged in their order
+        LOG_ORDER,
+        // The value of the record with the largest transaction id in the latest epoch, the last one among equals
+        LARGEST_XID
+    }
+
+    /**
+     * Receives the records of the log, in the order they were appended.
+     */
+    public interface Replayer {
+
+        void replay(int epoch, int xid, Serializable[] keys, Serializable[] values);
+    }
+
+    private final File file;
+    private final long flushIntervalMs;
+    private final int batchSize;
+
+    // Guards the batch and the counters below
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signaled when the batch gets its first commit, when it holds batchSize commits, and when the log closes
+    private final Condition batchChanged = lock.newCondition();
+    // Signaled when a batch is durable
+    private final Condition flushed = lock.newCondition();
+    private ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private int batchCommits = 0;
+    // Tickets of the last commit appended and of the last commit forced to disk
+    private long appended = 0;
+    private long durable = 0;
+    private IOException failure = null;
+    private boolean closed = false;
+
+    private FileChannel channel = null;
+    private Thread flusher = null;
+    // Epoch of the records appended, above those of the records on disk. Set by a replay, -1 until then
+    private volatile int epoch = -1;
+    // Number of the next segment, owned by the flusher once it runs
+    private long nextSegment = 1;
+    // Set to have the flusher close the log file as a segment, whose number it then gives in rotatedSegment
+    private boolean rotateRequested = false;
+    private long nbRotations = 0;
+    private long rotatedSegment = 0;
+
+    private volatile Precedence precedence = Precedence.LOG_ORDER;
+    // Held while a snapshot is taken
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    // Statistics, guarded by lock
+    private long nbFlushes = 0;
+    private long nbFlushedCommits = 0;
+    // Statistics, guarded by snapshotLock
+    private long nbSnapshots = 0;
+    private long snapshotEntries = 0;
+    private long snapshotMs = 0;
+
+    /**
+     * @param file the log file, created if it does not exist
+     * @param flushIntervalMs the longest time a commit waits for others to share its fsync
+     * @param batchSize the number of commits after which a batch is written without waiting
+     */
+    public WriteAheadLog(File file, long flushIntervalMs, int batchSize) {
+        this.file = file;
+        this.flushIntervalMs = flushIntervalMs;
+        this.batchSize = batchSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the file of the snapshot, which may not exist
+     */
+    public File getSnapshotFile() {
+        return new File(file.getPath() + ".snapshot");
+    }
+
+    /**
+     * @param precedence which of the committed values of a key the snapshots keep, LOG_ORDER by default
+     */
+    public void setPrecedence(Precedence precedence) {
+        this.precedence = precedence;
+    }
+
+    public Precedence getPrecedence() {
+        return precedence;
+    }
+
+    /**
+     * @return the number of batches forced to disk so far
+     */
+    public long getNbFlushes() {
+        lock.lock();
+        try {
+            return nbFlushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of commits made durable so far
+     */
+    public long getNbFlushedCommits() {
+        lock.lock();
+        try {
+            return nbFlushedCommits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the snapshot, as one record per key with the epoch and the id of the transaction that wrote its value, then
+     * the records of the log appended since, and cuts off the torn record a crash may have left at its end. The records
+     * appended after the next {@link #start()} get an epoch above all those read. MUST be called before start().
+     *
+     * @param replayer receives the records
+     * @return the number of records read, counting one per key of the snapshot
+     * @throws IOException if the log cannot be read
+     */
+    public int replay(final Replayer replayer) throws IOException {
+        int nbRecords = 0;
+        long lastSnapshotted = 0;
+        final int[] lastEpoch = { 0 };
+        if (getSnapshotFile().exists()) {
+            SnapshotFile snapshot = SnapshotFile.open(getSnapshotFile());
+            lastSnapshotted = snapshot.getLastSegment();
+            SnapshotFile.Cursor cursor = snapshot.cursor();
+            try {
+                while (cursor.next()) {
+                    lastEpoch[0] = Math.max(lastEpoch[0], cursor.epoch());
+                    replayer.replay(cursor.epoch(), cursor.xid(), new Serializable[] { cursor.decodeKey() }, new Serializable[] { cursor.decodeValue() });
+                    nbRecords++;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        RecordReader decoder = new RecordReader() {
+
+            @Override
+            public void read(int epoch, int xid, byte[][] keys, byte[][] values) throws IOException {
+                lastEpoch[0] = Math.max(lastEpoch[0], epoch);
+                Serializable[] decodedKeys = new Serializable[keys.length];
+                Serializable[] decodedValues = new Serializable[values.length];
+                for (int i = 0; i < keys.length; i++) {
+                    decodedKeys[i] = StorageCodec.decode(keys[i]);
+                    decodedValues[i] = StorageCodec.decode(values[i]);
+                }
+                replayer.replay(epoch, xid, decodedKeys, decodedValues);
+            }
+        };
+        for (long segment : listSegments()) {
+            if (segment <= lastSnapshotted) {
+                // Left by a crash after the snapshot holding it was written
+                segmentFile(segment).delete();
+            } else {
+                nbRecords += readRecords(segmentFile(segment), decoder, false);
+            }
+        }
+        if (file.exists()) {
+            nbRecords += readRecords(file, decoder, true);
+        }
+        epoch = lastEpoch[0] + 1;
+        return nbRecords;
+    }
+
+    // Receives the records of a log file, their keys and values in the form of StorageCodec
+    private interface RecordReader {
+
+        void read(int epoch, int xid, byte[][] keys, byte[][] values) throws IOException;
+    }
+
+    // Reads the records of a log file up to the first torn one, and cuts it off if asked
+    private static int readRecords(File logFile, RecordReader reader, boolean truncate) throws IOException {
+        byte[] content = Files.readAllBytes(logFile.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int nbRecords = 0;
+        int validLength = 0;
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() || checksumOf(content, buffer.position(), length) != checksum) {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, buffer.position(), length));
+            int epoch = in.readInt();
+            int xid = in.readInt();
+            int count = in.readInt();
+            byte[][] keys = new byte[count][];
+            byte[][] values = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                keys[i] = readBytes(in);
+                values[i] = readBytes(in);
+            }
+            reader.read(epoch, xid, keys, values);
+
+            buffer.position(buffer.position() + length);
+            validLength = buffer.position();
+            nbRecords++;
+        }
+
+        if (truncate && validLength < content.length) {
+            try (FileChannel truncated = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                truncated.truncate(validLength);
+                truncated.force(true);
+            }
+        }
+        return nbRecords;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(file.getPath() + "." + segment);
+    }
+
+    // Returns the numbers of the segments on disk, in increasing order
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<Long>();
+        File directory = file.getAbsoluteFile().getParentFile();
+        String[] names = directory == null ? null : directory.list();
+        String prefix = file.getName() + ".";
+        for (String name : names == null ? new String[0] : names) {
+            if (name.startsWith(prefix) && name.length() > prefix.length() && name.substring(prefix.length()).matches("[0-9]+")) {
+                segments.add(Long.parseLong(name.substring(prefix.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Replaces the log records appended so far with a snapshot of the committed state, merged with the previous
+     * snapshot, so that a replay only reads the records appended since. The commits go on meanwhile. The log MUST be
+     * started.
+     *
+     * @return the number of keys in the snapshot
+     * @throws IOException if the snapshot cannot be written, in which case the log is kept
+     */
+    public long snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            long lastSegment = rotate();
+
+            SnapshotFile previous = getSnapshotFile().exists() ? SnapshotFile.open(getSnapshotFile()) : null;
+            long lastSnapshotted = previous == null ? 0 : previous.getLastSegment();
+            final TreeMap<byte[], LoggedValue> tail = new TreeMap<byte[], LoggedValue>(SortedSegment.ORDER);
+            final Precedence rule = precedence;
+            List<Long> segments = new ArrayList<Long>();
+            for (long segment : listSegments()) {
+                if (segment > lastSnapshotted && segment <= lastSegment) {
+                    segments.add(segment);
+                    readRecords(segmentFile(segment), new RecordReader() {
+
+                        @Override
+                        public void read(int epoch, int xid, byte[][] keys, byte[][] values) {
+                            for (int i = 0; i < keys.length; i++) {
+                                LoggedValue logged = tail.get(keys[i]);
+                                if (logged == null || rule == Precedence.LOG_ORDER || !isBefore(epoch, xid, logged.epoch, logged.xid)) {
+                                    tail.put(keys[i], new LoggedValue(epoch, xid, values[i]));
+                                }
+                            }
+                        }
+                    }, false);
+                }
+            }
+
+            // Nothing was committed since the previous snapshot
+            long nbEntries = previous != null && tail.isEmpty() ? previous.getNbEntries() : merge(previous, tail, rule, lastSegment);
+            for (long segment : segments) {
+                segmentFile(segment).delete();
+            }
+
+            nbSnapshots++;
+            snapshotEntries = nbEntries;
+            snapshotMs = System.currentTimeMillis() - start;
+            return nbEntries;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // The value of a key in the records of the log
+    private static class LoggedValue {
+
+        final int epoch;
+        final int xid;
+        final byte[] value;
+
+        LoggedValue(int epoch, int xid, byte[] value) {
+            this.epoch = epoch;
+            this.xid = xid;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @return whether a transaction comes before another in the order of LARGEST_XID: by epoch, then by id
+     */
+    public static boolean isBefore(int epoch, int xid, int otherEpoch, int otherXid) {
+        return epoch < otherEpoch || (epoch == otherEpoch && xid < otherXid);
+    }
+
+    // Writes the entries of the previous snapshot updated with the records of the tail, both sorted by key
+    private long merge(SnapshotFile previous, TreeMap<byte[], LoggedValue> tail, Precedence rule, long lastSegment) throws IOException {
+        SnapshotFile.Writer writer = new SnapshotFile.Writer(getSnapshotFile(), lastSegment);
+        SnapshotFile.Cursor cursor = previous == null ? null : previous.cursor();
+        try {
+            Iterator<Map.Entry<byte[], LoggedValue>> logged = tail.entrySet().iterator();
+            Map.Entry<byte[], LoggedValue> next = logged.hasNext() ? logged.next() : null;
+            boolean hasOld = cursor != null && cursor.next();
+            byte[] oldKey = hasOld ? cursor.key() : null;
+            while (hasOld || next != null) {
+                int cmp = !hasOld ? 1 : next == null ? -1 : SortedSegment.ORDER.compare(oldKey, next.getKey());
+                if (cmp < 0) {
+                    writer.add(oldKey, cursor.epoch(), cursor.xid(), cursor.value());
+                } else if (cmp > 0) {
+                    writer.add(next.getKey(), next.getValue().epoch, next.getValue().xid, next.getValue().value);
+                    next = logged.hasNext() ? logged.next() : null;
+                    continue;
+                } else {
+                    LoggedValue newer = next.getValue();
+                    if (rule == Precedence.LOG_ORDER || !isBefore(newer.epoch, newer.xid, cursor.epoch(), cursor.xid())) {
+                        writer.add(oldKey, newer.epoch, newer.xid, newer.value);
+                    } else {
+                        writer.add(oldKey, cursor.epoch(), cursor.xid(), cursor.value());
+                    }
+                    next = logged.hasNext() ? logged.next() : null;
+                }
+                hasOld = cursor.next();
+                oldKey = hasOld ? cursor.key() : null;
+            }
+            writer.finish();
+            return writer.getNbEntries();
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    // Has the flusher close the log file as a segment, after the records appended so far, and returns its number
+    private long rotate() throws IOException {
+        synchronized (this) {
+            if (flusher == null) {
+                throw new IOException("The write-ahead log is not started");
+            }
+        }
+        lock.lock();
+        try {
+            long target = nbRotations + 1;
+            rotateRequested = true;
+            batchChanged.signal();
+            while (nbRotations < target && failure == null && !closed) {
+                flushed.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw new IOException("The write-ahead log failed", failure);
+            }
+            if (nbRotations < target) {
+                throw new IOException("The write-ahead log is closed");
+            }
+            return rotatedSegment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the log for appending and starts the thread writing the batches. Without a replay before, reads the log to
+     * find its epoch.
+     *
+     * @throws IOException if the log cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        if (epoch < 0) {
+            replay(new Replayer() {
+
+                @Override
+                public void replay(int epoch, int xid, Serializable[] keys, Serializable[] values) {
+                }
+            });
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        long lastSegment = 0;
+        List<Long> segments = listSegments();
+        if (!segments.isEmpty()) {
+            lastSegment = segments.get(segments.size() - 1);
+        }
+        if (getSnapshotFile().exists()) {
+            lastSegment = Math.max(lastSegment, SnapshotFile.open(getSnapshotFile()).getLastSegment());
+        }
+        nextSegment = lastSegment + 1;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lock.lock();
+        try {
+            closed = false;
+            rotateRequested = false;
+        } finally {
+            lock.unlock();
+        }
+
+        flusher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "wal-" + file.getName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends the writes of a transaction to the current batch. The order of the records is the order of the calls.
+     *
+     * @param xid the id of the transaction
+     * @param keys the keys it wrote
+     * @param values the values it wrote, in the same order
+     * @return the ticket to give to {@link #awaitDurable(long)}
+     * @throws IOException if the writes cannot be serialized, or if the log failed
+     */
+    public long append(int xid, Serializable[] keys, Serializable[] values) throws IOException {
+        byte[] record = encode(epoch, xid, keys, values);
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new IOException("The write-ahead log failed", failure);
+            }
+            if (closed) {
+                throw new IOException("The write-ahead log is closed");
+            }
+            batch.write(record);
+            batchCommits++;
+            if (batchCommits == 1 || batchCommits >= batchSize) {
+                batchChanged.signal();
+            }
+            return ++appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until a commit is on disk.
+     *
+     * @param ticket the ticket returned by {@link #append(int, Serializable[], Serializable[])}
+     * @throws IOException if the batch of the commit could not be written
+     */
+    public void awaitDurable(long ticket) throws IOException {
+        lock.lock();
+        try {
+            while (durable < ticket && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durable < ticket) {
+                throw new IOException("The write-ahead log failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the writes of a transaction and blocks until they are on disk.
+     *
+     * @see #append(int, Serializable[], Serializable[])
+     */
+    public void commit(int xid, Serializable[] keys, Serializable[] values) throws IOException {
+        awaitDurable(append(xid, keys, values));
+    }
+
+    /**
+     * Writes the pending commits and closes the log. It can be started again, after a replay.
+     */
+    public void close() {
+        Thread running;
+        synchronized (this) {
+            running = flusher;
+            flusher = null;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            batchChanged.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Nothing left to write
+                }
+                channel = null;
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteArrayOutputStream toWrite;
+            long ticket;
+            int nbCommits;
+            boolean rotate;
+            lock.lock();
+            try {
+                // Waits for a first commit, then gives the others the flush interval to join its batch
+                while (batchCommits == 0 && !closed && !rotateRequested) {
+                    batchChanged.awaitUninterruptibly();
+                }
+                if (batchCommits == 0 && !rotateRequested) {
+                    return;
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                long remaining;
+                while (batchCommits < batchSize && !closed && !rotateRequested && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        batchChanged.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                toWrite = batch;
+                nbCommits = batchCommits;
+                ticket = appended;
+                batch = new ByteArrayOutputStream(Math.max(32, toWrite.size()));
+                batchCommits = 0;
+                // The records appended from now on go to the next log file
+                rotate = rotateRequested;
+                rotateRequested = false;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            long segment = 0;
+            try {
+                if (nbCommits > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(toWrite.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                }
+                if (rotate) {
+                    segment = rotateFile();
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    if (nbCommits > 0) {
+                        durable = ticket;
+                        nbFlushes++;
+                        nbFlushedCommits += nbCommits;
+                    }
+                    if (rotate) {
+                        rotatedSegment = segment;
+                        nbRotations++;
+                    }
+                }
+                flushed.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Closes the log file as the next segment and opens a new one, from the flusher
+    private long rotateFile() throws IOException {
+        long segment = nextSegment++;
+        channel.close();
+        Files.move(file.toPath(), segmentFile(segment).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return segment;
+    }
+
+    private static byte[] encode(int epoch, int xid, Serializable[] keys, Serializable[] values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        // Room for the length and checksum
+        out.writeLong(0);
+        out.writeInt(epoch);
+        out.writeInt(xid);
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            writeObject(out, keys[i]);
+            writeObject(out, values[i]);
+        }
+        out.flush();
+
+        byte[] record = bytes.toByteArray();
+        int length = record.length - 8;
+        ByteBuffer header = ByteBuffer.wrap(record, 0, 8);
+        header.putInt(length);
+        header.putInt(checksumOf(record, 8, length));
+        return record;
+    }
+
+    private static int checksumOf(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeObject(DataOutputStream out, Serializable object) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = StorageCodec.encode(object);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException("Invalid length in the write-ahead log");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            String flushes = file + ": " + nbFlushedCommits + " commits in " + nbFlushes + " fsyncs" + (failure == null ? "" : ", failed: " + failure);
+            if (!snapshotLock.tryLock()) {
+                return flushes + ", taking a snapshot";
+            }
+            try {
+                return flushes + ", " + nbSnapshots + " snapshots" + (nbSnapshots == 0 ? "" : ", the last of " + snapshotEntries + " keys in " + snapshotMs + " ms");
+            } finally {
+                snapshotLock.unlock();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ch.epfl.tkvs.transactionmanager;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.epfl.tkvs.exceptions.OverloadedException;
+
+
+/**
+ * Bounds the number of requests waiting for or being executed by the workers of a {@link TransactionManager}.
+ *
+ * Requests are admitted according to their {@link Priority}: those terminating a transaction are always admitted, the
+ * other operations of running transactions up to the configured depth, and the beginnings of new transactions only up
+ * to half of it. Past these limits, a request is rejected at once and the client gets an {@link OverloadedException}.
+ * An overloaded TM thus stops taking new transactions while it still drains the ones it is running.
+ *
+ * Admitted requests are executed by priority, then in arrival order, when the workers use a priority queue (see
+ * {@link WorkerExecutors}).
+ */
+public class AdmissionController implements Executor {
+
+    public static enum Priority {
+        /** Commit, abort and 2PC of running transactions */
+        TERMINATION,
+        /** Reads, writes and any other requests of running transactions */
+        OPERATION,
+        /** Beginning of new transactions */
+        BEGIN
+    }
+
+    /**
+     * A request tagged with its priority, ordered by priority then arrival.
+     */
+    static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+        private final Priority priority;
+        private final long arrival;
+        private final Runnable task;
+
+        PrioritizedTask(Priority priority, long arrival, Runnable task) {
+            this.priority = priority;
+            this.arrival = arrival;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) {
+                return priority.compareTo(other.priority);
+            }
+            return Long.compare(arrival, other.arrival);
+        }
+    }
+
+    private final ExecutorService workers;
+    private final int depth;
+
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final AtomicLong arrivals = new AtomicLong(0);
+
+    // Metrics
+    private final AtomicLong admitted = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    /**
+     * @param workers the executor running the admitted requests
+     * @param depth the maximal number of requests of running transactions waiting or being executed
+     */
+    public AdmissionController(ExecutorService workers, int depth) {
+        this.workers = workers;
+        this.depth = depth;
+    }
+
+    /**
+     * Admits a request if the load allows it for its priority.
+     * @param priority the priority of the request
+     * @param request the request
+     * @return true if the request was admitted, false if it was rejected and will not be executed
+     */
+    public boolean submit(Priority priority, final Runnable request) {
+        int limit;
+        switch (priority) {
+        case TERMINATION:
+            limit = Integer.MAX_VALUE;
+            break;
+        case OPERATION:
+            limit = depth;
+            break;
+        default:
+            limit = depth / 2;
+        }
+
+        int current;
+        do {
+            current = pending.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!pending.compareAndSet(current, current + 1));
+        admitted.incrementAndGet();
+
+        workers.execute(new PrioritizedTask(priority, arrivals.getAndIncrement(), new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    request.run();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        }));
+        return true;
+    }
+
+    /**
+     * Executes a request with the highest priority, it is always admitted.
+     */
+    @Override
+    public void execute(Runnable request) {
+        submit(Priority.TERMINATION, request);
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "pending=" + pending + " depth=" + depth + " admitted=" + admitted + " rejected=" + rejected;
+    }
+}
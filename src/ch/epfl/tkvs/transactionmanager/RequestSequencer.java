@@ -0,0 +1,117 @@
+package ch.epfl.tkvs.transactionmanager;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+
+
+/**
+ * Executes the pipelined requests of a transaction in the order in which the client issued them.
+ *
+ * A client that does not wait for a response before sending the next request of the same transaction numbers its
+ * requests (see {@link JSONCommunication#KEY_FOR_SEQUENCE}). The requests may reach the workers in any order: a request
+ * that arrives early is parked, and the worker completing its predecessor executes it afterwards. No worker ever waits
+ * for a missing request.
+ */
+public class RequestSequencer {
+
+    private static class Sequence {
+
+        int next = 0;
+        long lastActivity = System.currentTimeMillis();
+        boolean finished = false;
+        final TreeMap<Integer, Runnable> parked = new TreeMap<>();
+    }
+
+    private final ConcurrentHashMap<Integer, Sequence> sequences = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    /**
+     * @param executor the executor running the requests left behind by {@link #expire(long)}
+     */
+    public RequestSequencer(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Executes a request now if all its predecessors were executed, or later in the thread executing its predecessor.
+     * @param xid the transaction of the request
+     * @param sequenceNumber the position of the request in its transaction, starting at 0
+     * @param last whether the transaction ends with this request (commit or abort)
+     * @param request the request
+     */
+    public void execute(int xid, int sequenceNumber, boolean last, Runnable request) {
+        Sequence sequence;
+        while (true) {
+            sequence = sequences.get(xid);
+            if (sequence == null) {
+                sequences.putIfAbsent(xid, new Sequence());
+                continue;
+            }
+            synchronized (sequence) {
+                // Removed at the end of its transaction or by expire() since the lookup: a request parked in it is lost
+                if (sequences.get(xid) != sequence) {
+                    continue;
+                }
+                sequence.lastActivity = System.currentTimeMillis();
+                if (last) {
+                    sequence.finished = true;
+                }
+                if (sequenceNumber != sequence.next) {
+                    sequence.parked.put(sequenceNumber, request);
+                    return;
+                }
+            }
+            break;
+        }
+
+        Runnable toRun = request;
+
+        while (toRun != null) {
+            toRun.run();
+
+            synchronized (sequence) {
+                sequence.next++;
+                sequence.lastActivity = System.currentTimeMillis();
+                toRun = sequence.parked.remove(sequence.next);
+                if (toRun == null && sequence.finished && sequence.parked.isEmpty()) {
+                    sequences.remove(xid, sequence);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the transactions that did not send any request for a while, e.g. because the client gave up after an
+     * abort. Their parked requests, if any, are executed anyway so that they get a response.
+     * @param idleMs the inactivity after which a transaction is forgotten
+     */
+    public void expire(long idleMs) {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<Integer, Sequence>> it = sequences.entrySet().iterator();
+        while (it.hasNext()) {
+            Sequence sequence = it.next().getValue();
+            synchronized (sequence) {
+                if (now - sequence.lastActivity < idleMs) {
+                    continue;
+                }
+                it.remove();
+                for (Runnable request : sequence.parked.values()) {
+                    executor.execute(request);
+                }
+                sequence.parked.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of transactions whose requests are being sequenced
+     */
+    public int size() {
+        return sequences.size();
+    }
+}
@@ -3,37 +3,51 @@ package ch.epfl.tkvs.transactionmanager;
 import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.util.ArrayList;
 
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.exceptions.InvalidRequestException;
+import ch.epfl.tkvs.exceptions.StaleRoutingException;
+import ch.epfl.tkvs.exceptions.TransactionIdLeaseException;
 import ch.epfl.tkvs.transactionmanager.algorithms.CCAlgorithm;
 import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
 import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.PingMessage;
+import ch.epfl.tkvs.transactionmanager.communication.network.Connection;
+import ch.epfl.tkvs.transactionmanager.communication.network.MultiplexedConnection;
 import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.CommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiWriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionBatchRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.TryCommitRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.BeginResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MultiReadResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionBatchResponse;
 import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter;
 import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.InvalidMessageException;
 import ch.epfl.tkvs.yarn.HDFSLogger;
 
 
-public class TMWorker extends Thread {
+public class TMWorker implements Runnable {
 
     private JSONObject jsonRequest;
-    private Socket sock;
+    private Connection connection;
     private CCAlgorithm concurrencyController;
     private HDFSLogger log;
 
-    public TMWorker(JSONObject input, Socket sock, CCAlgorithm algorithm, HDFSLogger log) {
+    public TMWorker(JSONObject input, Connection connection, CCAlgorithm algorithm, HDFSLogger log) {
         this.jsonRequest = input;
-        this.sock = sock;
+        this.connection = connection;
         this.log = log;
         this.concurrencyController = algorithm;
     }
@@ -52,60 +66,213 @@ public class TMWorker extends Thread {
             case BeginRequest.MESSAGE_TYPE:
                 request = JSON2MessageConverter.parseJSON(jsonRequest, BeginRequest.class);
                 BeginRequest beginRequest = (BeginRequest) request;
-                log.info(beginRequest.toString(), TMWorker.class);
-                response = concurrencyController.begin(beginRequest);
+                log.debug(beginRequest, TMWorker.class);
+                if (beginRequest.hasTransactionId()) {
+                    response = concurrencyController.begin(beginRequest);
+                } else {
+                    // The client chose this TM in its cached routing table, and the id is chosen here
+                    int routingVersion = TransactionManager.getRoutingVersion();
+                    if (beginRequest.getRoutingVersion() != routingVersion) {
+                        response = new BeginResponse(new StaleRoutingException(beginRequest.getRoutingVersion(), routingVersion), routingVersion);
+                        break;
+                    }
+                    try {
+                        int xid = TransactionManager.getTransactionIds().next();
+                        response = new BeginResponse(xid, concurrencyController.begin(new BeginRequest(xid)), routingVersion);
+                    } catch (IOException e) {
+                        response = new BeginResponse(new TransactionIdLeaseException(e), routingVersion);
+                    }
+                }
                 break;
             case ReadRequest.MESSAGE_TYPE:
                 request = JSON2MessageConverter.parseJSON(jsonRequest, ReadRequest.class);
                 ReadRequest readRequest = (ReadRequest) request;
-                log.info(readRequest.toString(), TMWorker.class);
+                log.debug(readRequest, TMWorker.class);
                 response = concurrencyController.read(readRequest);
                 break;
             case WriteRequest.MESSAGE_TYPE:
                 request = JSON2MessageConverter.parseJSON(jsonRequest, WriteRequest.class);
                 WriteRequest writeRequest = (WriteRequest) request;
-                log.info(writeRequest.toString(), TMWorker.class);
+                log.debug(writeRequest, TMWorker.class);
                 response = concurrencyController.write(writeRequest);
                 break;
+            case MultiReadRequest.MESSAGE_TYPE:
+                request = JSON2MessageConverter.parseJSON(jsonRequest, MultiReadRequest.class);
+                MultiReadRequest multiReadRequest = (MultiReadRequest) request;
+                log.debug(multiReadRequest, TMWorker.class);
+                response = concurrencyController.multiRead(multiReadRequest);
+                break;
+            case MultiWriteRequest.MESSAGE_TYPE:
+                request = JSON2MessageConverter.parseJSON(jsonRequest, MultiWriteRequest.class);
+                MultiWriteRequest multiWriteRequest = (MultiWriteRequest) request;
+                log.debug(multiWriteRequest, TMWorker.class);
+                response = concurrencyController.multiWrite(multiWriteRequest);
+                break;
             case CommitRequest.MESSAGE_TYPE:
                 request = JSON2MessageConverter.parseJSON(jsonRequest, CommitRequest.class);
                 CommitRequest commitRequest = (CommitRequest) request;
-                log.info(commitRequest.toString(), TMWorker.class);
+                log.debug(commitRequest, TMWorker.class);
                 response = concurrencyController.commit(commitRequest);
                 break;
             case PrepareRequest.MESSAGE_TYPE:
                 request = JSON2MessageConverter.parseJSON(jsonRequest, PrepareRequest.class);
                 PrepareRequest prepareRequest = (PrepareRequest) request;
-                log.info(prepareRequest.toString(), TMWorker.class);
+                log.debug(prepareRequest, TMWorker.class);
                 response = concurrencyController.prepare(prepareRequest);
                 break;
             case AbortRequest.MESSAGE_TYPE:
                 request = JSON2MessageConverter.parseJSON(jsonRequest, AbortRequest.class);
                 AbortRequest abortRequest = (AbortRequest) request;
-                log.info(abortRequest.toString(), TMWorker.class);
+                log.debug(abortRequest, TMWorker.class);
                 response = concurrencyController.abort(abortRequest);
                 break;
             case TryCommitRequest.MESSAGE_TYPE:
                 request = JSON2MessageConverter.parseJSON(jsonRequest, TryCommitRequest.class);
                 TryCommitRequest tr = (TryCommitRequest) request;
-                log.info(tr.toString(), TMWorker.class);
+                log.debug(tr, TMWorker.class);
                 response = concurrencyController.tryCommit(tr);
                 break;
+            case TransactionBatchRequest.MESSAGE_TYPE:
+                request = JSON2MessageConverter.parseJSON(jsonRequest, TransactionBatchRequest.class);
+                TransactionBatchRequest batchRequest = (TransactionBatchRequest) request;
+                log.debug(batchRequest, TMWorker.class);
+                response = executeBatch(batchRequest);
+                break;
+            case PingMessage.MESSAGE_TYPE:
+                request = new PingMessage();
+                response = new GenericSuccessResponse();
+                break;
             }
 
             // Send the response
             if (response != null) {
-                log.info(response + "<--" + request, TMWorker.class);
-                PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
-                out.println(toJSON(response).toString());
-                out.close();
+                if (log.isDebugEnabled()) {
+                    log.debug(HDFSLogger.concat(response, "<--", request), TMWorker.class);
+                }
             } else {
-                log.info("NULL response to " + jsonRequest.toString(), TMWorker.class);
+                log.info(HDFSLogger.concat("NULL response to ", jsonRequest), TMWorker.class);
             }
-
-            sock.close(); // Closing this socket will also close the socket's InputStream and OutputStream.
-        } catch (IOException | InvalidMessageException | JSONException e) {
+            respond(jsonRequest, connection, response);
+        } catch (IOException e) {
             log.error("Error", e, TMWorker.class);
+            // The response could not be sent on the connection opened for it
+            if (!MultiplexedConnection.hasRequestId(jsonRequest)) {
+                connection.close();
+            }
+        } catch (InvalidMessageException | JSONException e) {
+            log.error("Error", e, TMWorker.class);
+            respondFailure(jsonRequest, connection, new InvalidRequestException(e), log);
+        }
+    }
+
+    // Begins a transaction, executes its operations in order and commits it if requested, all in this worker
+    private TransactionBatchResponse executeBatch(TransactionBatchRequest batchRequest) {
+        int routingVersion = TransactionManager.getRoutingVersion();
+        if (batchRequest.getRoutingVersion() != routingVersion) {
+            return new TransactionBatchResponse(new StaleRoutingException(batchRequest.getRoutingVersion(), routingVersion), routingVersion);
+        }
+
+        int xid;
+        try {
+            xid = TransactionManager.getTransactionIds().next();
+        } catch (IOException e) {
+            return new TransactionBatchResponse(new TransactionIdLeaseException(e), routingVersion);
+        }
+
+        GenericSuccessResponse beginResponse = concurrencyController.begin(new BeginRequest(xid));
+        if (!beginResponse.getSuccess()) {
+            return new TransactionBatchResponse(xid, beginResponse.getExceptionMessage(), routingVersion);
+        }
+
+        // A failed operation aborts the transaction, as when the client sends the operations one by one
+        ArrayList<String> encodedValues = new ArrayList<String>();
+        for (Message operation : batchRequest.toRequests(xid)) {
+            if (operation instanceof ReadRequest) {
+                ReadResponse readResponse = concurrencyController.read((ReadRequest) operation);
+                if (!readResponse.getSuccess()) {
+                    return new TransactionBatchResponse(xid, readResponse.getExceptionMessage(), routingVersion);
+                }
+                encodedValues.add(readResponse.getEncodedValue());
+            } else {
+                GenericSuccessResponse writeResponse = concurrencyController.write((WriteRequest) operation);
+                if (!writeResponse.getSuccess()) {
+                    return new TransactionBatchResponse(xid, writeResponse.getExceptionMessage(), routingVersion);
+                }
+            }
+        }
+
+        if (batchRequest.shouldCommit()) {
+            GenericSuccessResponse commitResponse = concurrencyController.tryCommit(new TryCommitRequest(xid));
+            if (!commitResponse.getSuccess()) {
+                return new TransactionBatchResponse(xid, commitResponse.getExceptionMessage(), routingVersion);
+            }
+        }
+        return new TransactionBatchResponse(xid, encodedValues, routingVersion);
+    }
+
+    /**
+     * Sends the response to a request, and closes the connection if it was opened for this request only.
+     * @param jsonRequest the request
+     * @param connection the connection on which the request was received
+     * @param response the response, or null if there is none
+     * @throws IOException if the response cannot be sent
+     * @throws JSONException if the response cannot be encoded
+     */
+    public static void respond(JSONObject jsonRequest, Connection connection, Message response) throws IOException, JSONException {
+        if (response != null) {
+            JSONObject jsonResponse = toJSON(response);
+            MultiplexedConnection.tagResponse(jsonRequest, jsonResponse);
+            connection.send(jsonResponse);
+        } else if (MultiplexedConnection.hasRequestId(jsonRequest)) {
+            // Acknowledge anyway so that the sender does not keep waiting for this request
+            JSONObject ack = new JSONObject();
+            MultiplexedConnection.tagResponse(jsonRequest, ack);
+            connection.send(ack);
+        }
+
+        // Requests without id are sent on a socket of their own
+        if (!MultiplexedConnection.hasRequestId(jsonRequest)) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Sends the unsuccessful response to a request that could not be executed. If it cannot be sent, the connection is
+     * closed only if it was opened for this request: a shared connection carries other requests, which would fail.
+     * @param jsonRequest the request
+     * @param connection the connection on which the request was received
+     * @param exception the reason
+     * @param log where to report a response that cannot be sent
+     */
+    public static void respondFailure(JSONObject jsonRequest, Connection connection, AbortException exception, HDFSLogger log) {
+        try {
+            respond(jsonRequest, connection, failureResponse(jsonRequest.optString(JSONCommunication.KEY_FOR_MESSAGE_TYPE), exception));
+        } catch (IOException | JSONException e) {
+            log.error("Could not answer request", e, TMWorker.class);
+            if (!MultiplexedConnection.hasRequestId(jsonRequest)) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Builds the unsuccessful response to a request that could not be executed.
+     * @param requestType the type of the request
+     * @param exception the reason
+     * @return a response of the type the sender expects
+     */
+    public static Message failureResponse(String requestType, AbortException exception) {
+        switch (requestType) {
+        case BeginRequest.MESSAGE_TYPE:
+            return new BeginResponse(exception, TransactionManager.getRoutingVersion());
+        case ReadRequest.MESSAGE_TYPE:
+            return new ReadResponse(exception);
+        case MultiReadRequest.MESSAGE_TYPE:
+            return new MultiReadResponse(exception);
+        case TransactionBatchRequest.MESSAGE_TYPE:
+            return new TransactionBatchResponse(exception, TransactionManager.getRoutingVersion());
+        default:
+            return new GenericSuccessResponse(exception);
         }
     }
 }
@@ -0,0 +1,83 @@
+package ch.epfl.tkvs.transactionmanager;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ch.epfl.tkvs.transactionmanager.algorithms.MVTO;
+import ch.epfl.tkvs.yarn.appmaster.AppMaster;
+
+
+/**
+ * Hands out the ids of the transactions beginning at a {@link TransactionManager}, from blocks of consecutive ids leased
+ * from the {@link AppMaster}. A begin only goes to the AppMaster once per block.
+ *
+ * The blocks are leased in increasing order and never overlap, so the ids stay unique and increase at every TM, which is
+ * what {@link MVTO} needs from its timestamps. Ids of different TMs only interleave by blocks: a TM keeping an old block
+ * would give old timestamps to new transactions, and keep the minimum alive transaction behind, so the unused end of a
+ * block is given back at every checkpoint with {@link #releaseUnused()}.
+ */
+public class TransactionIdAllocator {
+
+    /**
+     * Where the blocks of ids come from.
+     */
+    public interface LeaseSource {
+
+        /**
+         * @param count the number of ids to lease
+         * @return the first id of a block of count consecutive ids
+         * @throws IOException if the block cannot be leased
+         */
+        int lease(int count) throws IOException;
+    }
+
+    private final LeaseSource source;
+    private final int blockSize;
+
+    // Not a monitor, a virtual thread leasing a block must not pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // The ids from next (included) to end (excluded) are leased and not handed out yet
+    private int next = 0;
+    private int end = 0;
+
+    /**
+     * @param source the source of the blocks
+     * @param blockSize the number of ids leased at once
+     */
+    public TransactionIdAllocator(LeaseSource source, int blockSize) {
+        this.source = source;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return a fresh transaction id
+     * @throws IOException if a new block was needed but could not be leased
+     */
+    public int next() throws IOException {
+        lock.lock();
+        try {
+            if (next == end) {
+                next = source.lease(blockSize);
+                end = next + blockSize;
+            }
+            return next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives up the ids of the current block that were not handed out yet. The next id will come from a new block.
+     * @return the range of released ids, first included and last excluded, empty if there were none
+     */
+    public int[] releaseUnused() {
+        lock.lock();
+        try {
+            int[] released = new int[] { next, end };
+            next = end;
+            return released;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -3,13 +3,16 @@ package ch.epfl.tkvs.transactionmanager;
 import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.parseJSON;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -17,6 +20,13 @@ import org.apache.hadoop.net.NetUtils;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 
+import ch.epfl.tkvs.exceptions.InvalidRequestException;
+import ch.epfl.tkvs.exceptions.OverloadedException;
+import ch.epfl.tkvs.keyvaluestore.StorageEngine;
+import ch.epfl.tkvs.keyvaluestore.StorageEngines;
+import ch.epfl.tkvs.keyvaluestore.WriteAheadLog;
+import ch.epfl.tkvs.transactionmanager.AdmissionController.Priority;
+import ch.epfl.tkvs.transactionmanager.TransactionIdAllocator.LeaseSource;
 import ch.epfl.tkvs.transactionmanager.algorithms.CCAlgorithm;
 import ch.epfl.tkvs.transactionmanager.algorithms.MVCC2PL;
 import ch.epfl.tkvs.transactionmanager.algorithms.MVTO;
@@ -25,8 +35,26 @@ import ch.epfl.tkvs.transactionmanager.algorithms.Simple2PL;
 import ch.epfl.tkvs.transactionmanager.communication.ExitMessage;
 import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
 import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.PingMessage;
 import ch.epfl.tkvs.transactionmanager.communication.TMInitMessage;
+import ch.epfl.tkvs.transactionmanager.communication.TransactionTerminateMessage;
+import ch.epfl.tkvs.transactionmanager.communication.network.Connection;
+import ch.epfl.tkvs.transactionmanager.communication.network.ConnectionPool;
+import ch.epfl.tkvs.transactionmanager.communication.network.RequestServer;
+import ch.epfl.tkvs.transactionmanager.communication.network.RequestServer.RequestHandler;
+import ch.epfl.tkvs.transactionmanager.communication.network.WireProtocol;
+import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.CommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionBatchRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionIdLeaseRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TryCommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionIdLeaseResponse;
+import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.InvalidMessageException;
 import ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter;
+import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVCC2PL;
+import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVTO;
 import ch.epfl.tkvs.yarn.HDFSLogger;
 import ch.epfl.tkvs.yarn.RemoteTransactionManager;
 import ch.epfl.tkvs.yarn.RoutingTable;
@@ -40,7 +68,10 @@ import ch.epfl.tkvs.yarn.appmaster.AppMaster;
  * hash that maps to it. All TMs are running the same instance of a concurrency control algorithm selected by the user
  * (./config/algorithm) before launching the system on the server. By default, they all will run MVTO.
  * 
- * A TM is basically a server waiting for user request and feeding a concurrency controller with those requests.
+ * A TM is basically a server waiting for user request and feeding a concurrency controller with those requests. The
+ * connections are served by a single event loop ({@link RequestServer}) and the requests executed by a bounded pool of
+ * workers, whose size can be set in ./config/tm. Under overload, the {@link AdmissionController} rejects new
+ * transactions first so that the running ones can finish.
  * Cooperation between TransactionManager is handled by another entity, the {@link RemoteHandler}.
  * 
  * Terminology: given a transaction that is handled by a TransactionManager T1, i.e. its locality hash maps to it, but
@@ -59,10 +90,32 @@ public class TransactionManager {
     private static RoutingTable routing;
     private static boolean isAMReady = false;
 
+    private static final int DEFAULT_NB_WORKERS = 256;
+    private static final int DEFAULT_NB_DECODERS = 2;
+    private static final int DEFAULT_QUEUE_DEPTH = 10000;
+    private static final long SEQUENCE_EXPIRY_MS = 60000;
+    private RequestServer requestServer;
+    private AdmissionController admission;
+    private RequestSequencer sequencer;
+    private StorageEngine storage;
+    // Null unless walDirectory is set in ./config/tm
+    private WriteAheadLog writeAheadLog = null;
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_S = 300;
+    private long snapshotIntervalS = DEFAULT_SNAPSHOT_INTERVAL_S;
+    private static final long DEFAULT_GC_INTERVAL_MS = 100;
+
+    private static final int DEFAULT_TRANSACTION_ID_BLOCK = 100;
+    // Ids of the transactions beginning at this TM
+    private static TransactionIdAllocator transactionIds;
+
+    // Connections to the other TMs and to the app master, shared by all the workers
+    private static ConnectionPool tmConnections = new ConnectionPool();
+
     private final static HDFSLogger log = new HDFSLogger(TransactionManager.class);
 
     public static void main(String[] args) throws Exception {
         Utils.initLogLevel();
+        log.startFlushing(args[0]);
         log.info("Initializing..." + args[0], TransactionManager.class);
         try {
             String amIp = System.getenv("AM_IP");
@@ -89,20 +142,43 @@ public class TransactionManager {
 
     public void run() throws Exception {
         log.info("Starting server at " + tmIp + ":" + tmPort, TransactionManager.class);
-        ServerSocket server = new ServerSocket(tmPort);
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(tmPort));
 
         // Wait for the TM initialization message
-        Socket sock = server.accept();
+        Socket sock = serverChannel.accept().socket();
         BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
         String input = in.readLine();
         TMInitMessage initMessage = (TMInitMessage) parseJSON(new JSONObject(input), TMInitMessage.class);
         routing = initMessage.getRoutingTable();
+        sock.close();
+
+        Properties config = Utils.readTMConfig();
+        HDFSLogger.setLevel(HDFSLogger.Level.valueOf(config.getProperty("logLevel", HDFSLogger.Level.INFO.name()).trim().toUpperCase()));
+
+        // The versioning units store their values in the configured engine, and replay the write-ahead log into it when
+        // the algorithm initializes them
+        storage = StorageEngines.fromConfig(config, "tm" + getLocalityHash());
+        VersioningUnitMVTO.getInstance().setStorageEngine(storage);
+        VersioningUnitMVCC2PL.getInstance().setStorageEngine(storage);
+        log.info("Storage engine: " + storage.getClass().getSimpleName(), TransactionManager.class);
+
+        String walDirectory = config.getProperty("walDirectory", "").trim();
+        if (!walDirectory.isEmpty()) {
+            long flushIntervalMs = Long.parseLong(config.getProperty("walFlushIntervalMs", String.valueOf(WriteAheadLog.DEFAULT_FLUSH_INTERVAL_MS)));
+            int batchSize = Integer.parseInt(config.getProperty("walBatchSize", String.valueOf(WriteAheadLog.DEFAULT_BATCH_SIZE)));
+            writeAheadLog = new WriteAheadLog(new File(walDirectory, "tm" + getLocalityHash() + ".wal"), flushIntervalMs, batchSize);
+            VersioningUnitMVTO.getInstance().setWriteAheadLog(writeAheadLog);
+            VersioningUnitMVCC2PL.getInstance().setWriteAheadLog(writeAheadLog);
+            snapshotIntervalS = Long.parseLong(config.getProperty("walSnapshotIntervalS", String.valueOf(DEFAULT_SNAPSHOT_INTERVAL_S)).trim());
+            log.info("Write-ahead log: " + writeAheadLog.getFile() + ", flushed every " + flushIntervalMs + " ms or " + batchSize + " commits, snapshot every " + snapshotIntervalS + " s", TransactionManager.class);
+        }
 
         RemoteHandler remoteHandler = new RemoteHandler();
 
         // Select which concurrency algorithm to use
         String ccConfig = initMessage.getConcurrencyControlConfig();
-        CCAlgorithm concurrencyController = null;
+        final CCAlgorithm concurrencyController;
         if (ccConfig.equals("simple_2pl")) {
             concurrencyController = new Simple2PL(remoteHandler, log);
         } else if (ccConfig.equals("mvcc2pl")) {
@@ -113,40 +189,171 @@ public class TransactionManager {
 
         log.info("Algorithm selected: " + concurrencyController.getClass(), TransactionManager.class);
 
+        // Between the checkpoints, which raise its watermark, the versions of MVTO are pruned a few keys at a time
+        long gcIntervalMs = Long.parseLong(config.getProperty("mvtoGcIntervalMs", String.valueOf(DEFAULT_GC_INTERVAL_MS)).trim());
+        VersioningUnitMVTO.getInstance().setGcKeysPerPass(Integer.parseInt(config.getProperty("mvtoGcKeysPerPass", String.valueOf(VersioningUnitMVTO.DEFAULT_GC_KEYS_PER_PASS)).trim()));
+
         remoteHandler.setAlgo(concurrencyController, log);
 
-        // Start the thread that will call checkpoint on the concurrency controller
-        startCheckpointThread(server, concurrencyController);
+        // The requests are decoded and executed by a bounded pool, the event loop only does the I/O
+        int nbWorkers = Integer.parseInt(config.getProperty("workers", String.valueOf(DEFAULT_NB_WORKERS)));
+        String executorMode = config.getProperty("executor", WorkerExecutors.PLATFORM);
+        if (executorMode.equals(WorkerExecutors.VIRTUAL) && !WorkerExecutors.isVirtualAvailable()) {
+            log.warn("Virtual threads are not available on this JVM, using " + nbWorkers + " platform threads", TransactionManager.class);
+        }
+        log.info("Request workers: " + executorMode + " (" + nbWorkers + " platform threads)", TransactionManager.class);
+        final ExecutorService workers = WorkerExecutors.create(executorMode, nbWorkers);
+        int queueDepth = Integer.parseInt(config.getProperty("queueDepth", String.valueOf(DEFAULT_QUEUE_DEPTH)));
+        log.info("Admission queue depth: " + queueDepth, TransactionManager.class);
+        admission = new AdmissionController(workers, queueDepth);
+        sequencer = new RequestSequencer(admission);
+
+        // Protocol of the connections this TM opens, the server answers every connection in the protocol of its client
+        tmConnections.setProtocol(WireProtocol.fromName(config.getProperty("protocol", WireProtocol.JSON.name())));
+        log.info("Wire protocol: " + tmConnections.getProtocol(), TransactionManager.class);
 
-        ExecutorService threadPool = Executors.newCachedThreadPool();
+        int transactionIdBlock = Integer.parseInt(config.getProperty("transactionIdBlock", String.valueOf(DEFAULT_TRANSACTION_ID_BLOCK)));
+        transactionIds = new TransactionIdAllocator(new LeaseSource() {
 
-        while (!server.isClosed()) {
-            try {
-                // log.info("Waiting for message...", TransactionManager.class);
-                sock = server.accept();
-                // log.info("Processing message...", TransactionManager.class);
+            @Override
+            public int lease(int count) throws IOException {
+                JSONObject json = sendToAppMaster(new TransactionIdLeaseRequest(count), true);
+                try {
+                    return ((TransactionIdLeaseResponse) parseJSON(json, TransactionIdLeaseResponse.class)).getFirstId();
+                } catch (InvalidMessageException e) {
+                    throw new IOException(e);
+                }
+            }
+        }, transactionIdBlock);
 
-                in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-                input = in.readLine();
+        // The event loop hands the frames to a few decoders, which classify them and feed the admission controller
+        int nbDecoders = Integer.parseInt(config.getProperty("decoders", String.valueOf(DEFAULT_NB_DECODERS)));
+        final ExecutorService decoders = Executors.newFixedThreadPool(nbDecoders);
 
-                JSONObject json = new JSONObject(input);
-                String messageType = json.getString(JSONCommunication.KEY_FOR_MESSAGE_TYPE);
+        requestServer = new RequestServer(serverChannel, new RequestHandler() {
 
-                if (messageType.equals(ExitMessage.MESSAGE_TYPE)) {
-                    log.info("Stopping Server", TransactionManager.class);
-                    sock.close();
-                    server.close();
-                    threadPool.shutdown();
-                } else {
-                    threadPool.execute(new TMWorker(new JSONObject(input), sock, concurrencyController, log));
+            @Override
+            public boolean handle(byte[] request, Connection connection) {
+                JSONObject json;
+                try {
+                    json = connection.getProtocol().decode(request);
+                } catch (JSONException e) {
+                    // Its request id, if any, is unknown: closing would fail the other requests of a shared connection
+                    log.error("Invalid request", e, TransactionManager.class);
+                    return false;
                 }
-
-            } catch (IOException e) {
-                log.error("sock.accept ", e, TransactionManager.class);
+                try {
+                    String messageType = json.getString(JSONCommunication.KEY_FOR_MESSAGE_TYPE);
+
+                    if (messageType.equals(ExitMessage.MESSAGE_TYPE)) {
+                        log.info("Stopping Server", TransactionManager.class);
+                        connection.close();
+                        requestServer.stop();
+                        admission.shutdown();
+                        decoders.shutdown();
+                    } else {
+                        // Answered by a TMWorker, or by the rejection
+                        admit(json, messageType, connection, concurrencyController);
+                        return true;
+                    }
+                } catch (JSONException e) {
+                    log.error("Invalid request", e, TransactionManager.class);
+                    TMWorker.respondFailure(json, connection, new InvalidRequestException(e), log);
+                }
+                return false;
             }
+        }, decoders);
+
+        // Start the thread that will call checkpoint on the concurrency controller
+        startCheckpointThread(requestServer, concurrencyController);
+        if (writeAheadLog != null && snapshotIntervalS > 0) {
+            startSnapshotThread(requestServer);
+        }
+        if (concurrencyController instanceof MVTO && gcIntervalMs > 0) {
+            startGarbageCollectorThread(requestServer, gcIntervalMs);
+        }
+
+        requestServer.run();
+
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
         }
         log.info("Finalizing", TransactionManager.class);
-        server.close();
+    }
+
+    // Submits a request to the admission controller, and answers it right away if it is rejected
+    private void admit(final JSONObject json, final String messageType, final Connection connection, final CCAlgorithm cc) throws JSONException {
+        final boolean sequenced = json.has(JSONCommunication.KEY_FOR_SEQUENCE);
+        final int xid = json.optInt(JSONCommunication.KEY_FOR_TRANSACTION_ID, -1);
+        final int sequenceNumber = json.optInt(JSONCommunication.KEY_FOR_SEQUENCE, -1);
+        final boolean last = messageType.equals(TryCommitRequest.MESSAGE_TYPE) || messageType.equals(AbortRequest.MESSAGE_TYPE);
+        final TMWorker worker = new TMWorker(json, connection, cc, log);
+
+        Runnable task = worker;
+        if (sequenced) {
+            // Pipelined request, executed after the previous requests of its transaction
+            task = new Runnable() {
+
+                @Override
+                public void run() {
+                    sequencer.execute(xid, sequenceNumber, last, worker);
+                }
+            };
+        }
+        if (admission.submit(priorityOf(json, messageType), task)) {
+            return;
+        }
+
+        log.warn("Overloaded, rejecting " + messageType + " of transaction " + xid, TransactionManager.class);
+        final boolean isBegin = messageType.equals(BeginRequest.MESSAGE_TYPE) || messageType.equals(TransactionBatchRequest.MESSAGE_TYPE);
+        final Runnable reject = new Runnable() {
+
+            @Override
+            public void run() {
+                // A rejected operation dooms its transaction, release what it holds right away
+                if (!isBegin && xid >= 0) {
+                    cc.abort(new AbortRequest(xid));
+                }
+                TMWorker.respondFailure(json, connection, new OverloadedException(), log);
+            }
+        };
+
+        if (sequenced) {
+            // The rejection takes the place of the request, after its predecessors. The requests following it still
+            // run, and fail against the aborted transaction
+            admission.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    sequencer.execute(xid, sequenceNumber, last, reject);
+                }
+            });
+        } else if (isBegin) {
+            // Nothing to release, answer from the decoder
+            reject.run();
+        } else {
+            admission.execute(reject);
+        }
+    }
+
+    // Requests ending transactions first, then those of running transactions, then new transactions
+    private static Priority priorityOf(JSONObject json, String messageType) {
+        switch (messageType) {
+        case TryCommitRequest.MESSAGE_TYPE:
+        case CommitRequest.MESSAGE_TYPE:
+        case AbortRequest.MESSAGE_TYPE:
+        case PrepareRequest.MESSAGE_TYPE:
+        case TransactionTerminateMessage.MESSAGE_TYPE:
+        case PingMessage.MESSAGE_TYPE:
+            return Priority.TERMINATION;
+        case BeginRequest.MESSAGE_TYPE:
+            // Secondary begins belong to transactions already running on their primary TM
+            return json.optBoolean(JSONCommunication.KEY_FOR_PRIMARY_MSG, true) ? Priority.BEGIN : Priority.OPERATION;
+        case TransactionBatchRequest.MESSAGE_TYPE:
+            return Priority.BEGIN;
+        default:
+            return Priority.OPERATION;
+        }
     }
 
     /**
@@ -158,22 +365,21 @@ public class TransactionManager {
      */
     public static JSONObject sendToAppMaster(Message message, boolean shouldWait) throws IOException {
 
-        Socket sock = new Socket(routing.getAMIp(), routing.getAMPort());
-        BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-        PrintWriter out = new PrintWriter(sock.getOutputStream());
-
         while (!isAMReady) {
+            Socket sock = new Socket(routing.getAMIp(), routing.getAMPort());
+            BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
+            PrintWriter out = new PrintWriter(sock.getOutputStream());
             out.println(":ping");
             out.flush();
 
             String response = in.readLine();
+            sock.close();
             if (response != null && response.equals("ok")) {
                 isAMReady = true;
             } else {
                 try {
                     Thread.sleep(5000);
                 } catch (InterruptedException e) {
-                    sock.close();
                     throw new IOException(e);
                 }
             }
@@ -184,29 +390,11 @@ public class TransactionManager {
             json = Message2JSONConverter.toJSON(message);
         } catch (JSONException e) {
             log.error("Error", e, TransactionManager.class);
-            sock.close();
             throw new IOException("Error while converting the message: " + e);
         }
 
-        out.println(json.toString());
-        out.flush();
-
-        JSONObject res = null;
-        if (shouldWait) {
-            String input = in.readLine();
-            try {
-                res = new JSONObject(input);
-            } catch (JSONException e) {
-                sock.close();
-                throw new IOException("Error while building response: " + e);
-            }
-        }
-
-        in.close();
-        out.close();
-        sock.close();
-
-        return res;
+        // Sent on the persistent connection to the app master, shared with the other TMs' connections
+        return tmConnections.send(routing.getAMIp(), routing.getAMPort(), json, shouldWait);
     }
 
     /**
@@ -218,8 +406,24 @@ public class TransactionManager {
      * @throws IOException in case of network failure or invalid message
      */
     public static JSONObject sendToTransactionManager(int localityHash, Message message, boolean shouldWait) throws IOException {
-        log.info("Sending " + message + "to " + routing.findTM(localityHash), RemoteHandler.class);
-        return routing.findTM(localityHash).sendMessage(message, shouldWait);
+        RemoteTransactionManager tm = routing.findTM(localityHash);
+        log.debug(HDFSLogger.concat("Sending ", message, " to ", tm), RemoteHandler.class);
+
+        JSONObject json = null;
+        try {
+            json = Message2JSONConverter.toJSON(message);
+        } catch (JSONException e) {
+            throw new IOException("Error while converting the message: " + e);
+        }
+        return tmConnections.send(tm.getIp(), tm.getPort(), json, shouldWait);
+    }
+
+    /**
+     * Returns the allocator of the ids of the transactions beginning at this TM.
+     * @return the allocator
+     */
+    public static TransactionIdAllocator getTransactionIds() {
+        return transactionIds;
     }
 
     /**
@@ -277,6 +481,14 @@ public class TransactionManager {
         return -1;
     }
 
+    /**
+     * Returns the version of the routing table this TM was started with.
+     * @return the version
+     */
+    public static int getRoutingVersion() {
+        return routing.getVersion();
+    }
+
     /**
      * Returns the number of transaction managers.
      * @return the number of transaction managers
@@ -290,12 +502,12 @@ public class TransactionManager {
     }
 
     // Start the thread responsible for calling the checkpoint methods of the concurrency control algorithms
-    private void startCheckpointThread(final ServerSocket mainServer, final CCAlgorithm ccAlg) {
+    private void startCheckpointThread(final RequestServer mainServer, final CCAlgorithm ccAlg) {
         new Thread(new Runnable() {
 
             @Override
             public void run() {
-                while (!mainServer.isClosed()) {
+                while (mainServer.isRunning()) {
 
                     try {
                         Thread.sleep(CHECKPOINT_PERIOD_MS);
@@ -305,8 +517,69 @@ public class TransactionManager {
                     }
 
                     ccAlg.checkpoint();
+
+                    sequencer.expire(SEQUENCE_EXPIRY_MS);
+                    tmConnections.checkHealth();
+                    log.info("Connections to other TMs: " + tmConnections, TransactionManager.class);
+                    log.info("Admission: " + admission, TransactionManager.class);
+                    log.info("Storage: " + storage, TransactionManager.class);
+                    if (writeAheadLog != null) {
+                        log.info("Write-ahead log: " + writeAheadLog, TransactionManager.class);
+                    }
                 }
+                tmConnections.close();
             }
         }).start();
     }
+
+    // Start the thread replacing the write-ahead log with a snapshot, so that a restart replays only the commits since
+    private void startSnapshotThread(final RequestServer mainServer) {
+        Thread snapshotter = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (mainServer.isRunning()) {
+                    try {
+                        Thread.sleep(snapshotIntervalS * 1000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (!mainServer.isRunning()) {
+                        return;
+                    }
+
+                    try {
+                        long nbKeys = writeAheadLog.snapshot();
+                        log.info("Snapshot of " + nbKeys + " keys written to " + writeAheadLog.getSnapshotFile(), TransactionManager.class);
+                    } catch (IOException e) {
+                        // The log is kept, a later snapshot may succeed
+                        log.error("Cannot write the snapshot", e, TransactionManager.class);
+                    }
+                }
+            }
+        }, "snapshot");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+    }
+
+    // Start the thread pruning the versions of MVTO in small passes, so that no pass holds up the transactions
+    private void startGarbageCollectorThread(final RequestServer mainServer, final long intervalMs) {
+        Thread collector = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                VersioningUnitMVTO versioningUnit = VersioningUnitMVTO.getInstance();
+                while (mainServer.isRunning()) {
+                    try {
+                        Thread.sleep(intervalMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    versioningUnit.collectGarbage();
+                }
+            }
+        }, "mvto-gc");
+        collector.setDaemon(true);
+        collector.start();
+    }
 }
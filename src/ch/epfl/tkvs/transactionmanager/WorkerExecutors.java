@@ -0,0 +1,64 @@
+package ch.epfl.tkvs.transactionmanager;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Creates the executor running the requests of a {@link TransactionManager}, according to the "executor" property of
+ * ./config/tm:
+ * <ul>
+ * <li>platform (default): a bounded pool of platform threads. A request blocked on a lock holds its thread. Waiting
+ * requests are queued by priority (see {@link AdmissionController}).</li>
+ * <li>virtual: one virtual thread per request. A blocked request only holds a few hundred bytes of stack, so many
+ * thousands of them can wait at the same time. The blocking paths of the concurrency control algorithms use
+ * java.util.concurrent locks rather than monitors so that they do not pin the carrier threads.</li>
+ * </ul>
+ * Virtual threads need a Java 21 runtime. On older runtimes, the virtual mode falls back to the platform mode.
+ */
+public class WorkerExecutors {
+
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    /**
+     * @param mode the executor mode, {@link #PLATFORM} or {@link #VIRTUAL}
+     * @param nbWorkers the number of threads of the platform mode
+     * @return the executor
+     */
+    public static ExecutorService create(String mode, int nbWorkers) {
+        if (VIRTUAL.equals(mode) && isVirtualAvailable()) {
+            return newVirtualThreadPerTaskExecutor();
+        }
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(nbWorkers, nbWorkers, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+        workers.allowCoreThreadTimeOut(true);
+        return workers;
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+    public static boolean isVirtualAvailable() {
+        return virtualFactory() != null;
+    }
+
+    // Looked up by reflection, the code base is still compiled for older runtimes
+    private static Method virtualFactory() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) virtualFactory().invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not usable", e);
+        }
+    }
+}
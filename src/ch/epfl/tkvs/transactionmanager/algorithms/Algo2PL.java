@@ -1,7 +1,6 @@
 package ch.epfl.tkvs.transactionmanager.algorithms;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import ch.epfl.tkvs.exceptions.CommitWithoutPrepareException;
@@ -15,8 +14,8 @@ import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.CommitRequest;
 import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
-import ch.epfl.tkvs.transactionmanager.lockingunit.DeadlockGraph;
 import ch.epfl.tkvs.transactionmanager.lockingunit.DeadlockInfo;
+import ch.epfl.tkvs.transactionmanager.lockingunit.DeadlockReporter;
 import ch.epfl.tkvs.transactionmanager.lockingunit.LockingUnit;
 import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVCC2PL;
 import ch.epfl.tkvs.yarn.HDFSLogger;
@@ -30,6 +29,7 @@ public abstract class Algo2PL extends CCAlgorithm {
     // Datastructure which maps transaction id to a Transaction_2PL object
     protected ConcurrentHashMap<Integer, Transaction_2PL> transactions;
     private final HDFSLogger log;
+    private final DeadlockReporter deadlockReporter;
 
     public Algo2PL(RemoteHandler remote, HDFSLogger log) {
         super(remote, log);
@@ -39,6 +39,7 @@ public abstract class Algo2PL extends CCAlgorithm {
         versioningUnit = VersioningUnitMVCC2PL.getInstance();
         versioningUnit.init();
         transactions = new ConcurrentHashMap<>();
+        deadlockReporter = new DeadlockReporter();
     }
 
     // Does cleaning up after end of transaction
@@ -111,17 +112,20 @@ public abstract class Algo2PL extends CCAlgorithm {
 
     @Override
     public void checkpoint() {
-        // Get the dead lock graph
-        DeadlockGraph graph = lockingUnit.getDeadlockGraph();
+        // Get the changes of the dead lock graph since the last report
+        DeadlockInfo di = deadlockReporter.nextReport(TransactionManager.getLocalityHash(), lockingUnit.getDeadlockEdges(), transactions.keySet());
+        if (di == null) {
+            return;
+        }
 
         try {
             // Create the message
-            DeadlockInfo di = new DeadlockInfo(TransactionManager.getLocalityHash(), graph, new HashSet<>(transactions.keySet()));
             DeadlockInfoMessage deadlockMessage = new DeadlockInfoMessage(di);
-            log.info("About to send deadlock info to app master: " + deadlockMessage, Algo2PL.class);
+            log.info("About to send deadlock info to app master: " + di, Algo2PL.class);
             TransactionManager.sendToAppMaster(deadlockMessage, false);
 
         } catch (IOException e) {
+            deadlockReporter.reset();
             log.error("Error", e, Algo2PL.class);
         }
     }
@@ -5,17 +5,26 @@
  */
 package ch.epfl.tkvs.transactionmanager.algorithms;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
 import ch.epfl.tkvs.transactionmanager.Transaction;
 import ch.epfl.tkvs.transactionmanager.TransactionManager;
 import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.CommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiWriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.TryCommitRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MultiReadResponse;
 import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
 import ch.epfl.tkvs.yarn.HDFSLogger;
 
@@ -43,6 +52,118 @@ public abstract class CCAlgorithm {
      */
     public abstract GenericSuccessResponse write(WriteRequest request);
 
+    /**
+     * Called whenever the {@link TransactionManager} receives a request to read several keys. The local keys are read
+     * one by one with {@link #read(ReadRequest)}, the remote ones are grouped by {@link TransactionManager} and sent in
+     * one request per secondary TM.
+     * @param request the incoming multi-read request
+     * @return the response to be sent to the sender
+     */
+    public MultiReadResponse multiRead(MultiReadRequest request) {
+        Transaction transaction = getTransaction(request.getTransactionId());
+
+        // Transaction not begun or already terminated
+        if (transaction == null) {
+            return new MultiReadResponse(new TransactionNotLiveException());
+        }
+
+        List<ReadRequest> reads = request.toReadRequests();
+        ArrayList<String> values = new ArrayList<>(Collections.<String> nCopies(reads.size(), null));
+        Map<Integer, List<Integer>> remoteReads = new HashMap<>();
+
+        for (int i = 0; i < reads.size(); i++) {
+            ReadRequest read = reads.get(i);
+            if (isLocalKey(read.getLocalityHash())) {
+                ReadResponse response = read(read);
+                if (!response.getSuccess()) {
+                    return new MultiReadResponse(response.getExceptionMessage());
+                }
+                values.set(i, response.getEncodedValue());
+            } else {
+                groupByTM(remoteReads, read.getLocalityHash(), i);
+            }
+        }
+
+        for (Map.Entry<Integer, List<Integer>> tmReads : remoteReads.entrySet()) {
+            ArrayList<String> keys = new ArrayList<>();
+            ArrayList<Integer> hashes = new ArrayList<>();
+            for (int i : tmReads.getValue()) {
+                keys.add(reads.get(i).getEncodedKey());
+                hashes.add(reads.get(i).getLocalityHash());
+            }
+
+            MultiReadResponse response = remote.multiRead(transaction, tmReads.getKey(), new MultiReadRequest(transaction.transactionId, keys, hashes));
+            if (!response.getSuccess()) {
+                return response;
+            }
+
+            ArrayList<String> remoteValues = response.getEncodedValues();
+            for (int j = 0; j < remoteValues.size(); j++) {
+                values.set(tmReads.getValue().get(j), remoteValues.get(j));
+            }
+        }
+
+        return new MultiReadResponse(values);
+    }
+
+    /**
+     * Called whenever the {@link TransactionManager} receives a request to write several keys. The local keys are
+     * written one by one with {@link #write(WriteRequest)}, the remote ones are grouped by {@link TransactionManager}
+     * and sent in one request per secondary TM.
+     * @param request the incoming multi-write request
+     * @return the response to be sent to the sender
+     */
+    public GenericSuccessResponse multiWrite(MultiWriteRequest request) {
+        Transaction transaction = getTransaction(request.getTransactionId());
+
+        // Transaction not begun or already terminated
+        if (transaction == null) {
+            return new GenericSuccessResponse(new TransactionNotLiveException());
+        }
+
+        List<WriteRequest> writes = request.toWriteRequests();
+        Map<Integer, List<Integer>> remoteWrites = new HashMap<>();
+
+        for (int i = 0; i < writes.size(); i++) {
+            WriteRequest write = writes.get(i);
+            if (isLocalKey(write.getLocalityHash())) {
+                GenericSuccessResponse response = write(write);
+                if (!response.getSuccess()) {
+                    return response;
+                }
+            } else {
+                groupByTM(remoteWrites, write.getLocalityHash(), i);
+            }
+        }
+
+        for (Map.Entry<Integer, List<Integer>> tmWrites : remoteWrites.entrySet()) {
+            ArrayList<String> keys = new ArrayList<>();
+            ArrayList<String> values = new ArrayList<>();
+            ArrayList<Integer> hashes = new ArrayList<>();
+            for (int i : tmWrites.getValue()) {
+                keys.add(writes.get(i).getEncodedKey());
+                values.add(writes.get(i).getEncodedValue());
+                hashes.add(writes.get(i).getLocalityHash());
+            }
+
+            GenericSuccessResponse response = remote.multiWrite(transaction, tmWrites.getKey(), new MultiWriteRequest(transaction.transactionId, keys, values, hashes));
+            if (!response.getSuccess()) {
+                return response;
+            }
+        }
+
+        return new GenericSuccessResponse();
+    }
+
+    // Adds the index of an operation to the group of the TM responsible for its locality hash
+    private void groupByTM(Map<Integer, List<Integer>> groups, int localityHash, int index) {
+        int tmHash = localityHash % TransactionManager.getNumberOfTMs();
+        if (!groups.containsKey(tmHash)) {
+            groups.put(tmHash, new ArrayList<Integer>());
+        }
+        groups.get(tmHash).add(index);
+    }
+
     /**
      * Called whenever the {@link TransactionManager} receives a request to begin a transaction
      * @param request the incoming begin request
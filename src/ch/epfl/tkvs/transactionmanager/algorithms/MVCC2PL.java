@@ -9,8 +9,10 @@ import java.util.List;
 import java.util.Map;
 
 import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.exceptions.StorageFailureException;
 import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
 import ch.epfl.tkvs.exceptions.ValueDoesNotExistException;
+import ch.epfl.tkvs.keyvaluestore.StorageFullException;
 import ch.epfl.tkvs.transactionmanager.Transaction_2PL;
 import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
@@ -37,7 +39,7 @@ public class MVCC2PL extends Algo2PL {
     @Override
     public ReadResponse read(ReadRequest request) {
         int xid = request.getTransactionId();
-        Serializable key = request.getEncodedKey();
+        Serializable key = request.getKey();
 
         Transaction_2PL transaction = transactions.get(xid);
 
@@ -60,7 +62,7 @@ public class MVCC2PL extends Algo2PL {
                 Serializable value = versioningUnit.get(xid, key);
                 if (value == null)
                     throw new ValueDoesNotExistException();
-                return new ReadResponse((String) value);
+                return new ReadResponse((byte[]) value);
             } catch (AbortException e) {
                 terminate(transaction, false);
                 return new ReadResponse(e);
@@ -73,8 +75,8 @@ public class MVCC2PL extends Algo2PL {
     @Override
     public GenericSuccessResponse write(WriteRequest request) {
         int xid = request.getTransactionId();
-        Serializable key = request.getEncodedKey();
-        Serializable value = request.getEncodedValue();
+        Serializable key = request.getKey();
+        Serializable value = request.getValue();
 
         Transaction_2PL transaction = transactions.get(xid);
 
@@ -97,6 +99,9 @@ public class MVCC2PL extends Algo2PL {
             } catch (AbortException e) {
                 terminate(transaction, false);
                 return new GenericSuccessResponse(e);
+            } catch (StorageFullException e) {
+                terminate(transaction, false);
+                return new GenericSuccessResponse(new StorageFailureException(e.getMessage()));
             }
         } else
             return remote.write(transaction, request);
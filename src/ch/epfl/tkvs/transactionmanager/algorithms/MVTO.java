@@ -12,9 +12,11 @@ import org.codehaus.jettison.json.JSONObject;
 
 import ch.epfl.tkvs.exceptions.AbortException;
 import ch.epfl.tkvs.exceptions.CommitWithoutPrepareException;
+import ch.epfl.tkvs.exceptions.StorageFailureException;
 import ch.epfl.tkvs.exceptions.TransactionAlreadyExistsException;
 import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
 import ch.epfl.tkvs.exceptions.ValueDoesNotExistException;
+import ch.epfl.tkvs.keyvaluestore.StorageFullException;
 import ch.epfl.tkvs.transactionmanager.Transaction;
 import ch.epfl.tkvs.transactionmanager.TransactionManager;
 import ch.epfl.tkvs.transactionmanager.communication.TransactionTerminateMessage;
@@ -51,7 +53,7 @@ public class MVTO extends CCAlgorithm {
     @Override
     public ReadResponse read(ReadRequest request) {
         int xid = request.getTransactionId();
-        Serializable key = request.getEncodedKey();
+        Serializable key = request.getKey();
 
         Transaction transaction = transactions.get(xid);
 
@@ -65,7 +67,7 @@ public class MVTO extends CCAlgorithm {
                 terminate(transaction, false);
                 return new ReadResponse(new ValueDoesNotExistException());
             }
-            return new ReadResponse((String) value);
+            return new ReadResponse((byte[]) value);
         } else {
             return remote.read(transaction, request);
         }
@@ -74,8 +76,8 @@ public class MVTO extends CCAlgorithm {
     @Override
     public GenericSuccessResponse write(WriteRequest request) {
         int xid = request.getTransactionId();
-        Serializable key = request.getEncodedKey();
-        Serializable value = request.getEncodedValue();
+        Serializable key = request.getKey();
+        Serializable value = request.getValue();
 
         Transaction transaction = transactions.get(xid);
 
@@ -90,6 +92,9 @@ public class MVTO extends CCAlgorithm {
             } catch (AbortException e) {
                 terminate(transaction, false);
                 return new GenericSuccessResponse(e);
+            } catch (StorageFullException e) {
+                terminate(transaction, false);
+                return new GenericSuccessResponse(new StorageFailureException(e.getMessage()));
             }
         } else {
             return remote.write(transaction, request);
@@ -129,6 +134,13 @@ public class MVTO extends CCAlgorithm {
         if (!transaction.isPrepared) {
             return new GenericSuccessResponse(new CommitWithoutPrepareException());
         }
+        try {
+            versioningUnit.commit(xid);
+        } catch (AbortException e) {
+            // Already rolled back by the versioning unit
+            terminate(transaction, false);
+            return new GenericSuccessResponse(e);
+        }
         terminate(transaction, true);
         return new GenericSuccessResponse();
 
@@ -136,16 +148,16 @@ public class MVTO extends CCAlgorithm {
 
     private ConcurrentHashMap<Integer, Transaction> transactions;
 
-    // Does cleaning up after end of transaction
+    // Does cleaning up after end of transaction, committed in the versioning unit before if successful
     private void terminate(Transaction transaction, boolean success) {
         if (primaryTransactions.contains(transaction.transactionId)) {
             primaryTerminated.add(transaction.transactionId);
         }
 
-        log.info("Terminating transaction with status " + success, MVTO.class);
-        if (success) {
-            versioningUnit.commit(transaction.transactionId);
-        } else {
+        if (log.isDebugEnabled()) {
+            log.debug("Terminating transaction with status " + success, MVTO.class);
+        }
+        if (!success) {
             versioningUnit.abort(transaction.transactionId);
         }
         if (!success && !isLocalTransaction(transaction))
@@ -207,9 +219,12 @@ public class MVTO extends CCAlgorithm {
 
         log.info("log primaryTerminated: " + toSend, getClass());
 
+        // The ids leased but not used yet are given back, so that they do not hold back the minimum alive transaction
+        int[] released = TransactionManager.getTransactionIds().releaseUnused();
+
         MinAliveTransactionResponse response = null;
         try {
-            TransactionTerminateMessage tMessage = new TransactionTerminateMessage(toSend);
+            TransactionTerminateMessage tMessage = new TransactionTerminateMessage(toSend, released[0], released[1]);
             JSONObject json = TransactionManager.sendToAppMaster(tMessage, true);
             response = (MinAliveTransactionResponse) JSON2MessageConverter.parseJSON(json, MinAliveTransactionResponse.class);
         } catch (Exception e) {
@@ -219,6 +234,7 @@ public class MVTO extends CCAlgorithm {
         if (response != null) {
             versioningUnit.garbageCollector(response.getTransactionId());
         }
+        log.info("Versions: " + versioningUnit, getClass());
 
     }
 
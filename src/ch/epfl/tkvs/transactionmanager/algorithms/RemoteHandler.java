@@ -15,10 +15,13 @@ import ch.epfl.tkvs.transactionmanager.communication.Message;
 import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.CommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiWriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MultiReadResponse;
 import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
 import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.InvalidMessageException;
 import ch.epfl.tkvs.yarn.HDFSLogger;
@@ -41,10 +44,12 @@ public class RemoteHandler {
 
     private Message sendToRemoteTM(Message request, int localityHash, Class<? extends Message> messageClass) throws IOException, InvalidMessageException {
 
-        log.info(request, RemoteHandler.class);
+        log.debug(request, RemoteHandler.class);
         JSONObject response = TransactionManager.sendToTransactionManager(localityHash, request, true);
         Message responseMessage = parseJSON(response, messageClass);
-        log.info(responseMessage + "<--" + request, RemoteHandler.class);
+        if (log.isDebugEnabled()) {
+            log.debug(HDFSLogger.concat(responseMessage, "<--", request), RemoteHandler.class);
+        }
         return responseMessage;
 
     }
@@ -136,6 +141,60 @@ public class RemoteHandler {
         }
     }
 
+    /**
+     * Performs several remote reads on the same secondary {@link TransactionManager} in one round trip. Invokes
+     * distributed abort in case of error
+     *
+     * @param t The transaction running on primary {@link TransactionManager}
+     * @param tmHash The locality hash of the secondary {@link TransactionManager}
+     * @param request the reads of the keys handled by that secondary {@link TransactionManager}
+     * @return the response from the secondary {@link TransactionManager}
+     */
+    public MultiReadResponse multiRead(Transaction t, int tmHash, MultiReadRequest request) {
+        try {
+            begin(t, tmHash);
+            MultiReadResponse mrr = (MultiReadResponse) sendToRemoteTM(request, tmHash, MultiReadResponse.class);
+            if (!mrr.getSuccess()) {
+                throw new RemoteTMException(mrr.getExceptionMessage());
+            }
+            return mrr;
+        } catch (IOException | InvalidMessageException ex) {
+            log.fatal("Remote error", ex, RemoteHandler.class);
+            abortAll(t);
+            return new MultiReadResponse(new RemoteTMException(ex));
+        } catch (AbortException e) {
+            abortAll(t);
+            return new MultiReadResponse(e);
+        }
+    }
+
+    /**
+     * Performs several remote writes on the same secondary {@link TransactionManager} in one round trip. Invokes
+     * distributed abort in case of error
+     *
+     * @param t The transaction running on primary {@link TransactionManager}
+     * @param tmHash The locality hash of the secondary {@link TransactionManager}
+     * @param request the writes of the keys handled by that secondary {@link TransactionManager}
+     * @return the response from the secondary {@link TransactionManager}
+     */
+    public GenericSuccessResponse multiWrite(Transaction t, int tmHash, MultiWriteRequest request) {
+        try {
+            begin(t, tmHash);
+            GenericSuccessResponse gsr = (GenericSuccessResponse) sendToRemoteTM(request, tmHash, GenericSuccessResponse.class);
+            if (!gsr.getSuccess()) {
+                throw new RemoteTMException(gsr.getExceptionMessage());
+            }
+            return gsr;
+        } catch (IOException | InvalidMessageException ex) {
+            log.fatal("Remote error", ex, RemoteHandler.class);
+            abortAll(t);
+            return new GenericSuccessResponse(new RemoteTMException(ex));
+        } catch (AbortException ex) {
+            abortAll(t);
+            return new GenericSuccessResponse(ex);
+        }
+    }
+
     /**
      * Performs 2-Phase commit protocol to try to commit a distributed transaction. Invokes distributed abort in case of
      * error.
@@ -4,8 +4,10 @@ import java.io.Serializable;
 import java.util.Arrays;
 
 import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.exceptions.StorageFailureException;
 import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
 import ch.epfl.tkvs.exceptions.ValueDoesNotExistException;
+import ch.epfl.tkvs.keyvaluestore.StorageFullException;
 import ch.epfl.tkvs.transactionmanager.Transaction_2PL;
 import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
@@ -27,7 +29,7 @@ public class Simple2PL extends Algo2PL {
     @Override
     public ReadResponse read(ReadRequest request) {
         int xid = request.getTransactionId();
-        Serializable key = request.getEncodedKey();
+        Serializable key = request.getKey();
 
         Transaction_2PL transaction = transactions.get(xid);
 
@@ -49,7 +51,7 @@ public class Simple2PL extends Algo2PL {
                 Serializable value = versioningUnit.get(xid, key);
                 if (value == null)
                     throw new ValueDoesNotExistException();
-                return new ReadResponse((String) value);
+                return new ReadResponse((byte[]) value);
             } catch (AbortException e) {
                 terminate(transaction, false);
                 return new ReadResponse(e);
@@ -63,8 +65,8 @@ public class Simple2PL extends Algo2PL {
     @Override
     public GenericSuccessResponse write(WriteRequest request) {
         int xid = request.getTransactionId();
-        Serializable key = request.getEncodedKey();
-        Serializable value = request.getEncodedValue();
+        Serializable key = request.getKey();
+        Serializable value = request.getValue();
 
         Transaction_2PL transaction = transactions.get(xid);
 
@@ -85,6 +87,9 @@ public class Simple2PL extends Algo2PL {
             } catch (AbortException e) {
                 terminate(transaction, false);
                 return new GenericSuccessResponse(e);
+            } catch (StorageFullException e) {
+                terminate(transaction, false);
+                return new GenericSuccessResponse(new StorageFailureException(e.getMessage()));
             }
         } else
             return remote.write(transaction, request);
@@ -11,11 +11,11 @@ public class DeadlockInfoMessage extends Message {
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
     public static final String MESSAGE_TYPE = "deadlock_message";
 
-    @JSONAnnotation(key = JSONCommunication.KEY_FOR_DEAD_LOCK_GRAPH)
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_DEAD_LOCK_GRAPH, base64 = true)
     private String encodedGraph;
 
-    public DeadlockInfoMessage(DeadlockInfo di) throws IOException {
-        encodedGraph = Base64Utils.convertToBase64(di);
+    public DeadlockInfoMessage(DeadlockInfo di) {
+        encodedGraph = Base64Utils.encodeBytes(di.encode());
     }
 
     @JSONConstructor
@@ -24,18 +24,17 @@ public class DeadlockInfoMessage extends Message {
     }
 
     /**
-     * Returns the dead lock graph contained in the message.
+     * Returns the dead lock information contained in the message.
      * 
-     * @return the dead lock graph if available or null (be careful)
-     * @throws ClassNotFoundException in case the DeadlockGraph class is not in your classpath
+     * @return the dead lock information if available or null (be careful)
      * @throws IOException in case of decoding problem
      */
-    public DeadlockInfo getGraph() throws ClassNotFoundException, IOException {
+    public DeadlockInfo getInfo() throws IOException {
         if (encodedGraph == null) {
             return null;
         }
 
-        return (DeadlockInfo) Base64Utils.convertFromBase64(encodedGraph);
+        return DeadlockInfo.decode(Base64Utils.decodeBytes(encodedGraph));
     }
 
 }
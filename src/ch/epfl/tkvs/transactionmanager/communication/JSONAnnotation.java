@@ -3,6 +3,8 @@ package ch.epfl.tkvs.transactionmanager.communication;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
+import ch.epfl.tkvs.transactionmanager.communication.utils.BinaryMessageConverter;
+
 
 /**
  * This annotation is used to specify the JSON key that one wants to the attribute of a {@link Message}.
@@ -11,4 +13,9 @@ import java.lang.annotation.RetentionPolicy;
 public @interface JSONAnnotation {
 
     String key();
+
+    /**
+     * Whether the attribute is a Base64 string, which the {@link BinaryMessageConverter} sends as raw bytes.
+     */
+    boolean base64() default false;
 }
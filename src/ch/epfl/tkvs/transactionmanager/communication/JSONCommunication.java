@@ -15,4 +15,11 @@ public class JSONCommunication {
     public static final String KEY_FOR_EXCEPTION = "exception";
     public static final String KEY_FOR_ALGO_CONFIG = "algorithm";
     public static final String KEY_FOR_PRIMARY_MSG = "primary";
+    public static final String KEY_FOR_REQUEST_ID = "request_id";
+    public static final String KEY_FOR_SEQUENCE = "sequence";
+    public static final String KEY_FOR_COUNT = "count";
+    public static final String KEY_FOR_RELEASED_FROM = "released_from";
+    public static final String KEY_FOR_RELEASED_TO = "released_to";
+    public static final String KEY_FOR_ROUTING_VERSION = "routing_version";
+    public static final String KEY_FOR_COMMIT = "commit";
 }
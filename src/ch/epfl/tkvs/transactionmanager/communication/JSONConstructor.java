@@ -5,7 +5,8 @@ import java.lang.annotation.RetentionPolicy;
 
 
 /**
- * Indicates which constructor the JSON decoding process should use.
+ * Indicates which constructor the JSON decoding process should use. It may be private; the decoder calls it with
+ * dummy arguments, then sets every annotated attribute.
  */
 @Retention(RetentionPolicy.RUNTIME)
 public @interface JSONConstructor {
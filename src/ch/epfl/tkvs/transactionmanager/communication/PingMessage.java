@@ -0,0 +1,11 @@
+package ch.epfl.tkvs.transactionmanager.communication;
+
+/**
+ * This message is sent to check that a connection to a transaction manager is still alive. It is answered with a
+ * successful {@link ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse}.
+ */
+public class PingMessage extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "ping_message";
+}
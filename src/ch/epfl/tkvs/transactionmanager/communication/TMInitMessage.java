@@ -19,7 +19,7 @@ public class TMInitMessage extends Message {
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_ALGO_CONFIG)
     private String algoConfig;
 
-    @JSONAnnotation(key = JSONCommunication.KEY_FOR_ROUTING_TABLE)
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_ROUTING_TABLE, base64 = true)
     private String encodedRoutingTable;
 
     @JSONConstructor
@@ -1,6 +1,8 @@
 package ch.epfl.tkvs.transactionmanager.communication;
 
 import static ch.epfl.tkvs.transactionmanager.communication.JSONCommunication.KEY_FOR_MESSAGE_TYPE;
+import static ch.epfl.tkvs.transactionmanager.communication.JSONCommunication.KEY_FOR_RELEASED_FROM;
+import static ch.epfl.tkvs.transactionmanager.communication.JSONCommunication.KEY_FOR_RELEASED_TO;
 import static ch.epfl.tkvs.transactionmanager.communication.JSONCommunication.KEY_FOR_TRANSACTION_ID;
 
 import java.io.IOException;
@@ -20,26 +22,48 @@ import ch.epfl.tkvs.yarn.appmaster.AppMaster;
  * 
  * In returns, the {@link MVTO}'s garbage collector waits for a {@link MinAliveTransactionResponse}.
  * 
- * This outlined process occurs in the checkpoint method of {@link MVTO}.
+ * This outlined process occurs in the checkpoint method of {@link MVTO}. The TM also gives back the transaction ids it
+ * leased but did not use, from {@link #releasedFrom} (included) to {@link #releasedTo} (excluded): none of them will
+ * ever begin, so they must not hold back the minimum alive transaction.
  */
 public class TransactionTerminateMessage extends Message {
 
     @JSONAnnotation(key = KEY_FOR_MESSAGE_TYPE)
     public static final String MESSAGE_TYPE = "xact_terminate_message";
 
-    @JSONAnnotation(key = KEY_FOR_TRANSACTION_ID)
+    @JSONAnnotation(key = KEY_FOR_TRANSACTION_ID, base64 = true)
     private String encodedTids;
 
+    @JSONAnnotation(key = KEY_FOR_RELEASED_FROM)
+    private int releasedFrom;
+
+    @JSONAnnotation(key = KEY_FOR_RELEASED_TO)
+    private int releasedTo;
+
     @JSONConstructor
     public TransactionTerminateMessage(LinkedList<Integer> tids) throws IOException {
 
         encodedTids = Base64Utils.convertToBase64(tids);
     }
 
+    public TransactionTerminateMessage(LinkedList<Integer> tids, int releasedFrom, int releasedTo) throws IOException {
+        this(tids);
+        this.releasedFrom = releasedFrom;
+        this.releasedTo = releasedTo;
+    }
+
     public TransactionTerminateMessage(int transactionId) throws IOException {
         this(new LinkedList<Integer>(Arrays.asList(transactionId)));
     }
 
+    public int getReleasedFrom() {
+        return releasedFrom;
+    }
+
+    public int getReleasedTo() {
+        return releasedTo;
+    }
+
     @SuppressWarnings("unchecked")
     public LinkedList<Integer> getTransactionIds() {
         try {
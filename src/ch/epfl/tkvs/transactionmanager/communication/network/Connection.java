@@ -0,0 +1,36 @@
+package ch.epfl.tkvs.transactionmanager.communication.network;
+
+import java.io.IOException;
+
+import org.codehaus.jettison.json.JSONObject;
+
+
+/**
+ * The server end of a connection, through which the responses to the requests read from it are sent back.
+ */
+public interface Connection {
+
+    /**
+     * Sends a message to the other end of the connection. Safe to call from several threads at once.
+     * @param message the message to send
+     * @throws IOException in case of network failure
+     */
+    void send(JSONObject message) throws IOException;
+
+    /**
+     * Sends a line of plain text, for the few commands that are not JSON messages (e.g. the pings of the AppMaster).
+     * @param line the text to send, without line terminator
+     * @throws IOException in case of network failure
+     */
+    void sendLine(String line) throws IOException;
+
+    /**
+     * @return the protocol chosen by the other end, in which the requests read from this connection are framed
+     */
+    WireProtocol getProtocol();
+
+    /**
+     * Closes the connection.
+     */
+    void close();
+}
@@ -0,0 +1,203 @@
+package ch.epfl.tkvs.transactionmanager.communication.network;
+
+import java.io.IOException;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import ch.epfl.tkvs.transactionmanager.communication.PingMessage;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter;
+
+
+/**
+ * Keeps one {@link MultiplexedConnection} per peer so that the messages sent to a peer share the same socket.
+ *
+ * A broken connection is replaced on the next message sent to its peer. If the request could not even be written, it is
+ * sent again once on the new connection; it is never sent twice once it has left. {@link #checkHealth()} pings the open
+ * connections to detect the broken ones before a request hits them.
+ *
+ * The connections are opened in the {@link WireProtocol} of the pool, {@link WireProtocol#JSON} unless set otherwise.
+ */
+public class ConnectionPool {
+
+    private static final long HEALTH_CHECK_TIMEOUT_MS = 5000;
+
+    private final ConcurrentHashMap<String, MultiplexedConnection> connections = new ConcurrentHashMap<>();
+    private final ReentrantLock connectLock = new ReentrantLock();
+    private volatile WireProtocol protocol = WireProtocol.JSON;
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong reconnects = new AtomicLong(0);
+    private final AtomicLong failedHealthChecks = new AtomicLong(0);
+
+    /**
+     * Sends a request to a peer.
+     * @param ip the ip of the peer
+     * @param port the port of the peer
+     * @param request the JSON request
+     * @param shouldWait whether one should wait for the response
+     * @return the response or null if !shouldWait
+     * @throws IOException in case of network failure
+     */
+    public JSONObject send(String ip, int port, JSONObject request, boolean shouldWait) throws IOException {
+        CompletableFuture<JSONObject> response = sendAsync(ip, port, request);
+
+        if (!shouldWait) {
+            return null;
+        }
+
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Sends a request to a peer without waiting for its response.
+     * @param ip the ip of the peer
+     * @param port the port of the peer
+     * @param request the JSON request
+     * @return a future completed with the response, or completed exceptionally if the connection breaks
+     * @throws IOException if the request could not be sent
+     */
+    public CompletableFuture<JSONObject> sendAsync(final String ip, final int port, JSONObject request) throws IOException {
+        final MultiplexedConnection connection = acquire(ip, port);
+
+        CompletableFuture<JSONObject> response;
+        try {
+            response = connection.send(request);
+        } catch (IOException e) {
+            // The request did not leave, it is safe to send it again on a fresh connection
+            invalidate(ip, port, connection);
+            reconnects.incrementAndGet();
+            return acquire(ip, port).send(request);
+        }
+
+        response.whenComplete(new BiConsumer<JSONObject, Throwable>() {
+
+            @Override
+            public void accept(JSONObject result, Throwable failure) {
+                if (failure != null) {
+                    invalidate(ip, port, connection);
+                }
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Pings every pooled connection and drops the ones that do not answer in time. They will be reopened on demand.
+     */
+    public void checkHealth() {
+        for (Entry<String, MultiplexedConnection> entry : connections.entrySet()) {
+            MultiplexedConnection connection = entry.getValue();
+            boolean healthy = connection.isOpen();
+
+            if (healthy) {
+                try {
+                    JSONObject ping = Message2JSONConverter.toJSON(new PingMessage());
+                    connection.send(ping).get(HEALTH_CHECK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (IOException | JSONException | InterruptedException | ExecutionException | TimeoutException e) {
+                    healthy = false;
+                }
+            }
+
+            if (!healthy) {
+                failedHealthChecks.incrementAndGet();
+                connections.remove(entry.getKey(), connection);
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Chooses the protocol of the connections opened from now on. The pooled connections are closed, so it should be
+     * set before sending anything.
+     * @param protocol the protocol
+     */
+    public void setProtocol(WireProtocol protocol) {
+        this.protocol = protocol;
+        close();
+    }
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Closes all the pooled connections.
+     */
+    public void close() {
+        for (String address : connections.keySet()) {
+            MultiplexedConnection connection = connections.remove(address);
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    public long getFailedHealthChecks() {
+        return failedHealthChecks.get();
+    }
+
+    private MultiplexedConnection acquire(String ip, int port) throws IOException {
+        String address = ip + ":" + port;
+        MultiplexedConnection connection = connections.get(address);
+        if (connection != null && connection.isOpen()) {
+            hits.incrementAndGet();
+            return connection;
+        }
+
+        // Not a monitor, connecting blocks and must not pin the carrier of a virtual thread
+        connectLock.lock();
+        try {
+            connection = connections.get(address);
+            if (connection != null && connection.isOpen()) {
+                hits.incrementAndGet();
+                return connection;
+            }
+            misses.incrementAndGet();
+            connection = new MultiplexedConnection(ip, port, protocol);
+            connections.put(address, connection);
+            return connection;
+        } finally {
+            connectLock.unlock();
+        }
+    }
+
+    private void invalidate(String ip, int port, MultiplexedConnection connection) {
+        connections.remove(ip + ":" + port, connection);
+        connection.close();
+    }
+
+    @Override
+    public String toString() {
+        return "protocol=" + protocol + " connections=" + connections.size() + " hits=" + hits + " misses=" + misses + " reconnects=" + reconnects + " failedHealthChecks=" + failedHealthChecks;
+    }
+}
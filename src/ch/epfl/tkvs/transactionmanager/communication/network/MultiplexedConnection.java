@@ -0,0 +1,216 @@
+package ch.epfl.tkvs.transactionmanager.communication.network;
+
+import static ch.epfl.tkvs.transactionmanager.communication.JSONCommunication.KEY_FOR_REQUEST_ID;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+
+
+/**
+ * A long-lived connection to a {@link TransactionManager} on which many requests can be in flight at the same time.
+ *
+ * Every request sent through this connection is tagged with a request id (see
+ * {@link ch.epfl.tkvs.transactionmanager.communication.JSONCommunication#KEY_FOR_REQUEST_ID}). The server copies
+ * that id in the response, which lets a background reader thread hand each response to the caller waiting for it,
+ * whatever the order in which the responses come back.
+ *
+ * Requests without a request id are still understood by the server: they get a single response after which the
+ * server closes the socket (one socket per request).
+ *
+ * The messages are framed with the {@link WireProtocol} given when opening the connection.
+ */
+public class MultiplexedConnection {
+
+    private final String ip;
+    private final int port;
+    private final Socket sock;
+    private final WireProtocol protocol;
+    private final OutputStream out;
+    private final InputStream in;
+    // Not a monitor, a virtual thread blocked in a write must not pin its carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final AtomicInteger nextRequestId = new AtomicInteger(0);
+    private final ConcurrentHashMap<Integer, CompletableFuture<JSONObject>> pendingResponses = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+
+    /**
+     * Opens a connection and starts the thread reading the responses.
+     * @param ip the ip of the server
+     * @param port the port of the server
+     * @param protocol the protocol in which the messages are framed
+     * @throws IOException if the connection cannot be established
+     */
+    public MultiplexedConnection(String ip, int port, WireProtocol protocol) throws IOException {
+        this.ip = ip;
+        this.port = port;
+        this.protocol = protocol;
+        this.sock = new Socket(ip, port);
+        this.sock.setTcpNoDelay(true);
+        this.out = new BufferedOutputStream(sock.getOutputStream());
+        this.in = new BufferedInputStream(sock.getInputStream());
+
+        if (protocol == WireProtocol.BINARY) {
+            out.write(WireProtocol.BINARY_PREAMBLE);
+        }
+
+        Thread reader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                readResponses();
+            }
+        }, "Connection to " + ip + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a request without waiting for its response.
+     * @param request the JSON request, it is tagged with a fresh request id
+     * @return a future completed with the response, or completed exceptionally if the connection breaks
+     * @throws IOException if the connection is closed or the request cannot be tagged
+     */
+    public CompletableFuture<JSONObject> send(JSONObject request) throws IOException {
+        if (!open) {
+            throw new IOException("Connection to " + ip + ":" + port + " is closed");
+        }
+
+        int requestId = nextRequestId.getAndIncrement();
+        CompletableFuture<JSONObject> response = new CompletableFuture<>();
+        pendingResponses.put(requestId, response);
+        if (!open) {
+            // The connection was closed concurrently, its pending responses may already have been failed
+            pendingResponses.remove(requestId);
+            throw new IOException("Connection to " + ip + ":" + port + " is closed");
+        }
+
+        byte[] frame;
+        try {
+            request.put(KEY_FOR_REQUEST_ID, requestId);
+            frame = protocol.encode(request);
+        } catch (JSONException e) {
+            pendingResponses.remove(requestId);
+            throw new IOException(e);
+        }
+
+        writeLock.lock();
+        try {
+            out.write(frame);
+            out.flush();
+        } catch (IOException e) {
+            pendingResponses.remove(requestId);
+            close();
+            throw new IOException("Could not write to " + ip + ":" + port, e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        return response;
+    }
+
+    /**
+     * Sends a request and blocks until its response comes back.
+     * @param request the JSON request
+     * @return the JSON response
+     * @throws IOException in case of network failure
+     */
+    public JSONObject sendAndWait(JSONObject request) throws IOException {
+        try {
+            return send(request).get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Closes the connection. Requests still waiting for a response fail with an {@link IOException}.
+     */
+    public void close() {
+        open = false;
+        try {
+            sock.close();
+        } catch (IOException e) {
+            // Nothing more can be done
+        }
+        failPendingResponses(new IOException("Connection to " + ip + ":" + port + " closed"));
+    }
+
+    private void readResponses() {
+        try {
+            byte[] frame;
+            while ((frame = protocol.readFrame(in)) != null) {
+                try {
+                    JSONObject response = protocol.decode(frame);
+                    CompletableFuture<JSONObject> pending = pendingResponses.remove(response.getInt(KEY_FOR_REQUEST_ID));
+                    if (pending != null) {
+                        pending.complete(response);
+                    }
+                } catch (JSONException e) {
+                    // A malformed response cannot be matched to any request, skip it
+                }
+            }
+        } catch (IOException e) {
+            // The connection is broken, fall through
+        }
+        close();
+    }
+
+    private void failPendingResponses(IOException cause) {
+        for (Integer requestId : pendingResponses.keySet()) {
+            CompletableFuture<JSONObject> pending = pendingResponses.remove(requestId);
+            if (pending != null) {
+                pending.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * @param request a JSON request received by a server
+     * @return true if the sender expects the connection to stay open after the response
+     */
+    public static boolean hasRequestId(JSONObject request) {
+        return request.has(KEY_FOR_REQUEST_ID);
+    }
+
+    /**
+     * Copies the request id of a request, if any, in its response.
+     * @param request the JSON request received by a server
+     * @param response the JSON response about to be sent back
+     * @throws JSONException if the request id cannot be copied
+     */
+    public static void tagResponse(JSONObject request, JSONObject response) throws JSONException {
+        if (hasRequestId(request)) {
+            response.put(KEY_FOR_REQUEST_ID, request.getInt(KEY_FOR_REQUEST_ID));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ip=" + ip + "  port=" + port + "  protocol=" + protocol;
+    }
+}
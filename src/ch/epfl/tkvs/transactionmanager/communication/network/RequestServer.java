@@ -0,0 +1,439 @@
+package ch.epfl.tkvs.transactionmanager.communication.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+
+/**
+ * Event-driven server accepting many concurrent connections with a single thread.
+ *
+ * The event loop only accepts sockets and reads bytes: a request is a line of text (newline-terminated frame), or a
+ * length-prefixed binary frame on the connections that start with {@link WireProtocol#BINARY_PREAMBLE}. Each complete
+ * frame is handed, still encoded, to the worker pool in which the {@link RequestHandler} decodes and executes it.
+ * Responses are written without blocking, directly by the worker when the socket can take them and by the event loop
+ * otherwise.
+ *
+ * A connection is closed when its handler asks for it, once the pending responses have been written, or when the
+ * remote end closes it and all the requests read from it have been answered.
+ */
+public class RequestServer {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Executes the requests read by a {@link RequestServer}.
+     */
+    public interface RequestHandler {
+
+        /**
+         * Called in a worker thread for every request.
+         * @param request the encoded request, without its frame delimiter or length, see {@link Connection#getProtocol()}
+         * @param connection the connection on which the response should be sent
+         * @return true if the request was handed to another thread, which later sends the response or closes the
+         *         connection, false if it was answered before returning or will never be
+         */
+        boolean handle(byte[] request, Connection connection);
+    }
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final RequestHandler handler;
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+
+    /**
+     * @param serverChannel a bound server channel, it is switched to non-blocking mode
+     * @param handler the handler executing the requests
+     * @param workers the pool in which the requests are decoded and executed
+     * @throws IOException if the selector cannot be opened
+     */
+    public RequestServer(ServerSocketChannel serverChannel, RequestHandler handler, ExecutorService workers) throws IOException {
+        this.serverChannel = serverChannel;
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.workers = workers;
+
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Runs the event loop in the calling thread until {@link #stop()} is called.
+     */
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException | ClosedSelectorException e) {
+                break;
+            }
+
+            Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+            while (selectedKeys.hasNext()) {
+                SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ChannelConnection connection = (ChannelConnection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                } catch (CancelledKeyException e) {
+                    // The connection was closed by a worker in the meantime
+                }
+            }
+        }
+
+        shutdown();
+    }
+
+    /**
+     * Stops the event loop, closing every connection. The worker pool is not shut down.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new ChannelConnection(channel, key));
+        } catch (IOException e) {
+            // Only this connection is lost, keep on accepting
+        }
+    }
+
+    private void shutdown() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof ChannelConnection) {
+                ((ChannelConnection) key.attachment()).closeNow();
+            }
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException e) {
+            // Nothing more can be done
+        }
+    }
+
+    /**
+     * A client connection of this server. Reads happen in the event loop, writes in the workers or in the event loop.
+     */
+    private class ChannelConnection implements Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteArrayOutputStream partialFrame = new ByteArrayOutputStream();
+        // The length of the next binary frame, then the frame once its length is known
+        private final ByteBuffer frameLength = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE);
+        private ByteBuffer frame = null;
+        // Known once the first byte is read, only the event loop writes it
+        private volatile WireProtocol protocol = null;
+
+        // Guarded by this
+        private final LinkedList<ByteBuffer> pendingWrites = new LinkedList<>();
+        private boolean closeRequested = false;
+        private boolean closed = false;
+
+        // Requests read but not answered yet, and whether the remote end stopped sending
+        private final AtomicInteger requestsInFlight = new AtomicInteger(0);
+        private volatile boolean endOfInput = false;
+
+        ChannelConnection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /** Called by the event loop when the channel is readable. */
+        void read() {
+            int bytesRead;
+            try {
+                bytesRead = channel.read(readBuffer);
+            } catch (IOException e) {
+                closeNow();
+                return;
+            }
+
+            if (bytesRead == -1) {
+                synchronized (this) {
+                    endOfInput = true;
+                    if (!closed) {
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    }
+                }
+                if (requestsInFlight.get() == 0) {
+                    close();
+                }
+                return;
+            }
+
+            readBuffer.flip();
+            if (protocol == null && readBuffer.hasRemaining()) {
+                if (readBuffer.get(readBuffer.position()) == WireProtocol.BINARY_PREAMBLE) {
+                    protocol = WireProtocol.BINARY;
+                    readBuffer.get();
+                } else {
+                    protocol = WireProtocol.JSON;
+                }
+            }
+
+            if (protocol == WireProtocol.BINARY) {
+                splitLengthPrefixedFrames();
+            } else {
+                splitLines();
+            }
+            readBuffer.clear();
+        }
+
+        private void splitLines() {
+            byte[] bytes = readBuffer.array();
+            int frameStart = readBuffer.position();
+            for (int i = frameStart; i < readBuffer.limit(); i++) {
+                if (bytes[i] == WireProtocol.FRAME_DELIMITER) {
+                    partialFrame.write(bytes, frameStart, i - frameStart);
+                    dispatch(partialFrame.toByteArray());
+                    partialFrame.reset();
+                    frameStart = i + 1;
+                }
+            }
+            partialFrame.write(bytes, frameStart, readBuffer.limit() - frameStart);
+            if (partialFrame.size() > WireProtocol.MAX_FRAME_LENGTH) {
+                closeNow();
+            }
+        }
+
+        private void splitLengthPrefixedFrames() {
+            while (readBuffer.hasRemaining()) {
+                if (frame == null) {
+                    transfer(readBuffer, frameLength);
+                    if (frameLength.hasRemaining()) {
+                        return;
+                    }
+                    try {
+                        frame = ByteBuffer.allocate(WireProtocol.checkLength(frameLength.getInt(0)));
+                    } catch (IOException e) {
+                        closeNow();
+                        return;
+                    }
+                    frameLength.clear();
+                }
+                transfer(readBuffer, frame);
+                if (!frame.hasRemaining()) {
+                    dispatch(frame.array());
+                    frame = null;
+                }
+            }
+        }
+
+        private void transfer(ByteBuffer from, ByteBuffer to) {
+            int n = Math.min(from.remaining(), to.remaining());
+            to.put(from.array(), from.position(), n);
+            from.position(from.position() + n);
+        }
+
+        private void dispatch(final byte[] request) {
+            requestsInFlight.incrementAndGet();
+            final RequestConnection connection = new RequestConnection(this);
+            try {
+                workers.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        boolean answeredLater = false;
+                        try {
+                            answeredLater = handler.handle(request, connection);
+                        } finally {
+                            if (!answeredLater) {
+                                connection.done();
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The workers are shut down: closing fails the pending requests of the sender instead of leaving them
+                // unanswered
+                requestDone();
+                close();
+            }
+        }
+
+        private void requestDone() {
+            if (requestsInFlight.decrementAndGet() == 0 && endOfInput) {
+                close();
+            }
+        }
+
+        @Override
+        public void send(JSONObject message) throws IOException {
+            try {
+                write(getProtocol().encode(message));
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public WireProtocol getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public void sendLine(String line) throws IOException {
+            write(getProtocol().encodeLine(line));
+        }
+
+        private void write(byte[] frame) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+
+            synchronized (this) {
+                if (closed || closeRequested) {
+                    throw new IOException("Connection closed");
+                }
+
+                // Write directly when nothing is queued, the event loop takes over if the socket is full
+                if (pendingWrites.isEmpty()) {
+                    channel.write(buffer);
+                    if (!buffer.hasRemaining()) {
+                        return;
+                    }
+                }
+                pendingWrites.add(buffer);
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+            selector.wakeup();
+        }
+
+        /** Called by the event loop when the channel is writable. */
+        synchronized void flush() {
+            try {
+                while (!pendingWrites.isEmpty()) {
+                    ByteBuffer buffer = pendingWrites.getFirst();
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        return;
+                    }
+                    pendingWrites.removeFirst();
+                }
+            } catch (IOException e) {
+                closeNow();
+                return;
+            }
+
+            if (closeRequested) {
+                closeNow();
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            closeRequested = true;
+            if (pendingWrites.isEmpty()) {
+                closeNow();
+            }
+        }
+
+        synchronized void closeNow() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pendingWrites.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more can be done
+            }
+        }
+    }
+
+    /**
+     * The connection given to the handler of one request. The request is answered once a response is sent on it or it
+     * is closed, after which the connection may close if the remote end stopped sending.
+     */
+    private static class RequestConnection implements Connection {
+
+        private final ChannelConnection connection;
+        private final AtomicBoolean answered = new AtomicBoolean(false);
+
+        RequestConnection(ChannelConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void send(JSONObject message) throws IOException {
+            try {
+                connection.send(message);
+            } finally {
+                done();
+            }
+        }
+
+        @Override
+        public void sendLine(String line) throws IOException {
+            try {
+                connection.sendLine(line);
+            } finally {
+                done();
+            }
+        }
+
+        @Override
+        public WireProtocol getProtocol() {
+            return connection.getProtocol();
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+            done();
+        }
+
+        void done() {
+            if (answered.compareAndSet(false, true)) {
+                connection.requestDone();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ch.epfl.tkvs.transactionmanager.communication.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import ch.epfl.tkvs.transactionmanager.communication.utils.BinaryMessageConverter;
+
+
+/**
+ * How the messages are framed on a connection.
+ *
+ * {@link #JSON} sends every message as a line of JSON text. {@link #BINARY} sends every message in the binary form of
+ * the {@link BinaryMessageConverter}, prefixed by its length on four bytes.
+ *
+ * The protocol is chosen by the client for each connection: a binary connection starts with {@link #BINARY_PREAMBLE},
+ * which cannot start a JSON message nor a text command. The {@link RequestServer} accepts both and answers every
+ * connection in its own protocol, so that clients can be switched one by one.
+ */
+public enum WireProtocol {
+
+    JSON {
+
+        @Override
+        public byte[] encode(JSONObject message) {
+            return encodeLine(message.toString());
+        }
+
+        @Override
+        public byte[] encodeLine(String line) {
+            return (line + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public JSONObject decode(byte[] frame) throws JSONException {
+            return new JSONObject(new String(frame, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public byte[] readFrame(InputStream in) throws IOException {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != FRAME_DELIMITER) {
+                if (b == -1) {
+                    if (frame.size() == 0) {
+                        return null;
+                    }
+                    throw new EOFException("Truncated frame");
+                }
+                if (frame.size() == MAX_FRAME_LENGTH) {
+                    throw new IOException("Frame longer than " + MAX_FRAME_LENGTH + " bytes");
+                }
+                frame.write(b);
+            }
+            return frame.toByteArray();
+        }
+    },
+
+    BINARY {
+
+        @Override
+        public byte[] encode(JSONObject message) throws JSONException {
+            return withLength(BinaryMessageConverter.toBinary(message));
+        }
+
+        @Override
+        public byte[] encodeLine(String line) {
+            return withLength(BinaryMessageConverter.textToBinary(line));
+        }
+
+        @Override
+        public JSONObject decode(byte[] frame) throws JSONException {
+            return BinaryMessageConverter.fromBinary(frame);
+        }
+
+        @Override
+        public byte[] readFrame(InputStream in) throws IOException {
+            byte[] length = new byte[LENGTH_SIZE];
+            if (!readFully(in, length, true)) {
+                return null;
+            }
+            byte[] frame = new byte[checkLength(ByteBuffer.wrap(length).getInt())];
+            readFully(in, frame, false);
+            return frame;
+        }
+    };
+
+    /** The first byte sent on a binary connection. */
+    public static final byte BINARY_PREAMBLE = (byte) 0xB1;
+    static final byte FRAME_DELIMITER = '\n';
+    static final int LENGTH_SIZE = 4;
+    /** The largest frame read, without its delimiter or length: a longer one is a broken or hostile peer. */
+    public static final int MAX_FRAME_LENGTH = 64 << 20;
+
+    /**
+     * @param message a JSON message
+     * @return the message framed for this protocol
+     * @throws JSONException if the message cannot be encoded
+     */
+    public abstract byte[] encode(JSONObject message) throws JSONException;
+
+    /**
+     * @param line a line of plain text, without line terminator
+     * @return the line framed for this protocol
+     */
+    public abstract byte[] encodeLine(String line);
+
+    /**
+     * @param frame a frame of this protocol, without its delimiter or length
+     * @return the JSON message it carries
+     * @throws JSONException if the frame is not a valid message
+     */
+    public abstract JSONObject decode(byte[] frame) throws JSONException;
+
+    /**
+     * Reads a frame from a blocking stream.
+     * @param in a buffered stream
+     * @return the frame, without its delimiter or length, or null if the stream ended between two frames
+     * @throws IOException if the stream cannot be read or ends in the middle of a frame
+     */
+    public abstract byte[] readFrame(InputStream in) throws IOException;
+
+    /**
+     * @param name the name of a protocol, case insensitive
+     * @return the protocol
+     * @throws IllegalArgumentException if there is no such protocol
+     */
+    public static WireProtocol fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    /**
+     * @param length the length read before a binary frame
+     * @return the length
+     * @throws IOException if it is negative or more than {@link #MAX_FRAME_LENGTH}
+     */
+    static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    private static byte[] withLength(byte[] frame) {
+        return ByteBuffer.allocate(LENGTH_SIZE + frame.length).putInt(frame.length).put(frame).array();
+    }
+
+    private static boolean readFully(InputStream in, byte[] buffer, boolean eofAllowed) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n == -1) {
+                if (read == 0 && eofAllowed) {
+                    return false;
+                }
+                throw new EOFException("Truncated frame");
+            }
+            read += n;
+        }
+        return true;
+    }
+}
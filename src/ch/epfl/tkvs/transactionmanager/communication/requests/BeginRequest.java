@@ -5,6 +5,7 @@ import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
 import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
 import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
 import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.responses.BeginResponse;
 
 
 /**
@@ -18,12 +19,19 @@ public class BeginRequest extends Message {
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
     public static final String MESSAGE_TYPE = "begin_request";
 
+    /** Transaction id of a begin request that leaves the choice of the id to the primary transaction manager */
+    public static final int UNASSIGNED_ID = -1;
+
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
     private int transactionId;
 
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_PRIMARY_MSG)
     private boolean primary;
 
+    // Version of the routing table with which the client chose the primary TM, checked when the TM assigns the id
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_ROUTING_VERSION)
+    private int routingVersion;
+
     @Override
     public String toString() {
         return MESSAGE_TYPE + " : t" + transactionId + "  primary?" + primary;
@@ -37,6 +45,14 @@ public class BeginRequest extends Message {
         return primary;
     }
 
+    public int getRoutingVersion() {
+        return routingVersion;
+    }
+
+    public boolean hasTransactionId() {
+        return transactionId != UNASSIGNED_ID;
+    }
+
     @JSONConstructor
     public BeginRequest(int transactionId, boolean primary) {
         this.transactionId = transactionId;
@@ -48,4 +64,16 @@ public class BeginRequest extends Message {
         this.primary = true;
     }
 
+    /**
+     * Begins a transaction whose id is assigned by the primary transaction manager, which answers with a
+     * {@link BeginResponse}.
+     * @param routingVersion the version of the routing table in which the client looked up the primary TM
+     * @return the request
+     */
+    public static BeginRequest assignedByPrimary(int routingVersion) {
+        BeginRequest request = new BeginRequest(UNASSIGNED_ID);
+        request.routingVersion = routingVersion;
+        return request;
+    }
+
 }
@@ -0,0 +1,91 @@
+package ch.epfl.tkvs.transactionmanager.communication.requests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MultiReadResponse;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+
+
+/**
+ * This message is sent to a {@link TransactionManager} to get the values of several keys in one round trip. It is
+ * answered with a {@link MultiReadResponse} holding the values in the order of the keys.
+ */
+public class MultiReadRequest extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "multi_read_request";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
+    private int transactionId;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_KEY, base64 = true)
+    private String encodedKeys;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_HASH, base64 = true)
+    private String encodedHashes;
+
+    /**
+     * @param transactionId the transaction reading the keys
+     * @param encodedKeys the keys, each encoded as in a {@link ReadRequest}
+     * @param hashes the locality hashes of the keys
+     */
+    @JSONConstructor
+    public MultiReadRequest(int transactionId, ArrayList<String> encodedKeys, ArrayList<Integer> hashes) {
+        this.transactionId = transactionId;
+        try {
+            this.encodedKeys = Base64Utils.convertToBase64(encodedKeys);
+            this.encodedHashes = Base64Utils.convertToBase64(hashes);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MESSAGE_TYPE + " : t" + transactionId + " " + getEncodedKeys().size() + " keys";
+    }
+
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getEncodedKeys() {
+        try {
+            return (ArrayList<String>) Base64Utils.convertFromBase64(encodedKeys);
+        } catch (Exception e) {
+            return new ArrayList<String>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<Integer> getLocalityHashes() {
+        try {
+            return (ArrayList<Integer>) Base64Utils.convertFromBase64(encodedHashes);
+        } catch (Exception e) {
+            return new ArrayList<Integer>();
+        }
+    }
+
+    /**
+     * Splits this request in one {@link ReadRequest} per key.
+     * @return the single-key requests, in the order of the keys
+     */
+    public List<ReadRequest> toReadRequests() {
+        ArrayList<String> keys = getEncodedKeys();
+        ArrayList<Integer> hashes = getLocalityHashes();
+
+        List<ReadRequest> requests = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            requests.add(ReadRequest.fromEncodedKey(transactionId, keys.get(i), hashes.get(i)));
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,104 @@
+package ch.epfl.tkvs.transactionmanager.communication.requests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+
+
+/**
+ * This message is sent to a {@link TransactionManager} to write values to several keys in one round trip.
+ */
+public class MultiWriteRequest extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "multi_write_request";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
+    private int transactionId;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_KEY, base64 = true)
+    private String encodedKeys;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE, base64 = true)
+    private String encodedValues;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_HASH, base64 = true)
+    private String encodedHashes;
+
+    /**
+     * @param transactionId the transaction writing the keys
+     * @param encodedKeys the keys, each encoded as in a {@link WriteRequest}
+     * @param encodedValues the values, each encoded as in a {@link WriteRequest}
+     * @param hashes the locality hashes of the keys
+     */
+    @JSONConstructor
+    public MultiWriteRequest(int transactionId, ArrayList<String> encodedKeys, ArrayList<String> encodedValues, ArrayList<Integer> hashes) {
+        this.transactionId = transactionId;
+        try {
+            this.encodedKeys = Base64Utils.convertToBase64(encodedKeys);
+            this.encodedValues = Base64Utils.convertToBase64(encodedValues);
+            this.encodedHashes = Base64Utils.convertToBase64(hashes);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MESSAGE_TYPE + " : t" + transactionId + " " + getEncodedKeys().size() + " keys";
+    }
+
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getEncodedKeys() {
+        try {
+            return (ArrayList<String>) Base64Utils.convertFromBase64(encodedKeys);
+        } catch (Exception e) {
+            return new ArrayList<String>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getEncodedValues() {
+        try {
+            return (ArrayList<String>) Base64Utils.convertFromBase64(encodedValues);
+        } catch (Exception e) {
+            return new ArrayList<String>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<Integer> getLocalityHashes() {
+        try {
+            return (ArrayList<Integer>) Base64Utils.convertFromBase64(encodedHashes);
+        } catch (Exception e) {
+            return new ArrayList<Integer>();
+        }
+    }
+
+    /**
+     * Splits this request in one {@link WriteRequest} per key.
+     * @return the single-key requests, in the order of the keys
+     */
+    public List<WriteRequest> toWriteRequests() {
+        ArrayList<String> keys = getEncodedKeys();
+        ArrayList<String> values = getEncodedValues();
+        ArrayList<Integer> hashes = getLocalityHashes();
+
+        List<WriteRequest> requests = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            requests.add(WriteRequest.fromEncoded(transactionId, keys.get(i), values.get(i), hashes.get(i)));
+        }
+        return requests;
+    }
+}
@@ -3,6 +3,7 @@ package ch.epfl.tkvs.transactionmanager.communication.requests;
 import java.io.IOException;
 import java.io.Serializable;
 
+import ch.epfl.tkvs.keyvaluestore.ByteKey;
 import ch.epfl.tkvs.transactionmanager.TransactionManager;
 import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
 import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
@@ -23,13 +24,17 @@ public class ReadRequest extends Message {
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
     private int transactionId;
 
-    @JSONAnnotation(key = JSONCommunication.KEY_FOR_KEY)
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_KEY, base64 = true)
     private String encodedKey;
 
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_HASH)
     private int localityHash;
 
+    // The attributes are all set by the decoder, encoding a null key would be wasted
     @JSONConstructor
+    private ReadRequest() {
+    }
+
     public ReadRequest(int transactionId, Serializable key, int hash) {
         this.transactionId = transactionId;
         try {
@@ -40,6 +45,17 @@ public class ReadRequest extends Message {
         this.localityHash = hash;
     }
 
+    /**
+     * Builds a request for a key that is already encoded, as the keys of a {@link MultiReadRequest}.
+     */
+    public static ReadRequest fromEncodedKey(int transactionId, String encodedKey, int hash) {
+        ReadRequest request = new ReadRequest();
+        request.transactionId = transactionId;
+        request.localityHash = hash;
+        request.encodedKey = encodedKey;
+        return request;
+    }
+
     @Override
     public String toString() {
         String key;
@@ -59,6 +75,13 @@ public class ReadRequest extends Message {
         return encodedKey;
     }
 
+    /**
+     * @return the key, in the canonical form in which it is stored
+     */
+    public ByteKey getKey() {
+        return ByteKey.fromBase64(encodedKey);
+    }
+
     public int getLocalityHash() {
         return localityHash;
     }
@@ -0,0 +1,29 @@
+package ch.epfl.tkvs.transactionmanager.communication.requests;
+
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.responses.RoutingTableResponse;
+import ch.epfl.tkvs.user.RoutingCache;
+import ch.epfl.tkvs.yarn.appmaster.AppMaster;
+
+
+/**
+ * This message is sent to the {@link AppMaster} by the {@link RoutingCache} of a client to get the current routing
+ * table. The AppMaster answers with a {@link RoutingTableResponse}.
+ */
+public class RoutingTableRequest extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "routing_table_request";
+
+    @JSONConstructor
+    public RoutingTableRequest() {
+    }
+
+    @Override
+    public String toString() {
+        return MESSAGE_TYPE;
+    }
+}
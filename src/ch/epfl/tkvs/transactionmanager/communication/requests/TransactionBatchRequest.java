@@ -0,0 +1,123 @@
+package ch.epfl.tkvs.transactionmanager.communication.requests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionBatchResponse;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+
+
+/**
+ * This message is sent to the primary {@link TransactionManager} of a new transaction to execute all its operations in
+ * one round trip: the TM begins the transaction, executes the reads and writes in order, and tries to commit it if
+ * {@link #commit} is true. It answers with a {@link TransactionBatchResponse}.
+ *
+ * An operation is a read if its value is null, a write otherwise.
+ */
+public class TransactionBatchRequest extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "transaction_batch_request";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_ROUTING_VERSION)
+    private int routingVersion;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_KEY, base64 = true)
+    private String encodedKeys;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE, base64 = true)
+    private String encodedValues;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_HASH, base64 = true)
+    private String encodedHashes;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_COMMIT)
+    private boolean commit;
+
+    /**
+     * @param routingVersion the version of the routing table in which the client looked up the primary TM
+     * @param encodedKeys the keys of the operations, each encoded as in a {@link ReadRequest}
+     * @param encodedValues the values of the writes, each encoded as in a {@link WriteRequest}, and null for the reads
+     * @param hashes the locality hashes of the keys
+     * @param commit whether the transaction is committed after the operations or left live
+     */
+    @JSONConstructor
+    public TransactionBatchRequest(int routingVersion, ArrayList<String> encodedKeys, ArrayList<String> encodedValues, ArrayList<Integer> hashes, boolean commit) {
+        this.routingVersion = routingVersion;
+        this.commit = commit;
+        try {
+            this.encodedKeys = Base64Utils.convertToBase64(encodedKeys);
+            this.encodedValues = Base64Utils.convertToBase64(encodedValues);
+            this.encodedHashes = Base64Utils.convertToBase64(hashes);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MESSAGE_TYPE + " : " + getEncodedKeys().size() + " operations  commit?" + commit;
+    }
+
+    public int getRoutingVersion() {
+        return routingVersion;
+    }
+
+    public boolean shouldCommit() {
+        return commit;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getEncodedKeys() {
+        try {
+            return (ArrayList<String>) Base64Utils.convertFromBase64(encodedKeys);
+        } catch (Exception e) {
+            return new ArrayList<String>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getEncodedValues() {
+        try {
+            return (ArrayList<String>) Base64Utils.convertFromBase64(encodedValues);
+        } catch (Exception e) {
+            return new ArrayList<String>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<Integer> getLocalityHashes() {
+        try {
+            return (ArrayList<Integer>) Base64Utils.convertFromBase64(encodedHashes);
+        } catch (Exception e) {
+            return new ArrayList<Integer>();
+        }
+    }
+
+    /**
+     * Splits this request in one {@link ReadRequest} or {@link WriteRequest} per operation.
+     * @param transactionId the id assigned to the transaction
+     * @return the single-key requests, in the order of the operations
+     */
+    public List<Message> toRequests(int transactionId) {
+        ArrayList<String> keys = getEncodedKeys();
+        ArrayList<String> values = getEncodedValues();
+        ArrayList<Integer> hashes = getLocalityHashes();
+
+        List<Message> requests = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            if (values.get(i) == null) {
+                requests.add(ReadRequest.fromEncodedKey(transactionId, keys.get(i), hashes.get(i)));
+            } else {
+                requests.add(WriteRequest.fromEncoded(transactionId, keys.get(i), values.get(i), hashes.get(i)));
+            }
+        }
+        return requests;
+    }
+}
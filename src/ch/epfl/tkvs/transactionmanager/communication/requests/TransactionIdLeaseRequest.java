@@ -0,0 +1,38 @@
+package ch.epfl.tkvs.transactionmanager.communication.requests;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionIdLeaseResponse;
+import ch.epfl.tkvs.yarn.appmaster.AppMaster;
+
+
+/**
+ * This message is sent to the {@link AppMaster} by a {@link TransactionManager} that ran out of transaction ids. The
+ * AppMaster answers with a {@link TransactionIdLeaseResponse} holding a block of consecutive ids that no other TM
+ * will get.
+ */
+public class TransactionIdLeaseRequest extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "xid_lease_request";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_COUNT)
+    private int count;
+
+    @JSONConstructor
+    public TransactionIdLeaseRequest(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        return MESSAGE_TYPE + " : count=" + count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -3,6 +3,7 @@ package ch.epfl.tkvs.transactionmanager.communication.requests;
 import java.io.IOException;
 import java.io.Serializable;
 
+import ch.epfl.tkvs.keyvaluestore.ByteKey;
 import ch.epfl.tkvs.transactionmanager.TransactionManager;
 import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
 import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
@@ -23,16 +24,20 @@ public class WriteRequest extends Message {
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
     private int transactionId;
 
-    @JSONAnnotation(key = JSONCommunication.KEY_FOR_KEY)
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_KEY, base64 = true)
     private String encodedKey;
 
-    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE)
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE, base64 = true)
     private String encodedValue;
 
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_HASH)
     private int localityHash;
 
+    // The attributes are all set by the decoder, encoding null keys and values would be wasted
     @JSONConstructor
+    private WriteRequest() {
+    }
+
     public WriteRequest(int transactionId, Serializable key, Serializable value, int hash) {
 
         this.transactionId = transactionId;
@@ -46,6 +51,18 @@ public class WriteRequest extends Message {
         }
     }
 
+    /**
+     * Builds a request for a key and a value that are already encoded, as the ones of a {@link MultiWriteRequest}.
+     */
+    public static WriteRequest fromEncoded(int transactionId, String encodedKey, String encodedValue, int hash) {
+        WriteRequest request = new WriteRequest();
+        request.transactionId = transactionId;
+        request.localityHash = hash;
+        request.encodedKey = encodedKey;
+        request.encodedValue = encodedValue;
+        return request;
+    }
+
     @Override
     public String toString()
 
@@ -78,6 +95,20 @@ public class WriteRequest extends Message {
         return encodedValue;
     }
 
+    /**
+     * @return the key, in the canonical form in which it is stored
+     */
+    public ByteKey getKey() {
+        return ByteKey.fromBase64(encodedKey);
+    }
+
+    /**
+     * @return the serialized value, as it is stored
+     */
+    public byte[] getValue() {
+        return Base64Utils.decodeBytes(encodedValue);
+    }
+
     public int getLocalityHash() {
         return localityHash;
     }
@@ -0,0 +1,73 @@
+package ch.epfl.tkvs.transactionmanager.communication.responses;
+
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
+
+
+/**
+ * Response to a {@link BeginRequest} whose transaction id was left for the primary {@link TransactionManager} to
+ * assign. Besides the outcome of the request, it holds the id given to the transaction and the version of the routing
+ * table known by the TM: a client whose version differs looked up the TM in a stale table.
+ */
+public class BeginResponse extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "begin_response";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_SUCCESS)
+    private boolean success;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
+    private int transactionId;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_EXCEPTION)
+    private String exceptionMessage;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_ROUTING_VERSION)
+    private int routingVersion;
+
+    public BeginResponse(int transactionId, GenericSuccessResponse outcome, int routingVersion) {
+        this(outcome.getSuccess(), transactionId, outcome.getExceptionMessage(), routingVersion);
+    }
+
+    public BeginResponse(AbortException exception, int routingVersion) {
+        this(false, BeginRequest.UNASSIGNED_ID, exception.getMessage(), routingVersion);
+    }
+
+    @JSONConstructor
+    public BeginResponse(boolean success, int transactionId, String exceptionMessage, int routingVersion) {
+        this.success = success;
+        this.transactionId = transactionId;
+        this.exceptionMessage = exceptionMessage;
+        this.routingVersion = routingVersion;
+    }
+
+    public boolean getSuccess() {
+        return success;
+    }
+
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    public String getExceptionMessage() {
+        return exceptionMessage;
+    }
+
+    public int getRoutingVersion() {
+        return routingVersion;
+    }
+
+    @Override
+    public String toString() {
+        if (success)
+            return MESSAGE_TYPE + " : t" + transactionId;
+        else
+            return MESSAGE_TYPE + " : t" + transactionId + " " + exceptionMessage;
+    }
+}
@@ -0,0 +1,101 @@
+package ch.epfl.tkvs.transactionmanager.communication.responses;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+
+
+/**
+ * Response for a {@link MultiReadRequest}. If all the reads were successful, {@link #success} stores true and
+ * {@link #encodedValues} stores the values in the order of the requested keys. Otherwise {@link #success} stores false
+ * and {@link #exceptionMessage} stores the reason of the first failure.
+ */
+public class MultiReadResponse extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "multi_read_response";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_SUCCESS)
+    private boolean success;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE, base64 = true)
+    private String encodedValues;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_EXCEPTION)
+    private String exceptionMessage;
+
+    public MultiReadResponse(ArrayList<String> encodedValues) {
+        this.success = true;
+        try {
+            this.encodedValues = Base64Utils.convertToBase64(encodedValues);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        this.exceptionMessage = " ";
+    }
+
+    public MultiReadResponse(AbortException exception) {
+        this(false, "  ", exception.getMessage());
+    }
+
+    public MultiReadResponse(String exceptionMessage) {
+        this(false, "  ", exceptionMessage);
+    }
+
+    @JSONConstructor
+    public MultiReadResponse(boolean success, String encodedValues, String exceptionMessage) {
+        this.success = success;
+        this.encodedValues = encodedValues;
+        this.exceptionMessage = exceptionMessage;
+    }
+
+    public boolean getSuccess() {
+        return success;
+    }
+
+    public String getExceptionMessage() {
+        return exceptionMessage;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getEncodedValues() {
+        try {
+            return (ArrayList<String>) Base64Utils.convertFromBase64(encodedValues);
+        } catch (Exception e) {
+            return new ArrayList<String>();
+        }
+    }
+
+    /**
+     * @return the decoded values, in the order of the requested keys
+     */
+    public List<Serializable> getValues() {
+        List<Serializable> values = new ArrayList<>();
+        for (String encodedValue : getEncodedValues()) {
+            try {
+                values.add(Base64Utils.convertFromBase64(encodedValue));
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        if (success)
+            return MESSAGE_TYPE + " : " + getEncodedValues().size() + " values";
+        else
+            return MESSAGE_TYPE + " : " + exceptionMessage;
+    }
+}
@@ -25,7 +25,7 @@ public class ReadResponse extends Message {
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_SUCCESS)
     private boolean success;
 
-    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE)
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE, base64 = true)
     private String encodedValue;
 
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_EXCEPTION)
@@ -41,6 +41,13 @@ public class ReadResponse extends Message {
         this.exceptionMessage = " ";
     }
 
+    /**
+     * @param value the serialized value, as it is stored
+     */
+    public ReadResponse(byte[] value) {
+        this(Base64Utils.encodeBytes(value));
+    }
+
     public ReadResponse(AbortException exception) {
         this.success = false;
         this.encodedValue = "  ";
@@ -58,6 +65,10 @@ public class ReadResponse extends Message {
         return success;
     }
 
+    public String getEncodedValue() {
+        return encodedValue;
+    }
+
     public Serializable getValue() {
         try {
             return Base64Utils.convertFromBase64(encodedValue);
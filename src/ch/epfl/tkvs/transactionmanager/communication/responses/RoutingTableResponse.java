@@ -0,0 +1,45 @@
+package ch.epfl.tkvs.transactionmanager.communication.responses;
+
+import java.io.IOException;
+
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.requests.RoutingTableRequest;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+import ch.epfl.tkvs.yarn.RoutingTable;
+
+
+/**
+ * Response to a {@link RoutingTableRequest}. Contains the routing table of the distributed system.
+ */
+public class RoutingTableResponse extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "routing_table_response";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_ROUTING_TABLE, base64 = true)
+    private String encodedRoutingTable;
+
+    @JSONConstructor
+    public RoutingTableResponse(RoutingTable rt) throws IOException {
+        encodedRoutingTable = Base64Utils.convertToBase64(rt);
+    }
+
+    /**
+     * @return the routing table or null in case of failure
+     */
+    public RoutingTable getRoutingTable() {
+        try {
+            return (RoutingTable) Base64Utils.convertFromBase64(encodedRoutingTable);
+        } catch (ClassNotFoundException | IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MESSAGE_TYPE;
+    }
+}
@@ -0,0 +1,121 @@
+package ch.epfl.tkvs.transactionmanager.communication.responses;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionBatchRequest;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+
+
+/**
+ * Response for a {@link TransactionBatchRequest}. If all the operations (and the commit, if requested) were successful,
+ * {@link #success} stores true and {@link #encodedValues} stores the values read, in the order of the reads. Otherwise
+ * {@link #success} stores false, {@link #exceptionMessage} stores the reason of the failure and the transaction is
+ * aborted. As in a {@link BeginResponse}, {@link #routingVersion} is the version of the routing table known by the TM.
+ */
+public class TransactionBatchResponse extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "transaction_batch_response";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_SUCCESS)
+    private boolean success;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
+    private int transactionId;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_VALUE, base64 = true)
+    private String encodedValues;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_EXCEPTION)
+    private String exceptionMessage;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_ROUTING_VERSION)
+    private int routingVersion;
+
+    public TransactionBatchResponse(int transactionId, ArrayList<String> encodedValues, int routingVersion) {
+        this.success = true;
+        this.transactionId = transactionId;
+        try {
+            this.encodedValues = Base64Utils.convertToBase64(encodedValues);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        this.exceptionMessage = " ";
+        this.routingVersion = routingVersion;
+    }
+
+    public TransactionBatchResponse(int transactionId, String exceptionMessage, int routingVersion) {
+        this(false, transactionId, "  ", exceptionMessage, routingVersion);
+    }
+
+    public TransactionBatchResponse(AbortException exception, int routingVersion) {
+        this(BeginRequest.UNASSIGNED_ID, exception.getMessage(), routingVersion);
+    }
+
+    @JSONConstructor
+    public TransactionBatchResponse(boolean success, int transactionId, String encodedValues, String exceptionMessage, int routingVersion) {
+        this.success = success;
+        this.transactionId = transactionId;
+        this.encodedValues = encodedValues;
+        this.exceptionMessage = exceptionMessage;
+        this.routingVersion = routingVersion;
+    }
+
+    public boolean getSuccess() {
+        return success;
+    }
+
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    public String getExceptionMessage() {
+        return exceptionMessage;
+    }
+
+    public int getRoutingVersion() {
+        return routingVersion;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getEncodedValues() {
+        try {
+            return (ArrayList<String>) Base64Utils.convertFromBase64(encodedValues);
+        } catch (Exception e) {
+            return new ArrayList<String>();
+        }
+    }
+
+    /**
+     * @return the decoded values, in the order of the reads
+     */
+    public List<Serializable> getValues() {
+        List<Serializable> values = new ArrayList<>();
+        for (String encodedValue : getEncodedValues()) {
+            try {
+                values.add(Base64Utils.convertFromBase64(encodedValue));
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        if (success)
+            return MESSAGE_TYPE + " : t" + transactionId + " " + getEncodedValues().size() + " values";
+        else
+            return MESSAGE_TYPE + " : t" + transactionId + " " + exceptionMessage;
+    }
+}
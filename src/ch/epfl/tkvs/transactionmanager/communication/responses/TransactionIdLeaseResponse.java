@@ -0,0 +1,43 @@
+package ch.epfl.tkvs.transactionmanager.communication.responses;
+
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionIdLeaseRequest;
+
+
+/**
+ * Response to a {@link TransactionIdLeaseRequest}. The leased transaction ids are {@link #firstId} to
+ * {@link #firstId} + {@link #count} - 1.
+ */
+public class TransactionIdLeaseResponse extends Message {
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_MESSAGE_TYPE)
+    public static final String MESSAGE_TYPE = "xid_lease_response";
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
+    private int firstId;
+
+    @JSONAnnotation(key = JSONCommunication.KEY_FOR_COUNT)
+    private int count;
+
+    @JSONConstructor
+    public TransactionIdLeaseResponse(int firstId, int count) {
+        this.firstId = firstId;
+        this.count = count;
+    }
+
+    public int getFirstId() {
+        return firstId;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return MESSAGE_TYPE + " : [" + firstId + ", " + (firstId + count) + ")";
+    }
+}
@@ -12,8 +12,9 @@ import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionManager
 
 /**
  * 
- * Response to a {@link TransactionManagerRequest}. Contains transaction id and IP address and port number for the
- * primary {@link TransactionManager} for this transaction
+ * Response to a {@link TransactionManagerRequest}. Contains IP address and port number for the primary
+ * {@link TransactionManager} for this transaction. The transaction id is assigned by that TM when the transaction
+ * begins.
  */
 public class TransactionManagerResponse extends Message {
 
@@ -23,9 +24,6 @@ public class TransactionManagerResponse extends Message {
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_SUCCESS)
     private boolean success;
 
-    @JSONAnnotation(key = JSONCommunication.KEY_FOR_TRANSACTION_ID)
-    private int transactionId;
-
     @JSONAnnotation(key = JSONCommunication.KEY_FOR_IP)
     private String ip;
 
@@ -33,9 +31,8 @@ public class TransactionManagerResponse extends Message {
     private Integer port;
 
     @JSONConstructor
-    public TransactionManagerResponse(boolean success, int transactionId, String ip, Integer port) throws IOException {
+    public TransactionManagerResponse(boolean success, String ip, Integer port) throws IOException {
         this.success = success;
-        this.transactionId = transactionId;
         this.port = port;
         this.ip = ip;
     }
@@ -48,12 +45,8 @@ public class TransactionManagerResponse extends Message {
         return port;
     }
 
-    public int getTransactionId() {
-        return transactionId;
-    }
-
     @Override
     public String toString() {
-        return MESSAGE_TYPE + " : " + success + "  id=" + transactionId + "  ip=" + ip + "  port=" + port;
+        return MESSAGE_TYPE + " : " + success + "  ip=" + ip + "  port=" + port;
     }
 }
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.codec.binary.Base64;
 
@@ -31,4 +32,20 @@ public class Base64Utils {
 
         return Base64.encodeBase64String(bytes).replaceAll("[\r\n]+", "");
     }
+
+    /**
+     * @param bytes raw bytes, such as a serialized key or value
+     * @return their Base64 form, on a single line
+     */
+    public static String encodeBytes(byte[] bytes) {
+        return new String(Base64.encodeBase64(bytes), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param base64 the Base64 form of raw bytes
+     * @return the bytes
+     */
+    public static byte[] decodeBytes(String base64) {
+        return Base64.decodeBase64(base64);
+    }
 }
@@ -0,0 +1,339 @@
+package ch.epfl.tkvs.transactionmanager.communication.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import ch.epfl.tkvs.transactionmanager.communication.DeadlockInfoMessage;
+import ch.epfl.tkvs.transactionmanager.communication.ExitMessage;
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.PingMessage;
+import ch.epfl.tkvs.transactionmanager.communication.TMInitMessage;
+import ch.epfl.tkvs.transactionmanager.communication.TransactionTerminateMessage;
+import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.CommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiWriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.RoutingTableRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionBatchRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionIdLeaseRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionManagerRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TryCommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.BeginResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MinAliveTransactionResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MultiReadResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.RoutingTableResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionBatchResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionIdLeaseResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionManagerResponse;
+
+
+/**
+ * A converter between the JSON form of a {@link Message} and its compact binary form.
+ *
+ * The binary form starts with a byte identifying the message type, followed by the request id and the sequence number
+ * of the request, if any, then by the attributes of the message, sorted by JSON key. The integers are varints (zigzag
+ * encoded when they can be negative), the strings are prefixed by their length and the Base64 attributes (see
+ * {@link JSONAnnotation#base64()}) are sent as raw bytes. Nothing else is sent: the keys are implied by the type.
+ *
+ * The type bytes are the positions of the message classes in {@link #MESSAGE_CLASSES}, new messages must be appended.
+ */
+public class BinaryMessageConverter {
+
+    /** The type byte of a frame carrying a line of plain text rather than a message. */
+    public static final byte TEXT_TYPE = 0;
+
+    private static final List<Class<? extends Message>> MESSAGE_CLASSES = Arrays.asList(PingMessage.class, ExitMessage.class, TMInitMessage.class,
+            TransactionTerminateMessage.class, DeadlockInfoMessage.class, TransactionManagerRequest.class, TransactionManagerResponse.class,
+            MinAliveTransactionResponse.class, BeginRequest.class, BeginResponse.class, ReadRequest.class, ReadResponse.class,
+            WriteRequest.class, MultiReadRequest.class, MultiReadResponse.class, MultiWriteRequest.class, PrepareRequest.class,
+            TryCommitRequest.class, CommitRequest.class, AbortRequest.class, GenericSuccessResponse.class, TransactionIdLeaseRequest.class,
+            TransactionIdLeaseResponse.class, RoutingTableRequest.class, RoutingTableResponse.class, TransactionBatchRequest.class,
+            TransactionBatchResponse.class);
+
+    private enum Kind {
+        INT, NULLABLE_INT, BOOLEAN, STRING, BYTES
+    }
+
+    private static class Attribute {
+
+        final String key;
+        final Kind kind;
+
+        Attribute(String key, Kind kind) {
+            this.key = key;
+            this.kind = kind;
+        }
+    }
+
+    private static class Schema {
+
+        final byte type;
+        final String messageType;
+        final Attribute[] attributes;
+
+        Schema(byte type, String messageType, Attribute[] attributes) {
+            this.type = type;
+            this.messageType = messageType;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final Map<String, Schema> schemasByName = new HashMap<>();
+    private static final Schema[] schemasByType = new Schema[MESSAGE_CLASSES.size() + 1];
+
+    static {
+        for (int i = 0; i < MESSAGE_CLASSES.size(); i++) {
+            Schema schema = schemaOf((byte) (i + 1), MESSAGE_CLASSES.get(i));
+            schemasByName.put(schema.messageType, schema);
+            schemasByType[schema.type] = schema;
+        }
+    }
+
+    private static Schema schemaOf(byte type, Class<? extends Message> messageClass) {
+        String messageType = null;
+        List<Attribute> attributes = new ArrayList<>();
+
+        for (Field field : messageClass.getDeclaredFields()) {
+            JSONAnnotation jsonAnnot = field.getAnnotation(JSONAnnotation.class);
+            if (jsonAnnot == null) {
+                continue;
+            }
+            if (Modifier.isStatic(field.getModifiers())) {
+                try {
+                    messageType = (String) field.get(null);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+                continue;
+            }
+
+            Class<?> fieldType = field.getType();
+            Kind kind;
+            if (fieldType == int.class) {
+                kind = Kind.INT;
+            } else if (fieldType == Integer.class) {
+                kind = Kind.NULLABLE_INT;
+            } else if (fieldType == boolean.class) {
+                kind = Kind.BOOLEAN;
+            } else if (fieldType == String.class) {
+                kind = jsonAnnot.base64() ? Kind.BYTES : Kind.STRING;
+            } else {
+                throw new IllegalStateException(messageClass + "." + field.getName() + " has unsupported type " + fieldType);
+            }
+            attributes.add(new Attribute(jsonAnnot.key(), kind));
+        }
+
+        // The declaration order returned by reflection is unspecified
+        Collections.sort(attributes, new Comparator<Attribute>() {
+
+            @Override
+            public int compare(Attribute a, Attribute b) {
+                return a.key.compareTo(b.key);
+            }
+        });
+        return new Schema(type, messageType, attributes.toArray(new Attribute[attributes.size()]));
+    }
+
+    /**
+     * @param json a message as converted by {@link Message2JSONConverter}, possibly tagged with a request id and a
+     * sequence number
+     * @return the binary form of the message
+     * @throws JSONException if the message type is unknown or an attribute has an unexpected type
+     */
+    public static byte[] toBinary(JSONObject json) throws JSONException {
+        Schema schema = schemasByName.get(json.getString(JSONCommunication.KEY_FOR_MESSAGE_TYPE));
+        if (schema == null) {
+            throw new JSONException("Unknown message type " + json.getString(JSONCommunication.KEY_FOR_MESSAGE_TYPE));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(schema.type);
+        writeOptional(out, json, JSONCommunication.KEY_FOR_REQUEST_ID);
+        writeOptional(out, json, JSONCommunication.KEY_FOR_SEQUENCE);
+
+        for (Attribute attribute : schema.attributes) {
+            Object value = json.opt(attribute.key);
+            try {
+                switch (attribute.kind) {
+                case INT:
+                    writeVarint(out, zigzag(((Number) value).intValue()));
+                    break;
+                case NULLABLE_INT:
+                    if (value == null) {
+                        out.write(0);
+                    } else {
+                        out.write(1);
+                        writeVarint(out, zigzag(((Number) value).intValue()));
+                    }
+                    break;
+                case BOOLEAN:
+                    out.write((Boolean) value ? 1 : 0);
+                    break;
+                case STRING:
+                    writeBytes(out, value == null ? null : ((String) value).getBytes(StandardCharsets.UTF_8));
+                    break;
+                case BYTES:
+                    writeBytes(out, value == null ? null : Base64.decodeBase64((String) value));
+                    break;
+                }
+            } catch (ClassCastException | NullPointerException e) {
+                throw new JSONException(attribute.key + " of " + schema.messageType + " has value " + value);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param frame the binary form of a message
+     * @return the message as converted by {@link Message2JSONConverter}, with its request id and sequence number
+     * @throws JSONException if the frame is not a valid message
+     */
+    public static JSONObject fromBinary(byte[] frame) throws JSONException {
+        Schema schema = frame.length > 0 && frame[0] > 0 && frame[0] < schemasByType.length ? schemasByType[frame[0]] : null;
+        if (schema == null) {
+            throw new JSONException("Unknown message type byte " + (frame.length > 0 ? frame[0] : "(empty frame)"));
+        }
+
+        JSONObject json = new JSONObject();
+        json.put(JSONCommunication.KEY_FOR_MESSAGE_TYPE, schema.messageType);
+        int[] position = new int[] { 1 };
+        try {
+            readOptional(frame, position, json, JSONCommunication.KEY_FOR_REQUEST_ID);
+            readOptional(frame, position, json, JSONCommunication.KEY_FOR_SEQUENCE);
+
+            for (Attribute attribute : schema.attributes) {
+                switch (attribute.kind) {
+                case INT:
+                    json.put(attribute.key, unzigzag(readVarint(frame, position)));
+                    break;
+                case NULLABLE_INT:
+                    if (frame[position[0]++] != 0) {
+                        json.put(attribute.key, unzigzag(readVarint(frame, position)));
+                    }
+                    break;
+                case BOOLEAN:
+                    json.put(attribute.key, frame[position[0]++] != 0);
+                    break;
+                case STRING:
+                    byte[] text = readBytes(frame, position);
+                    if (text != null) {
+                        json.put(attribute.key, new String(text, StandardCharsets.UTF_8));
+                    }
+                    break;
+                case BYTES:
+                    byte[] bytes = readBytes(frame, position);
+                    if (bytes != null) {
+                        json.put(attribute.key, new String(Base64.encodeBase64(bytes), StandardCharsets.US_ASCII));
+                    }
+                    break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new JSONException("Truncated " + schema.messageType);
+        }
+        return json;
+    }
+
+    /**
+     * @param line a line of plain text
+     * @return the binary form of the line
+     */
+    public static byte[] textToBinary(String line) {
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[text.length + 1];
+        frame[0] = TEXT_TYPE;
+        System.arraycopy(text, 0, frame, 1, text.length);
+        return frame;
+    }
+
+    /**
+     * @param frame the binary form of a message or of a line of plain text
+     * @return whether it is a line of plain text
+     */
+    public static boolean isText(byte[] frame) {
+        return frame.length > 0 && frame[0] == TEXT_TYPE;
+    }
+
+    // Absent values are sent as 0, present ones, which are never negative, shifted by one
+    private static void writeOptional(ByteArrayOutputStream out, JSONObject json, String key) throws JSONException {
+        writeVarint(out, json.has(key) ? json.getInt(key) + 1 : 0);
+    }
+
+    private static void readOptional(byte[] frame, int[] position, JSONObject json, String key) throws JSONException {
+        int value = readVarint(frame, position);
+        if (value != 0) {
+            json.put(key, value - 1);
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        if (bytes == null) {
+            out.write(0);
+        } else {
+            writeVarint(out, bytes.length + 1);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static byte[] readBytes(byte[] frame, int[] position) throws JSONException {
+        int length = readVarint(frame, position) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > frame.length - position[0]) {
+            throw new JSONException("Truncated frame");
+        }
+        byte[] bytes = Arrays.copyOfRange(frame, position[0], position[0] + length);
+        position[0] += length;
+        return bytes;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] frame, int[] position) throws JSONException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = frame[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new JSONException("Malformed varint");
+    }
+}
@@ -0,0 +1,250 @@
+package ch.epfl.tkvs.transactionmanager.communication.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import ch.epfl.tkvs.transactionmanager.communication.JSONAnnotation;
+import ch.epfl.tkvs.transactionmanager.communication.JSONConstructor;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.InvalidMessageException;
+
+
+/**
+ * The conversion of a {@link Message} class from and to JSON, compiled once per class.
+ *
+ * The {@link JSONConstructor}, with its dummy arguments already bound, and the accessors of the {@link JSONAnnotation}
+ * fields are method handles looked up when the class is first converted. The values of the static fields (the message type) are
+ * read at the same time. Converting a message then does no reflection.
+ */
+class MessageCodec {
+
+    private static final ClassValue<MessageCodec> codecs = new ClassValue<MessageCodec>() {
+
+        @Override
+        protected MessageCodec computeValue(Class<?> messageClass) {
+            return new MessageCodec(messageClass.asSubclass(Message.class));
+        }
+    };
+
+    /**
+     * @param messageClass a message class
+     * @return the codec of the class
+     * @throws IllegalStateException if the class cannot be converted
+     */
+    static MessageCodec of(Class<? extends Message> messageClass) {
+        return codecs.get(messageClass);
+    }
+
+    // How a JSON value is converted to the type of a field, as the xxxValue() method of its box
+    private enum Kind {
+        OBJECT, INT, LONG, DOUBLE, BOOLEAN
+    }
+
+    private static class Attribute {
+
+        final String key;
+        final Kind kind;
+        final Class<?> type;
+        // Null for the final fields, which are not decoded
+        final MethodHandle setter;
+        // (Message)Object for the instance fields, null for the static ones
+        final MethodHandle getter;
+        final Object staticValue;
+
+        Attribute(String key, Kind kind, Class<?> type, MethodHandle setter, MethodHandle getter, Object staticValue) {
+            this.key = key;
+            this.kind = kind;
+            this.type = type;
+            this.setter = setter;
+            this.getter = getter;
+            this.staticValue = staticValue;
+        }
+    }
+
+    private final Class<? extends Message> messageClass;
+    private final MethodHandle constructor;
+    private final Attribute[] attributes;
+
+    private MessageCodec(Class<? extends Message> messageClass) {
+        this.messageClass = messageClass;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            this.constructor = constructorOf(lookup, messageClass);
+
+            List<Attribute> attributes = new ArrayList<>();
+            for (Field field : messageClass.getDeclaredFields()) {
+                JSONAnnotation jsonAnnot = field.getAnnotation(JSONAnnotation.class);
+                if (jsonAnnot == null) {
+                    continue;
+                }
+                field.setAccessible(true);
+
+                boolean isStatic = Modifier.isStatic(field.getModifiers());
+                MethodHandle setter = null;
+                if (!Modifier.isFinal(field.getModifiers())) {
+                    setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Message.class, Object.class));
+                }
+                MethodHandle getter = null;
+                Object staticValue = null;
+                if (isStatic) {
+                    staticValue = field.get(null);
+                } else {
+                    getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Message.class));
+                }
+                attributes.add(new Attribute(jsonAnnot.key(), kindOf(field.getType()), field.getType(), setter, getter, staticValue));
+            }
+            this.attributes = attributes.toArray(new Attribute[attributes.size()]);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MethodHandle constructorOf(MethodHandles.Lookup lookup, Class<? extends Message> messageClass) throws IllegalAccessException {
+        Constructor<? extends Message> constructor = null;
+        for (Constructor<?> candidateConstructor : messageClass.getDeclaredConstructors()) {
+            if (candidateConstructor.isAnnotationPresent(JSONConstructor.class)) {
+                constructor = (Constructor<? extends Message>) candidateConstructor;
+                constructor.setAccessible(true);
+                break;
+            }
+        }
+
+        if (constructor == null) {
+            Constructor<?>[] constructors = messageClass.getConstructors();
+            if (constructors.length == 0) {
+                return null;
+            }
+            constructor = (Constructor<? extends Message>) constructors[0];
+        }
+
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        Object[] dummyParams = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (parameterTypes[i] == boolean.class) {
+                dummyParams[i] = false;
+            } else if (parameterTypes[i].isPrimitive()) {
+                // Widened to the parameter type by insertArguments
+                dummyParams[i] = parameterTypes[i] == char.class ? (Object) (char) 0 : (Object) (byte) 0;
+            }
+        }
+        MethodHandle handle = lookup.unreflectConstructor(constructor);
+        return MethodHandles.insertArguments(handle, 0, dummyParams).asType(MethodType.methodType(Message.class));
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        if (type == int.class) {
+            return Kind.INT;
+        } else if (type == long.class) {
+            return Kind.LONG;
+        } else if (type == double.class) {
+            return Kind.DOUBLE;
+        } else if (type == boolean.class) {
+            return Kind.BOOLEAN;
+        }
+        return Kind.OBJECT;
+    }
+
+    /**
+     * @param json the JSON form of a message of this class
+     * @return the message
+     * @throws InvalidMessageException if an attribute is missing or has an incompatible type
+     */
+    Message fromJSON(JSONObject json) throws InvalidMessageException {
+        if (constructor == null) {
+            throw new InvalidMessageException(messageClass + " has no public constructor.");
+        }
+
+        Message message = newMessage();
+        for (Attribute attribute : attributes) {
+            Object value;
+            try {
+                value = json.get(attribute.key);
+            } catch (JSONException e) {
+                throw new InvalidMessageException(e);
+            }
+            if (attribute.setter == null) {
+                continue;
+            }
+
+            Object converted;
+            try {
+                switch (attribute.kind) {
+                case INT:
+                    converted = ((Number) value).intValue();
+                    break;
+                case LONG:
+                    converted = ((Number) value).longValue();
+                    break;
+                case DOUBLE:
+                    converted = ((Number) value).doubleValue();
+                    break;
+                case BOOLEAN:
+                    converted = (Boolean) value;
+                    break;
+                default:
+                    if (!attribute.type.isInstance(value)) {
+                        throw new InvalidMessageException(attribute.key + " has type " + value.getClass());
+                    }
+                    converted = value;
+                }
+            } catch (ClassCastException e) {
+                throw new InvalidMessageException(value.getClass() + " cannot be converted to " + attribute.type);
+            }
+            set(attribute, message, converted);
+        }
+        return message;
+    }
+
+    /**
+     * @param message a message of this class
+     * @return its JSON form
+     * @throws JSONException if an attribute cannot be put in JSON
+     */
+    JSONObject toJSON(Message message) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Attribute attribute : attributes) {
+            json.put(attribute.key, attribute.getter == null ? attribute.staticValue : get(attribute, message));
+        }
+        return json;
+    }
+
+    private Message newMessage() throws InvalidMessageException {
+        try {
+            return (Message) constructor.invokeExact();
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvalidMessageException((Exception) e);
+        }
+    }
+
+    private static void set(Attribute attribute, Message message, Object value) throws InvalidMessageException {
+        try {
+            attribute.setter.invokeExact(message, value);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvalidMessageException((Exception) e);
+        }
+    }
+
+    private static Object get(Attribute attribute, Message message) throws JSONException {
+        try {
+            return (Object) attribute.getter.invokeExact(message);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new JSONException((Exception) e);
+        }
+    }
+}
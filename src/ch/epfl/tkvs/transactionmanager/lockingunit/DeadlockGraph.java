@@ -177,6 +177,28 @@ public class DeadlockGraph implements Serializable {
         return copy;
     }
 
+    /**
+     * Lists the edges of the graph as an array of (waiting transaction, awaited transaction) pairs, the form in which
+     * the graph is reported to the centralized deadlock detection unit.
+     * 
+     * @return the edges, two ints per edge
+     */
+    public int[] getEdges() {
+        int count = 0;
+        for (HashSet<Integer> next : outgoingEdges.values()) {
+            count += next.size();
+        }
+        int[] edges = new int[2 * count];
+        int i = 0;
+        for (Integer key : outgoingEdges.keySet()) {
+            for (Integer neighbor : outgoingEdges.get(key)) {
+                edges[i++] = key;
+                edges[i++] = neighbor;
+            }
+        }
+        return edges;
+    }
+
     /**
      * Detects and removes some nodes to make the graph acyclic
      * 
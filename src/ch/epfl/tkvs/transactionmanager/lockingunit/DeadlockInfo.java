@@ -1,30 +1,63 @@
 package ch.epfl.tkvs.transactionmanager.lockingunit;
 
-import java.io.Serializable;
-import java.util.HashSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Set;
 
 
 /**
  * This class is a wrapper for the information regarding the deadlock graphs to be sent to the centralized decider.
+ *
+ * A report is either full, listing all the edges of the graph and all the active transactions of the transaction
+ * manager (TM), or a delta listing what was added and removed since the report of sequence number
+ * {@link #getBaseSequence()}. The edges are (waiting transaction, awaited transaction) pairs in primitive arrays, and
+ * {@link #encode()} writes all the numbers as variable-length integers.
  */
-public class DeadlockInfo implements Serializable {
+public class DeadlockInfo {
 
-    private static final long serialVersionUID = 1L;
-    private int localHash;
-    private DeadlockGraph graph;
-    private Set<Integer> activeTransactions;
+    // Base sequence number of the full reports
+    public static final int FULL = -1;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int[] NONE = new int[0];
+
+    private final int localHash;
+    private final int sequence;
+    private final int baseSequence;
+    private final int[] addedEdges;
+    private final int[] removedEdges;
+    private final int[] addedTransactions;
+    private final int[] removedTransactions;
 
     /**
      * @param localHash hash describing the particular transaction manager (TM) which sends this info
-     * @param graph the DeadlockGraph held by the LockingUnit of the given TM
+     * @param sequence the number of this report among the reports of the TM
+     * @param baseSequence the number of the report this one is relative to, or {@link #FULL}
+     * @param addedEdges the edges added to the DeadlockGraph held by the LockingUnit of the given TM, two ints per edge
+     * @param removedEdges the edges removed from the DeadlockGraph, empty for a full report
+     * @param addedTransactions the transactions which became alive on the given TM
+     * @param removedTransactions the transactions which ended on the given TM, empty for a full report
+     */
+    public DeadlockInfo(int localHash, int sequence, int baseSequence, int[] addedEdges, int[] removedEdges, int[] addedTransactions, int[] removedTransactions) {
+        this.localHash = localHash;
+        this.sequence = sequence;
+        this.baseSequence = baseSequence;
+        this.addedEdges = addedEdges;
+        this.removedEdges = removedEdges;
+        this.addedTransactions = addedTransactions;
+        this.removedTransactions = removedTransactions;
+    }
+
+    /**
+     * @param localHash hash describing the TM which sends this info
+     * @param sequence the number of this report among the reports of the TM
+     * @param edges all the edges of the DeadlockGraph held by the LockingUnit of the given TM, two ints per edge
      * @param activeTransactions the transactions which were alive on the given TM at the time of the creation of this
      * information.
+     * @return a full report
      */
-    public DeadlockInfo(int localHash, DeadlockGraph graph, HashSet<Integer> activeTransactions) {
-        this.localHash = localHash;
-        this.graph = graph;
-        this.activeTransactions = activeTransactions;
+    public static DeadlockInfo full(int localHash, int sequence, int[] edges, Set<Integer> activeTransactions) {
+        return new DeadlockInfo(localHash, sequence, FULL, edges, NONE, toArray(activeTransactions), NONE);
     }
 
     /**
@@ -34,17 +67,157 @@ public class DeadlockInfo implements Serializable {
         return localHash;
     }
 
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getBaseSequence() {
+        return baseSequence;
+    }
+
+    public boolean isFull() {
+        return baseSequence == FULL;
+    }
+
+    /**
+     * @return the edges added since the base report, or all the edges for a full report, two ints per edge
+     */
+    public int[] getAddedEdges() {
+        return addedEdges;
+    }
+
+    /**
+     * @return the edges removed since the base report, two ints per edge
+     */
+    public int[] getRemovedEdges() {
+        return removedEdges;
+    }
+
+    /**
+     * @return the transactions started since the base report, or all the active transactions for a full report
+     */
+    public int[] getAddedTransactions() {
+        return addedTransactions;
+    }
+
     /**
-     * @return the DeadlockGraph held by the TM which sends this information
+     * @return the transactions ended since the base report
      */
-    public DeadlockGraph getGraph() {
-        return graph;
+    public int[] getRemovedTransactions() {
+        return removedTransactions;
     }
 
     /**
-     * @return the transactions which were alive on the given TM at the time of the creation of this information.
+     * @param waiting the transaction waiting
+     * @param awaited the transaction it waits for
+     * @return the edge as a single long, as kept in the sets of edges of {@link DeadlockReporter}
      */
-    public Set<Integer> getActiveTransactions() {
-        return activeTransactions;
+    public static long edge(int waiting, int awaited) {
+        return ((long) waiting << 32) | (awaited & 0xFFFFFFFFL);
+    }
+
+    public static int waiting(long edge) {
+        return (int) (edge >>> 32);
+    }
+
+    public static int awaited(long edge) {
+        return (int) edge;
+    }
+
+    static int[] toArray(Set<Integer> transactions) {
+        int[] array = new int[transactions.size()];
+        int i = 0;
+        for (Integer transaction : transactions) {
+            array[i++] = transaction;
+        }
+        return array;
+    }
+
+    /**
+     * @return the compact binary form of the report
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + 2 * (addedEdges.length + removedEdges.length + addedTransactions.length + removedTransactions.length));
+        out.write(FORMAT_VERSION);
+        writeInt(out, localHash);
+        writeInt(out, sequence);
+        writeInt(out, baseSequence);
+        writeArray(out, addedEdges);
+        writeArray(out, removedEdges);
+        writeArray(out, addedTransactions);
+        writeArray(out, removedTransactions);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param bytes the binary form of a report, as written by {@link #encode()}
+     * @return the report
+     * @throws IOException if the bytes are not a valid report
+     */
+    public static DeadlockInfo decode(byte[] bytes) throws IOException {
+        int[] position = new int[] { 0 };
+        if (bytes.length == 0 || bytes[position[0]++] != FORMAT_VERSION) {
+            throw new IOException("Unknown deadlock info format");
+        }
+        int localHash = readInt(bytes, position);
+        int sequence = readInt(bytes, position);
+        int baseSequence = readInt(bytes, position);
+        int[] addedEdges = readArray(bytes, position);
+        int[] removedEdges = readArray(bytes, position);
+        int[] addedTransactions = readArray(bytes, position);
+        int[] removedTransactions = readArray(bytes, position);
+        if (addedEdges.length % 2 != 0 || removedEdges.length % 2 != 0) {
+            throw new IOException("Odd number of edge ends in deadlock info");
+        }
+        return new DeadlockInfo(localHash, sequence, baseSequence, addedEdges, removedEdges, addedTransactions, removedTransactions);
+    }
+
+    // Zigzag then LEB128, so that small ints of any sign take one or two bytes
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.write((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.write(zigzag);
+    }
+
+    private static void writeArray(ByteArrayOutputStream out, int[] values) {
+        writeInt(out, values.length);
+        for (int value : values) {
+            writeInt(out, value);
+        }
+    }
+
+    private static int readInt(byte[] bytes, int[] position) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IOException("Truncated deadlock info");
+            }
+            byte b = bytes[position[0]++];
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed integer in deadlock info");
+    }
+
+    private static int[] readArray(byte[] bytes, int[] position) throws IOException {
+        int length = readInt(bytes, position);
+        if (length < 0 || length > bytes.length - position[0]) {
+            throw new IOException("Invalid array length in deadlock info");
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = readInt(bytes, position);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "DeadlockInfo(" + localHash + " #" + sequence + (isFull() ? " full" : " since #" + baseSequence) + ": +" + addedEdges.length / 2 + "/-" + removedEdges.length / 2 + " edges, +" + addedTransactions.length + "/-" + removedTransactions.length + " transactions)";
     }
 }
@@ -0,0 +1,91 @@
+package ch.epfl.tkvs.transactionmanager.lockingunit;
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Builds the successive {@link DeadlockInfo} reports of a transaction manager (TM) from the state of its LockingUnit.
+ *
+ * A report only lists what changed since the previous one, and no report is made while nothing changes. A full report
+ * is made instead first, after {@link #reset()}, and every {@link #FULL_REPORT_PERIOD} checkpoints, so that the
+ * centralized decider catches up if it missed a report.
+ */
+public class DeadlockReporter {
+
+    public static final int FULL_REPORT_PERIOD = 8;
+
+    // The state given in the last report
+    private HashSet<Long> reportedEdges = new HashSet<Long>();
+    private HashSet<Integer> reportedTransactions = new HashSet<Integer>();
+    private int sequence = 0;
+    private boolean needsFullReport = true;
+    private int checkpointsSinceFullReport = 0;
+
+    /**
+     * @param localHash hash describing the TM which sends the reports
+     * @param edges the edges of the DeadlockGraph held by the LockingUnit, as returned by
+     * {@link DeadlockGraph#getEdges()}
+     * @param activeTransactions the transactions alive on the TM
+     * @return the report to send, or null if there is nothing to report
+     */
+    public synchronized DeadlockInfo nextReport(int localHash, int[] edges, Set<Integer> activeTransactions) {
+        HashSet<Long> currentEdges = new HashSet<Long>();
+        for (int i = 0; i < edges.length; i += 2) {
+            currentEdges.add(DeadlockInfo.edge(edges[i], edges[i + 1]));
+        }
+        HashSet<Integer> currentTransactions = new HashSet<Integer>(activeTransactions);
+
+        DeadlockInfo report;
+        if (needsFullReport || ++checkpointsSinceFullReport >= FULL_REPORT_PERIOD) {
+            report = DeadlockInfo.full(localHash, ++sequence, edges, currentTransactions);
+            needsFullReport = false;
+            checkpointsSinceFullReport = 0;
+        } else {
+            int[] addedEdges = difference(currentEdges, reportedEdges);
+            int[] removedEdges = difference(reportedEdges, currentEdges);
+            int[] addedTransactions = differenceOf(currentTransactions, reportedTransactions);
+            int[] removedTransactions = differenceOf(reportedTransactions, currentTransactions);
+            if (addedEdges.length == 0 && removedEdges.length == 0 && addedTransactions.length == 0 && removedTransactions.length == 0) {
+                return null;
+            }
+            int base = sequence;
+            report = new DeadlockInfo(localHash, ++sequence, base, addedEdges, removedEdges, addedTransactions, removedTransactions);
+        }
+        reportedEdges = currentEdges;
+        reportedTransactions = currentTransactions;
+        return report;
+    }
+
+    /**
+     * Makes the next report a full one, e.g. after a report could not be sent.
+     */
+    public synchronized void reset() {
+        needsFullReport = true;
+    }
+
+    // The edges of a which are not in b, two ints per edge
+    private static int[] difference(Set<Long> a, Set<Long> b) {
+        int count = 0;
+        for (Long edge : a) {
+            if (!b.contains(edge)) {
+                count++;
+            }
+        }
+        int[] result = new int[2 * count];
+        int i = 0;
+        for (Long edge : a) {
+            if (!b.contains(edge)) {
+                result[i++] = DeadlockInfo.waiting(edge);
+                result[i++] = DeadlockInfo.awaited(edge);
+            }
+        }
+        return result;
+    }
+
+    private static int[] differenceOf(Set<Integer> a, Set<Integer> b) {
+        HashSet<Integer> result = new HashSet<Integer>(a);
+        result.removeAll(b);
+        return DeadlockInfo.toArray(result);
+    }
+}
@@ -185,6 +185,18 @@ public enum LockingUnit {
         }
     }
 
+    /**
+     * @return the edges of the DeadlockGraph held by this LockingUnit, as returned by {@link DeadlockGraph#getEdges()}
+     */
+    public int[] getDeadlockEdges() {
+        internalLock.lock();
+        try {
+            return graph.getEdges();
+        } finally {
+            internalLock.unlock();
+        }
+    }
+
     /**
      * Returns the lock types held on the given key except for the "locksToExclude" which are held by the given
      * transaction. Intended to be used in the promote method to compute the locks held on a key except for the given
@@ -0,0 +1,171 @@
+package ch.epfl.tkvs.transactionmanager.lockingunit;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * The union of the DeadlockGraphs of all the transaction managers (TMs), kept up to date from their
+ * {@link DeadlockInfo} reports by the centralized decider.
+ *
+ * The reports of each TM are applied in sequence: a delta whose base is not the last report applied means a report was
+ * missed, so the state of the TM is dropped until its next full report. Only the edges added since the last call to
+ * {@link #toGraph()} can close a new cycle, which {@link #hasNewEdges()} tells.
+ */
+public class MergedDeadlockGraph {
+
+    private static class TMState {
+
+        int sequence;
+        HashSet<Long> edges = new HashSet<Long>();
+        HashSet<Integer> activeTransactions = new HashSet<Integer>();
+    }
+
+    private final HashMap<Integer, TMState> states = new HashMap<Integer, TMState>();
+    // Number of TMs reporting each edge
+    private final HashMap<Long, Integer> edgeCounts = new HashMap<Long, Integer>();
+    private boolean newEdges = false;
+
+    /**
+     * @param info a report of a TM
+     * @return false if the report was ignored, because a previous report of the TM was missed
+     */
+    public boolean apply(DeadlockInfo info) {
+        TMState state = states.get(info.getLocalHash());
+        if (info.isFull()) {
+            if (state == null) {
+                state = new TMState();
+                states.put(info.getLocalHash(), state);
+            }
+            // Applied as the difference with the known state, so that unchanged edges are not new
+            HashSet<Long> reported = new HashSet<Long>();
+            int[] edges = info.getAddedEdges();
+            for (int i = 0; i < edges.length; i += 2) {
+                reported.add(DeadlockInfo.edge(edges[i], edges[i + 1]));
+            }
+            for (Long edge : new HashSet<Long>(state.edges)) {
+                if (!reported.contains(edge)) {
+                    removeEdge(state, edge);
+                }
+            }
+            for (Long edge : reported) {
+                addEdge(state, edge);
+            }
+            state.activeTransactions.clear();
+        } else {
+            if (state == null || state.sequence != info.getBaseSequence()) {
+                if (state != null) {
+                    drop(info.getLocalHash());
+                }
+                return false;
+            }
+            int[] removed = info.getRemovedEdges();
+            for (int i = 0; i < removed.length; i += 2) {
+                removeEdge(state, DeadlockInfo.edge(removed[i], removed[i + 1]));
+            }
+            int[] added = info.getAddedEdges();
+            for (int i = 0; i < added.length; i += 2) {
+                addEdge(state, DeadlockInfo.edge(added[i], added[i + 1]));
+            }
+            for (int transaction : info.getRemovedTransactions()) {
+                state.activeTransactions.remove(transaction);
+            }
+        }
+        for (int transaction : info.getAddedTransactions()) {
+            state.activeTransactions.add(transaction);
+        }
+        state.sequence = info.getSequence();
+        return true;
+    }
+
+    /**
+     * Forgets the state of a TM.
+     *
+     * @param localHash the locality hash of the TM
+     */
+    public void drop(int localHash) {
+        TMState state = states.remove(localHash);
+        if (state != null) {
+            for (Long edge : state.edges) {
+                decrement(edge);
+            }
+        }
+    }
+
+    private void addEdge(TMState state, Long edge) {
+        if (state.edges.add(edge)) {
+            Integer count = edgeCounts.get(edge);
+            if (count == null) {
+                newEdges = true;
+                edgeCounts.put(edge, 1);
+            } else {
+                edgeCounts.put(edge, count + 1);
+            }
+        }
+    }
+
+    private void removeEdge(TMState state, Long edge) {
+        if (state.edges.remove(edge)) {
+            decrement(edge);
+        }
+    }
+
+    private void decrement(Long edge) {
+        int count = edgeCounts.get(edge);
+        if (count == 1) {
+            edgeCounts.remove(edge);
+        } else {
+            edgeCounts.put(edge, count - 1);
+        }
+    }
+
+    /**
+     * @return true if edges were added since the last call to {@link #toGraph()}
+     */
+    public boolean hasNewEdges() {
+        return newEdges;
+    }
+
+    /**
+     * @return a new -independent- DeadlockGraph with the edges of all the TMs
+     */
+    public DeadlockGraph toGraph() {
+        newEdges = false;
+        HashMap<Integer, HashSet<Integer>> outgoing = new HashMap<Integer, HashSet<Integer>>();
+        for (Long edge : edgeCounts.keySet()) {
+            int waiting = DeadlockInfo.waiting(edge);
+            if (!outgoing.containsKey(waiting)) {
+                outgoing.put(waiting, new HashSet<Integer>());
+            }
+            outgoing.get(waiting).add(DeadlockInfo.awaited(edge));
+        }
+        DeadlockGraph graph = new DeadlockGraph();
+        for (Map.Entry<Integer, HashSet<Integer>> entry : outgoing.entrySet()) {
+            graph.addDependencies(entry.getKey(), entry.getValue());
+        }
+        return graph;
+    }
+
+    /**
+     * @param transaction a transaction
+     * @return the locality hashes of the TMs on which the transaction is alive
+     */
+    public Set<Integer> getTMsRunning(int transaction) {
+        HashSet<Integer> tms = new HashSet<Integer>();
+        for (Map.Entry<Integer, TMState> entry : states.entrySet()) {
+            if (entry.getValue().activeTransactions.contains(transaction)) {
+                tms.add(entry.getKey());
+            }
+        }
+        return tms;
+    }
+
+    /**
+     * @return the number of distinct edges
+     */
+    public int size() {
+        return edgeCounts.size();
+    }
+}
@@ -4,7 +4,8 @@ import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
-import ch.epfl.tkvs.keyvaluestore.KeyValueStore;
+import ch.epfl.tkvs.keyvaluestore.PrefixedKey;
+import ch.epfl.tkvs.keyvaluestore.StorageEngine;
 
 
 /**
@@ -15,68 +16,17 @@ public class Cache {
     private int xid;
     private String prefix;
     private Set<Serializable> writtenKeys;
-
-    /**
-     * Key for the key-value store that is prefixed in order to be unique for a particular transaction and version
-     */
-    class PrefixedKey implements Serializable {
-
-        private static final long serialVersionUID = 7099912040047138926L;
-        private String prefix;
-        private Serializable key;
-
-        public PrefixedKey(String prefix, Serializable key) {
-            this.prefix = prefix;
-            this.key = key;
-        }
-
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + getOuterType().hashCode();
-            result = prime * result + ((key == null) ? 0 : key.hashCode());
-            result = prime * result + ((prefix == null) ? 0 : prefix.hashCode());
-            return result;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            PrefixedKey other = (PrefixedKey) obj;
-            if (!getOuterType().equals(other.getOuterType()))
-                return false;
-            if (key == null) {
-                if (other.key != null)
-                    return false;
-            } else if (!key.equals(other.key))
-                return false;
-            if (prefix == null) {
-                if (other.prefix != null)
-                    return false;
-            } else if (!prefix.equals(other.prefix))
-                return false;
-            return true;
-        }
-
-        private Cache getOuterType() {
-            return Cache.this;
-        }
-
-    }
+    private StorageEngine storage;
 
     /**
      * Create a cache for the given transaction ID
      * 
      * @param xid the ID of the transaction
+     * @param storage where the values of the cache are stored
      */
-    public Cache(int xid) {
+    public Cache(int xid, StorageEngine storage) {
         this.xid = xid;
+        this.storage = storage;
         this.prefix = "Cache" + xid + "_";
         this.writtenKeys = new HashSet<Serializable>();
     }
@@ -92,7 +42,7 @@ public class Cache {
      * @return the value of the given key in this cache
      */
     public Serializable get(Serializable key) {
-        return KeyValueStore.instance.get(prefixKey(key));
+        return storage.get(prefixKey(key));
     }
 
     /**
@@ -102,10 +52,19 @@ public class Cache {
      * @param value the value to write for the key
      */
     public void put(Serializable key, Serializable value) {
-        KeyValueStore.instance.put(prefixKey(key), value);
+        storage.put(prefixKey(key), value);
         writtenKeys.add(key);
     }
 
+    /**
+     * Removes the values of this cache from the storage
+     */
+    public void clear() {
+        for (Serializable key : getWrittenKeys()) {
+            storage.remove(prefixKey(key));
+        }
+    }
+
     private Serializable prefixKey(Serializable key) {
         return new PrefixedKey(prefix, key);
     }
@@ -1,30 +1,53 @@
 package ch.epfl.tkvs.transactionmanager.versioningunit;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
+import ch.epfl.tkvs.keyvaluestore.KeyValueStore;
+import ch.epfl.tkvs.keyvaluestore.StorageEngine;
+import ch.epfl.tkvs.keyvaluestore.StorageFullException;
+import ch.epfl.tkvs.keyvaluestore.WriteAheadLog;
+
 
 public class VersioningUnitMVCC2PL {
 
     /** Unique instance of the VersioningUnitMVTO class */
     private static VersioningUnitMVCC2PL instance = null;
 
-    private final static int PRIMARY_CACHE = 0;
+    // Not a transaction id, so that the keys of the primary cache differ from those of every transaction
+    private final static int PRIMARY_CACHE = -1;
+    // Delay in ms before merging again a committed cache that did not fit in the storage
+    private final static long MERGE_RETRY_DELAY = 100;
 
     private Map<Integer, Cache> caches;
     private Cache primary;
     private Deque<Cache> tmpPrimary;
     private BackgroundCommitThread backgroundCommitThread = null;
     private Object guard = new Object();
+    // The key-value storage where the caches are stored
+    private StorageEngine storage;
+    // Where the commits are made durable, if any
+    private WriteAheadLog wal = null;
 
     /**
      * Private constructor of the Singleton
      */
     private VersioningUnitMVCC2PL() {
-        // Exists only to defeat instantiation
+        this(new KeyValueStore());
+    }
+
+    /**
+     * Creates a versioning unit apart from the singleton, e.g. to compare storage engines side by side.
+     * 
+     * @param storage where the committed values are stored
+     */
+    public VersioningUnitMVCC2PL(StorageEngine storage) {
+        this.storage = storage;
     }
 
     /**
@@ -43,15 +66,43 @@ public class VersioningUnitMVCC2PL {
         return instance;
     }
 
+    /**
+     * Replaces the engine storing the committed values. MUST be called before init(), which clears it.
+     * 
+     * @param storage the new engine
+     */
+    public void setStorageEngine(StorageEngine storage) {
+        this.storage = storage;
+    }
+
+    public StorageEngine getStorageEngine() {
+        return storage;
+    }
+
+    /**
+     * Makes the commits durable in a write-ahead log, replayed by {@link #init()}. MUST be called before init().
+     * 
+     * @param wal the log, or null to keep the committed values in memory only
+     */
+    public void setWriteAheadLog(WriteAheadLog wal) {
+        this.wal = wal;
+    }
+
     /**
      * MUST be called before first use. This initializes the module.
+     * 
+     * @throws IllegalStateException if the write-ahead log cannot be replayed
      */
     public void init() {
         stopBackgroundCommitThreadIfAlive();
 
+        storage.clear();
         caches = new ConcurrentHashMap<Integer, Cache>();
-        primary = new Cache(PRIMARY_CACHE);
+        primary = new Cache(PRIMARY_CACHE, storage);
         tmpPrimary = new ConcurrentLinkedDeque<Cache>();
+        if (wal != null) {
+            recover();
+        }
 
         backgroundCommitThread = new BackgroundCommitThread();
         backgroundCommitThread.start();
@@ -85,6 +136,32 @@ public class VersioningUnitMVCC2PL {
         return primary.get(key);
     }
 
+    // Rebuilds the primary cache from the snapshot and the log
+    private void recover() {
+        wal.close();
+        wal.setPrecedence(WriteAheadLog.Precedence.LOG_ORDER);
+        final HashMap<Serializable, Serializable> lastValues = new HashMap<Serializable, Serializable>();
+        try {
+            wal.replay(new WriteAheadLog.Replayer() {
+
+                @Override
+                public void replay(int epoch, int xid, Serializable[] keys, Serializable[] values) {
+                    // The write locks order the commits of a key as in the log
+                    for (int i = 0; i < keys.length; i++) {
+                        lastValues.put(keys[i], values[i]);
+                    }
+                }
+            });
+
+            for (Map.Entry<Serializable, Serializable> lastValue : lastValues.entrySet()) {
+                primary.put(lastValue.getKey(), lastValue.getValue());
+            }
+            wal.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot recover from " + wal.getFile(), e);
+        }
+    }
+
     /**
      * Write a new version for a given key
      * 
@@ -96,7 +173,7 @@ public class VersioningUnitMVCC2PL {
         Cache xactCache = caches.get(xid);
 
         if (xactCache == null) {
-            xactCache = new Cache(xid);
+            xactCache = new Cache(xid, storage);
 
             caches.put(xid, xactCache);
         }
@@ -107,13 +184,30 @@ public class VersioningUnitMVCC2PL {
 
     /**
      * Commit the changes done by a transaction, it cannot fail The transaction SHOULD NOT do any other requests to the
-     * VersioningUnit
+     * VersioningUnit. With a write-ahead log, it returns once the changes are durable, before which they are not
+     * visible to the other transactions.
      * 
      * @param xid the current transaction that wants to commit
+     * @throws IllegalStateException if the write-ahead log failed
      */
     public void commit(final int xid) {
-        if (caches.get(xid) != null) {
-            tmpPrimary.addFirst((caches.get(xid)));
+        Cache cache = caches.get(xid);
+        if (cache != null) {
+            if (wal != null) {
+                // The commit locks of the transaction are held until it returns, so the log follows the commit order
+                // of every key
+                Serializable[] keys = cache.getWrittenKeys().toArray(new Serializable[0]);
+                Serializable[] values = new Serializable[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    values[i] = cache.get(keys[i]);
+                }
+                try {
+                    wal.commit(xid, keys, values);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Commit of " + xid + " could not be logged", e);
+                }
+            }
+            tmpPrimary.addFirst(cache);
             synchronized (guard) {
                 guard.notifyAll();
             }
@@ -126,7 +220,10 @@ public class VersioningUnitMVCC2PL {
      * @param xid the transaction to be aborted
      */
     public void abort(int xid) {
-        caches.remove(xid);
+        Cache cache = caches.remove(xid);
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
     /**
@@ -162,13 +259,27 @@ public class VersioningUnitMVCC2PL {
 
                 Cache cacheToCommit = tmpPrimary.getLast();
 
-                for (Serializable key : cacheToCommit.getWrittenKeys()) {
-                    primary.put(key, cacheToCommit.get(key));
+                try {
+                    for (Serializable key : cacheToCommit.getWrittenKeys()) {
+                        primary.put(key, cacheToCommit.get(key));
 
+                    }
+                } catch (StorageFullException e) {
+                    // The readers still find the values in the cache: retry once other transactions freed some room
+                    synchronized (guard) {
+                        try {
+                            guard.wait(MERGE_RETRY_DELAY);
+                        } catch (InterruptedException ie) {
+                            // shouldRun is checked again before the retry
+                        }
+                    }
+                    continue;
                 }
 
                 tmpPrimary.removeLast();
                 caches.remove(cacheToCommit.getXid());
+                // The readers still looking at the cache find its values in the primary cache
+                cacheToCommit.clear();
             }
         }
 
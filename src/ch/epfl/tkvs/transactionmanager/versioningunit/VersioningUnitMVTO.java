@@ -1,53 +1,214 @@
 package ch.epfl.tkvs.transactionmanager.versioningunit;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.exceptions.StorageFailureException;
 import ch.epfl.tkvs.exceptions.TimestampOrderingException;
+import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
 import ch.epfl.tkvs.keyvaluestore.KeyValueStore;
-
-
+import ch.epfl.tkvs.keyvaluestore.PrefixedKey;
+import ch.epfl.tkvs.keyvaluestore.StorageEngine;
+import ch.epfl.tkvs.keyvaluestore.WriteAheadLog;
+
+
+/**
+ * The versions of the keys under multiversion timestamp ordering (MVTO), and the commit dependencies between the
+ * transactions reading them.
+ *
+ * The versions of each key form a chain guarded by one of {@link #NB_STRIPES} locks, chosen by the hash of the key, so
+ * that transactions using different keys do not wait for each other. A chain keeps the timestamps of its versions in a
+ * sorted array searched by bisection, and their values next to them when the storage engine is the in-memory
+ * {@link KeyValueStore}: the other engines store the values under a key prefixed with the timestamp.
+ *
+ * The state of the transactions is in concurrent maps. A transaction is known from its beginning until it commits, or
+ * until the garbage collector forgets it after its abort: a transaction the unit does not know has committed. A
+ * transaction that read uncommitted versions waits in prepareCommit on the transactions that wrote them, and is woken
+ * up by each of them when it commits or aborts, not by the other transactions.
+ *
+ * The garbage collector is incremental: a key joins a queue when its chain gets a second version, and each pass prunes
+ * a bounded number of the queued keys, locking one key at a time and skipping the keys being accessed.
+ */
 public class VersioningUnitMVTO {
 
+    private static final int NB_STRIPES = 1024;
+    public static final int DEFAULT_GC_KEYS_PER_PASS = 10000;
+
     // The key-value storage where versions are stored
-    private KeyValueStore KVS = KeyValueStore.instance;
+    private StorageEngine KVS;
+    // Whether the values are kept in the chains rather than in KVS
+    private boolean inline;
+
+    // The versions of each key, created by its first read or write
+    private ConcurrentHashMap<Serializable, Chain> chains;
+    // The lock of the chains of each stripe
+    private final ReentrantLock[] stripes = new ReentrantLock[NB_STRIPES];
+
+    // The uncommitted and the aborted transactions
+    private ConcurrentHashMap<Integer, Transaction> transactions;
+
+    // Where the commits are made durable, if any
+    private WriteAheadLog wal = null;
+
+    // The keys whose chain may hold versions to prune, each at most once
+    private ConcurrentLinkedQueue<Serializable> gcQueue;
+    private final LongAdder nbQueued = new LongAdder();
+    // Every transaction before it has terminated. Only raised, by the checkpoints
+    private volatile int watermark = Integer.MIN_VALUE;
+    private volatile int gcKeysPerPass = DEFAULT_GC_KEYS_PER_PASS;
+    // Taken by the pass of the garbage collector in progress
+    private final ReentrantLock gcLock = new ReentrantLock();
+
+    // The versions in the chains, and the bytes of their byte array values kept inline
+    private final LongAdder nbVersions = new LongAdder();
+    private final LongAdder versionBytes = new LongAdder();
+    // Statistics of the garbage collector: the last pass, and the longest time it held the lock of a key
+    private volatile int lastPassKeys = 0;
+    private volatile int lastPassRemoved = 0;
+    private volatile long lastPassNanos = 0;
+    private volatile long longestPauseNanos = 0;
+
+
+    // The versions of a key, guarded by the lock of its stripe
+    private static class Chain {
+
+        // The timestamp on which the key was last read
+        int RTS = Integer.MIN_VALUE;
+        // The timestamps of the versions in ascending order, and their values if inline
+        int[] WTS = new int[1];
+        Serializable[] values = new Serializable[1];
+        int size = 0;
+        // Whether the key is in the queue of the garbage collector
+        boolean queued = false;
+
+        // Returns the index of the version with the largest timestamp not after xid, or -1
+        int floor(int xid) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (WTS[mid] <= xid) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        // Returns the index of the version written by xid, or -1
+        int indexOf(int xid) {
+            int i = floor(xid);
+            return i >= 0 && WTS[i] == xid ? i : -1;
+        }
+
+        // Adds the version written by xid, or replaces it and returns the previous value
+        Serializable put(int xid, Serializable value) {
+            int i = floor(xid);
+            if (i >= 0 && WTS[i] == xid) {
+                Serializable previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            if (size == WTS.length) {
+                WTS = Arrays.copyOf(WTS, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            // Most writes are newer than all the versions, and append
+            i++;
+            System.arraycopy(WTS, i, WTS, i + 1, size - i);
+            System.arraycopy(values, i, values, i + 1, size - i);
+            WTS[i] = xid;
+            values[i] = value;
+            size++;
+            return null;
+        }
+
+        void removeAt(int i) {
+            System.arraycopy(WTS, i + 1, WTS, i, size - i - 1);
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            size--;
+            values[size] = null;
+        }
+
+        // Removes the versions before the index
+        void removeBefore(int i) {
+            System.arraycopy(WTS, i, WTS, 0, size - i);
+            System.arraycopy(values, i, values, 0, size - i);
+            Arrays.fill(values, size - i, size, null);
+            size -= i;
+        }
+    }
+
+    private enum Status {
+        ACTIVE, COMMITTING, ABORTED
+    }
+
+    private static class Transaction {
+
+        final AtomicReference<Status> status = new AtomicReference<Status>(Status.ACTIVE);
+        // The transactions from which this transaction has read
+        final Set<Integer> readFrom = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        // The keys this transaction has written
+        final Set<Serializable> writtenKeys = Collections.newSetFromMap(new ConcurrentHashMap<Serializable, Boolean>());
+        // Set once the versions of an aborted transaction are removed
+        volatile boolean rolledBack = false;
+        // The transactions waiting in prepareCommit for this one to commit or abort, RESOLVED once it has
+        volatile WaiterNode waiters = null;
+    }
+
+    private static final AtomicReferenceFieldUpdater<Transaction, WaiterNode> WAITERS = AtomicReferenceFieldUpdater.newUpdater(Transaction.class, WaiterNode.class, "waiters");
 
-    // The Timestamp on which a Serializable key was last read
-    private Map<Serializable, Integer> RTS;
-    // The different versions of a given key in descending order of timestamp
-    private Map<Serializable, List<Version>> versions;
+    // A transaction waiting in prepareCommit for the transactions it read from to commit or abort
+    private static class Waiter {
 
-    // Contains the transactions from which a given transaction has read
-    private Map<Integer, Set<Integer>> readFromXacts;
-    // Contains the uncommitted transactions
-    private Set<Integer> uncommitted;
-    // Contains the aborted transactions
-    private Set<Integer> abortedXacts;
+        final Thread thread = Thread.currentThread();
+        // The transactions not resolved yet, plus one until the waiter is registered on all of them
+        final AtomicInteger pending = new AtomicInteger(1);
+        // Set when one of them aborts, so that the waiter aborts without waiting for the others
+        volatile boolean readFromAborted = false;
 
-    // The objects a given transaction has written
-    private Map<Integer, Set<Serializable>> writtenKeys;
+        void resolved(boolean aborted) {
+            if (aborted) {
+                readFromAborted = true;
+            }
+            if (pending.decrementAndGet() == 0 || aborted) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
 
-    private class Version {
+    // An element of the stack of the waiters on a transaction
+    private static class WaiterNode {
 
-        // key to access this version in the KVStore
-        Serializable key;
-        // Timestamp of this version's write
-        int WTS;
+        final Waiter waiter;
+        WaiterNode next;
 
-        public Version(Serializable key, int WTS) {
-            this.key = key;
-            this.WTS = WTS;
+        WaiterNode(Waiter waiter) {
+            this.waiter = waiter;
         }
     }
 
+    // Ends the stack of the waiters on a transaction that has committed or aborted
+    private static final WaiterNode RESOLVED = new WaiterNode(null);
+
     /** Unique instance of the VersioningUnitMVTO class */
     private static VersioningUnitMVTO instance = null;
 
@@ -55,7 +216,16 @@ public class VersioningUnitMVTO {
      * Private constructor of the Singleton
      */
     private VersioningUnitMVTO() {
-        // Exists only to defeat instantiation
+        this(new KeyValueStore());
+    }
+
+    /**
+     * Creates a versioning unit apart from the singleton, e.g. to compare storage engines side by side.
+     * 
+     * @param storage where the versions are stored
+     */
+    public VersioningUnitMVTO(StorageEngine storage) {
+        this.KVS = storage;
     }
 
     /**
@@ -74,21 +244,156 @@ public class VersioningUnitMVTO {
         return instance;
     }
 
+    /**
+     * Replaces the engine storing the versions. MUST be called before init(), which clears it.
+     * 
+     * @param storage the new engine
+     */
+    public void setStorageEngine(StorageEngine storage) {
+        this.KVS = storage;
+    }
+
+    public StorageEngine getStorageEngine() {
+        return KVS;
+    }
+
+    /**
+     * Makes the commits durable in a write-ahead log, replayed by {@link #init()}. MUST be called before init().
+     * 
+     * @param wal the log, or null to keep the versions in memory only
+     */
+    public void setWriteAheadLog(WriteAheadLog wal) {
+        this.wal = wal;
+    }
+
     /**
      * You MUST first call this before any other methods
+     * 
+     * @throws IllegalStateException if the write-ahead log cannot be replayed
      */
-    public synchronized void init() {
+    public void init() {
+        for (int i = 0; i < NB_STRIPES; i++) {
+            if (stripes[i] == null) {
+                stripes[i] = new ReentrantLock();
+            }
+        }
         // TODO Init and Flush KVStore ?
         KVS.clear();
+        inline = KVS instanceof KeyValueStore;
 
         // Flush data structures
-        RTS = new ConcurrentHashMap<Serializable, Integer>();
-        versions = new ConcurrentHashMap<Serializable, List<Version>>();
-        readFromXacts = new ConcurrentHashMap<Integer, Set<Integer>>();
-        uncommitted = new HashSet<Integer>();
-        abortedXacts = new HashSet<Integer>();
+        chains = new ConcurrentHashMap<Serializable, Chain>();
+        transactions = new ConcurrentHashMap<Integer, Transaction>();
+        gcQueue = new ConcurrentLinkedQueue<Serializable>();
+        nbQueued.reset();
+        nbVersions.reset();
+        versionBytes.reset();
+        watermark = Integer.MIN_VALUE;
+
+        if (wal != null) {
+            recover();
+        }
+    }
+
+    // Rebuilds the last committed version of every key from the snapshot and the log, older than any transaction
+    private void recover() {
+        wal.close();
+        wal.setPrecedence(WriteAheadLog.Precedence.LARGEST_XID);
+        // The epoch of the log and the id of the last writer of each key
+        final HashMap<Serializable, int[]> lastWriters = new HashMap<Serializable, int[]>();
+        final HashMap<Serializable, Serializable> lastValues = new HashMap<Serializable, Serializable>();
+        try {
+            wal.replay(new WriteAheadLog.Replayer() {
+
+                @Override
+                public void replay(int epoch, int xid, Serializable[] keys, Serializable[] values) {
+                    // The commit order is not the timestamp order: the version with the largest timestamp wins, the
+                    // timestamps starting over at every run
+                    for (int i = 0; i < keys.length; i++) {
+                        int[] lastWriter = lastWriters.get(keys[i]);
+                        if (lastWriter == null || !WriteAheadLog.isBefore(epoch, xid, lastWriter[0], lastWriter[1])) {
+                            lastWriters.put(keys[i], new int[] { epoch, xid });
+                            lastValues.put(keys[i], values[i]);
+                        }
+                    }
+                }
+            });
+
+            for (Map.Entry<Serializable, Serializable> lastValue : lastValues.entrySet()) {
+                Chain chain = new Chain();
+                addVersion(lastValue.getKey(), chain, WriteAheadLog.RECOVERED_XID, lastValue.getValue());
+                chains.put(lastValue.getKey(), chain);
+            }
+            wal.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot recover from " + wal.getFile(), e);
+        }
+    }
+
+    // Called with the lock of the key. Queues the key for the garbage collector once it has an older version
+    private void addVersion(Serializable key, Chain chain, int WTS, Serializable value) {
+        Serializable kept = value;
+        if (!inline) {
+            KVS.put(new PrefixedKey("Version" + WTS, key), value);
+            kept = null;
+        }
+        int size = chain.size;
+        Serializable previous = chain.put(WTS, kept);
+        if (chain.size > size) {
+            nbVersions.increment();
+        }
+        versionBytes.add(sizeOf(kept) - sizeOf(previous));
+        if (chain.size > 1 && !chain.queued) {
+            chain.queued = true;
+            nbQueued.increment();
+            gcQueue.add(key);
+        }
+    }
 
-        writtenKeys = new ConcurrentHashMap<Integer, Set<Serializable>>();
+    private static long sizeOf(Serializable value) {
+        return value instanceof byte[] ? ((byte[]) value).length : 0;
+    }
+
+    // Called with the lock of the key
+    private Serializable loadValue(Serializable key, Chain chain, int i) {
+        return inline ? chain.values[i] : KVS.get(new PrefixedKey("Version" + chain.WTS[i], key));
+    }
+
+    // Called with the lock of the key, before the version leaves the chain
+    private void removeValue(Serializable key, Chain chain, int i) {
+        nbVersions.decrement();
+        versionBytes.add(-sizeOf(chain.values[i]));
+        if (!inline) {
+            KVS.remove(new PrefixedKey("Version" + chain.WTS[i], key));
+        }
+    }
+
+    private ReentrantLock stripeOf(Serializable key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (NB_STRIPES - 1)];
+    }
+
+    private Chain chainOf(Serializable key) {
+        Chain chain = chains.get(key);
+        if (chain == null) {
+            Chain created = new Chain();
+            chain = chains.putIfAbsent(key, created);
+            if (chain == null) {
+                chain = created;
+            }
+        }
+        return chain;
+    }
+
+    // A transaction the unit does not know has committed
+    private boolean isUncommitted(int xid) {
+        Transaction transaction = transactions.get(xid);
+        return transaction != null && transaction.status.get() != Status.ABORTED;
+    }
+
+    private boolean isAborted(int xid) {
+        Transaction transaction = transactions.get(xid);
+        return transaction != null && transaction.status.get() == Status.ABORTED;
     }
 
     /**
@@ -97,12 +402,9 @@ public class VersioningUnitMVTO {
      * 
      * @param xid the ID or timestamp of the transaction
      */
-    public synchronized int beginTransaction(int xid) {
+    public int beginTransaction(int xid) {
         // Initialize data structures for the new transaction
-        uncommitted.add(xid);
-        writtenKeys.put(xid, new HashSet<Serializable>());
-        readFromXacts.put(xid, new HashSet<Integer>());
-
+        transactions.put(xid, new Transaction());
         return xid;
     }
 
@@ -113,31 +415,32 @@ public class VersioningUnitMVTO {
      * @param key the object-to-retrieve's key
      * @return the value's version corresponding to the transaction ID
      */
-    public synchronized Serializable get(int xid, Serializable key) {
-
-        // Update RTS
-        if (RTS.get(key) == null || xid > RTS.get(key)) {
-            RTS.put(key, xid);
-        }
-
-        // If no version of this key has been written yet
-        if (versions.get(key) == null) {
-            return null;
-        }
+    public Serializable get(int xid, Serializable key) {
+        Transaction transaction = transactions.get(xid);
+        Chain chain = chainOf(key);
+        ReentrantLock stripe = stripeOf(key);
+        stripe.lock();
+        try {
+            // Update RTS
+            if (xid > chain.RTS) {
+                chain.RTS = xid;
+            }
 
-        // Read written version with largest timestamp older than xid
-        for (Version v : versions.get(key)) {
-            if (v.WTS <= xid) {
-                if (v.WTS != xid) {
-                    readFromXacts.get(xid).add(v.WTS);
-                }
-                return KVS.get(v.key);
+            // Read written version with largest timestamp older than xid
+            int i = chain.floor(xid);
+            if (i < 0) {
+                // The transaction wants to read a key that did not have any version at
+                // that time
+                return null;
+            }
+            if (chain.WTS[i] != xid && transaction != null) {
+                // Recorded before the version can be rolled back, so that an abort of the writer is seen
+                transaction.readFrom.add(chain.WTS[i]);
             }
+            return loadValue(key, chain, i);
+        } finally {
+            stripe.unlock();
         }
-
-        // The transaction wants to read a key that did not have any version at
-        // that time
-        return null;
     }
 
     /**
@@ -145,45 +448,39 @@ public class VersioningUnitMVTO {
      * @param xid ID/Timestamp of the transaction that wants to write
      * @param key key for the object to be written
      * @param value the value to write for the object
-     * @throws AbortException if the write is not possible (MVTO)
+     * @throws AbortException if the write is not possible (MVTO), or the transaction is no longer active
      */
-    public synchronized void put(int xid, Serializable key, Serializable value) throws AbortException {
-
-        // Is the write possible ?
-        if (RTS.get(key) != null && xid < RTS.get(key)) {
-            abort(xid);
-            throw new TimestampOrderingException("Abort xact " + xid + " as it wanted to write " + key + " with value " + value + " but RTS is " + RTS.get(key));
-        }
-
-        // The write is possible, create a new version
-        // It can overwrite a previous version by the same xid
-        Version newVersion = new Version(new PrefixedKey("Version" + xid, key), xid);
-        // CCAlgorithm.log.info("Adding key to KVS" + newVersion.key, VersioningUnitMVTO.class);
-        KVS.put(newVersion.key, value);
-
-        writtenKeys.get(xid).add(key);
-
-        // Insert it at the correct place in the version's list
-        List<Version> listOfVersions = versions.get(key);
-        if (listOfVersions == null) {
-            versions.put(key, new ArrayList<Version>());
-            versions.get(key).add(newVersion);
-        } else {
-            if (xid < listOfVersions.get(listOfVersions.size() - 1).WTS) {
-                listOfVersions.add(newVersion);
-            } else {
-                for (int i = 0; i < listOfVersions.size(); i++) {
-                    if (xid > listOfVersions.get(i).WTS) {
-                        listOfVersions.add(i, newVersion);
-                        break;
-                    } else if (xid == listOfVersions.get(i).WTS) {
-                        listOfVersions.add(i, newVersion);
-                        listOfVersions.remove(i + 1);
-                        break;
-                    }
-                }
+    public void put(int xid, Serializable key, Serializable value) throws AbortException {
+        Transaction transaction = transactions.get(xid);
+        if (transaction == null) {
+            throw new TransactionNotLiveException();
+        }
+        Chain chain = chainOf(key);
+        int RTS;
+        ReentrantLock stripe = stripeOf(key);
+        stripe.lock();
+        try {
+            // Recorded before the status is read, so that an abort or a commit changing the status after visits the key,
+            // taking its lock once the version is added
+            transaction.writtenKeys.add(key);
+            if (transaction.status.get() != Status.ACTIVE) {
+                throw new TransactionNotLiveException();
+            }
+            RTS = chain.RTS;
+            // Is the write possible ?
+            if (xid >= RTS) {
+                // The write is possible, create a new version
+                // It can overwrite a previous version by the same xid
+                addVersion(key, chain, xid, value);
+                return;
             }
+        } finally {
+            stripe.unlock();
         }
+
+        // Aborted without the lock of the key, as the abort takes the locks of the keys the transaction wrote
+        abort(xid);
+        throw new TimestampOrderingException("Abort xact " + xid + " as it wanted to write " + key + " with value " + value + " but RTS is " + RTS);
     }
 
     /**
@@ -191,45 +488,126 @@ public class VersioningUnitMVTO {
      * 
      * @throws AbortException if the commmit is not possible
      */
-    public synchronized void prepareCommit(int xid) throws AbortException {
-
-        if (abortedXacts.contains(xid)) {
+    public void prepareCommit(int xid) throws AbortException {
+        Transaction transaction = transactions.get(xid);
+        if (transaction == null || transaction.status.get() == Status.ABORTED) {
             return;
         }
 
-        // TODO: optimize the notification of the correct waiting transaction
-        try {
-            while (readFromXacts.get(xid) != null && !Collections.disjoint(uncommitted, readFromXacts.get(xid))) {
-                wait();
+        // Waits only for the transactions it read from, each waking it up when it commits or aborts
+        Waiter waiter = null;
+        for (int readFrom : transaction.readFrom) {
+            Transaction writer = transactions.get(readFrom);
+            if (writer == null) {
+                continue; // committed
+            }
+            if (waiter == null) {
+                waiter = new Waiter();
+            }
+            waiter.pending.incrementAndGet();
+            if (!addWaiter(writer, waiter)) {
+                waiter.pending.decrementAndGet();
+            }
+        }
+        if (waiter != null && waiter.pending.decrementAndGet() > 0) {
+            while (waiter.pending.get() > 0 && !waiter.readFromAborted) {
+                LockSupport.park(transaction);
+                if (Thread.currentThread().isInterrupted()) {
+                    abort(xid);
+                    throw new TimestampOrderingException("Abort xact " + xid + " as it was interrupted while waiting for the transactions it read from");
+                }
             }
-        } catch (InterruptedException e) {
-            // TODO Handle the exception
-            e.printStackTrace();
         }
 
-        if (readFromXacts.get(xid) != null && !Collections.disjoint(abortedXacts, readFromXacts.get(xid))) {
-            Set<Integer> causes = new HashSet<Integer>(abortedXacts);
-            causes.retainAll(readFromXacts.get(xid));
+        Set<Integer> causes = new HashSet<Integer>();
+        for (int readFrom : transaction.readFrom) {
+            if (isAborted(readFrom)) {
+                causes.add(readFrom);
+            }
+        }
+        if (!causes.isEmpty()) {
             abort(xid);
-            notifyAll();
             throw new TimestampOrderingException("Abort xact " + xid + " as it wanted to commit but it has read" + " for transactions that have aborted: " + causes);
         }
     }
 
+    // Returns false if the writer has already committed or aborted
+    private boolean addWaiter(Transaction writer, Waiter waiter) {
+        WaiterNode node = new WaiterNode(waiter);
+        while (true) {
+            WaiterNode head = writer.waiters;
+            if (head == RESOLVED) {
+                return false;
+            }
+            node.next = head;
+            if (WAITERS.compareAndSet(writer, head, node)) {
+                return true;
+            }
+        }
+    }
+
+    // Wakes up the transactions waiting in prepareCommit for this one, once it is seen as committed or aborted
+    private void resolveWaiters(Transaction transaction, boolean aborted) {
+        for (WaiterNode node = WAITERS.getAndSet(transaction, RESOLVED); node != null && node != RESOLVED; node = node.next) {
+            node.waiter.resolved(aborted);
+        }
+    }
+
     /**
-     * Real commit, you MUST ONLY call this AFTER a successful call to prepareCommit(xid)
+     * Real commit, you MUST ONLY call this AFTER a successful call to prepareCommit(xid). With a write-ahead log, it
+     * returns once the writes of the transaction are durable, the transaction being seen as committed only then.
+     * 
+     * @throws AbortException if the write-ahead log failed, the transaction being rolled back
      */
-    public synchronized void commit(int xid) {
-
-        if (!uncommitted.contains(xid) || abortedXacts.contains(xid)) {
+    public void commit(int xid) throws AbortException {
+        Transaction transaction = transactions.get(xid);
+        if (transaction == null || !transaction.status.compareAndSet(Status.ACTIVE, Status.COMMITTING)) {
             return;
         }
 
+        if (wal != null && !transaction.writtenKeys.isEmpty()) {
+            try {
+                // Appended before the transaction is seen as committed, so that the log holds the transactions it read
+                // from before it
+                long ticket = appendToLog(xid, transaction);
+                if (ticket >= 0) {
+                    wal.awaitDurable(ticket);
+                }
+            } catch (IOException e) {
+                transaction.status.set(Status.ABORTED);
+                rollBack(xid, transaction);
+                throw new StorageFailureException("Abort xact " + xid + " as its commit could not be logged: " + e.getMessage());
+            }
+        }
+
         // Commit successful
-        uncommitted.remove(xid);
-        readFromXacts.remove(xid);
-        writtenKeys.remove(xid);
-        notifyAll();
+        transactions.remove(xid);
+        resolveWaiters(transaction, false);
+    }
+
+    // Returns the ticket of the record, or -1 if the transaction has no version
+    private long appendToLog(int xid, Transaction transaction) throws IOException {
+        List<Serializable> keys = new ArrayList<Serializable>();
+        List<Serializable> values = new ArrayList<Serializable>();
+        for (Serializable key : transaction.writtenKeys) {
+            ReentrantLock stripe = stripeOf(key);
+            stripe.lock();
+            try {
+                Chain chain = chains.get(key);
+                // A write may have been refused after the key was recorded
+                int i = chain.indexOf(xid);
+                if (i >= 0) {
+                    keys.add(key);
+                    values.add(loadValue(key, chain, i));
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+        if (keys.isEmpty()) {
+            return -1;
+        }
+        return wal.append(xid, keys.toArray(new Serializable[keys.size()]), values.toArray(new Serializable[values.size()]));
     }
 
     /**
@@ -237,87 +615,179 @@ public class VersioningUnitMVTO {
      * 
      * @param xid the transation to abort
      */
-    public synchronized void abort(int xid) {
-
-        if (abortedXacts.contains(xid) || !uncommitted.contains(xid)) {
+    public void abort(int xid) {
+        Transaction transaction = transactions.get(xid);
+        if (transaction == null || !transaction.status.compareAndSet(Status.ACTIVE, Status.ABORTED)) {
             return; // already aborted
         }
+        rollBack(xid, transaction);
+    }
 
-        abortedXacts.add(xid);
-        uncommitted.remove(xid);
-        readFromXacts.remove(xid);
-
-        // Rollback everything that the xact read and wrote
-        for (Serializable key : writtenKeys.get(xid)) {
-
-            for (Iterator<Version> iterator = versions.get(key).iterator(); iterator.hasNext();) {
-                Version version = iterator.next();
-                if (version.WTS == xid) {
-                    // TODO: break since we only have one version
-                    KeyValueStore.instance.remove(version.key);
-                    iterator.remove();
+    // Removes the versions of an aborted transaction, then wakes up the transactions waiting for it
+    private void rollBack(int xid, Transaction transaction) {
+        // Rollback everything that the xact read and wrote. Called once the status is no longer ACTIVE: a put in progress
+        // on a key holds its lock, and is either done before or refused
+        for (Serializable key : transaction.writtenKeys) {
+            ReentrantLock stripe = stripeOf(key);
+            stripe.lock();
+            try {
+                Chain chain = chains.get(key);
+                int i = chain.indexOf(xid);
+                if (i >= 0) {
+                    removeValue(key, chain, i);
+                    chain.removeAt(i);
                 }
+            } finally {
+                stripe.unlock();
             }
         }
 
-        writtenKeys.remove(xid);
-        notifyAll();
+        transaction.rolledBack = true;
+        resolveWaiters(transaction, true);
     }
 
     /**
-     * Perform GC. Called by the checkpoint method of the MVTO concurrency control algorithm.
+     * Perform GC. Called by the checkpoint method of the MVTO concurrency control algorithm: raises the watermark below
+     * which the versions can be pruned, forgets the aborted transactions no uncommitted transaction may have read from,
+     * then makes a pass as {@link #collectGarbage()}.
+     * 
+     * @param minAliveXid every transaction before it has terminated
      */
-    public synchronized void garbageCollector(int minAliveXid) {
+    public void garbageCollector(int minAliveXid) {
+        if (minAliveXid > watermark) {
+            watermark = minAliveXid;
+        }
 
-        if (uncommitted.isEmpty()) {
-            abortedXacts.clear();
-            return;
+        // The aborted transactions rolled back by now: those that read from them have recorded it
+        List<Integer> rolledBack = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Transaction> entry : transactions.entrySet()) {
+            Transaction transaction = entry.getValue();
+            if (transaction.status.get() == Status.ABORTED && transaction.rolledBack) {
+                rolledBack.add(entry.getKey());
+            }
         }
+        // Removes useless abortedXacts: those no uncommitted transaction may have read from
+        int minXactReadFrom = Integer.MAX_VALUE;
+        for (Transaction transaction : transactions.values()) {
+            if (transaction.status.get() != Status.ABORTED) {
+                for (int readFrom : transaction.readFrom) {
+                    minXactReadFrom = Math.min(minXactReadFrom, readFrom);
+                }
+            }
+        }
+        forgetAborted(rolledBack, minXactReadFrom);
+
+        collectGarbage();
+    }
 
-        // CCAlgorithm.log.info("Garbage collection :: minAlive  =" +
-        // minAliveXid, VersioningUnitMVTO.class);
-        // Removes useless versions stored in KVStore
-        for (Serializable key : versions.keySet()) {
-            boolean shouldRemoveAllFromNow = false;
-            for (Iterator<Version> iterator = versions.get(key).iterator(); iterator.hasNext();) {
-                Version version = iterator.next();
-                // CCAlgorithm.log.info("Garbage collection :: Iterating version "
-                // + version.WTS,
-                // VersioningUnitMVTO.class);
-                if (shouldRemoveAllFromNow) {
-                    // CCAlgorithm.log.info("Garbage collection:: Removing " + version.WTS, VersioningUnitMVTO.class);
-                    KVS.remove(version.key);
-                    iterator.remove();
-                } else if (version.WTS <= minAliveXid) {
-                    if (!abortedXacts.contains(version.WTS) && !uncommitted.contains(version.WTS)) {
-                        // CCAlgorithm.log.info("Garbage collection :: version triggerred remove"
-                        // + version.WTS,
-                        // VersioningUnitMVTO.class);
-                        shouldRemoveAllFromNow = true;
+    /**
+     * Prunes the versions that no transaction after the watermark can read, from at most {@link #setGcKeysPerPass(int)}
+     * of the queued keys. The lock of a key is taken only if free and only while pruning that key, so that readers wait
+     * for one key at most. A key that is locked, or still holds versions newer than the watermark, goes back to the
+     * queue for a later pass. Does nothing if another pass is in progress.
+     * 
+     * @return the number of versions removed
+     */
+    public int collectGarbage() {
+        if (!gcLock.tryLock()) {
+            return 0;
+        }
+        try {
+            long start = System.nanoTime();
+            int minAliveXid = watermark;
+            List<Serializable> later = new ArrayList<Serializable>();
+            int nbKeys = 0;
+            int nbRemoved = 0;
+            long longestPause = longestPauseNanos;
+            Serializable key;
+            while (nbKeys < gcKeysPerPass && (key = gcQueue.poll()) != null) {
+                nbKeys++;
+                ReentrantLock stripe = stripeOf(key);
+                if (!stripe.tryLock()) {
+                    later.add(key);
+                    continue;
+                }
+                long locked = System.nanoTime();
+                try {
+                    Chain chain = chains.get(key);
+                    nbRemoved += prune(key, chain, minAliveXid);
+                    if (chain.size > 1) {
+                        later.add(key);
+                    } else {
+                        chain.queued = false;
+                        nbQueued.decrement();
                     }
+                } finally {
+                    stripe.unlock();
                 }
+                longestPause = Math.max(longestPause, System.nanoTime() - locked);
             }
+            gcQueue.addAll(later);
+
+            lastPassKeys = nbKeys;
+            lastPassRemoved = nbRemoved;
+            lastPassNanos = System.nanoTime() - start;
+            longestPauseNanos = longestPause;
+            return nbRemoved;
+        } finally {
+            gcLock.unlock();
         }
+    }
 
-        // Removes useless abortedXacts
-        List<Integer> listMinXactReadFrom = new ArrayList<Integer>();
-        for (Integer xid : uncommitted) {
-            if (!readFromXacts.get(xid).isEmpty()) {
-                listMinXactReadFrom.add(Collections.min(readFromXacts.get(xid)));
+    // Called with the lock of the key. Returns the number of versions removed
+    private int prune(Serializable key, Chain chain, int minAliveXid) {
+        // The newest committed version not after minAliveXid hides the older ones from every transaction
+        for (int i = chain.floor(minAliveXid); i > 0; i--) {
+            if (!isAborted(chain.WTS[i]) && !isUncommitted(chain.WTS[i])) {
+                for (int j = 0; j < i; j++) {
+                    removeValue(key, chain, j);
+                }
+                chain.removeBefore(i);
+                return i;
             }
         }
+        return 0;
+    }
 
-        if (listMinXactReadFrom.isEmpty()) {
-            abortedXacts.clear();
-            return;
-        }
+    /**
+     * @param nbKeys the most keys a pass of the garbage collector prunes
+     */
+    public void setGcKeysPerPass(int nbKeys) {
+        this.gcKeysPerPass = nbKeys;
+    }
+
+    public long getNbVersions() {
+        return nbVersions.sum();
+    }
+
+    /**
+     * @return the bytes of the byte array values of the versions, if the values are kept in the chains, otherwise 0
+     */
+    public long getVersionBytes() {
+        return versionBytes.sum();
+    }
+
+    public long getGcQueueLength() {
+        return nbQueued.sum();
+    }
 
-        int minXactReadFrom = Collections.min(listMinXactReadFrom);
+    /**
+     * @return the longest time in ns the garbage collector held the lock of a key, blocking its readers
+     */
+    public long getLongestGcPauseNanos() {
+        return longestPauseNanos;
+    }
+
+    @Override
+    public String toString() {
+        return getNbVersions() + " versions of " + chains.size() + " keys, " + (getVersionBytes() >> 10) + " KB of values in the chains, " + getGcQueueLength() + " keys to prune, last pass pruned "
+                + lastPassRemoved + " versions of " + lastPassKeys + " keys in " + lastPassNanos / 1000 + " us, longest pause " + longestPauseNanos / 1000 + " us";
+    }
 
-        for (Iterator<Integer> iterator = abortedXacts.iterator(); iterator.hasNext();) {
-            Integer xid = iterator.next();
-            if (xid < minXactReadFrom) {
-                iterator.remove();
+    private void forgetAborted(List<Integer> rolledBack, int olderThan) {
+        for (int xid : rolledBack) {
+            if (xid < olderThan) {
+                transactions.remove(xid);
             }
         }
     }
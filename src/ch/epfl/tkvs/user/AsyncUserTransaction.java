@@ -0,0 +1,295 @@
+package ch.epfl.tkvs.user;
+
+import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.parseJSON;
+import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.codehaus.jettison.json.JSONObject;
+
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.exceptions.AbortToUserException;
+import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.transactionmanager.communication.JSONCommunication;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TryCommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.BeginResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
+import ch.epfl.tkvs.user.UserTransaction.TransactionStatus;
+import ch.epfl.tkvs.yarn.RemoteTransactionManager;
+import ch.epfl.tkvs.yarn.RoutingTable;
+
+
+/**
+ * Non-blocking counterpart of {@link UserTransaction}: every operation returns immediately with a
+ * {@link CompletableFuture}, completed with an {@link AbortException} (wrapped in a {@link CompletionException}) if the
+ * operation fails.
+ *
+ * Operations do not wait for the previous ones: they are sent as soon as the transaction has begun, all on the shared
+ * connection to the {@link TransactionManager}. They are numbered in the order of the calls and the TM executes them
+ * in that order, so a read issued after a write of the same key sees that write. Calling {@link #commit()} right after
+ * the last operation is therefore fine.
+ *
+ * @see ch.epfl.tkvs.transactionmanager.RequestSequencer
+ */
+public class AsyncUserTransaction<K extends Key> {
+
+    // Fetching the routing table from the AppMaster is blocking, it is done by these threads rather than the caller's
+    private static final ExecutorService appMasterExchanges = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "AsyncUserTransaction begin");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private volatile String tmIp; // IP address of primary transaction manager
+    private volatile int tmPort; // port number of primary transaction manager
+    private volatile int transactionID;
+    private volatile int routingVersion; // version of the routing table in which the primary TM was looked up
+    private volatile TransactionStatus status = TransactionStatus.uninitialized;
+
+    private CompletableFuture<Void> begun;
+    private int nextSequenceNumber = 0;
+
+    /**
+     * An operation of the transaction: the request to send once the transaction has begun, and how to interpret its
+     * response.
+     */
+    private abstract class Operation<R> {
+
+        private final Class<? extends Message> responseType;
+
+        Operation(Class<? extends Message> responseType) {
+            this.responseType = responseType;
+        }
+
+        abstract Message request() throws IOException;
+
+        abstract R result(Message response) throws AbortException, IOException;
+    }
+
+    /**
+     * Method to initialize a transaction at the user client side.
+     * @param key The key which decides which {@link TransactionManager} should be designated as primary for this
+     * transaction, looked up in the cached routing table
+     * @return a future completed once the transaction is live
+     */
+    public synchronized CompletableFuture<Void> begin(final K key) {
+        if (status != TransactionStatus.uninitialized) {
+            return failed(new TransactionNotLiveException());
+        }
+        status = TransactionStatus.live;
+
+        CompletableFuture<Void> primaryKnown = CompletableFuture.supplyAsync(new Supplier<Void>() {
+
+            @Override
+            public Void get() {
+                try {
+                    RoutingTable routing = RoutingCache.get();
+                    RemoteTransactionManager tm = routing.findTM(key.getLocalityHash());
+                    tmIp = tm.getIp();
+                    tmPort = tm.getPort();
+                    routingVersion = routing.getVersion();
+                    return null;
+                } catch (Exception e) {
+                    status = TransactionStatus.aborted;
+                    throw new CompletionException(e);
+                }
+            }
+        }, appMasterExchanges);
+
+        // The begin request is not numbered: the primary TM assigns the transaction id, which the other operations wait for
+        begun = primaryKnown.thenCompose(new Function<Void, CompletionStage<JSONObject>>() {
+
+            @Override
+            public CompletionStage<JSONObject> apply(Void v) {
+                try {
+                    return UserTransaction.connections.sendAsync(tmIp, tmPort, toJSON(BeginRequest.assignedByPrimary(routingVersion)));
+                } catch (Exception e) {
+                    status = TransactionStatus.aborted;
+                    throw new CompletionException(e);
+                }
+            }
+        }).thenApply(new Function<JSONObject, Void>() {
+
+            @Override
+            public Void apply(JSONObject json) {
+                try {
+                    BeginResponse response = (BeginResponse) parseJSON(json, BeginResponse.class);
+                    transactionID = response.getTransactionId();
+                    if (!response.getSuccess()) {
+                        if (response.getRoutingVersion() != routingVersion) {
+                            // Not retried, but the next transactions will look up their TM in a fresh table
+                            RoutingCache.invalidate(routingVersion);
+                        }
+                        status = TransactionStatus.aborted;
+                        throw new AbortToUserException(response.getExceptionMessage());
+                    }
+                    return null;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+        });
+        return begun;
+    }
+
+    /**
+     * Method to read the value of a key
+     * @param key The key whose value is to be read
+     * @return a future completed with the value returned
+     */
+    public CompletableFuture<Serializable> read(final K key) {
+        return submit(new Operation<Serializable>(ReadResponse.class) {
+
+            @Override
+            Message request() throws IOException {
+                return ReadRequest.fromEncodedKey(transactionID, UserTransaction.encodeKey(key), key.getLocalityHash());
+            }
+
+            @Override
+            Serializable result(Message response) throws AbortException, IOException {
+                ReadResponse readResponse = (ReadResponse) response;
+                if (!readResponse.getSuccess()) {
+                    status = TransactionStatus.aborted;
+                    throw new AbortToUserException(readResponse.getExceptionMessage());
+                }
+                return UserTransaction.decodeValue(readResponse.getEncodedValue());
+            }
+        });
+    }
+
+    /**
+     * Method to write value to a key.
+     * @param key
+     * @param value
+     * @return a future completed once the value is written
+     */
+    public CompletableFuture<Void> write(final K key, final Serializable value) {
+        return submit(new Operation<Void>(GenericSuccessResponse.class) {
+
+            @Override
+            Message request() throws IOException {
+                return WriteRequest.fromEncoded(transactionID, UserTransaction.encodeKey(key), UserTransaction.encodeValue(value), key.getLocalityHash());
+            }
+
+            @Override
+            Void result(Message response) throws AbortException {
+                return checkSuccess((GenericSuccessResponse) response);
+            }
+        });
+    }
+
+    /**
+     * Method to commit the transaction, after all the operations issued before.
+     * @return a future completed once the transaction is committed
+     */
+    public CompletableFuture<Void> commit() {
+        return submit(new Operation<Void>(GenericSuccessResponse.class) {
+
+            @Override
+            Message request() {
+                return new TryCommitRequest(transactionID);
+            }
+
+            @Override
+            Void result(Message response) throws AbortException {
+                checkSuccess((GenericSuccessResponse) response);
+                status = TransactionStatus.commited;
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Method to abort the transaction, after all the operations issued before.
+     * @return a future completed once the transaction is aborted
+     */
+    public CompletableFuture<Void> abort() {
+        return submit(new Operation<Void>(GenericSuccessResponse.class) {
+
+            @Override
+            Message request() {
+                return new AbortRequest(transactionID);
+            }
+
+            @Override
+            Void result(Message response) {
+                status = TransactionStatus.aborted;
+                return null;
+            }
+        });
+    }
+
+    public int getTransactionID() {
+        return transactionID;
+    }
+
+    public TransactionStatus getStatus() {
+        return status;
+    }
+
+    // Sends the request of an operation, numbered in call order, once the transaction has begun
+    private synchronized <R> CompletableFuture<R> submit(final Operation<R> operation) {
+        if (begun == null || status != TransactionStatus.live) {
+            return failed(new TransactionNotLiveException());
+        }
+        final int sequenceNumber = nextSequenceNumber++;
+
+        return begun.thenCompose(new Function<Void, CompletionStage<JSONObject>>() {
+
+            @Override
+            public CompletionStage<JSONObject> apply(Void v) {
+                try {
+                    JSONObject json = toJSON(operation.request());
+                    json.put(JSONCommunication.KEY_FOR_SEQUENCE, sequenceNumber);
+                    return UserTransaction.connections.sendAsync(tmIp, tmPort, json);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }).thenApply(new Function<JSONObject, R>() {
+
+            @Override
+            public R apply(JSONObject json) {
+                try {
+                    return operation.result(parseJSON(json, operation.responseType));
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+        });
+    }
+
+    private Void checkSuccess(GenericSuccessResponse response) throws AbortException {
+        if (!response.getSuccess()) {
+            status = TransactionStatus.aborted;
+            throw new AbortToUserException(response.getExceptionMessage());
+        }
+        return null;
+    }
+
+    private static <R> CompletableFuture<R> failed(AbortException e) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+}
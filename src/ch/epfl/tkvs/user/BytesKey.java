@@ -0,0 +1,50 @@
+package ch.epfl.tkvs.user;
+
+import java.util.Arrays;
+
+
+/**
+ * A key identified by a byte array, sent as it is by {@link Serializers#BYTES_KEYS}. The array must not be changed
+ * once in the key.
+ */
+public class BytesKey extends Key {
+
+    private static final long serialVersionUID = -2916204470338811539L;
+
+    private final byte[] key;
+    private final int localityHash;
+
+    public BytesKey(byte[] key, int localityHash) {
+        this.key = key;
+        this.localityHash = localityHash;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    @Override
+    public int getLocalityHash() {
+        return localityHash;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(key) + localityHash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof BytesKey))
+            return false;
+        BytesKey other = (BytesKey) obj;
+        return localityHash == other.localityHash && Arrays.equals(key, other.key);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(key);
+    }
+}
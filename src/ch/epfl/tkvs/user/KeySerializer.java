@@ -0,0 +1,22 @@
+package ch.epfl.tkvs.user;
+
+import java.io.IOException;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+
+
+/**
+ * Converts the keys to the bytes sent to the {@link TransactionManager}s, which store and compare the keys in this
+ * form only. The same key must always give the same bytes, and all the clients of a store must use the same
+ * serializer. The built-in serializers are in {@link Serializers}.
+ * @param <K> the type of the keys
+ */
+public interface KeySerializer<K extends Key> {
+
+    /**
+     * @param key a key
+     * @return the bytes identifying the key
+     * @throws IOException if the key cannot be serialized
+     */
+    byte[] serialize(K key) throws IOException;
+}
@@ -0,0 +1,46 @@
+package ch.epfl.tkvs.user;
+
+/**
+ * A key identified by a long, sent on 8 bytes by {@link Serializers#LONG_KEYS}.
+ */
+public class LongKey extends Key {
+
+    private static final long serialVersionUID = 5189471934411650917L;
+
+    private final long key;
+    private final int localityHash;
+
+    public LongKey(long key, int localityHash) {
+        this.key = key;
+        this.localityHash = localityHash;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    @Override
+    public int getLocalityHash() {
+        return localityHash;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(key) + localityHash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof LongKey))
+            return false;
+        LongKey other = (LongKey) obj;
+        return key == other.key && localityHash == other.localityHash;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(key);
+    }
+}
@@ -0,0 +1,59 @@
+package ch.epfl.tkvs.user;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.yarn.RoutingTable;
+import ch.epfl.tkvs.yarn.appmaster.AppMaster;
+
+
+/**
+ * The routing table of the distributed system, as last fetched from the {@link AppMaster} by this client. It lets the
+ * client find the primary {@link TransactionManager} of a transaction by itself, so that beginning a transaction does
+ * not involve the AppMaster.
+ *
+ * A {@link TransactionManager} refuses to begin a transaction looked up in a table whose version differs from its own.
+ * The client then invalidates its copy, and the next lookup fetches the current table.
+ */
+public class RoutingCache {
+
+    private static volatile RoutingTable routing = null;
+    // Not a monitor, fetching the table blocks and must not pin the carrier of a virtual thread
+    private static final ReentrantLock fetchLock = new ReentrantLock();
+
+    /**
+     * @return the cached routing table, fetched from the {@link AppMaster} if there is none
+     * @throws Exception if the table cannot be fetched
+     */
+    public static RoutingTable get() throws Exception {
+        RoutingTable current = routing;
+        if (current != null) {
+            return current;
+        }
+
+        fetchLock.lock();
+        try {
+            if (routing == null) {
+                routing = UserTransaction.requestRoutingTable();
+            }
+            return routing;
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the cached table if it still is the given version, so that the next {@link #get()} fetches a fresh one.
+     * @param staleVersion the version found to be stale
+     */
+    public static void invalidate(int staleVersion) {
+        fetchLock.lock();
+        try {
+            if (routing != null && routing.getVersion() == staleVersion) {
+                routing = null;
+            }
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ch.epfl.tkvs.user;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The built-in {@link KeySerializer}s and {@link ValueSerializer}s.
+ *
+ * {@link #JAVA_KEYS} and {@link #JAVA} use Java serialization, which accepts any type but costs a header and a class
+ * descriptor per key or value. They are the default, see {@link UserTransaction#setSerializers}. The other serializers
+ * only write the content: UTF-8 for strings, 8 bytes for longs, and the bytes themselves for byte arrays. The keys
+ * being {@link Key}s, the long and byte array keys are the {@link LongKey}s and {@link BytesKey}s.
+ */
+public final class Serializers {
+
+    private Serializers() {
+    }
+
+    /** Java serialization of the keys. */
+    public static final KeySerializer<Key> JAVA_KEYS = new KeySerializer<Key>() {
+
+        @Override
+        public byte[] serialize(Key key) throws IOException {
+            return serializeObject(key);
+        }
+    };
+
+    /** The UTF-8 bytes of {@link Key#toString()}, for keys whose string form identifies them. */
+    public static final KeySerializer<Key> STRING_KEYS = new KeySerializer<Key>() {
+
+        @Override
+        public byte[] serialize(Key key) {
+            return key.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    /** The 8 bytes of {@link LongKey#getKey()}. */
+    public static final KeySerializer<LongKey> LONG_KEYS = new KeySerializer<LongKey>() {
+
+        @Override
+        public byte[] serialize(LongKey key) {
+            return ByteBuffer.allocate(8).putLong(key.getKey()).array();
+        }
+    };
+
+    /** The bytes of {@link BytesKey#getKey()}, as they are. */
+    public static final KeySerializer<BytesKey> BYTES_KEYS = new KeySerializer<BytesKey>() {
+
+        @Override
+        public byte[] serialize(BytesKey key) {
+            return key.getKey();
+        }
+    };
+
+    /** Java serialization of the values. */
+    public static final ValueSerializer<Serializable> JAVA = new ValueSerializer<Serializable>() {
+
+        @Override
+        public byte[] serialize(Serializable value) throws IOException {
+            return serializeObject(value);
+        }
+
+        @Override
+        public Serializable deserialize(byte[] bytes) throws IOException {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (Serializable) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    };
+
+    /** UTF-8 strings. */
+    public static final ValueSerializer<String> STRING = new ValueSerializer<String>() {
+
+        @Override
+        public byte[] serialize(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /** Longs, on 8 bytes. */
+    public static final ValueSerializer<Long> LONG = new ValueSerializer<Long>() {
+
+        @Override
+        public byte[] serialize(Long value) {
+            return ByteBuffer.allocate(8).putLong(value).array();
+        }
+
+        @Override
+        public Long deserialize(byte[] bytes) throws IOException {
+            if (bytes.length != 8) {
+                throw new IOException("A long has 8 bytes, not " + bytes.length);
+            }
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+    };
+
+    /** Byte arrays, as they are. */
+    public static final ValueSerializer<byte[]> BYTES = new ValueSerializer<byte[]>() {
+
+        @Override
+        public byte[] serialize(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    private static byte[] serializeObject(Serializable object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+}
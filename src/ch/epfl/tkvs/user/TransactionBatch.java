@@ -0,0 +1,144 @@
+package ch.epfl.tkvs.user;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.exceptions.AbortToUserException;
+import ch.epfl.tkvs.exceptions.RemoteTMException;
+import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionBatchRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionBatchResponse;
+import ch.epfl.tkvs.yarn.RemoteTransactionManager;
+import ch.epfl.tkvs.yarn.RoutingTable;
+
+
+/**
+ * A transaction whose operations are all known up front. The reads and writes are recorded, then sent together to the
+ * primary {@link TransactionManager}, which begins the transaction, executes them in order and commits it, in a single
+ * round trip.
+ *
+ * The primary TM is the one of the first key, as with {@link UserTransaction#begin(Key)}.
+ */
+public class TransactionBatch<K extends Key> {
+
+    private final ArrayList<String> encodedKeys = new ArrayList<String>();
+    private final ArrayList<String> encodedValues = new ArrayList<String>();
+    private final ArrayList<Integer> hashes = new ArrayList<Integer>();
+    private int primaryHash;
+    private boolean executed = false;
+
+    // The primary TM the batch was sent to
+    private String tmIp;
+    private int tmPort;
+
+    private List<Serializable> values;
+
+    /**
+     * Records a read. Its value is returned by {@link #commit()}, in the order of the reads.
+     * @param key The key whose value is to be read
+     * @return this batch
+     */
+    public TransactionBatch<K> read(K key) {
+        return add(key, null);
+    }
+
+    /**
+     * Records a write.
+     * @param key
+     * @param value
+     * @return this batch
+     */
+    public TransactionBatch<K> write(K key, Serializable value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot write a null value");
+        }
+        return add(key, value);
+    }
+
+    /**
+     * Executes the operations and commits the transaction.
+     * @return the values read, in the order of the reads
+     * @throws AbortException if an operation or the commit was unsuccessful, the transaction is then aborted
+     */
+    public List<Serializable> commit() throws AbortException {
+        execute(true);
+        return values;
+    }
+
+    /**
+     * Executes the operations and leaves the transaction live, to be continued and committed as any other.
+     * @return the transaction
+     * @throws AbortException if an operation was unsuccessful, the transaction is then aborted
+     */
+    public UserTransaction<K> begin() throws AbortException {
+        TransactionBatchResponse response = execute(false);
+        return new UserTransaction<K>(tmIp, tmPort, response.getTransactionId());
+    }
+
+    /**
+     * @return the values read by {@link #begin()}, in the order of the reads
+     */
+    public List<Serializable> getValues() {
+        return values;
+    }
+
+    private TransactionBatch<K> add(K key, Serializable value) {
+        if (executed) {
+            throw new IllegalStateException("The batch was already executed");
+        }
+        try {
+            encodedKeys.add(UserTransaction.encodeKey(key));
+            encodedValues.add(value == null ? null : UserTransaction.encodeValue(value));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+        hashes.add(key.getLocalityHash());
+        if (hashes.size() == 1) {
+            primaryHash = key.getLocalityHash();
+        }
+        return this;
+    }
+
+    private TransactionBatchResponse execute(boolean commit) throws AbortException {
+        if (executed || encodedKeys.isEmpty()) {
+            throw new TransactionNotLiveException();
+        }
+        executed = true;
+
+        TransactionBatchResponse response;
+        try {
+            RoutingTable routing = RoutingCache.get();
+            response = executeAt(routing, commit);
+            if (!response.getSuccess() && response.getRoutingVersion() != routing.getVersion()) {
+                // Looked up in a stale table, nothing was executed
+                RoutingCache.invalidate(routing.getVersion());
+                response = executeAt(RoutingCache.get(), commit);
+            }
+        } catch (Exception ex) {
+            UserTransaction.log.error("Remote error", ex, TransactionBatch.class);
+            throw new RemoteTMException(ex);
+        }
+
+        if (!response.getSuccess()) {
+            throw new AbortToUserException(response.getExceptionMessage());
+        }
+        try {
+            values = UserTransaction.decodeValues(response.getEncodedValues());
+        } catch (IOException ex) {
+            throw new RemoteTMException(ex);
+        }
+        return response;
+    }
+
+    private TransactionBatchResponse executeAt(RoutingTable routing, boolean commit) throws Exception {
+        RemoteTransactionManager tm = routing.findTM(primaryHash);
+        tmIp = tm.getIp();
+        tmPort = tm.getPort();
+        TransactionBatchRequest request = new TransactionBatchRequest(routing.getVersion(), encodedKeys, encodedValues, hashes, commit);
+        return (TransactionBatchResponse) UserTransaction.sendRequest(tmIp, tmPort, request, TransactionBatchResponse.class);
+    }
+}
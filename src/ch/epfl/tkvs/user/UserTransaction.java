@@ -4,11 +4,17 @@ import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageCo
 import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.codehaus.jettison.json.JSONObject;
 
@@ -18,16 +24,25 @@ import ch.epfl.tkvs.exceptions.RemoteTMException;
 import ch.epfl.tkvs.exceptions.TransactionNotLiveException;
 import ch.epfl.tkvs.transactionmanager.TransactionManager;
 import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.network.ConnectionPool;
+import ch.epfl.tkvs.transactionmanager.communication.network.WireProtocol;
 import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiWriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
-import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionManagerRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.RoutingTableRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.TryCommitRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.BeginResponse;
 import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MultiReadResponse;
 import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
-import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionManagerResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.RoutingTableResponse;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
 import ch.epfl.tkvs.yarn.HDFSLogger;
+import ch.epfl.tkvs.yarn.RemoteTransactionManager;
+import ch.epfl.tkvs.yarn.RoutingTable;
 import ch.epfl.tkvs.yarn.Utils;
 import ch.epfl.tkvs.yarn.appmaster.AppMaster;
 
@@ -46,28 +61,112 @@ public class UserTransaction<K extends Key> {
     private static InetSocketAddress amAddress = null;
     public static HDFSLogger log = new HDFSLogger(UserTransaction.class);
 
+    // Connections to the transaction managers and the app master, shared by all the transactions of this client
+    static ConnectionPool connections = new ConnectionPool();
+    private static volatile boolean persistentConnections = true;
+    private static volatile KeySerializer<? extends Key> keySerializer = Serializers.JAVA_KEYS;
+    private static volatile ValueSerializer<? extends Serializable> valueSerializer = Serializers.JAVA;
+
+    public UserTransaction() {
+    }
+
+    /**
+     * A transaction already begun by its primary transaction manager, e.g. by a {@link TransactionBatch}.
+     */
+    UserTransaction(String tmIp, int tmPort, int transactionID) {
+        this.tmIp = tmIp;
+        this.tmPort = tmPort;
+        this.transactionID = transactionID;
+        this.status = TransactionStatus.live;
+    }
+
+    /**
+     * Chooses how the requests are sent to the transaction managers.
+     * @param persistent if true (default), the requests are multiplexed over one long-lived connection per
+     * {@link TransactionManager} and to the {@link AppMaster}, otherwise every request opens a socket of its own
+     */
+    public static void setPersistentConnections(boolean persistent) {
+        persistentConnections = persistent;
+        if (!persistent) {
+            closeConnections();
+        }
+    }
+
+    /**
+     * Chooses how the messages are framed on the persistent connections, see {@link WireProtocol}.
+     * @param protocol {@link WireProtocol#JSON} (default) or {@link WireProtocol#BINARY}
+     */
+    public static void setWireProtocol(WireProtocol protocol) {
+        connections.setProtocol(protocol);
+    }
+
+    /**
+     * Chooses how the keys and values are converted to the bytes stored by the transaction managers. The keys are
+     * compared in this form, so every client of a store must use the same key serializer, and the values must be read
+     * with the serializer they were written with. Java serialization ({@link Serializers#JAVA_KEYS},
+     * {@link Serializers#JAVA}) is used by default.
+     * @param keys the serializer of the keys of all the transactions
+     * @param values the serializer of their values, which must accept the values written
+     */
+    public static void setSerializers(KeySerializer<? extends Key> keys, ValueSerializer<? extends Serializable> values) {
+        keySerializer = keys;
+        valueSerializer = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    static String encodeKey(Key key) throws IOException {
+        return Base64Utils.encodeBytes(((KeySerializer<Key>) keySerializer).serialize(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    static String encodeValue(Serializable value) throws IOException {
+        return Base64Utils.encodeBytes(((ValueSerializer<Serializable>) valueSerializer).serialize(value));
+    }
+
+    static Serializable decodeValue(String encodedValue) throws IOException {
+        return valueSerializer.deserialize(Base64Utils.decodeBytes(encodedValue));
+    }
+
+    static List<Serializable> decodeValues(List<String> encodedValues) throws IOException {
+        List<Serializable> values = new ArrayList<Serializable>(encodedValues.size());
+        for (String encodedValue : encodedValues) {
+            values.add(decodeValue(encodedValue));
+        }
+        return values;
+    }
+
+    /**
+     * Closes the persistent connections opened so far.
+     */
+    public static void closeConnections() {
+        connections.close();
+    }
+
     /**
      * method to initialize a transaction at the user client side.
-     * @param key The key which hints the {@link AppMaster} to decide which {@link TransactionManager} should be
-     * designated as primary for this transaction
+     * @param key The key which decides which {@link TransactionManager} should be designated as primary for this
+     * transaction, looked up in the cached routing table
      * @throws AbortException if operation was unsuccessful
      */
     public void begin(K key) throws AbortException {
         try {
-            if (amAddress == null) {
-                amAddress = Utils.readAMAddress();
+            RoutingTable routing = RoutingCache.get();
+            BeginResponse beginResponse;
+            try {
+                beginResponse = beginAt(routing, key);
+            } catch (IOException e) {
+                // The TM may have moved, look it up again in a fresh table
+                RoutingCache.invalidate(routing.getVersion());
+                routing = RoutingCache.get();
+                beginResponse = beginAt(routing, key);
+            }
+            if (!beginResponse.getSuccess() && beginResponse.getRoutingVersion() != routing.getVersion()) {
+                RoutingCache.invalidate(routing.getVersion());
+                routing = RoutingCache.get();
+                beginResponse = beginAt(routing, key);
             }
 
-            TransactionManagerRequest req = new TransactionManagerRequest(key.getLocalityHash());
-
-            TransactionManagerResponse response = (TransactionManagerResponse) sendRequest(amAddress.getHostName(), amAddress.getPort(), req, TransactionManagerResponse.class);
-
-            tmIp = response.getIp();
-            tmPort = response.getPort();
-            transactionID = response.getTransactionId();
-
-            BeginRequest request = new BeginRequest(transactionID);
-            GenericSuccessResponse beginResponse = (GenericSuccessResponse) sendRequest(tmIp, tmPort, request, GenericSuccessResponse.class);
+            transactionID = beginResponse.getTransactionId();
             if (!beginResponse.getSuccess()) {
                 status = TransactionStatus.aborted;
                 throw new AbortToUserException(beginResponse.getExceptionMessage());
@@ -81,13 +180,61 @@ public class UserTransaction<K extends Key> {
         }
     }
 
-    private Message sendRequest(String ip, int port, Message request, Class<? extends Message> expectedMessageType) throws Exception {
+    // Sends the begin request to the primary TM of a key, which assigns the transaction id
+    private BeginResponse beginAt(RoutingTable routing, K key) throws Exception {
+        RemoteTransactionManager tm = routing.findTM(key.getLocalityHash());
+        tmIp = tm.getIp();
+        tmPort = tm.getPort();
+        return (BeginResponse) sendRequest(tmIp, tmPort, BeginRequest.assignedByPrimary(routing.getVersion()), BeginResponse.class);
+    }
+
+    /**
+     * Fetches the routing table from the {@link AppMaster}.
+     */
+    static RoutingTable requestRoutingTable() throws Exception {
+        if (amAddress == null) {
+            amAddress = Utils.readAMAddress();
+        }
+
+        RoutingTableRequest req = new RoutingTableRequest();
+        RoutingTableResponse response;
+        if (!persistentConnections) {
+            response = (RoutingTableResponse) sendOneShotRequest(amAddress.getHostName(), amAddress.getPort(), req, RoutingTableResponse.class);
+        } else {
+            JSONObject jsonResponse = connections.send(amAddress.getHostName(), amAddress.getPort(), toJSON(req), true);
+            response = (RoutingTableResponse) parseJSON(jsonResponse, RoutingTableResponse.class);
+        }
+        if (response.getRoutingTable() == null) {
+            throw new IOException("Invalid routing table");
+        }
+        return response.getRoutingTable();
+    }
+
+    static Message sendRequest(String ip, int port, Message request, Class<? extends Message> expectedMessageType) throws Exception {
+        if (!persistentConnections) {
+            return sendOneShotRequest(ip, port, request, expectedMessageType);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(HDFSLogger.concat("Sending ", request, " to ", ip, ":", port), UserTransaction.class);
+        }
+        JSONObject jsonResponse = connections.send(ip, port, toJSON(request), true);
+        Message response = parseJSON(jsonResponse, expectedMessageType);
+        if (log.isDebugEnabled()) {
+            log.debug(HDFSLogger.concat(response, " <-- ", request), UserTransaction.class);
+        }
+        return response;
+    }
+
+    private static Message sendOneShotRequest(String ip, int port, Message request, Class<? extends Message> expectedMessageType) throws Exception {
 
         Socket sock = new Socket(ip, port);
 
         PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
         out.println(toJSON(request).toString());
-        log.info("Sending " + request + " to " + ip + ":" + port, UserTransaction.class);
+        if (log.isDebugEnabled()) {
+            log.debug(HDFSLogger.concat("Sending ", request, " to ", ip, ":", port), UserTransaction.class);
+        }
 
         BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
         String inputStr = in.readLine();
@@ -96,7 +243,9 @@ public class UserTransaction<K extends Key> {
         out.close();
         sock.close();
         Message response = parseJSON(new JSONObject(inputStr), expectedMessageType);
-        log.info(response + " <-- " + request, UserTransaction.class);
+        if (log.isDebugEnabled()) {
+            log.debug(HDFSLogger.concat(response, " <-- ", request), UserTransaction.class);
+        }
         return response;
 
     }
@@ -113,10 +262,9 @@ public class UserTransaction<K extends Key> {
             throw new TransactionNotLiveException();
         }
 
-        ReadRequest request = new ReadRequest(transactionID, key, key.getLocalityHash());
-
         ReadResponse response;
         try {
+            ReadRequest request = ReadRequest.fromEncodedKey(transactionID, encodeKey(key), key.getLocalityHash());
             response = (ReadResponse) sendRequest(tmIp, tmPort, request, ReadResponse.class);
         } catch (Exception ex) {
             log.error("Remote error", ex, UserTransaction.class);
@@ -129,7 +277,11 @@ public class UserTransaction<K extends Key> {
             throw new AbortToUserException(response.getExceptionMessage());
         }
 
-        return response.getValue();
+        try {
+            return decodeValue(response.getEncodedValue());
+        } catch (IOException ex) {
+            throw new RemoteTMException(ex);
+        }
 
     }
 
@@ -144,9 +296,9 @@ public class UserTransaction<K extends Key> {
         if (status != TransactionStatus.live) {
             throw new TransactionNotLiveException();
         }
-        WriteRequest request = new WriteRequest(transactionID, key, value, key.getLocalityHash());
         GenericSuccessResponse response;
         try {
+            WriteRequest request = WriteRequest.fromEncoded(transactionID, encodeKey(key), encodeValue(value), key.getLocalityHash());
             response = (GenericSuccessResponse) sendRequest(tmIp, tmPort, request, GenericSuccessResponse.class);
         } catch (Exception ex) {
             log.error("Remote error", ex, UserTransaction.class);
@@ -160,6 +312,87 @@ public class UserTransaction<K extends Key> {
 
     }
 
+    /**
+     * Method to read the values of several keys in one round trip
+     * @param keys The keys whose values are to be read
+     * @return The values returned, by key
+     * @throws AbortException if the operation was unsuccessful
+     */
+    public Map<K, Serializable> readAll(Collection<K> keys) throws AbortException {
+
+        if (status != TransactionStatus.live) {
+            throw new TransactionNotLiveException();
+        }
+
+        List<K> orderedKeys = new ArrayList<K>(keys);
+        ArrayList<String> encodedKeys = new ArrayList<String>();
+        ArrayList<Integer> hashes = new ArrayList<Integer>();
+        MultiReadResponse response;
+        try {
+            for (K key : orderedKeys) {
+                encodedKeys.add(encodeKey(key));
+                hashes.add(key.getLocalityHash());
+            }
+            MultiReadRequest request = new MultiReadRequest(transactionID, encodedKeys, hashes);
+            response = (MultiReadResponse) sendRequest(tmIp, tmPort, request, MultiReadResponse.class);
+        } catch (Exception ex) {
+            log.error("Remote error", ex, UserTransaction.class);
+            throw new RemoteTMException(ex);
+        }
+
+        if (!response.getSuccess()) {
+            status = TransactionStatus.aborted;
+            log.warn(response.getExceptionMessage(), UserTransaction.class);
+            throw new AbortToUserException(response.getExceptionMessage());
+        }
+
+        List<Serializable> values;
+        try {
+            values = decodeValues(response.getEncodedValues());
+        } catch (IOException ex) {
+            throw new RemoteTMException(ex);
+        }
+        Map<K, Serializable> result = new LinkedHashMap<K, Serializable>();
+        for (int i = 0; i < orderedKeys.size(); i++) {
+            result.put(orderedKeys.get(i), values.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Method to write values to several keys in one round trip.
+     * @param values The values to write, by key
+     * @throws AbortException if the operation was unsuccessful
+     */
+    public void writeAll(Map<K, ? extends Serializable> values) throws AbortException {
+
+        if (status != TransactionStatus.live) {
+            throw new TransactionNotLiveException();
+        }
+
+        ArrayList<String> encodedKeys = new ArrayList<String>();
+        ArrayList<String> encodedValues = new ArrayList<String>();
+        ArrayList<Integer> hashes = new ArrayList<Integer>();
+        GenericSuccessResponse response;
+        try {
+            for (Map.Entry<K, ? extends Serializable> entry : values.entrySet()) {
+                encodedKeys.add(encodeKey(entry.getKey()));
+                encodedValues.add(encodeValue(entry.getValue()));
+                hashes.add(entry.getKey().getLocalityHash());
+            }
+            MultiWriteRequest request = new MultiWriteRequest(transactionID, encodedKeys, encodedValues, hashes);
+            response = (GenericSuccessResponse) sendRequest(tmIp, tmPort, request, GenericSuccessResponse.class);
+        } catch (Exception ex) {
+            log.error("Remote error", ex, UserTransaction.class);
+            throw new RemoteTMException(ex);
+        }
+
+        if (!response.getSuccess()) {
+            status = TransactionStatus.aborted;
+            throw new AbortToUserException(response.getExceptionMessage());
+        }
+    }
+
     /**
      * Method to commit the transaction
      * @throws AbortException if the operation was unsuccessful
@@ -0,0 +1,29 @@
+package ch.epfl.tkvs.user;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import ch.epfl.tkvs.transactionmanager.TransactionManager;
+
+
+/**
+ * Converts the values to the bytes stored by the {@link TransactionManager}s and back. The built-in serializers are in
+ * {@link Serializers}.
+ * @param <V> the type of the values
+ */
+public interface ValueSerializer<V extends Serializable> {
+
+    /**
+     * @param value a value
+     * @return its bytes
+     * @throws IOException if the value cannot be serialized
+     */
+    byte[] serialize(V value) throws IOException;
+
+    /**
+     * @param bytes bytes given by {@link #serialize(Serializable)}
+     * @return the value
+     * @throws IOException if the bytes are not a valid value
+     */
+    V deserialize(byte[] bytes) throws IOException;
+}
@@ -8,6 +8,7 @@ import java.io.PrintWriter;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -38,13 +39,20 @@ import org.junit.runner.JUnitCore;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
 
+import ch.epfl.tkvs.keyvaluestore.LsmStorageEngineTest;
+import ch.epfl.tkvs.keyvaluestore.OffHeapStorageEngineTest;
 import ch.epfl.tkvs.test.userclient.Benchmark;
 import ch.epfl.tkvs.test.userclient.MV2PLSystemTest;
 import ch.epfl.tkvs.test.userclient.MVTOSystemTest;
 import ch.epfl.tkvs.test.userclient.S2PLSystemTest;
+import ch.epfl.tkvs.transactionmanager.AdmissionControllerTest;
+import ch.epfl.tkvs.transactionmanager.RequestSequencerTest;
+import ch.epfl.tkvs.transactionmanager.TransactionIdAllocatorTest;
 import ch.epfl.tkvs.transactionmanager.algorithms.MVCC2PLTest;
 import ch.epfl.tkvs.transactionmanager.algorithms.Simple2PLTest;
+import ch.epfl.tkvs.transactionmanager.communication.BinaryMessageConverterTest;
 import ch.epfl.tkvs.transactionmanager.lockingunit.DeadlockGraphTest;
+import ch.epfl.tkvs.transactionmanager.lockingunit.DeadlockInfoTest;
 import ch.epfl.tkvs.transactionmanager.lockingunit.LockingUnitTest;
 import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVCC2PLTest;
 import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVTOTest;
@@ -208,11 +216,12 @@ public class Client {
                 break;
             case ":benchmark":
                 hist.add(input);
-                Pattern pattern = Pattern.compile(":benchmark t (\\d+) r (\\d+) k (\\d+) ratio (\\d+)(?: )?(\\d+)?");
+                Pattern pattern = Pattern.compile(":benchmark t (\\d+) r (\\d+) k (\\d+) ratio (\\d+)(?: )?(\\d+)?(?: mode (\\w+))?");
                 Matcher matcher = pattern.matcher(input);
                 if (!matcher.matches()) {
-                    log.info("Usage ``:benchmark t <#transactions> r <#requestsPerTransaction> k <#keys> ratio <readWriteRatio> <#repetitions>");
+                    log.info("Usage ``:benchmark t <#transactions> r <#requestsPerTransaction> k <#keys> ratio <readWriteRatio> <#repetitions> mode <oneshot|persistent|async>");
                     log.info("Run t transactions, doing each at most r random actions, using a set of k keys with ratio:1 read:write ratio");
+                    log.info("The mode selects how requests reach the transaction managers (default: persistent, async pipelines the requests of a transaction)");
                     break;
                 }
 
@@ -224,8 +233,17 @@ public class Client {
                 if (matcher.group(5) != null) {
                     repetition = Integer.parseInt(matcher.group(5));
                 }
+                Benchmark.Mode mode = Benchmark.Mode.PERSISTENT;
+                if (matcher.group(6) != null) {
+                    try {
+                        mode = Benchmark.Mode.valueOf(matcher.group(6).toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        log.info("Unknown benchmark mode " + matcher.group(6) + ", available modes: " + Arrays.toString(Benchmark.Mode.values()));
+                        break;
+                    }
+                }
 
-                new Benchmark(nbKeys, nbUsers, maxNbActions, ratio, repetition).run();
+                new Benchmark(nbKeys, nbUsers, maxNbActions, ratio, repetition, mode).run();
                 break;
 
             case ":help":
@@ -276,6 +294,27 @@ public class Client {
 
         log.info("Running DeadlockGraphTest...");
         runTestCase(DeadlockGraphTest.class);
+
+        log.info("Running DeadlockInfoTest...");
+        runTestCase(DeadlockInfoTest.class);
+
+        log.info("Running RequestSequencerTest...");
+        runTestCase(RequestSequencerTest.class);
+
+        log.info("Running AdmissionControllerTest...");
+        runTestCase(AdmissionControllerTest.class);
+
+        log.info("Running TransactionIdAllocatorTest...");
+        runTestCase(TransactionIdAllocatorTest.class);
+
+        log.info("Running BinaryMessageConverterTest...");
+        runTestCase(BinaryMessageConverterTest.class);
+
+        log.info("Running OffHeapStorageEngineTest...");
+        runTestCase(OffHeapStorageEngineTest.class);
+
+        log.info("Running LsmStorageEngineTest...");
+        runTestCase(LsmStorageEngineTest.class);
     }
 
     private static void runTestCase(Class<?> testCase) {
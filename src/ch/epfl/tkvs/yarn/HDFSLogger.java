@@ -1,100 +1,359 @@
 package ch.epfl.tkvs.yarn;
 
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import org.apache.commons.net.ntp.TimeStamp;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.log4j.Logger;
 
 
-//TODO: In the future, use log aggregation instead!
+/**
+ * Logs to a file on HDFS, or on any file system Hadoop knows (e.g. file:///tmp/tkvs.log).
+ *
+ * Logging only stores the message object in a bounded ring buffer: it is formatted later, by the thread writing the
+ * log. A message may therefore be any object whose {@link Object#toString()} does not change, or a {@link Supplier}.
+ * When the buffer is full, the oldest entries are dropped and their number is written in their place. The messages
+ * below the level of {@link #setLevel(Level)} are dropped at once; {@link #isDebugEnabled()} guards the messages that
+ * would be costly to build.
+ *
+ * The buffer is written incrementally every {@link #FLUSH_INTERVAL_MS} once {@link #startFlushing(String)} is called,
+ * and once and for all by {@link #writeToHDFS(String)} otherwise.
+ */
+// TODO: In the future, use log aggregation instead!
 public class HDFSLogger {
 
-    private boolean ALSO_USE_LOG4J;
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, FATAL
+    }
+
     public static final String TKVS_LOGS_PATH = "hdfs:///tmp/tkvs/logs/";
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    public static final long FLUSH_INTERVAL_MS = 1000;
+
+    // Shared by all the loggers of the process
+    private static volatile Level level = Level.INFO;
+
+    private boolean ALSO_USE_LOG4J;
     private Logger log;
-    private ArrayList<Object> hdfsLog;
+
+    // Ring buffer of the entries not written yet, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] times;
+    private final Level[] levels;
+    private final Class<?>[] classes;
+    private final Object[] messages;
+    private final Throwable[] throwables;
+    private int first = 0;
+    private int size = 0;
+    private long dropped = 0;
+
+    // Only used by the thread writing the log
+    private PrintWriter out = null;
+    private FSDataOutputStream stream = null;
+    private FileSystem fs = null;
+    private Thread flusher = null;
 
     public HDFSLogger(Class<?> c) {
-        ALSO_USE_LOG4J = false;
-        hdfsLog = new ArrayList<>();
+        this(c, false);
     }
 
     public HDFSLogger(Class<?> c, boolean alsoLog) {
+        this(c, alsoLog, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param c the class owning the logger
+     * @param alsoLog whether the messages are also given to log4j, at once
+     * @param capacity the number of entries kept before the oldest are dropped
+     */
+    public HDFSLogger(Class<?> c, boolean alsoLog, int capacity) {
         ALSO_USE_LOG4J = alsoLog;
         if (ALSO_USE_LOG4J)
             log = Logger.getLogger(c);
-        hdfsLog = new ArrayList<>();
+        times = new long[capacity];
+        levels = new Level[capacity];
+        classes = new Class<?>[capacity];
+        messages = new Object[capacity];
+        throwables = new Throwable[capacity];
     }
 
-    public void info(Object m, Class<?> c) {
+    /**
+     * @param newLevel the lowest level logged from now on by all the loggers, {@link Level#INFO} by default
+     */
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    public boolean isInfoEnabled() {
+        return level.compareTo(Level.INFO) <= 0;
+    }
+
+    /**
+     * @param parts the parts of a message
+     * @return a message whose string form, built when it is written, is the concatenation of the parts
+     */
+    public static Object concat(final Object... parts) {
+        return new Supplier<String>() {
+
+            @Override
+            public String get() {
+                StringBuilder sb = new StringBuilder();
+                for (Object part : parts) {
+                    sb.append(part);
+                }
+                return sb.toString();
+            }
+
+            // For the sinks that only call String.valueOf, such as log4j
+            @Override
+            public String toString() {
+                return get();
+            }
+        };
+    }
+
+    public void debug(Object m, Class<?> c) {
+        if (level != Level.DEBUG)
+            return;
         if (ALSO_USE_LOG4J)
-            log.info(m);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " INFO " + c.getSimpleName() + "]: " + m);
+            log.debug(m);
+        add(Level.DEBUG, c, m, null);
+    }
+
+    public void info(Object m, Class<?> c) {
+        log(Level.INFO, m, null, c);
     }
 
     public void warn(Object m, Class<?> c) {
-        if (ALSO_USE_LOG4J)
-            log.warn(m);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " WARN " + c.getSimpleName() + "]: " + m);
+        log(Level.WARN, m, null, c);
     }
 
     public void error(Object m, Class<?> c) {
-        if (ALSO_USE_LOG4J)
-            log.error(m);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " ERROR " + c.getSimpleName() + "]: " + m);
+        log(Level.ERROR, m, null, c);
     }
 
     public void fatal(Object m, Class<?> c) {
-        if (ALSO_USE_LOG4J)
-            log.fatal(m);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " FATAL " + c.getSimpleName() + "]: " + m);
+        log(Level.FATAL, m, null, c);
     }
 
     public void info(Object m, Throwable t, Class<?> c) {
-        if (ALSO_USE_LOG4J)
-            log.info(m, t);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " INFO " + c.getSimpleName() + "]: " + m + "\n" + t);
+        log(Level.INFO, m, t, c);
     }
 
     public void warn(Object m, Throwable t, Class<?> c) {
-        if (ALSO_USE_LOG4J)
-            log.warn(m, t);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " WARN " + c.getSimpleName() + "]: " + m + "\n" + t);
+        log(Level.WARN, m, t, c);
     }
 
     public void error(Object m, Throwable t, Class<?> c) {
-        if (ALSO_USE_LOG4J)
-            log.error(m, t);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " ERROR " + c.getSimpleName() + "]: " + m + "\n" + t);
+        log(Level.ERROR, m, t, c);
     }
 
     public void fatal(Object m, Throwable t, Class<?> c) {
-        if (ALSO_USE_LOG4J)
-            log.fatal(m, t);
-        hdfsLog.add("[" + TimeStamp.getCurrentTime().toDateString() + " FATAL " + c.getSimpleName() + "]: " + m + "\n" + t);
+        log(Level.FATAL, m, t, c);
+    }
+
+    private void log(Level messageLevel, Object m, Throwable t, Class<?> c) {
+        if (messageLevel.compareTo(level) < 0)
+            return;
+        if (ALSO_USE_LOG4J) {
+            switch (messageLevel) {
+            case INFO:
+                log.info(m, t);
+                break;
+            case WARN:
+                log.warn(m, t);
+                break;
+            case ERROR:
+                log.error(m, t);
+                break;
+            default:
+                log.fatal(m, t);
+            }
+        }
+        add(messageLevel, c, m, t);
+    }
+
+    private void add(Level messageLevel, Class<?> c, Object m, Throwable t) {
+        long time = System.currentTimeMillis();
+        lock.lock();
+        try {
+            int index;
+            if (size == times.length) {
+                // Overwrite the oldest entry
+                index = first;
+                first = (first + 1) % times.length;
+                dropped++;
+            } else {
+                index = (first + size) % times.length;
+                size++;
+            }
+            times[index] = time;
+            levels[index] = messageLevel;
+            classes[index] = c;
+            messages[index] = m;
+            throwables[index] = t;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the log file of a container in {@link #TKVS_LOGS_PATH} and starts writing the log to it every
+     * {@link #FLUSH_INTERVAL_MS}.
+     * @param contId the name of the log file
+     */
+    public void startFlushing(String contId) {
+        startFlushing(new Path(TKVS_LOGS_PATH, contId));
+    }
+
+    /**
+     * Opens a log file and starts writing the log to it every {@link #FLUSH_INTERVAL_MS}. If the file cannot be created,
+     * the log stays in memory until {@link #writeToHDFS(String)}.
+     * @param logFile the log file, replaced if it exists
+     */
+    public synchronized void startFlushing(Path logFile) {
+        if (flusher != null)
+            return;
+        try {
+            open(logFile);
+        } catch (IOException e) {
+            if (ALSO_USE_LOG4J)
+                log.fatal("HDFSLogger could not open " + logFile, e);
+            return;
+        }
+
+        flusher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(FLUSH_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    flush();
+                }
+            }
+        }, "hdfs-logger-" + logFile.getName());
+        flusher.setDaemon(true);
+        flusher.start();
     }
 
     public void writeToHDFS(String contId) {
         if (ALSO_USE_LOG4J)
             log.info("HDFSLogger writing to HDFS...");
+        Thread running;
+        synchronized (this) {
+            running = flusher;
+            flusher = null;
+        }
         try {
-            Path logFile = new Path(TKVS_LOGS_PATH, contId);
-            FileSystem fs = logFile.getFileSystem(new YarnConfiguration());
-            // fs.delete(new Path(TKVS_LOGS_PATH), true); // delete old log dir.
-            PrintWriter pr = new PrintWriter(new OutputStreamWriter(fs.create(logFile, true)));
-            for (Object s : hdfsLog) {
-                pr.println(s.toString());
+            if (running != null) {
+                running.interrupt();
+                running.join();
+            } else {
+                open(new Path(TKVS_LOGS_PATH, contId));
             }
-            pr.close();
-            fs.close();
+            flush();
+            close();
         } catch (Exception e) {
             if (ALSO_USE_LOG4J)
                 log.fatal("HDFSLogger could not write logs.", e);
         }
     }
+
+    private synchronized void open(Path logFile) throws IOException {
+        fs = logFile.getFileSystem(new YarnConfiguration());
+        stream = fs.create(logFile, true);
+        out = new PrintWriter(new OutputStreamWriter(stream));
+    }
+
+    private synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            fs.close();
+            out = null;
+        }
+    }
+
+    // Writes the entries logged so far, formatting them out of the lock
+    private synchronized void flush() {
+        if (out == null)
+            return;
+
+        int count;
+        long droppedEntries;
+        long[] batchTimes;
+        Level[] batchLevels;
+        Class<?>[] batchClasses;
+        Object[] batchMessages;
+        Throwable[] batchThrowables;
+        lock.lock();
+        try {
+            count = size;
+            droppedEntries = dropped;
+            batchTimes = new long[count];
+            batchLevels = new Level[count];
+            batchClasses = new Class<?>[count];
+            batchMessages = new Object[count];
+            batchThrowables = new Throwable[count];
+            for (int i = 0; i < count; i++) {
+                int index = (first + i) % times.length;
+                batchTimes[i] = times[index];
+                batchLevels[i] = levels[index];
+                batchClasses[i] = classes[index];
+                batchMessages[i] = messages[index];
+                batchThrowables[i] = throwables[index];
+                messages[index] = null;
+                throwables[index] = null;
+            }
+            first = (first + count) % times.length;
+            size = 0;
+            dropped = 0;
+        } finally {
+            lock.unlock();
+        }
+
+        if (droppedEntries > 0) {
+            out.println("[... " + droppedEntries + " entries dropped, the log buffer was full]");
+        }
+        for (int i = 0; i < count; i++) {
+            out.println(format(batchTimes[i], batchLevels[i], batchClasses[i], batchMessages[i], batchThrowables[i]));
+        }
+        out.flush();
+        try {
+            stream.hflush();
+        } catch (IOException e) {
+            if (ALSO_USE_LOG4J)
+                log.error("HDFSLogger could not flush logs.", e);
+        }
+    }
+
+    private static String format(long time, Level messageLevel, Class<?> c, Object m, Throwable t) {
+        Object message;
+        try {
+            message = m instanceof Supplier ? ((Supplier<?>) m).get() : m;
+        } catch (RuntimeException e) {
+            message = "(message failed: " + e + ")";
+        }
+        String line = "[" + new TimeStamp(new Date(time)).toDateString() + " " + messageLevel + " " + c.getSimpleName() + "]: " + message;
+        return t == null ? line : line + "\n" + t;
+    }
 }
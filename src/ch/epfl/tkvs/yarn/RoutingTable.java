@@ -7,17 +7,19 @@ import java.util.List;
 
 
 /**
- * The Routing Table contains all necessary information concerning communication between AM to TM, and TM to TM
+ * The Routing Table contains all necessary information concerning communication between AM to TM, and TM to TM. Its
+ * version changes with every change of the TMs, so that a client caching it can tell whether its copy is stale.
  * @see ch.epfl.tkvs.yarn.appmaster.AppMaster
  * @see ch.epfl.tkvs.transactionmanager.TransactionManager
  */
 public class RoutingTable implements Serializable {
 
-    private final static long serialVersionUID = 1;
+    private final static long serialVersionUID = 2;
 
     private final String AM_IP;
     private final int AM_PORT;
     private List<RemoteTransactionManager> tms;
+    private int version = 0;
 
     public RoutingTable(String AM_IP, int AM_PORT) {
         this.AM_IP = AM_IP;
@@ -27,6 +29,7 @@ public class RoutingTable implements Serializable {
 
     public void addTM(RemoteTransactionManager tm) {
         tms.add(tm);
+        version++;
         // TODO: Sort TMs based on locality criteria.
         // Collections.sort(tms, new Comparator<RemoteTransactionManager>() {
         //
@@ -58,6 +61,10 @@ public class RoutingTable implements Serializable {
         return AM_PORT;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     public int size() {
         return tms.size();
     }
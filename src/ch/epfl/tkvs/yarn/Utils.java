@@ -5,6 +5,7 @@ import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -15,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileContext;
@@ -141,6 +143,24 @@ public class Utils {
 
     }
 
+    /**
+     * Read the properties of the transaction managers in ./config/tm.
+     * @return those properties (empty in case of failure, so that defaults are used)
+     */
+    public static Properties readTMConfig() {
+        Properties properties = new Properties();
+        try {
+            FileSystem fs = AM_ADDRESS_PATH.getFileSystem(new YarnConfiguration());
+            Path tmConfigPath = new Path(Utils.TKVS_CONFIG_PATH, "tm");
+            InputStream in = fs.open(tmConfigPath);
+            properties.load(in);
+            in.close();
+        } catch (Exception e) {
+            // defaults
+        }
+        return properties;
+    }
+
     /**
      * Used by the AppMaster to write its address on HDFS.
      * @param address - the address of the AppMaster
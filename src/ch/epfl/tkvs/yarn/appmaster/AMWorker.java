@@ -4,19 +4,25 @@ import static ch.epfl.tkvs.transactionmanager.communication.JSONCommunication.KE
 import static ch.epfl.tkvs.transactionmanager.communication.requests.TransactionManagerRequest.MESSAGE_TYPE;
 import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.parseJSON;
 import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
-import static ch.epfl.tkvs.yarn.appmaster.AppMaster.nextTransactionId;
+import static ch.epfl.tkvs.yarn.appmaster.AppMaster.leaseTransactionIds;
 import static java.util.Arrays.asList;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
 import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 
+import ch.epfl.tkvs.transactionmanager.communication.PingMessage;
+import ch.epfl.tkvs.transactionmanager.communication.network.Connection;
+import ch.epfl.tkvs.transactionmanager.communication.network.MultiplexedConnection;
+import ch.epfl.tkvs.transactionmanager.communication.requests.RoutingTableRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionIdLeaseRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.TransactionManagerRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.RoutingTableResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionIdLeaseResponse;
 import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionManagerResponse;
 import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.InvalidMessageException;
 import ch.epfl.tkvs.yarn.RemoteTransactionManager;
@@ -27,7 +33,9 @@ import ch.epfl.tkvs.yarn.appmaster.centralized_decision.MinAliveTransactionDecid
 
 
 /**
- * The AM's processing thread, launched for processing received JSON messages.
+ * The AM's processing task, executed by a worker of the AM's request server for every received JSON message. The
+ * connection stays open after the response if the sender tagged its request with a request id (persistent
+ * connection), it is closed otherwise.
  * @see ch.epfl.tkvs.yarn.appmaster.AppMaster
  * @see ch.epfl.tkvs.yarn.RoutingTable
  */
@@ -38,12 +46,12 @@ public class AMWorker extends Thread {
 
     private RoutingTable routing;
     private JSONObject jsonRequest;
-    private Socket sock;
+    private Connection connection;
 
-    public AMWorker(RoutingTable routing, JSONObject input, Socket sock) {
+    public AMWorker(RoutingTable routing, JSONObject input, Connection connection) {
         this.routing = routing;
         this.jsonRequest = input;
-        this.sock = sock;
+        this.connection = connection;
     }
 
     public void run() {
@@ -57,10 +65,22 @@ public class AMWorker extends Thread {
                 TransactionManagerRequest request = (TransactionManagerRequest) parseJSON(jsonRequest, TransactionManagerRequest.class);
                 response = getResponseForRequest(request);
                 break;
+            case TransactionIdLeaseRequest.MESSAGE_TYPE:
+                TransactionIdLeaseRequest leaseRequest = (TransactionIdLeaseRequest) parseJSON(jsonRequest, TransactionIdLeaseRequest.class);
+                int firstId = leaseTransactionIds(leaseRequest.getCount());
+                log.info("Leased transaction ids " + firstId + " to " + (firstId + leaseRequest.getCount() - 1));
+                response = toJSON(new TransactionIdLeaseResponse(firstId, leaseRequest.getCount()));
+                break;
+            case RoutingTableRequest.MESSAGE_TYPE:
+                response = toJSON(new RoutingTableResponse(routing));
+                break;
+            case PingMessage.MESSAGE_TYPE:
+                response = toJSON(new GenericSuccessResponse());
+                break;
             default:
                 for (ICentralizedDecider centralizedDecider : centralizedDeciders) {
                     if (centralizedDecider != null && centralizedDecider.shouldHandleMessageType(messageType)) {
-                        centralizedDecider.handleMessage(jsonRequest, sock);
+                        centralizedDecider.handleMessage(jsonRequest, connection);
                         if (centralizedDecider.readyToDecide()) {
                             centralizedDecider.performDecision();
                         }
@@ -74,12 +94,14 @@ public class AMWorker extends Thread {
             // Send the response if it exists
             if (response != null) {
                 log.info("Response" + response.toString());
-                PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
-                out.println(response.toString());
-                out.close();
+                MultiplexedConnection.tagResponse(jsonRequest, response);
+                connection.send(response);
                 log.info("Finish sending response " + response.toString());
             }
-            sock.close(); // Closing this socket will also close the socket's InputStream and OutputStream.
+
+            if (!MultiplexedConnection.hasRequestId(jsonRequest)) {
+                connection.close(); // The pending responses are written before the connection is closed.
+            }
         } catch (IOException | JSONException | InvalidMessageException e) {
             log.error(e);
         }
@@ -90,7 +112,6 @@ public class AMWorker extends Thread {
         log.info("Get a transaction manager request for locality hash: " + localityHash);
         RemoteTransactionManager tm = routing.findTM(localityHash);
         log.info("Assigned a TM to it: " + tm.getIp() + " - " + tm.getPort());
-        int transactionID = nextTransactionId();
-        return toJSON(new TransactionManagerResponse(true, transactionID, tm.getIp(), tm.getPort()));
+        return toJSON(new TransactionManagerResponse(true, tm.getIp(), tm.getPort()));
     }
 }
@@ -6,15 +6,19 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -36,6 +40,10 @@ import org.codehaus.jettison.json.JSONObject;
 import ch.epfl.tkvs.transactionmanager.communication.ExitMessage;
 import ch.epfl.tkvs.transactionmanager.communication.Message;
 import ch.epfl.tkvs.transactionmanager.communication.TMInitMessage;
+import ch.epfl.tkvs.transactionmanager.communication.network.Connection;
+import ch.epfl.tkvs.transactionmanager.communication.network.RequestServer;
+import ch.epfl.tkvs.transactionmanager.communication.network.RequestServer.RequestHandler;
+import ch.epfl.tkvs.transactionmanager.communication.network.WireProtocol;
 import ch.epfl.tkvs.yarn.HDFSLogger;
 import ch.epfl.tkvs.yarn.RemoteTransactionManager;
 import ch.epfl.tkvs.yarn.RoutingTable;
@@ -45,7 +53,8 @@ import ch.epfl.tkvs.yarn.Utils;
 /**
  * The YARN Application Master is responsible for launching containers that contain Transaction Managers (TM). Prepares
  * the TM containers and launches the process in each. As soon as TMs reply when they are ready, the AM listens for
- * messages that have to do with centralized control. On exit, it gracefully stops all active TMs.
+ * messages that have to do with centralized control, served by a single event loop ({@link RequestServer}) on which
+ * the TMs and the clients keep their connections open. On exit, it gracefully stops all active TMs.
  * @see ch.epfl.tkvs.transactionmanager.TransactionManager
  * @see ch.epfl.tkvs.yarn.appmaster.AMWorker
  * @see ch.epfl.tkvs.yarn.RoutingTable
@@ -60,7 +69,8 @@ public class AppMaster {
 
     private static RMCallbackHandler rmHandler;
     private static AMRMClientAsync<ContainerRequest> rmClient;
-    private static int nextXid = 0;
+    private static AtomicInteger nextXid = new AtomicInteger(0);
+    private RequestServer requestServer;
 
     public static void main(String[] args) {
         Utils.initLogLevel();
@@ -69,6 +79,7 @@ public class AppMaster {
             Path logDir = new Path(TKVS_LOGS_PATH);
             FileSystem fs = logDir.getFileSystem(new YarnConfiguration());
             fs.delete(logDir, true); // delete old log dir.
+            log2.startFlushing("A");
 
             String algoConfig = "mvto";
             if (args.length > 0) {
@@ -116,7 +127,9 @@ public class AppMaster {
         // Register with RM and create AM Socket.
         rmClient.registerApplicationMaster(amIp, amPort, null);
         log.info("Registered and starting server at " + amIp + ":" + amPort);
-        ServerSocket server = new ServerSocket(amPort);
+        final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(amPort));
+        ServerSocket server = serverChannel.socket();
 
         // Request Containers from RM.
         ArrayList<String> tmRequests = Utils.readTMHostnames();
@@ -184,51 +197,70 @@ public class AppMaster {
             tm.sendMessage(initMessage, false);
         }
 
-        // Start listening to messages.
+        // Start listening to messages. The connections are served by one event loop and can stay open for many requests.
         ExecutorService threadPool = Executors.newCachedThreadPool();
-        while (!server.isClosed() && rmHandler.getContainerCount() > 0) {
-            try {
-                log.info("Waiting for message...");
-                Socket sock = server.accept();
-                log.info("Processing message...");
+        requestServer = new RequestServer(serverChannel, new RequestHandler() {
 
-                BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-                String input = in.readLine();
+            @Override
+            public boolean handle(byte[] request, Connection connection) {
+                if (connection.getProtocol() == WireProtocol.BINARY) {
+                    // Binary connections are opened by connection pools, which only send JSON messages
+                    try {
+                        new AMWorker(rmHandler.getRoutingTable(), connection.getProtocol().decode(request), connection).run();
+                    } catch (JSONException e) {
+                        log.warn("Invalid binary message will not be parsed", e);
+                        connection.close();
+                    }
+                    return false;
+                }
+                String input = new String(request, StandardCharsets.UTF_8);
 
                 switch (input) {
-                case ":ping": {
+                case ":ping":
                     log.info("Receive a ping");
-                    PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
-                    out.println("ok");
-                    out.close();
+                    try {
+                        connection.sendLine("ok");
+                    } catch (IOException e) {
+                        log.error("Cannot answer ping ", e);
+                    }
                     break;
-                }
 
                 case ":exit":
                     log.info("Stopping Server");
-                    sock.close();
-                    server.close();
+                    connection.close();
+                    requestServer.stop();
 
                     // On exit, stop all TM containers.
                     log.info("Stopping TMs");
                     ExitMessage exitMessage = new ExitMessage();
                     for (RemoteTransactionManager tm : rmHandler.getRoutingTable().getTMs()) {
-                        tm.sendMessage(exitMessage, false);
+                        try {
+                            tm.sendMessage(exitMessage, false);
+                        } catch (IOException e) {
+                            log.error("Cannot stop " + tm, e);
+                        }
                     }
                     break;
                 default:
                     try {
                         JSONObject jsonRequest = new JSONObject(input);
-                        threadPool.execute(new AMWorker(rmHandler.getRoutingTable(), jsonRequest, sock));
+                        new AMWorker(rmHandler.getRoutingTable(), jsonRequest, connection).run();
                     } catch (JSONException e) {
                         log.warn("Non JSON message will not be parsed: " + input);
+                        connection.close();
                     }
                 }
 
-            } catch (IOException e) {
-                log.error("sock.accept ", e);
+                if (rmHandler.getContainerCount() == 0) {
+                    requestServer.stop();
+                }
+                // The deciders answer before returning
+                return false;
             }
-        }
+        }, threadPool);
+        log.info("Waiting for messages...");
+        requestServer.run();
+        threadPool.shutdown();
 
         // On exit, wait for all containers to stop.
         int waitIterationElapsed = 0;
@@ -278,10 +310,13 @@ public class AppMaster {
         return rmHandler.getContainerCount();
     }
 
-    public static synchronized int nextTransactionId() {
-        int xid = nextXid;
-        nextXid++;
-        return xid;
+    /**
+     * Leases a block of consecutive transaction ids, disjoint from and greater than those leased before.
+     * @param count the number of ids
+     * @return the first id of the block
+     */
+    public static int leaseTransactionIds(int count) {
+        return nextXid.getAndAdd(count);
     }
 
     private static ContainerRequest requestContainer(String ip) {
@@ -3,32 +3,37 @@ package ch.epfl.tkvs.yarn.appmaster.centralized_decision;
 import static ch.epfl.tkvs.yarn.appmaster.AppMaster.log2;
 
 import java.io.IOException;
-import java.net.Socket;
-import java.util.HashMap;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 
 import ch.epfl.tkvs.transactionmanager.communication.DeadlockInfoMessage;
+import ch.epfl.tkvs.transactionmanager.communication.network.Connection;
+import ch.epfl.tkvs.transactionmanager.communication.network.MultiplexedConnection;
 import ch.epfl.tkvs.transactionmanager.communication.requests.AbortRequest;
 import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter;
 import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.InvalidMessageException;
 import ch.epfl.tkvs.transactionmanager.lockingunit.DeadlockGraph;
 import ch.epfl.tkvs.transactionmanager.lockingunit.DeadlockInfo;
+import ch.epfl.tkvs.transactionmanager.lockingunit.MergedDeadlockGraph;
 import ch.epfl.tkvs.yarn.appmaster.AppMaster;
 
 
 public class DeadlockCentralizedDecider implements ICentralizedDecider {
 
-    private static HashMap<Integer, DeadlockGraph> graphs = new HashMap<Integer, DeadlockGraph>();
-    private static HashMap<Integer, Set<Integer>> activeTransactions = new HashMap<Integer, Set<Integer>>();
+    // Kept up to date by the reports of the TMs, which only send what changed
+    private static MergedDeadlockGraph mergedGraph = new MergedDeadlockGraph();
+    // Whether the last decision killed transactions, which must be checked to be gone
+    private static boolean killedTransactions = false;
 
     private static Logger log = Logger.getLogger(DeadlockCentralizedDecider.class);
 
     @Override
-    public synchronized void handleMessage(JSONObject message, Socket sock) {
+    public synchronized void handleMessage(JSONObject message, Connection connection) {
         log.info("DeadlockCentralizedDecider's handleMessage is called");
+        acknowledge(message, connection);
         DeadlockInfoMessage dm = null;
         try {
             dm = (DeadlockInfoMessage) JSON2MessageConverter.parseJSON(message, DeadlockInfoMessage.class);
@@ -38,59 +43,63 @@ public class DeadlockCentralizedDecider implements ICentralizedDecider {
             return;
         }
 
-        // log.info(dm);
         DeadlockInfo info = null;
         try {
-            info = dm.getGraph();
-            // log.info(info);
-        } catch (Exception e) {
+            info = dm.getInfo();
+        } catch (IOException e) {
             // TODO Handle the error
             log2.error("Cannot get deadlock info", e, DeadlockCentralizedDecider.class);
             return;
 
         }
-        log.info("Received messsage from " + info.getLocalHash());
-        for (Integer active : info.getActiveTransactions()) {
-            log.info("Activetransaction: " + active);
+        log.info("Received " + info);
+        if (!mergedGraph.apply(info)) {
+            log.warn("Missed a deadlock report from " + info.getLocalHash() + ", waiting for its next full report");
+        }
+    }
+
+    // Nothing is answered, but a sender on a persistent connection still waits for the request to be acknowledged
+    private void acknowledge(JSONObject message, Connection connection) {
+        if (!MultiplexedConnection.hasRequestId(message)) {
+            return;
+        }
+        try {
+            JSONObject ack = new JSONObject();
+            MultiplexedConnection.tagResponse(message, ack);
+            connection.send(ack);
+        } catch (IOException | JSONException e) {
+            log.error("Cannot acknowledge " + e);
         }
-        log.info("\n" + info.getGraph());
-        graphs.put(info.getLocalHash(), info.getGraph());
-        activeTransactions.put(info.getLocalHash(), info.getActiveTransactions());
     }
 
     @Override
     public synchronized boolean readyToDecide() {
-        int totalTMCount = AppMaster.numberOfRegisteredTMs();
-        log.info("graph_size = " + graphs.size() + " - total_expected=" + totalTMCount);
-        if (graphs.size() == totalTMCount)
-            return true;
-        return false;
+        // Only new edges can close a new cycle
+        return mergedGraph.hasNewEdges() || killedTransactions;
     }
 
     @Override
     public synchronized void performDecision() {
         log.info("perform decision");
-        DeadlockGraph mergedGraph = new DeadlockGraph(graphs.values());
-        log.info("\n" + mergedGraph);
-        Set<Integer> transactionsToBeKilled = mergedGraph.checkForCycles();
+        DeadlockGraph graph = mergedGraph.toGraph();
+        log.info("\n" + graph);
+        Set<Integer> transactionsToBeKilled = graph.checkForCycles();
 
         for (Integer tid : transactionsToBeKilled)
             log.info("Killing transaction" + tid);
         sendKillMessages(transactionsToBeKilled);
-        graphs.clear();
+        killedTransactions = !transactionsToBeKilled.isEmpty();
     }
 
     private void sendKillMessages(Set<Integer> transactionsToBeKilled) {
         for (Integer transaction : transactionsToBeKilled) {
             AbortRequest abortRequest = new AbortRequest(transaction);
-            for (Integer tm : activeTransactions.keySet()) {
-                if (activeTransactions.get(tm).contains(transaction)) {
-                    try {
-                        AppMaster.sendMessageToTM(tm, abortRequest, false);
-                    } catch (IOException e) {
-                        // TODO Auto-generated catch block
-                        log.error("Cant send Abort " + e);
-                    }
+            for (Integer tm : mergedGraph.getTMsRunning(transaction)) {
+                try {
+                    AppMaster.sendMessageToTM(tm, abortRequest, false);
+                } catch (IOException e) {
+                    // TODO Auto-generated catch block
+                    log.error("Cant send Abort " + e);
                 }
             }
         }
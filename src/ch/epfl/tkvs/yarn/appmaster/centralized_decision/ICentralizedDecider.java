@@ -1,9 +1,9 @@
 package ch.epfl.tkvs.yarn.appmaster.centralized_decision;
 
-import java.net.Socket;
-
 import org.codehaus.jettison.json.JSONObject;
 
+import ch.epfl.tkvs.transactionmanager.communication.network.Connection;
+
 
 /**
  * Characterize the interface of centralized module used by the AppMaster to take global decision.
@@ -20,9 +20,9 @@ public interface ICentralizedDecider {
     /**
      * Handle an incoming message.
      * @param message a message to be handled
-     * @param sock the socket to answer
+     * @param connection the connection to answer on
      */
-    void handleMessage(JSONObject message, Socket sock);
+    void handleMessage(JSONObject message, Connection connection);
 
     /**
      * @return true if the module is ready to make a decision
@@ -3,29 +3,47 @@ package ch.epfl.tkvs.yarn.appmaster.centralized_decision;
 import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.parseJSON;
 import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
 
-import java.io.PrintWriter;
-import java.net.Socket;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.log4j.Logger;
 import org.codehaus.jettison.json.JSONObject;
 
 import ch.epfl.tkvs.transactionmanager.communication.TransactionTerminateMessage;
+import ch.epfl.tkvs.transactionmanager.communication.network.Connection;
+import ch.epfl.tkvs.transactionmanager.communication.network.MultiplexedConnection;
 import ch.epfl.tkvs.transactionmanager.communication.responses.MinAliveTransactionResponse;
 
 
 /**
  * Used by the garbage collector of MVTO to get the alive transaction with the minimum timestamp from the AppMaster.
+ *
+ * Transaction ids are leased to the TMs by blocks, so an id is not alive only once its transaction terminated, or once
+ * the TM that leased it gave it back unused.
  */
 public class MinAliveTransactionDecider implements ICentralizedDecider {
 
+    // A request waiting for the minimum alive transaction, with the connection to answer on
+    private static class WaitingRequest {
+
+        final JSONObject request;
+        final Connection connection;
+
+        WaitingRequest(JSONObject request, Connection connection) {
+            this.request = request;
+            this.connection = connection;
+        }
+    }
+
     private int minAlive = 0;
     private Set<Integer> terminated = new HashSet<Integer>();
-    private Queue<Socket> waitQueue = new ConcurrentLinkedQueue<Socket>();
+    // Ranges of ids leased but given back unused, from their first (included) to their last (excluded) id
+    private TreeMap<Integer, Integer> released = new TreeMap<Integer, Integer>();
+    private Queue<WaitingRequest> waitQueue = new ConcurrentLinkedQueue<WaitingRequest>();
     private final static Logger log = Logger.getLogger(MinAliveTransactionDecider.class.getName());
 
     @Override
@@ -34,14 +52,14 @@ public class MinAliveTransactionDecider implements ICentralizedDecider {
     }
 
     @Override
-    public void handleMessage(JSONObject message, Socket sock) {
-        // log.info("handle " + message.toString() + " from " + sock.getInetAddress());
+    public void handleMessage(JSONObject message, Connection connection) {
+        // log.info("handle " + message.toString());
         try {
 
             TransactionTerminateMessage tMessage = (TransactionTerminateMessage) parseJSON(message, TransactionTerminateMessage.class);
             List<Integer> tids = tMessage.getTransactionIds();
-            updateWithTerminated(tids);
-            waitQueue.add(sock);
+            updateWithTerminated(tids, tMessage.getReleasedFrom(), tMessage.getReleasedTo());
+            waitQueue.add(new WaitingRequest(message, connection));
 
         } catch (Exception e) {
             log.error(e);
@@ -58,28 +76,34 @@ public class MinAliveTransactionDecider implements ICentralizedDecider {
         // log.info("performDecision: " + minAlive);
         try {
             MinAliveTransactionResponse minAliveRes = new MinAliveTransactionResponse(minAlive);
-            JSONObject json = toJSON(minAliveRes);
 
-            Socket sock = null;
-            while ((sock = waitQueue.poll()) != null) {
-                PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
-                out.println(json.toString());
-                out.close(); // do not close sock, will be closed outside
+            WaitingRequest waiting = null;
+            while ((waiting = waitQueue.poll()) != null) {
+                JSONObject json = toJSON(minAliveRes);
+                MultiplexedConnection.tagResponse(waiting.request, json);
+                waiting.connection.send(json); // do not close the connection, it is closed outside if needed
             }
         } catch (Exception e) {
             log.error(e);
         }
     }
 
-    private synchronized void updateWithTerminated(List<Integer> tids) {
+    private synchronized void updateWithTerminated(List<Integer> tids, int releasedFrom, int releasedTo) {
         terminated.addAll(tids);
+        if (releasedFrom < releasedTo && releasedTo > minAlive) {
+            released.put(Math.max(releasedFrom, minAlive), releasedTo);
+        }
 
-        Integer iMinAlive = new Integer(minAlive);
-        while (terminated.contains(iMinAlive)) {
-            terminated.remove(iMinAlive);
-
-            minAlive++;
-            iMinAlive = new Integer(minAlive);
+        while (true) {
+            Integer iMinAlive = new Integer(minAlive);
+            if (terminated.remove(iMinAlive)) {
+                minAlive++;
+            } else if (released.containsKey(iMinAlive)) {
+                // Skip a whole unused range at once
+                minAlive = released.remove(iMinAlive);
+            } else {
+                break;
+            }
         }
 
         // log.info(tids + " - " + minAlive);
@@ -0,0 +1,152 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class LsmStorageEngineTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lsm-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static ByteKey keyOf(int i) {
+        return new ByteKey(new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+    }
+
+    private static void awaitCompaction(LsmStorageEngine engine) throws InterruptedException {
+        for (int i = 0; i < 500 && engine.getNbCompactions() == 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    // Compares the engine with a map under random puts, overwrites and removes spilled over many segments
+    @Test
+    public void testAgainstMap() throws InterruptedException {
+        LsmStorageEngine engine = new LsmStorageEngine(directory, 32 << 10, 3, 100);
+        Map<ByteKey, byte[]> expected = new HashMap<ByteKey, byte[]>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 30000; i++) {
+            ByteKey key = keyOf(random.nextInt(3000));
+            if (random.nextInt(4) == 0) {
+                engine.remove(key);
+                expected.remove(key);
+            } else {
+                byte[] value = new byte[random.nextInt(200)];
+                random.nextBytes(value);
+                engine.put(key, value);
+                expected.put(key, value);
+            }
+        }
+        awaitCompaction(engine);
+        assertTrue(engine.getNbFlushes() > 0);
+        assertTrue(engine.getNbCompactions() > 0);
+
+        // Twice, the second time partly from the cache
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 3000; i++) {
+                byte[] value = (byte[]) engine.get(keyOf(i));
+                byte[] expectedValue = expected.get(keyOf(i));
+                if (expectedValue == null) {
+                    assertNull(value);
+                } else {
+                    assertTrue(Arrays.equals(expectedValue, value));
+                }
+            }
+        }
+        assertTrue(engine.size() >= expected.size());
+
+        engine.clear();
+        assertEquals(0, engine.size());
+        assertEquals(0, engine.getNbSegments());
+        assertNull(engine.get(keyOf(0)));
+    }
+
+    // The writes do not look the keys up, but the keys of the memtable are counted exactly
+    @Test
+    public void testSizeEstimate() {
+        LsmStorageEngine engine = new LsmStorageEngine(directory, 1 << 20, 2, 100);
+        for (int i = 0; i < 100; i++) {
+            engine.put(keyOf(i), i);
+        }
+        for (int i = 0; i < 50; i++) {
+            engine.put(keyOf(i), -i);
+        }
+        for (int i = 0; i < 10; i++) {
+            engine.remove(keyOf(i));
+        }
+        assertEquals(90, engine.size());
+        engine.remove(keyOf(1000));
+        assertEquals(90, engine.size());
+        assertNull(engine.get(keyOf(1000)));
+    }
+
+    @Test
+    public void testBloomFilterSkipsSegments() throws InterruptedException {
+        LsmStorageEngine engine = new LsmStorageEngine(directory, 16 << 10, 100, 0);
+        for (int i = 0; i < 5000; i++) {
+            engine.put(keyOf(i), i);
+        }
+        for (int i = 0; i < 500 && engine.getNbFlushes() < 5; i++) {
+            Thread.sleep(10);
+        }
+        int nbSegments = engine.getNbSegments();
+        assertTrue(nbSegments >= 5);
+
+        long readsBefore = engine.getNbSegmentReads();
+        for (int i = 5000; i < 6000; i++) {
+            assertNull(engine.get(keyOf(i)));
+        }
+        // About 1% of false positives per segment
+        assertTrue(engine.getNbSegmentReads() - readsBefore < 1000 * nbSegments / 10);
+        assertTrue(engine.getNbBloomNegatives() > 0);
+        assertEquals(42, engine.get(keyOf(42)));
+    }
+
+    @Test
+    public void testCompactionDropsRemovedKeys() throws InterruptedException {
+        LsmStorageEngine engine = new LsmStorageEngine(directory, 16 << 10, 2, 100);
+        for (int i = 0; i < 2000; i++) {
+            engine.put(keyOf(i), new byte[100]);
+        }
+        for (int i = 0; i < 2000; i++) {
+            engine.remove(keyOf(i));
+        }
+        // Fills the memtables with other keys, so that the removals reach the segments
+        for (int i = 0; i < 2000; i++) {
+            engine.put(keyOf(100000 + i), new byte[100]);
+        }
+        awaitCompaction(engine);
+        assertEquals(2000, engine.size());
+        for (int i = 0; i < 2000; i += 100) {
+            assertNull(engine.get(keyOf(i)));
+            assertTrue(engine.get(keyOf(100000 + i)) != null);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ch.epfl.tkvs.keyvaluestore;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+public class OffHeapStorageEngineTest {
+
+    private static ByteKey keyOf(int i) {
+        return new ByteKey(new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+    }
+
+    @Test
+    public void testTypes() {
+        OffHeapStorageEngine engine = new OffHeapStorageEngine();
+        engine.put("string", "value");
+        engine.put(42, 43);
+        engine.put(new PrefixedKey("x", keyOf(1)), new byte[] { 1, 2, 3 });
+        engine.put(keyOf(2), new ArrayList<Integer>(Arrays.asList(1, 2)));
+
+        assertEquals("value", engine.get("string"));
+        assertEquals(43, engine.get(42));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, (byte[]) engine.get(new PrefixedKey("x", keyOf(1)))));
+        assertEquals(Arrays.asList(1, 2), engine.get(keyOf(2)));
+        // A prefixed key differs from its key alone and from other prefixes
+        assertNull(engine.get(keyOf(1)));
+        assertNull(engine.get(new PrefixedKey("y", keyOf(1))));
+        assertEquals(4, engine.size());
+    }
+
+    // Compares the engine with a map under random puts, overwrites of every size and removes
+    @Test
+    public void testAgainstMap() {
+        OffHeapStorageEngine engine = new OffHeapStorageEngine(1L << 30, 4);
+        Map<Serializable, byte[]> expected = new HashMap<Serializable, byte[]>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 50000; i++) {
+            ByteKey key = keyOf(random.nextInt(5000));
+            if (random.nextInt(4) == 0) {
+                engine.remove(key);
+                expected.remove(key);
+            } else {
+                // Mostly small values, some larger than the largest slot
+                int size = random.nextInt(100) == 0 ? (1 << 20) + random.nextInt(100) : random.nextInt(3000);
+                byte[] value = new byte[size];
+                random.nextBytes(value);
+                engine.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), engine.size());
+        for (int i = 0; i < 5000; i++) {
+            byte[] value = (byte[]) engine.get(keyOf(i));
+            byte[] expectedValue = expected.get(keyOf(i));
+            if (expectedValue == null) {
+                assertNull(value);
+            } else {
+                assertTrue(Arrays.equals(expectedValue, value));
+            }
+        }
+        assertTrue(engine.getUsedBytes() <= engine.getReservedBytes());
+
+        engine.clear();
+        assertEquals(0, engine.size());
+        assertEquals(0, engine.getUsedBytes());
+        assertEquals(0, engine.getReservedBytes());
+        assertNull(engine.get(keyOf(0)));
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        OffHeapStorageEngine engine = new OffHeapStorageEngine(1 << 20, 1);
+        int stored = 0;
+        try {
+            for (int i = 0; i < 100000; i++) {
+                engine.put(keyOf(i), new byte[1000]);
+                stored++;
+            }
+            fail();
+        } catch (StorageFullException e) {
+            // The limit is reached
+        }
+        assertTrue(stored > 0);
+        assertEquals(stored, engine.size());
+        assertTrue(engine.getReservedBytes() <= 1 << 20);
+
+        // Freed slots are reused without more memory
+        engine.remove(keyOf(0));
+        engine.put(keyOf(stored), new byte[1000]);
+        assertEquals(stored, engine.size());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final OffHeapStorageEngine engine = new OffHeapStorageEngine();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    // Each thread owns its keys, so it knows what it must read
+                    for (int i = 0; i < 20000; i++) {
+                        ByteKey key = keyOf(thread * 100000 + i % 1000);
+                        engine.put(key, i);
+                        assertEquals(i, engine.get(key));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(8000, engine.size());
+    }
+}
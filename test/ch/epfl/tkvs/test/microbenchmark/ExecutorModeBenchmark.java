@@ -0,0 +1,94 @@
+package ch.epfl.tkvs.test.microbenchmark;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.transactionmanager.AdmissionController;
+import ch.epfl.tkvs.transactionmanager.WorkerExecutors;
+import ch.epfl.tkvs.transactionmanager.lockingunit.LockType;
+import ch.epfl.tkvs.transactionmanager.lockingunit.LockingUnit;
+
+
+/**
+ * Compares the executors that can run the requests of a transaction manager under lock contention: the former
+ * unbounded cached pool, the bounded platform pool and virtual threads (see {@link WorkerExecutors}).
+ *
+ * Every request takes an exclusive lock on one of a few hot keys, holds it for a short while (as a remote operation
+ * would) and releases it. Most requests are therefore blocked in {@link LockingUnit#lock}. For each executor, the
+ * benchmark reports the throughput, the peak number of live threads and the heap used at the end of the run.
+ *
+ * Usage: ExecutorModeBenchmark [#requests] [#hotKeys] [holdTimeMs] [#platformWorkers]
+ */
+public class ExecutorModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nbRequests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int nbHotKeys = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int holdTimeMs = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int nbWorkers = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+
+        System.out.println("#requests=" + nbRequests + " #hotKeys=" + nbHotKeys + " holdTimeMs=" + holdTimeMs + " #platformWorkers=" + nbWorkers);
+        System.out.format("%-10s %12s %12s %12s\n", "executor", "requests/s", "peakThreads", "heapMB");
+
+        run("cached", Executors.newCachedThreadPool(), nbRequests, nbHotKeys, holdTimeMs);
+        run(WorkerExecutors.PLATFORM, WorkerExecutors.create(WorkerExecutors.PLATFORM, nbWorkers), nbRequests, nbHotKeys, holdTimeMs);
+        if (WorkerExecutors.isVirtualAvailable()) {
+            run(WorkerExecutors.VIRTUAL, WorkerExecutors.create(WorkerExecutors.VIRTUAL, nbWorkers), nbRequests, nbHotKeys, holdTimeMs);
+        } else {
+            System.out.println("virtual threads are not available on this JVM (Java 21+ needed)");
+        }
+    }
+
+    private static void run(String name, ExecutorService executor, int nbRequests, final int nbHotKeys, final int holdTimeMs) throws InterruptedException {
+        LockingUnit.instance.initOnlyExclusiveLock();
+        final CountDownLatch done = new CountDownLatch(nbRequests);
+        final Random random = new Random(42);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+
+        // Submitted like the TM does, the platform pool only takes prioritized requests
+        AdmissionController submitter = new AdmissionController(executor, Integer.MAX_VALUE);
+        for (int i = 0; i < nbRequests; i++) {
+            final int xid = i;
+            final Serializable key = "hot" + random.nextInt(nbHotKeys);
+            submitter.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        LockingUnit.instance.lock(xid, key, LockType.Exclusive.LOCK);
+                        Thread.sleep(holdTimeMs);
+                        HashMap<Serializable, List<LockType>> held = new HashMap<>();
+                        held.put(key, Arrays.<LockType> asList(LockType.Exclusive.LOCK));
+                        LockingUnit.instance.releaseAll(xid, held);
+                    } catch (AbortException | InterruptedException e) {
+                        // Counted as done anyway, the benchmark only measures the executor
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        done.await();
+        long elapsedNs = System.nanoTime() - start;
+        Runtime runtime = Runtime.getRuntime();
+        long heapMB = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.format("%-10s %12.0f %12d %12d\n", name, nbRequests / (elapsedNs / 1e9), threads.getPeakThreadCount(), heapMB);
+    }
+}
@@ -0,0 +1,77 @@
+package ch.epfl.tkvs.test.microbenchmark;
+
+import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.parseJSON;
+import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.codehaus.jettison.json.JSONObject;
+
+import ch.epfl.tkvs.test.userclient.MyKey;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter;
+
+
+/**
+ * Measures the conversion of the {@link ReadRequest} and {@link WriteRequest} messages to JSON and back, as done for
+ * every request received by a transaction manager. For each message, the benchmark reports the CPU time of
+ * {@link Message2JSONConverter#toJSON}, of {@link JSON2MessageConverter#parseJSON} and of the round trip, excluding the
+ * JSON text itself.
+ *
+ * Usage: MessageCodecBenchmark [#iterations]
+ */
+public class MessageCodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nbIterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        MyKey key = new MyKey("key", 42);
+        Message[] messages = new Message[] { new ReadRequest(1234, key, 42), new WriteRequest(1234, key, "value", 42) };
+
+        System.out.println("#iterations=" + nbIterations);
+        System.out.format("%-15s %12s %12s %12s\n", "message", "toJSONNs", "parseJSONNs", "roundTripNs");
+        for (Message message : messages) {
+            run(message, nbIterations);
+        }
+    }
+
+    private static void run(Message message, int nbIterations) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        JSONObject json = toJSON(message);
+        Class<? extends Message> messageClass = message.getClass();
+        // Keeps the results alive
+        int sink = 0;
+
+        // Warm up, then measure
+        for (int round = 0; round < 2; round++) {
+            long start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < nbIterations; i++) {
+                sink += toJSON(message).length();
+            }
+            long toJSONNs = threads.getCurrentThreadCpuTime() - start;
+
+            start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < nbIterations; i++) {
+                sink += parseJSON(json, messageClass).hashCode();
+            }
+            long parseJSONNs = threads.getCurrentThreadCpuTime() - start;
+
+            start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < nbIterations; i++) {
+                sink += parseJSON(toJSON(message), messageClass).hashCode();
+            }
+            long roundTripNs = threads.getCurrentThreadCpuTime() - start;
+
+            if (round == 1) {
+                System.out.format("%-15s %12d %12d %12d\n", messageClass.getSimpleName(), toJSONNs / nbIterations, parseJSONNs / nbIterations, roundTripNs / nbIterations);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ch.epfl.tkvs.test.microbenchmark;
+
+import java.io.File;
+
+import ch.epfl.tkvs.keyvaluestore.ByteKey;
+import ch.epfl.tkvs.keyvaluestore.KeyValueStore;
+import ch.epfl.tkvs.keyvaluestore.WriteAheadLog;
+import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVCC2PL;
+
+
+/**
+ * Measures the restart of a versioning unit of MVCC2PL from its {@link WriteAheadLog}: first replaying a log of all the
+ * commits, then from a snapshot of the same keys followed by a tail of commits. Each key is written by its own
+ * transaction, and overwritten once, so that the full log holds two records per key.
+ *
+ * Usage: SnapshotRecoveryBenchmark [directory] [#keys] [tail in % of the keys] [value size]
+ */
+public class SnapshotRecoveryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        int nbKeys = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+        int tailPercent = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int valueSize = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        File file = new File(directory, "snapshot-benchmark.wal");
+        WriteAheadLog wal = new WriteAheadLog(file, 0, 4096);
+        cleanUp(wal);
+        VersioningUnitMVCC2PL unit = new VersioningUnitMVCC2PL(new KeyValueStore());
+        unit.setWriteAheadLog(wal);
+        unit.init();
+
+        int xid = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < nbKeys; i++) {
+                unit.put(++xid, keyOf(i), new byte[valueSize]);
+                unit.commit(xid);
+            }
+        }
+        System.out.println("#keys=" + nbKeys + " tail=" + tailPercent + "% valueSize=" + valueSize + " directory=" + directory);
+        System.out.format("%-24s %10s %12s\n", "restart from", "ms", "log MB");
+
+        long logBytes = file.length();
+        long start = System.nanoTime();
+        unit.init();
+        System.out.format("%-24s %10d %12d\n", "full log", (System.nanoTime() - start) / 1000000, logBytes >> 20);
+
+        start = System.nanoTime();
+        long nbEntries = wal.snapshot();
+        long snapshotMs = (System.nanoTime() - start) / 1000000;
+        for (int i = 0; i < nbKeys * tailPercent / 100; i++) {
+            unit.put(++xid, keyOf(i), new byte[valueSize]);
+            unit.commit(xid);
+        }
+
+        logBytes = file.length();
+        start = System.nanoTime();
+        unit.init();
+        System.out.format("%-24s %10d %12d\n", "snapshot + log tail", (System.nanoTime() - start) / 1000000, logBytes >> 20);
+        System.out.println("Snapshot of " + nbEntries + " keys written in " + snapshotMs + " ms, " + (wal.getSnapshotFile().length() >> 20) + " MB");
+
+        unit.stopNow();
+        wal.close();
+        cleanUp(wal);
+    }
+
+    private static ByteKey keyOf(int i) {
+        return new ByteKey(new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+    }
+
+    private static void cleanUp(WriteAheadLog wal) {
+        wal.getFile().delete();
+        wal.getSnapshotFile().delete();
+    }
+}
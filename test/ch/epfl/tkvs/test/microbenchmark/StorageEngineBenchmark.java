@@ -0,0 +1,115 @@
+package ch.epfl.tkvs.test.microbenchmark;
+
+import java.util.Properties;
+import java.util.Random;
+
+import ch.epfl.tkvs.keyvaluestore.ByteKey;
+import ch.epfl.tkvs.keyvaluestore.StorageEngine;
+import ch.epfl.tkvs.keyvaluestore.StorageEngines;
+import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVCC2PL;
+import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVTO;
+
+
+/**
+ * Compares the storage engines under the versioning units of MVTO and MVCC2PL, each unit having an engine of its own.
+ * For each engine and unit, the benchmark loads the keys with one transaction per key, then runs transactions reading
+ * random keys and writing one, and reports the time per transaction of both phases.
+ *
+ * The engines are created by {@link StorageEngines#create(String, Properties)} with the system properties as settings.
+ *
+ * Usage: StorageEngineBenchmark [engine,engine,...] [#keys] [#transactions] [value size]
+ */
+public class StorageEngineBenchmark {
+
+    private static final int READS_PER_TRANSACTION = 4;
+
+    public static void main(String[] args) throws Exception {
+        String[] engines = (args.length > 0 ? args[0] : StorageEngines.MEMORY).split(",");
+        int nbKeys = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int nbTransactions = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        int valueSize = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        System.out.println("#keys=" + nbKeys + " #transactions=" + nbTransactions + " valueSize=" + valueSize);
+        System.out.format("%-12s %-8s %12s %12s %14s\n", "engine", "unit", "loadNs/xact", "runNs/xact", "values");
+        for (String engine : engines) {
+            for (int round = 0; round < 2; round++) {
+                // The first round warms up
+                runMVTO(engine, nbKeys, nbTransactions, valueSize, round == 1);
+                runMVCC2PL(engine, nbKeys, nbTransactions, valueSize, round == 1);
+            }
+        }
+    }
+
+    private static ByteKey keyOf(int i) {
+        return new ByteKey(new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+    }
+
+    private static void runMVTO(String engine, int nbKeys, int nbTransactions, int valueSize, boolean print) throws Exception {
+        StorageEngine storage = StorageEngines.create(engine, System.getProperties());
+        VersioningUnitMVTO unit = new VersioningUnitMVTO(storage);
+        unit.init();
+        Random random = new Random(42);
+        int xid = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < nbKeys; i++) {
+            unit.beginTransaction(++xid);
+            unit.put(xid, keyOf(i), new byte[valueSize]);
+            unit.prepareCommit(xid);
+            unit.commit(xid);
+        }
+        long loadNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < nbTransactions; i++) {
+            unit.beginTransaction(++xid);
+            for (int r = 0; r < READS_PER_TRANSACTION; r++) {
+                unit.get(xid, keyOf(random.nextInt(nbKeys)));
+            }
+            unit.put(xid, keyOf(random.nextInt(nbKeys)), new byte[valueSize]);
+            unit.prepareCommit(xid);
+            unit.commit(xid);
+            if (i % 10000 == 0) {
+                unit.garbageCollector(xid);
+            }
+        }
+        long runNs = System.nanoTime() - start;
+
+        if (print) {
+            System.out.format("%-12s %-8s %12d %12d %14d\n", engine, "MVTO", loadNs / nbKeys, runNs / nbTransactions, storage.size());
+        }
+        storage.clear();
+    }
+
+    private static void runMVCC2PL(String engine, int nbKeys, int nbTransactions, int valueSize, boolean print) throws Exception {
+        StorageEngine storage = StorageEngines.create(engine, System.getProperties());
+        VersioningUnitMVCC2PL unit = new VersioningUnitMVCC2PL(storage);
+        unit.init();
+        Random random = new Random(42);
+        int xid = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < nbKeys; i++) {
+            unit.put(++xid, keyOf(i), new byte[valueSize]);
+            unit.commit(xid);
+        }
+        long loadNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < nbTransactions; i++) {
+            ++xid;
+            for (int r = 0; r < READS_PER_TRANSACTION; r++) {
+                unit.get(xid, keyOf(random.nextInt(nbKeys)));
+            }
+            unit.put(xid, keyOf(random.nextInt(nbKeys)), new byte[valueSize]);
+            unit.commit(xid);
+        }
+        long runNs = System.nanoTime() - start;
+        unit.stopNow();
+
+        if (print) {
+            System.out.format("%-12s %-8s %12d %12d %14d\n", engine, "MVCC2PL", loadNs / nbKeys, runNs / nbTransactions, storage.size());
+        }
+        storage.clear();
+    }
+}
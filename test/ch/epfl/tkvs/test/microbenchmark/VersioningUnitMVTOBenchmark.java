@@ -0,0 +1,147 @@
+package ch.epfl.tkvs.test.microbenchmark;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.keyvaluestore.ByteKey;
+import ch.epfl.tkvs.keyvaluestore.KeyValueStore;
+import ch.epfl.tkvs.transactionmanager.versioningunit.VersioningUnitMVTO;
+
+
+/**
+ * Measures the throughput of the versioning unit of MVTO for several numbers of threads, each running transactions that
+ * read random keys and write one with the given probability, while another thread collects the garbage versions. A
+ * share of the reads and writes can go to a few hot keys, so that transactions read uncommitted versions and wait for
+ * their writers in prepareCommit. For each number of threads, the benchmark reports the committed transactions and the
+ * reads per second, the mean latency of the committed transactions, the aborts, and the longest time the garbage
+ * collector held the lock of a key.
+ *
+ * Usage: VersioningUnitMVTOBenchmark [#keys] [seconds per run] [% of transactions writing] [% of accesses to hot keys]
+ */
+public class VersioningUnitMVTOBenchmark {
+
+    private static final int[] NB_THREADS = { 1, 2, 4, 8, 32, 128 };
+    private static final int NB_HOT_KEYS = 16;
+    private static final int READS_PER_TRANSACTION = 8;
+    private static final long GC_PERIOD_MS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int nbKeys = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int writePercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int hotPercent = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        System.out.println("#keys=" + nbKeys + " seconds=" + seconds + " writes=" + writePercent + "% hot=" + hotPercent + "% cores=" + Runtime.getRuntime().availableProcessors());
+        System.out.format("%8s %14s %14s %12s %10s %14s\n", "threads", "commits/s", "reads/s", "latency us", "aborts", "gc pause us");
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up
+            for (int nbThreads : NB_THREADS) {
+                run(nbKeys, seconds, writePercent, hotPercent, nbThreads, round == 1);
+            }
+        }
+    }
+
+    private static ByteKey keyOf(int i) {
+        return new ByteKey(new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+    }
+
+    private static int pick(Random random, int nbKeys, int hotPercent) {
+        return random.nextInt(100) < hotPercent ? random.nextInt(Math.min(NB_HOT_KEYS, nbKeys)) : random.nextInt(nbKeys);
+    }
+
+    private static void run(final int nbKeys, int seconds, final int writePercent, final int hotPercent, int nbThreads, boolean print) throws Exception {
+        final VersioningUnitMVTO unit = new VersioningUnitMVTO(new KeyValueStore());
+        unit.init();
+        final AtomicInteger nextXid = new AtomicInteger(0);
+        final ByteKey[] keys = new ByteKey[nbKeys];
+        for (int i = 0; i < nbKeys; i++) {
+            keys[i] = keyOf(i);
+            int xid = nextXid.incrementAndGet();
+            unit.beginTransaction(xid);
+            unit.put(xid, keys[i], new byte[100]);
+            unit.prepareCommit(xid);
+            unit.commit(xid);
+        }
+
+        // The transaction each thread runs, to find the oldest alive one
+        final AtomicIntegerArray running = new AtomicIntegerArray(nbThreads);
+        final AtomicLong commits = new AtomicLong();
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong aborts = new AtomicLong();
+        final AtomicLong latencies = new AtomicLong();
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+        final CountDownLatch done = new CountDownLatch(nbThreads);
+        for (int t = 0; t < nbThreads; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    Random random = new Random(thread);
+                    long nbCommits = 0;
+                    long nbReads = 0;
+                    long nbAborts = 0;
+                    long latency = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        int xid = nextXid.incrementAndGet();
+                        running.set(thread, xid);
+                        try {
+                            unit.beginTransaction(xid);
+                            for (int r = 0; r < READS_PER_TRANSACTION; r++) {
+                                unit.get(xid, keys[pick(random, nbKeys, hotPercent)]);
+                            }
+                            nbReads += READS_PER_TRANSACTION;
+                            if (random.nextInt(100) < writePercent) {
+                                unit.put(xid, keys[pick(random, nbKeys, hotPercent)], new byte[100]);
+                            }
+                            unit.prepareCommit(xid);
+                            unit.commit(xid);
+                            nbCommits++;
+                            latency += System.nanoTime() - start;
+                        } catch (AbortException e) {
+                            nbAborts++;
+                        }
+                    }
+                    running.set(thread, Integer.MAX_VALUE);
+                    commits.addAndGet(nbCommits);
+                    reads.addAndGet(nbReads);
+                    aborts.addAndGet(nbAborts);
+                    latencies.addAndGet(latency);
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        Thread collector = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        Thread.sleep(GC_PERIOD_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    int minAlive = nextXid.get();
+                    for (int i = 0; i < running.length(); i++) {
+                        minAlive = Math.min(minAlive, running.get(i));
+                    }
+                    unit.garbageCollector(minAlive - 1);
+                }
+            }
+        });
+        collector.start();
+        done.await();
+        collector.join();
+
+        if (print) {
+            long latencyUs = commits.get() == 0 ? 0 : latencies.get() / commits.get() / 1000;
+            System.out.format("%8d %14d %14d %12d %10d %14d\n", nbThreads, commits.get() / seconds, reads.get() / seconds, latencyUs, aborts.get(), unit.getLongestGcPauseNanos() / 1000);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ch.epfl.tkvs.test.microbenchmark;
+
+import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.parseJSON;
+import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import ch.epfl.tkvs.test.userclient.MyKey;
+import ch.epfl.tkvs.transactionmanager.communication.Message;
+import ch.epfl.tkvs.transactionmanager.communication.network.WireProtocol;
+import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.TryCommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+
+
+/**
+ * Compares the {@link WireProtocol}s on the messages of a typical transaction. For every message type and protocol, the
+ * benchmark reports the bytes sent on the wire (request id and frame delimiter or length included) and the CPU time
+ * to encode a message into a frame and to decode it back, conversion from and to the {@link Message} included.
+ *
+ * Usage: WireProtocolBenchmark [#iterations]
+ */
+public class WireProtocolBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nbIterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        MyKey key = new MyKey("key", 42);
+        ArrayList<String> keys = new ArrayList<String>();
+        ArrayList<Integer> hashes = new ArrayList<Integer>();
+        for (int i = 0; i < 8; i++) {
+            keys.add(Base64Utils.convertToBase64(new MyKey("key" + i, i)));
+            hashes.add(i);
+        }
+
+        Message[] messages = new Message[] { BeginRequest.assignedByPrimary(3), new ReadRequest(1234, key, 42), new ReadResponse(Base64Utils.convertToBase64("value")),
+                new WriteRequest(1234, key, "value", 42), new MultiReadRequest(1234, keys, hashes), new TryCommitRequest(1234), new GenericSuccessResponse() };
+
+        System.out.println("#iterations=" + nbIterations);
+        System.out.format("%-25s %-7s %8s %12s %12s\n", "message", "wire", "bytes", "encodeNs", "decodeNs");
+        for (Message message : messages) {
+            for (WireProtocol protocol : WireProtocol.values()) {
+                run(message, protocol, nbIterations);
+            }
+        }
+    }
+
+    private static void run(Message message, WireProtocol protocol, int nbIterations) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        byte[] frame = null;
+
+        // Warm up, then measure
+        for (int round = 0; round < 2; round++) {
+            long start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < nbIterations; i++) {
+                frame = protocol.encode(toJSON(message).put("request_id", i));
+            }
+            long encodeNs = threads.getCurrentThreadCpuTime() - start;
+
+            // Strip the delimiter or the length, as the readers do
+            byte[] body = protocol == WireProtocol.JSON ? Arrays.copyOf(frame, frame.length - 1) : Arrays.copyOfRange(frame, 4, frame.length);
+            start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < nbIterations; i++) {
+                parseJSON(protocol.decode(body), message.getClass());
+            }
+            long decodeNs = threads.getCurrentThreadCpuTime() - start;
+
+            if (round == 1) {
+                System.out.format("%-25s %-7s %8d %12d %12d\n", message.getClass().getSimpleName(), protocol, frame.length, encodeNs / nbIterations, decodeNs / nbIterations);
+            }
+        }
+    }
+}
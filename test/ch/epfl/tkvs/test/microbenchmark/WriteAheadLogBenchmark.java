@@ -0,0 +1,139 @@
+package ch.epfl.tkvs.test.microbenchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ch.epfl.tkvs.keyvaluestore.ByteKey;
+import ch.epfl.tkvs.keyvaluestore.WriteAheadLog;
+
+
+/**
+ * Measures the commit throughput of the {@link WriteAheadLog} for several numbers of committing threads and several
+ * settings of group commit, against a log forcing every commit to disk on its own (interval -1). For each setting, the
+ * benchmark reports the commits per second and the average number of commits sharing an fsync.
+ *
+ * Usage: WriteAheadLogBenchmark [directory] [#commits per thread] [value size]
+ */
+public class WriteAheadLogBenchmark {
+
+    private static final int[] NB_THREADS = { 1, 8, 64 };
+    // {flush interval in ms, batch size}, the first one without group commit
+    private static final long[][] SETTINGS = { { -1, 1 }, { 0, 1 }, { 0, 256 }, { 2, 256 } };
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        int nbCommits = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int valueSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.println("#commits/thread=" + nbCommits + " valueSize=" + valueSize + " directory=" + directory);
+        System.out.format("%8s %10s %10s %12s %14s\n", "threads", "intervalMs", "batchSize", "commits/s", "commits/fsync");
+        for (long[] setting : SETTINGS) {
+            for (int nbThreads : NB_THREADS) {
+                run(directory, setting[0], (int) setting[1], nbThreads, nbCommits, valueSize);
+            }
+        }
+    }
+
+    private static void run(File directory, long flushIntervalMs, int batchSize, int nbThreads, final int nbCommits, int valueSize) throws Exception {
+        File file = new File(directory, "wal-benchmark.wal");
+        file.delete();
+        final WriteAheadLog wal = flushIntervalMs < 0 ? new SyncLog(file) : new WriteAheadLog(file, flushIntervalMs, batchSize);
+        wal.start();
+
+        final Serializable[] values = new Serializable[] { new byte[valueSize] };
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(nbThreads);
+        for (int t = 0; t < nbThreads; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < nbCommits; i++) {
+                            Serializable[] keys = new Serializable[] { new ByteKey(new byte[] { (byte) thread, (byte) i }) };
+                            wal.commit(thread * nbCommits + i, keys, values);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long startNs = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedNs = System.nanoTime() - startNs;
+        long nbFsyncs = wal.getNbFlushes();
+        wal.close();
+        file.delete();
+
+        long total = (long) nbThreads * nbCommits;
+        System.out.format("%8d %10d %10d %12.0f %14.1f\n", nbThreads, flushIntervalMs, batchSize, total * 1e9 / elapsedNs, (double) total / Math.max(1, nbFsyncs));
+    }
+
+    // Appends and forces every commit under a lock, as a log without group commit does
+    private static class SyncLog extends WriteAheadLog {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private FileChannel channel;
+        private long nbFlushes = 0;
+
+        SyncLog(File file) {
+            super(file, 0, 1);
+        }
+
+        @Override
+        public synchronized void start() throws IOException {
+            channel = FileChannel.open(getFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        @Override
+        public void commit(int xid, Serializable[] keys, Serializable[] values) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(xid);
+            for (int i = 0; i < keys.length; i++) {
+                out.write(((ByteKey) keys[i]).getBytes());
+                out.write((byte[]) values[i]);
+            }
+            lock.lock();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                nbFlushes++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long getNbFlushes() {
+            return nbFlushes;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
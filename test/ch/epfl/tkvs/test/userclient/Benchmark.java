@@ -3,10 +3,13 @@ package ch.epfl.tkvs.test.userclient;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.apache.log4j.Logger;
 
 import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.user.AsyncUserTransaction;
 import ch.epfl.tkvs.user.Key;
 import ch.epfl.tkvs.user.UserTransaction;
 
@@ -25,6 +28,16 @@ public class Benchmark {
 
     private static Logger log = Logger.getLogger(Benchmark.class.getName());
 
+    /** How the users talk to the transaction managers */
+    public static enum Mode {
+        /** One socket per request */
+        ONESHOT,
+        /** Requests multiplexed over long-lived connections */
+        PERSISTENT,
+        /** Requests of a transaction pipelined with {@link AsyncUserTransaction} */
+        ASYNC
+    }
+
     /** Keys the users will access (are written once at the beginning) */
     private static MyKey allKeys[];
     /** Percentage of keys in a transaction which are on the same node of the key used to create the transaction */
@@ -90,6 +103,8 @@ public class Benchmark {
 
     private ConcurrentFIFO latencyBuffer;
 
+    private Mode mode;
+
     /**
      * @param nbKeys: Number of keys that will be accessed by the users
      * @param nbUsers: Number of users = transactions for the benchmark
@@ -98,6 +113,18 @@ public class Benchmark {
      * @param repetition: Number of time the benchmark will be repeated with the same parameters
      */
     public Benchmark(int nbKeys, int nbUsers, int maxNbActions, int ratio, int repetitions) {
+        this(nbKeys, nbUsers, maxNbActions, ratio, repetitions, Mode.PERSISTENT);
+    }
+
+    /**
+     * @param nbKeys: Number of keys that will be accessed by the users
+     * @param nbUsers: Number of users = transactions for the benchmark
+     * @param maxNbActions: Max number of actions that will be done by a user
+     * @param ratio: Number of read for one write
+     * @param repetition: Number of time the benchmark will be repeated with the same parameters
+     * @param mode: How the requests are sent to the transaction managers
+     */
+    public Benchmark(int nbKeys, int nbUsers, int maxNbActions, int ratio, int repetitions, Mode mode) {
 
         this.nbKeys = nbKeys;
         this.users = new User[nbUsers];
@@ -105,6 +132,7 @@ public class Benchmark {
         this.maxNbActions = maxNbActions;
         this.ratio = ratio;
         this.repetitions = repetitions;
+        this.mode = mode;
 
         int fivePercentNbTransactions = (int) (0.05 * nbUsers);
         if (fivePercentNbTransactions < 1) {
@@ -118,7 +146,8 @@ public class Benchmark {
     /** Run the benchmark and output results to stdout */
     public void run() {
 
-        log.info("Benchmarking starts for " + users.length + " transactions");
+        log.info("Benchmarking starts for " + users.length + " transactions in mode " + mode);
+        UserTransaction.setPersistentConnections(mode != Mode.ONESHOT);
 
         for (int i = 0; i < repetitions; i++) {
             initializeListOfUsedKeys();
@@ -328,6 +357,10 @@ public class Benchmark {
 
         @Override
         public void run() {
+            if (mode == Mode.ASYNC) {
+                runAsync();
+                return;
+            }
 
             BenchmarkStatus benchmarkStatus = BenchmarkStatus.BEGIN;
             boolean isDone = false;
@@ -384,5 +417,67 @@ public class Benchmark {
             latency = System.currentTimeMillis() - latency;
             latencyBuffer.add(latency);
         }
+
+        /** Same transaction as {@link #run()}, but all the actions are pipelined before waiting for the commit */
+        private void runAsync() {
+
+            boolean isDone = false;
+            long latency = System.currentTimeMillis();
+
+            while (!isDone) {
+                MyKey localityHintKey = usedKeysFromNode.get(localityHint).get(0);
+                AsyncUserTransaction<MyKey> t = new AsyncUserTransaction<MyKey>();
+
+                CompletableFuture<?> begin = t.begin(localityHintKey);
+                CompletableFuture<?> actionResults[] = new CompletableFuture<?>[actions.length];
+                for (int i = 0; i < actions.length; i++) {
+                    MyKey key = actions[i].key;
+                    switch (actions[i].type) {
+                    case WRITE:
+                        actionResults[i] = t.write(key, "UserID:" + userID + " Action:" + i);
+                        break;
+                    case READ:
+                        actionResults[i] = t.read(key);
+                        break;
+                    }
+                }
+                CompletableFuture<?> commit = t.commit();
+
+                // Blame the abort on the first operation that failed
+                if (hasFailed(begin)) {
+                    nbBeginAborts++;
+                } else if (hasFailed(commit)) {
+                    boolean blamed = false;
+                    for (int i = 0; i < actions.length && !blamed; i++) {
+                        if (hasFailed(actionResults[i])) {
+                            blamed = true;
+                            if (actions[i].type == Action.ActionType.READ) {
+                                nbReadAborts++;
+                            } else {
+                                nbWriteAborts++;
+                            }
+                        }
+                    }
+                    if (!blamed) {
+                        nbCommitAborts++;
+                    }
+                } else {
+                    nbCommit = nbCommit + 1;
+                    isDone = true;
+                }
+            }
+
+            latency = System.currentTimeMillis() - latency;
+            latencyBuffer.add(latency);
+        }
+
+        private boolean hasFailed(CompletableFuture<?> result) {
+            try {
+                result.join();
+                return false;
+            } catch (CompletionException e) {
+                return true;
+            }
+        }
     }
 }
@@ -0,0 +1,87 @@
+package ch.epfl.tkvs.transactionmanager;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.epfl.tkvs.transactionmanager.AdmissionController.Priority;
+
+
+public class AdmissionControllerTest {
+
+    // Occupies the only worker until the latch is released
+    private Runnable block(final CountDownLatch release) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private Runnable record(final List<String> executed, final String name) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                executed.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testBeginsRejectedFirst() throws InterruptedException {
+        ExecutorService workers = WorkerExecutors.create(WorkerExecutors.PLATFORM, 1);
+        AdmissionController admission = new AdmissionController(workers, 4);
+        CountDownLatch release = new CountDownLatch(1);
+
+        assertTrue(admission.submit(Priority.OPERATION, block(release)));
+        assertTrue(admission.submit(Priority.BEGIN, block(release)));
+        assertFalse(admission.submit(Priority.BEGIN, block(release)));
+        assertTrue(admission.submit(Priority.OPERATION, block(release)));
+        assertTrue(admission.submit(Priority.OPERATION, block(release)));
+        assertFalse(admission.submit(Priority.OPERATION, block(release)));
+        assertTrue(admission.submit(Priority.TERMINATION, block(release)));
+        assertEquals(5, admission.getPending());
+        assertEquals(2, admission.getRejected());
+
+        release.countDown();
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(0, admission.getPending());
+    }
+
+    @Test
+    public void testPriorityOrder() throws InterruptedException {
+        ExecutorService workers = WorkerExecutors.create(WorkerExecutors.PLATFORM, 1);
+        AdmissionController admission = new AdmissionController(workers, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+
+        admission.submit(Priority.OPERATION, block(release));
+        admission.submit(Priority.BEGIN, record(executed, "begin"));
+        admission.submit(Priority.OPERATION, record(executed, "read"));
+        admission.submit(Priority.TERMINATION, record(executed, "commit"));
+        admission.submit(Priority.OPERATION, record(executed, "write"));
+
+        release.countDown();
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("commit", "read", "write", "begin"), executed);
+    }
+}
@@ -0,0 +1,123 @@
+package ch.epfl.tkvs.transactionmanager;
+
+import static junit.framework.TestCase.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class RequestSequencerTest {
+
+    private Runnable record(final List<Integer> executed, final int sequenceNumber) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                executed.add(sequenceNumber);
+            }
+        };
+    }
+
+    @Test
+    public void testOutOfOrderArrival() {
+        RequestSequencer sequencer = new RequestSequencer(Executors.newSingleThreadExecutor());
+        List<Integer> executed = new ArrayList<>();
+
+        sequencer.execute(1, 2, true, record(executed, 2));
+        sequencer.execute(1, 1, false, record(executed, 1));
+        assertEquals(0, executed.size());
+
+        sequencer.execute(1, 0, false, record(executed, 0));
+        assertEquals(Arrays.asList(0, 1, 2), executed);
+        assertEquals(0, sequencer.size());
+    }
+
+    @Test
+    public void testIndependentTransactions() {
+        RequestSequencer sequencer = new RequestSequencer(Executors.newSingleThreadExecutor());
+        List<Integer> executed = new ArrayList<>();
+
+        sequencer.execute(1, 1, false, record(executed, 11));
+        sequencer.execute(2, 0, false, record(executed, 20));
+        assertEquals(Arrays.asList(20), executed);
+        assertEquals(2, sequencer.size());
+    }
+
+    @Test
+    public void testConcurrentArrival() throws InterruptedException {
+        int nbRequests = 1000;
+        RequestSequencer sequencer = new RequestSequencer(Executors.newSingleThreadExecutor());
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        List<Integer> arrivalOrder = new ArrayList<>();
+        for (int i = 0; i < nbRequests; i++) {
+            arrivalOrder.add(i);
+        }
+        Collections.shuffle(arrivalOrder);
+
+        ExecutorService workers = Executors.newFixedThreadPool(8);
+        for (final int sequenceNumber : arrivalOrder) {
+            final RequestSequencer s = sequencer;
+            final Runnable request = record(executed, sequenceNumber);
+            workers.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    s.execute(7, sequenceNumber, sequenceNumber == 999, request);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(nbRequests, executed.size());
+        for (int i = 0; i < nbRequests; i++) {
+            assertEquals(i, (int) executed.get(i));
+        }
+        assertEquals(0, sequencer.size());
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RequestSequencer sequencer = new RequestSequencer(executor);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        // The request 0 never comes
+        sequencer.execute(1, 1, false, record(executed, 1));
+        sequencer.expire(60000);
+        assertEquals(1, sequencer.size());
+
+        sequencer.expire(0);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(1), executed);
+        assertEquals(0, sequencer.size());
+    }
+
+    // A request arriving after the end of its sequence waits in a new one, which expire() still sees
+    @Test
+    public void testArrivalAfterRemoval() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RequestSequencer sequencer = new RequestSequencer(executor);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        sequencer.execute(1, 0, true, record(executed, 0));
+        assertEquals(0, sequencer.size());
+
+        sequencer.execute(1, 1, false, record(executed, 1));
+        assertEquals(1, sequencer.size());
+        sequencer.expire(0);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(0, 1), executed);
+        assertEquals(0, sequencer.size());
+    }
+}
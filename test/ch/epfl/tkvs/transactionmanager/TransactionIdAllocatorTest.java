@@ -0,0 +1,90 @@
+package ch.epfl.tkvs.transactionmanager;
+
+import static junit.framework.TestCase.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.epfl.tkvs.transactionmanager.TransactionIdAllocator.LeaseSource;
+
+
+public class TransactionIdAllocatorTest {
+
+    // Leases consecutive blocks, like the AppMaster does, and counts the leases
+    private static class CountingSource implements LeaseSource {
+
+        final AtomicInteger nextId = new AtomicInteger(0);
+        final AtomicInteger leases = new AtomicInteger(0);
+
+        @Override
+        public int lease(int count) throws IOException {
+            leases.incrementAndGet();
+            return nextId.getAndAdd(count);
+        }
+    }
+
+    @Test
+    public void testOneLeasePerBlock() throws IOException {
+        CountingSource source = new CountingSource();
+        TransactionIdAllocator allocator = new TransactionIdAllocator(source, 10);
+
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, allocator.next());
+        }
+        assertEquals(3, source.leases.get());
+    }
+
+    @Test
+    public void testReleaseUnused() throws IOException {
+        CountingSource source = new CountingSource();
+        TransactionIdAllocator allocator = new TransactionIdAllocator(source, 10);
+        TransactionIdAllocator other = new TransactionIdAllocator(source, 10);
+
+        assertEquals(0, allocator.next());
+        assertEquals(10, other.next());
+        int[] released = allocator.releaseUnused();
+        assertEquals(1, released[0]);
+        assertEquals(10, released[1]);
+
+        // Ids keep increasing after a release, the next block is leased after the other allocator's
+        assertEquals(20, allocator.next());
+        released = allocator.releaseUnused();
+        assertEquals(21, released[0]);
+        released = allocator.releaseUnused();
+        assertEquals(released[0], released[1]);
+    }
+
+    @Test
+    public void testConcurrentAllocation() throws InterruptedException {
+        final int nbIds = 10000;
+        final TransactionIdAllocator allocator = new TransactionIdAllocator(new CountingSource(), 7);
+        final Set<Integer> ids = Collections.synchronizedSet(new HashSet<Integer>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < nbIds; i++) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        ids.add(allocator.next());
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(nbIds, ids.size());
+    }
+}
@@ -1,16 +1,24 @@
 package ch.epfl.tkvs.transactionmanager.algorithms;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import ch.epfl.tkvs.ScheduledTestCase;
 import ch.epfl.tkvs.transactionmanager.communication.requests.BeginRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.CommitRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiWriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.PrepareRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.ReadRequest;
 import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
 import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.MultiReadResponse;
 import ch.epfl.tkvs.transactionmanager.communication.responses.ReadResponse;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
 
 
 public class AlgorithmScheduledTest extends ScheduledTestCase {
@@ -144,6 +152,36 @@ public class AlgorithmScheduledTest extends ScheduledTestCase {
         assertEquals(false, result.getSuccess());
     }
 
+    @Test
+    public void testMultiReadWrite() throws IOException {
+
+        ArrayList<String> keys = new ArrayList<>();
+        ArrayList<String> values = new ArrayList<>();
+        ArrayList<Integer> hashes = new ArrayList<>();
+        for (String key : new String[] { "a", "b", "c" }) {
+            keys.add(Base64Utils.convertToBase64(key));
+            values.add(Base64Utils.convertToBase64(key + "1"));
+            hashes.add(0);
+        }
+
+        MultiReadResponse result = instance.multiRead(new MultiReadRequest(0, keys, hashes));
+        assertEquals(false, result.getSuccess());
+
+        GenericSuccessResponse gsr = instance.begin(new BeginRequest(0));
+        assertEquals(true, gsr.getSuccess());
+
+        gsr = instance.multiWrite(new MultiWriteRequest(0, keys, values, hashes));
+        assertEquals(true, gsr.getSuccess());
+
+        result = instance.multiRead(new MultiReadRequest(0, keys, hashes));
+        assertEquals(true, result.getSuccess());
+        assertEquals(Arrays.asList("a1", "b1", "c1"), result.getValues());
+
+        ReadResponse rr = instance.read(new ReadRequest(0, "b", 0));
+        assertEquals(true, rr.getSuccess());
+        assertEquals("b1", rr.getValue());
+    }
+
     /**
      * Test of commit method, of class MVCC2PL.
      */
@@ -0,0 +1,121 @@
+package ch.epfl.tkvs.transactionmanager.communication;
+
+import static ch.epfl.tkvs.transactionmanager.communication.utils.JSON2MessageConverter.parseJSON;
+import static ch.epfl.tkvs.transactionmanager.communication.utils.Message2JSONConverter.toJSON;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Test;
+
+import ch.epfl.tkvs.exceptions.OverloadedException;
+import ch.epfl.tkvs.transactionmanager.communication.network.WireProtocol;
+import ch.epfl.tkvs.transactionmanager.communication.requests.MultiReadRequest;
+import ch.epfl.tkvs.transactionmanager.communication.requests.WriteRequest;
+import ch.epfl.tkvs.transactionmanager.communication.responses.BeginResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.GenericSuccessResponse;
+import ch.epfl.tkvs.transactionmanager.communication.responses.TransactionManagerResponse;
+import ch.epfl.tkvs.transactionmanager.communication.utils.Base64Utils;
+import ch.epfl.tkvs.transactionmanager.communication.utils.BinaryMessageConverter;
+
+
+public class BinaryMessageConverterTest {
+
+    private JSONObject roundTrip(JSONObject json) throws Exception {
+        return BinaryMessageConverter.fromBinary(BinaryMessageConverter.toBinary(json));
+    }
+
+    // The binary form does not keep the order of the keys
+    private void assertSameMessage(JSONObject expected, JSONObject actual) throws Exception {
+        assertEquals(expected.length(), actual.length());
+        Iterator<?> keys = expected.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            assertEquals(key, expected.get(key), actual.get(key));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        JSONObject json = toJSON(new WriteRequest(-7, "key", "value", 300));
+        json.put(JSONCommunication.KEY_FOR_REQUEST_ID, 12345);
+        json.put(JSONCommunication.KEY_FOR_SEQUENCE, 0);
+
+        JSONObject decoded = roundTrip(json);
+        assertSameMessage(json, decoded);
+
+        WriteRequest request = (WriteRequest) parseJSON(decoded, WriteRequest.class);
+        assertEquals(-7, request.getTransactionId());
+        assertEquals(300, request.getLocalityHash());
+        assertEquals("key", Base64Utils.convertFromBase64(request.getEncodedKey()));
+        assertEquals("value", Base64Utils.convertFromBase64(request.getEncodedValue()));
+    }
+
+    @Test
+    public void testAbsentAttributes() throws Exception {
+        // No exception message, no port, no request id
+        JSONObject success = toJSON(new BeginResponse(3, new GenericSuccessResponse(), 1));
+        assertSameMessage(success, roundTrip(success));
+
+        JSONObject failure = toJSON(new TransactionManagerResponse(false, null, null));
+        JSONObject decoded = roundTrip(failure);
+        assertSameMessage(failure, decoded);
+        assertFalse(decoded.has(JSONCommunication.KEY_FOR_PORT));
+
+        JSONObject aborted = toJSON(new BeginResponse(new OverloadedException(), 1));
+        assertSameMessage(aborted, roundTrip(aborted));
+    }
+
+    @Test
+    public void testSmallerThanJSON() throws Exception {
+        ArrayList<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            keys.add(Base64Utils.convertToBase64("key" + i));
+        }
+        JSONObject json = toJSON(new MultiReadRequest(42, keys, new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9))));
+
+        assertTrue(WireProtocol.BINARY.encode(json).length < WireProtocol.JSON.encode(json).length);
+    }
+
+    @Test
+    public void testFraming() throws Exception {
+        JSONObject first = toJSON(new WriteRequest(1, "a", "b", 0));
+        JSONObject second = toJSON(new WriteRequest(2, "c", "d", 1));
+
+        for (WireProtocol protocol : WireProtocol.values()) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            stream.write(protocol.encode(first));
+            stream.write(protocol.encode(second));
+            stream.write(protocol.encodeLine("ok"));
+
+            ByteArrayInputStream in = new ByteArrayInputStream(stream.toByteArray());
+            assertSameMessage(first, protocol.decode(protocol.readFrame(in)));
+            assertSameMessage(second, protocol.decode(protocol.readFrame(in)));
+            byte[] line = protocol.readFrame(in);
+            assertEquals(protocol == WireProtocol.BINARY, BinaryMessageConverter.isText(line));
+            assertEquals(null, protocol.readFrame(in));
+        }
+    }
+
+    // A length read from a broken peer does not allocate its frame
+    @Test
+    public void testFrameTooLong() throws Exception {
+        byte[] length = ByteBuffer.allocate(4).putInt(WireProtocol.MAX_FRAME_LENGTH + 1).array();
+        try {
+            WireProtocol.BINARY.readFrame(new ByteArrayInputStream(length));
+            fail();
+        } catch (IOException e) {
+            // The connection is dropped
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ch.epfl.tkvs.transactionmanager.lockingunit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+public class DeadlockInfoTest {
+
+    private static Set<Integer> setOf(Integer... transactions) {
+        return new HashSet<Integer>(Arrays.asList(transactions));
+    }
+
+    private static DeadlockGraph graphOf(int... edges) {
+        DeadlockGraph graph = new DeadlockGraph();
+        for (int i = 0; i < edges.length; i += 2) {
+            graph.addDependencies(edges[i], new HashSet<Integer>(Arrays.asList(edges[i + 1])));
+        }
+        return graph;
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        DeadlockInfo info = new DeadlockInfo(-7, 3, 2, new int[] { 1, 2, 300000, -4 }, new int[] { 5, 6 }, new int[] { 1, Integer.MAX_VALUE }, new int[] { Integer.MIN_VALUE });
+        DeadlockInfo decoded = DeadlockInfo.decode(info.encode());
+
+        assertEquals(-7, decoded.getLocalHash());
+        assertEquals(3, decoded.getSequence());
+        assertEquals(2, decoded.getBaseSequence());
+        assertFalse(decoded.isFull());
+        assertTrue(Arrays.equals(info.getAddedEdges(), decoded.getAddedEdges()));
+        assertTrue(Arrays.equals(info.getRemovedEdges(), decoded.getRemovedEdges()));
+        assertTrue(Arrays.equals(info.getAddedTransactions(), decoded.getAddedTransactions()));
+        assertTrue(Arrays.equals(info.getRemovedTransactions(), decoded.getRemovedTransactions()));
+    }
+
+    @Test
+    public void testReporterSendsOnlyChanges() {
+        DeadlockReporter reporter = new DeadlockReporter();
+
+        DeadlockInfo first = reporter.nextReport(0, graphOf(1, 2).getEdges(), setOf(1, 2));
+        assertTrue(first.isFull());
+        assertNull(reporter.nextReport(0, graphOf(1, 2).getEdges(), setOf(1, 2)));
+
+        DeadlockInfo delta = reporter.nextReport(0, graphOf(2, 3).getEdges(), setOf(2, 3));
+        assertEquals(first.getSequence(), delta.getBaseSequence());
+        assertTrue(Arrays.equals(new int[] { 2, 3 }, delta.getAddedEdges()));
+        assertTrue(Arrays.equals(new int[] { 1, 2 }, delta.getRemovedEdges()));
+        assertTrue(Arrays.equals(new int[] { 3 }, delta.getAddedTransactions()));
+        assertTrue(Arrays.equals(new int[] { 1 }, delta.getRemovedTransactions()));
+
+        reporter.reset();
+        assertTrue(reporter.nextReport(0, graphOf(2, 3).getEdges(), setOf(2, 3)).isFull());
+    }
+
+    @Test
+    public void testReporterSendsFullReportsPeriodically() {
+        DeadlockReporter reporter = new DeadlockReporter();
+        reporter.nextReport(0, new int[0], setOf());
+        for (int i = 1; i < DeadlockReporter.FULL_REPORT_PERIOD; i++) {
+            assertNull(reporter.nextReport(0, new int[0], setOf()));
+        }
+        assertTrue(reporter.nextReport(0, new int[0], setOf()).isFull());
+    }
+
+    @Test
+    public void testMergedGraphFindsCycleAcrossTMs() {
+        DeadlockReporter reporter1 = new DeadlockReporter();
+        DeadlockReporter reporter2 = new DeadlockReporter();
+        MergedDeadlockGraph merged = new MergedDeadlockGraph();
+
+        assertTrue(merged.apply(reporter1.nextReport(1, graphOf(1, 2).getEdges(), setOf(1, 2))));
+        assertTrue(merged.apply(reporter2.nextReport(2, new int[0], setOf(3))));
+        assertTrue(merged.hasNewEdges());
+        assertEquals(0, merged.toGraph().checkForCycles().size());
+        assertFalse(merged.hasNewEdges());
+
+        assertTrue(merged.apply(reporter2.nextReport(2, graphOf(2, 1).getEdges(), setOf(1, 2, 3))));
+        assertTrue(merged.hasNewEdges());
+        assertEquals(1, merged.toGraph().checkForCycles().size());
+        assertEquals(setOf(1, 2), merged.getTMsRunning(1));
+
+        // The cycle is broken once a report removes one of its edges
+        assertTrue(merged.apply(reporter1.nextReport(1, new int[0], setOf(2))));
+        assertFalse(merged.hasNewEdges());
+        assertEquals(0, merged.toGraph().checkForCycles().size());
+        assertEquals(setOf(2), merged.getTMsRunning(1));
+    }
+
+    @Test
+    public void testMergedGraphWaitsForFullReportAfterMissedDelta() {
+        DeadlockReporter reporter = new DeadlockReporter();
+        MergedDeadlockGraph merged = new MergedDeadlockGraph();
+
+        assertTrue(merged.apply(reporter.nextReport(1, graphOf(1, 2).getEdges(), setOf(1, 2))));
+        // Lost on the way
+        reporter.nextReport(1, graphOf(1, 2, 2, 3).getEdges(), setOf(1, 2, 3));
+        assertFalse(merged.apply(reporter.nextReport(1, graphOf(2, 3).getEdges(), setOf(2, 3))));
+        assertEquals(0, merged.size());
+
+        reporter.reset();
+        assertTrue(merged.apply(reporter.nextReport(1, graphOf(2, 3).getEdges(), setOf(2, 3))));
+        assertEquals(1, merged.size());
+    }
+}
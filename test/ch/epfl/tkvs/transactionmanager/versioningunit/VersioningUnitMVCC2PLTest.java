@@ -1,5 +1,6 @@
 package ch.epfl.tkvs.transactionmanager.versioningunit;
 
+import java.io.File;
 import java.util.concurrent.Semaphore;
 
 import junit.framework.TestCase;
@@ -7,7 +8,7 @@ import junit.framework.TestCase;
 import org.junit.Before;
 import org.junit.Test;
 
-import ch.epfl.tkvs.keyvaluestore.KeyValueStore;
+import ch.epfl.tkvs.keyvaluestore.WriteAheadLog;
 
 
 public class VersioningUnitMVCC2PLTest extends TestCase {
@@ -17,7 +18,7 @@ public class VersioningUnitMVCC2PLTest extends TestCase {
     @Before
     public void setUp() throws Exception {
         V.init();
-        KeyValueStore.instance.clear();
+        V.getStorageEngine().clear();
     }
 
     @Override
@@ -345,4 +346,65 @@ public class VersioningUnitMVCC2PLTest extends TestCase {
 
     }
 
+
+    @Test
+    public void testRecoveryFromWriteAheadLog() throws Exception {
+        File file = File.createTempFile("mvcc2pl", ".wal");
+        file.delete();
+        try {
+            V.setWriteAheadLog(new WriteAheadLog(file, 1, 4));
+            V.init();
+            V.put(1, "key1", "value1");
+            V.put(1, "key2", "value1");
+            V.commit(1);
+            V.put(2, "key1", "value2");
+            V.commit(2);
+            V.put(3, "key2", "value3");
+            V.abort(3);
+
+            // Restart
+            V.init();
+            assertEquals("value2", V.get(4, "key1"));
+            assertEquals("value1", V.get(4, "key2"));
+        } finally {
+            V.setWriteAheadLog(null);
+            V.init();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRecoveryFromSnapshot() throws Exception {
+        File file = File.createTempFile("mvcc2pl", ".wal");
+        file.delete();
+        WriteAheadLog wal = new WriteAheadLog(file, 1, 4);
+        try {
+            V.setWriteAheadLog(wal);
+            V.init();
+            V.put(1, "key1", "value1");
+            V.put(1, "key2", "value1");
+            V.commit(1);
+            assertEquals(2, wal.snapshot());
+            // The tail of the log
+            V.put(3, "key1", "value3");
+            V.commit(3);
+            V.put(2, "key2", "value2");
+            V.commit(2);
+
+            V.init();
+            assertEquals("value3", V.get(4, "key1"));
+            assertEquals("value2", V.get(4, "key2"));
+
+            // Merged with the previous snapshot, the log order wins
+            assertEquals(2, wal.snapshot());
+            V.init();
+            assertEquals("value3", V.get(5, "key1"));
+            assertEquals("value2", V.get(5, "key2"));
+        } finally {
+            V.setWriteAheadLog(null);
+            V.init();
+            file.delete();
+            wal.getSnapshotFile().delete();
+        }
+    }
 }
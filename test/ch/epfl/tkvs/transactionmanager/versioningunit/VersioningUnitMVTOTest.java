@@ -1,11 +1,22 @@
 package ch.epfl.tkvs.transactionmanager.versioningunit;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import ch.epfl.tkvs.ScheduledTestCase;
 import ch.epfl.tkvs.exceptions.AbortException;
+import ch.epfl.tkvs.keyvaluestore.ByteKey;
+import ch.epfl.tkvs.keyvaluestore.OffHeapStorageEngine;
+import ch.epfl.tkvs.keyvaluestore.StorageEngine;
+import ch.epfl.tkvs.keyvaluestore.StorageFullException;
+import ch.epfl.tkvs.keyvaluestore.WriteAheadLog;
 
 
 public class VersioningUnitMVTOTest extends ScheduledTestCase {
@@ -121,4 +132,453 @@ public class VersioningUnitMVTOTest extends ScheduledTestCase {
         ScheduleExecutor executor = new ScheduleExecutor(schedule);
         executor.execute();
     }
+
+    // Concurrent increments of a shared key and of a key per thread: no committed increment is lost
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final int nbThreads = 8;
+        final int nbIncrements = 200;
+        final AtomicInteger nextXid = new AtomicInteger(0);
+        final AtomicInteger nbCommitted = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<Thread>();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        for (int t = 0; t < nbThreads; t++) {
+            final int ownKey = 1000 + t;
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < nbIncrements; i++) {
+                            int xid = nextXid.incrementAndGet();
+                            V.beginTransaction(xid);
+                            Integer own = (Integer) V.get(xid, ownKey);
+                            V.put(xid, ownKey, own == null ? 1 : own + 1);
+                            try {
+                                Integer shared = (Integer) V.get(xid, 0);
+                                V.put(xid, 0, shared == null ? 1 : shared + 1);
+                                V.prepareCommit(xid);
+                                V.commit(xid);
+                                nbCommitted.incrementAndGet();
+                            } catch (AbortException e) {
+                                // Its own increment is lost with it
+                                i--;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        int xid = nextXid.incrementAndGet();
+        V.beginTransaction(xid);
+        assertEquals(nbThreads * nbIncrements, nbCommitted.get());
+        assertEquals(nbCommitted.get(), V.get(xid, 0));
+        for (int t = 0; t < nbThreads; t++) {
+            assertEquals(nbIncrements, V.get(xid, 1000 + t));
+        }
+    }
+
+    // A transaction in prepareCommit is woken up by the transactions it read from, and only by them
+    @Test
+    public void testCommitWaitsForWriters() throws Exception {
+        V.beginTransaction(1);
+        V.beginTransaction(2);
+        V.put(1, 1, 1);
+        V.put(2, 2, 2);
+        V.beginTransaction(3);
+        V.beginTransaction(4);
+        assertEquals(1, V.get(3, 1));
+        assertEquals(1, V.get(4, 1));
+        assertEquals(2, V.get(4, 2));
+
+        final List<String> outcomes = new ArrayList<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final int xid : new int[] { 3, 4 }) {
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    String outcome;
+                    try {
+                        V.prepareCommit(xid);
+                        V.commit(xid);
+                        outcome = xid + " committed";
+                    } catch (AbortException e) {
+                        outcome = xid + " aborted";
+                    }
+                    synchronized (outcomes) {
+                        outcomes.add(outcome);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        V.prepareCommit(2);
+        V.commit(2);
+        threads.get(1).join(200);
+        assertTrue(threads.get(0).isAlive());
+        assertTrue(threads.get(1).isAlive());
+
+        // Both commit once 1 does, 4 having read from 2 as well
+        V.prepareCommit(1);
+        V.commit(1);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(outcomes.contains("3 committed"));
+        assertTrue(outcomes.contains("4 committed"));
+
+        V.beginTransaction(5);
+        V.put(5, 1, 5);
+        V.beginTransaction(6);
+        V.beginTransaction(7);
+        assertEquals(2, V.get(6, 2));
+        assertEquals(5, V.get(6, 1));
+        Thread waiting = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    V.prepareCommit(6);
+                    V.commit(6);
+                } catch (AbortException e) {
+                    synchronized (outcomes) {
+                        outcomes.add("6 aborted");
+                    }
+                }
+            }
+        });
+        waiting.start();
+        // Committing a transaction it did not read from does not end the wait, the abort of its writer does
+        V.prepareCommit(7);
+        V.commit(7);
+        waiting.join(200);
+        assertTrue(waiting.isAlive());
+        V.abort(5);
+        waiting.join();
+        assertTrue(outcomes.contains("6 aborted"));
+    }
+
+    // Reads between versions written out of order, with the values in the chains then in another engine
+    @Test
+    public void testVersionChain() throws Exception {
+        StorageEngine engine = V.getStorageEngine();
+        try {
+            checkVersionChain();
+            V.setStorageEngine(new OffHeapStorageEngine());
+            V.init();
+            checkVersionChain();
+        } finally {
+            V.setStorageEngine(engine);
+            V.init();
+        }
+    }
+
+    private void checkVersionChain() throws Exception {
+        for (int xid : new int[] { 30, 10, 20, 40 }) {
+            V.beginTransaction(xid);
+            V.put(xid, 1, xid);
+            V.put(xid, 1, xid + 1);
+        }
+        V.abort(40);
+        for (int xid : new int[] { 20, 10, 30 }) {
+            V.prepareCommit(xid);
+            V.commit(xid);
+        }
+
+        V.beginTransaction(5);
+        assertEquals(null, V.get(5, 1));
+        V.beginTransaction(25);
+        assertEquals(21, V.get(25, 1));
+        V.beginTransaction(45);
+        assertEquals(31, V.get(45, 1));
+
+        // Keeps the version read by 25, and the newer ones
+        V.garbageCollector(25);
+        assertEquals(21, V.get(25, 1));
+        assertEquals(31, V.get(45, 1));
+        V.init();
+    }
+
+    // Each pass prunes a bounded number of the keys written since, and keeps the keys with versions after the watermark
+    @Test
+    public void testIncrementalGarbageCollector() throws Exception {
+        for (int xid = 1; xid <= 2; xid++) {
+            V.beginTransaction(xid);
+            for (int key = 0; key < 100; key++) {
+                V.put(xid, key, new byte[10]);
+            }
+            V.prepareCommit(xid);
+            V.commit(xid);
+        }
+        V.beginTransaction(3);
+        V.put(3, 0, new byte[10]);
+        V.prepareCommit(3);
+        V.commit(3);
+        assertEquals(201, V.getNbVersions());
+        assertEquals(2010, V.getVersionBytes());
+        assertEquals(100, V.getGcQueueLength());
+
+        try {
+            V.setGcKeysPerPass(30);
+            V.garbageCollector(2);
+            assertEquals(171, V.getNbVersions());
+            while (V.collectGarbage() > 0) {
+            }
+            // Key 0 keeps the version of 3, after the watermark, and stays queued
+            assertEquals(101, V.getNbVersions());
+            assertEquals(1, V.getGcQueueLength());
+
+            V.garbageCollector(4);
+            assertEquals(100, V.getNbVersions());
+            assertEquals(0, V.getGcQueueLength());
+            V.beginTransaction(4);
+            assertEquals(10, ((byte[]) V.get(4, 0)).length);
+        } finally {
+            V.setGcKeysPerPass(VersioningUnitMVTO.DEFAULT_GC_KEYS_PER_PASS);
+        }
+    }
+
+    @Test
+    public void testRecoveryFromWriteAheadLog() throws Exception {
+        File file = File.createTempFile("mvto", ".wal");
+        file.delete();
+        ByteKey key = new ByteKey(new byte[] { 1, 2 });
+        try {
+            V.setWriteAheadLog(new WriteAheadLog(file, 1, 4));
+            V.init();
+            V.beginTransaction(5);
+            V.beginTransaction(7);
+            V.put(5, key, new byte[] { 5 });
+            V.put(7, key, new byte[] { 7 });
+            V.put(7, 3, 7);
+            // Commits out of timestamp order
+            V.prepareCommit(7);
+            V.commit(7);
+            V.prepareCommit(5);
+            V.commit(5);
+
+            // Restart
+            V.init();
+            V.beginTransaction(1);
+            assertTrue(Arrays.equals(new byte[] { 7 }, (byte[]) V.get(1, key)));
+            assertEquals(7, V.get(1, 3));
+
+            V.beginTransaction(9);
+            V.put(9, 3, 9);
+            V.prepareCommit(9);
+            V.commit(9);
+            V.init();
+            V.beginTransaction(2);
+            assertEquals(9, V.get(2, 3));
+        } finally {
+            V.setWriteAheadLog(null);
+            V.init();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRecoveryFromSnapshot() throws Exception {
+        File file = File.createTempFile("mvto", ".wal");
+        file.delete();
+        WriteAheadLog wal = new WriteAheadLog(file, 1, 4);
+        ByteKey key = new ByteKey(new byte[] { 1, 2 });
+        try {
+            V.setWriteAheadLog(wal);
+            V.init();
+            V.beginTransaction(7);
+            V.put(7, key, new byte[] { 7 });
+            V.put(7, 3, 7);
+            V.prepareCommit(7);
+            V.commit(7);
+            assertEquals(2, wal.snapshot());
+
+            // The tail of the log: an older timestamp committed after the snapshot does not win
+            V.beginTransaction(5);
+            V.put(5, key, new byte[] { 5 });
+            V.put(5, 4, 5);
+            V.prepareCommit(5);
+            V.commit(5);
+
+            V.init();
+            V.beginTransaction(1);
+            assertTrue(Arrays.equals(new byte[] { 7 }, (byte[]) V.get(1, key)));
+            assertEquals(7, V.get(1, 3));
+            assertEquals(5, V.get(1, 4));
+
+            // Merged with the previous snapshot
+            V.beginTransaction(9);
+            V.put(9, 3, 9);
+            V.prepareCommit(9);
+            V.commit(9);
+            assertEquals(3, wal.snapshot());
+            V.init();
+            V.beginTransaction(2);
+            assertTrue(Arrays.equals(new byte[] { 7 }, (byte[]) V.get(2, key)));
+            assertEquals(9, V.get(2, 3));
+            assertEquals(5, V.get(2, 4));
+        } finally {
+            V.setWriteAheadLog(null);
+            V.init();
+            file.delete();
+            wal.getSnapshotFile().delete();
+        }
+    }
+
+    // The ids of the transactions start over at every run: the writes of a later run win over larger ids of earlier runs
+    @Test
+    public void testRecoveryAcrossRestarts() throws Exception {
+        File file = File.createTempFile("mvto", ".wal");
+        file.delete();
+        WriteAheadLog wal = new WriteAheadLog(file, 1, 4);
+        try {
+            V.setWriteAheadLog(wal);
+            V.init();
+            V.beginTransaction(100);
+            V.put(100, 1, 100);
+            V.put(100, 2, 100);
+            V.prepareCommit(100);
+            V.commit(100);
+
+            // Second run
+            V.init();
+            V.beginTransaction(5);
+            V.put(5, 1, 5);
+            V.prepareCommit(5);
+            V.commit(5);
+
+            // Third run, from the log then from a snapshot of it
+            V.init();
+            V.beginTransaction(1);
+            assertEquals(5, V.get(1, 1));
+            assertEquals(100, V.get(1, 2));
+            V.prepareCommit(1);
+            V.commit(1);
+            wal.snapshot();
+            V.beginTransaction(3);
+            V.put(3, 2, 3);
+            V.prepareCommit(3);
+            V.commit(3);
+
+            V.init();
+            V.beginTransaction(1);
+            assertEquals(5, V.get(1, 1));
+            assertEquals(3, V.get(1, 2));
+            wal.snapshot();
+            V.init();
+            V.beginTransaction(1);
+            assertEquals(5, V.get(1, 1));
+            assertEquals(3, V.get(1, 2));
+        } finally {
+            V.setWriteAheadLog(null);
+            V.init();
+            file.delete();
+            wal.getSnapshotFile().delete();
+        }
+    }
+
+    // A commit the log refuses is rolled back, and the transactions that read from it abort
+    @Test
+    public void testCommitNotLogged() throws Exception {
+        File file = File.createTempFile("mvto", ".wal");
+        file.delete();
+        WriteAheadLog wal = new WriteAheadLog(file, 1, 4);
+        try {
+            V.setWriteAheadLog(wal);
+            V.init();
+            wal.close();
+            V.beginTransaction(1);
+            V.put(1, 1, 1);
+            V.beginTransaction(2);
+            assertEquals(1, V.get(2, 1));
+            V.prepareCommit(1);
+            try {
+                V.commit(1);
+                fail();
+            } catch (AbortException e) {
+            }
+            try {
+                V.prepareCommit(2);
+                fail();
+            } catch (AbortException e) {
+            }
+            V.beginTransaction(3);
+            assertEquals(null, V.get(3, 1));
+        } finally {
+            V.setWriteAheadLog(null);
+            V.init();
+            file.delete();
+        }
+    }
+
+    // A write after the abort of its transaction adds no version, which would read as committed once the abort is
+    // forgotten
+    @Test
+    public void testWriteAfterAbort() throws Exception {
+        V.beginTransaction(1);
+        V.put(1, 1, 1);
+        V.abort(1);
+        try {
+            V.put(1, 2, 1);
+            fail();
+        } catch (AbortException e) {
+        }
+        try {
+            V.put(7, 2, 7);
+            fail();
+        } catch (AbortException e) {
+        }
+
+        V.garbageCollector(2);
+        V.beginTransaction(3);
+        assertEquals(null, V.get(3, 1));
+        assertEquals(null, V.get(3, 2));
+    }
+
+    // A write that does not fit in the storage leaves nothing behind once its transaction aborted
+    @Test
+    public void testWriteStorageFull() throws Exception {
+        StorageEngine engine = V.getStorageEngine();
+        try {
+            V.setStorageEngine(new OffHeapStorageEngine(1 << 20, 1));
+            V.init();
+            V.beginTransaction(1);
+            int written = 0;
+            try {
+                for (int i = 0; i < 10000; i++) {
+                    V.put(1, i, new byte[1000]);
+                    written++;
+                }
+                fail();
+            } catch (StorageFullException e) {
+                V.abort(1);
+            }
+            V.garbageCollector(2);
+
+            V.beginTransaction(2);
+            V.put(2, written, new byte[1000]);
+            V.prepareCommit(2);
+            V.commit(2);
+            V.beginTransaction(3);
+            assertEquals(null, V.get(3, 0));
+            assertEquals(1000, ((byte[]) V.get(3, written)).length);
+        } finally {
+            V.setStorageEngine(engine);
+            V.init();
+        }
+    }
 }